@@ -551,7 +551,18 @@ class ForwardIndexImplV3 extends ForwardIndex {
 	}
 
 	@Override
-	public synchronized List<int[]> retrievePartsInt(int fiid, int[] start, int[] end) {
+	public List<int[]> retrievePartsInt(int fiid, int[] start, int[] end) {
+		if (tokensFileChunks == null) {
+			// Index mode: we read from the file channel, and documents may be added concurrently
+			synchronized (this) {
+				return retrievePartsIntInternal(fiid, start, end);
+			}
+		}
+		// Search mode: the tokens file is mapped read-only, so multiple threads can read at once
+		return retrievePartsIntInternal(fiid, start, end);
+	}
+
+	private List<int[]> retrievePartsIntInternal(int fiid, int[] start, int[] end) {
 		try {
 			TocEntry e = toc.get(fiid);
 			if (e == null || e.deleted)
@@ -609,8 +620,10 @@ class ForwardIndexImplV3 extends ForwardIndex {
 						}
 					}
 
-					whichChunk.position((int) (e.offset * SIZEOF_INT - chunkOffsetBytes));
-					ib = whichChunk.asIntBuffer();
+					// (use a duplicate so we have our own position and don't interfere with other threads)
+					ByteBuffer chunk = whichChunk.duplicate();
+					chunk.position((int) (e.offset * SIZEOF_INT - chunkOffsetBytes));
+					ib = chunk.asIntBuffer();
 				}
 
 				int snippetLength = end[i] - start[i];
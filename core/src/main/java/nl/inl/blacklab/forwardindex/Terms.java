@@ -82,6 +82,23 @@ public abstract class Terms {
 	 */
 	public abstract int idToSortPosition(int id, boolean sensitive);
 
+	/**
+	 * Get the sort position for each term id.
+	 *
+	 * Two terms are equal (with the given sensitivity) if their sort positions
+	 * are equal, so this allows comparing many terms without method calls.
+	 *
+	 * @param sensitive whether we want the sensitive or insensitive sort positions
+	 * @return the sort position for each term id (must not be modified)
+	 */
+	public int[] sortPositionPerId(boolean sensitive) {
+		int[] result = new int[numberOfTerms()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = idToSortPosition(i, sensitive);
+		}
+		return result;
+	}
+
 	/**
 	 * Convert an array of term ids to sort positions
 	 * @param termId the term ids
@@ -664,6 +664,11 @@ class TermsImplV3 extends Terms {
 		return sensitive ? sortPositionPerId[id] : sortPositionPerIdInsensitive[id];
 	}
 
+	@Override
+	public int[] sortPositionPerId(boolean sensitive) {
+		return sensitive ? sortPositionPerId : sortPositionPerIdInsensitive;
+	}
+
 	@Override
 	protected void setBlockBasedFile(boolean useBlockBasedTermsFile) {
 		this.useBlockBasedTermsFile = useBlockBasedTermsFile;
@@ -37,6 +37,8 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.IntField;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.IndexableField;
 
 import nl.inl.blacklab.index.complex.ComplexFieldProperty.SensitivitySetting;
 import nl.inl.blacklab.index.complex.ComplexFieldUtil;
@@ -44,6 +46,7 @@ import nl.inl.blacklab.search.BLRuntimeException;
 import nl.inl.blacklab.search.indexstructure.FieldType;
 import nl.inl.blacklab.search.indexstructure.IndexStructure;
 import nl.inl.blacklab.search.indexstructure.MetadataFieldDesc;
+import nl.inl.blacklab.search.lucene.MetadataDocValues;
 import nl.inl.util.UnicodeStream;
 
 /**
@@ -350,6 +353,7 @@ public abstract class DocIndexer implements AutoCloseable {
             type = shouldBeType;
         }
 
+        String storedValue = value;
         if (type != FieldType.NUMERIC) {
             currentLuceneDoc.add(new Field(name, value, luceneTypeFromIndexStructType(type)));
         }
@@ -369,7 +373,29 @@ public abstract class DocIndexer implements AutoCloseable {
             }
             IntField nf = new IntField(numFieldName, n, Store.YES);
             currentLuceneDoc.add(nf);
+            if (type == FieldType.NUMERIC)
+                storedValue = Integer.toString(n);
         }
+        if (storedValue != null) {
+            // Also store the (first) value as DocValues, so we can sort and
+            // group on it without loading the stored document
+            addMetadataDocValues(name, storedValue);
+        }
+    }
+
+    /**
+     * Add a sorted DocValues field for a metadata value, if the document
+     * doesn't have one for this field yet.
+     *
+     * @param name metadata field name
+     * @param value metadata value
+     */
+    private void addMetadataDocValues(String name, String value) {
+        for (IndexableField f: currentLuceneDoc.getFields(name)) {
+            if (f.fieldType().docValuesType() != DocValuesType.NONE)
+                return; // already have a value; only the first value is used for sorting/grouping
+        }
+        currentLuceneDoc.add(MetadataDocValues.createField(name, value));
     }
 
     /**
@@ -388,6 +414,7 @@ public abstract class DocIndexer implements AutoCloseable {
                 String fieldName = e.getKey().substring(5);
                 String fieldValue = e.getValue();
                 currentLuceneDoc.add(new Field(fieldName, fieldValue, indexer.getMetadataFieldType(false)));
+                addMetadataDocValues(fieldName, fieldValue);
             }
         }
     }
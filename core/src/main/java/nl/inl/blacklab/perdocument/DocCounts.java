@@ -16,6 +16,7 @@
 package nl.inl.blacklab.perdocument;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -24,8 +25,12 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.lucene.index.IndexReader;
+
 import nl.inl.blacklab.search.Searcher;
 import nl.inl.blacklab.search.grouping.HitPropValue;
+import nl.inl.blacklab.search.lucene.MetadataDocValues;
+import nl.inl.util.ParallelUtil;
 
 /**
  * Counts the number of documents that have a certain property.
@@ -61,26 +66,160 @@ public class DocCounts implements Iterable<DocCount> {
 	 *            the criterium to group on.
 	 */
 	DocCounts(DocResults docResults, DocProperty countBy) {
+		this(docResults, countBy, count(docResults, Arrays.asList(countBy)).get(0));
+	}
+
+	/**
+	 * Constructor. Creates the groups from the counts.
+	 *
+	 * @param docResults
+	 *            the results that were counted.
+	 * @param countBy
+	 *            the criterium that was counted.
+	 * @param valueCounts
+	 *            number of documents per value
+	 */
+	private DocCounts(DocResults docResults, DocProperty countBy, Map<HitPropValue, Integer> valueCounts) {
 		this.docResults = docResults;
 		searcher = docResults.getSearcher();
 		this.countBy = countBy;
-		//Thread currentThread = Thread.currentThread();
-		for (DocResult r : docResults) {
-
-			HitPropValue groupId = countBy.get(r);
-			DocCount count = counts.get(groupId);
-			if (count == null) {
-				count = new DocCount(searcher, groupId);
-				counts.put(groupId, count);
-			}
-			count.increment();
+		for (Map.Entry<HitPropValue, Integer> e: valueCounts.entrySet()) {
+			DocCount count = new DocCount(searcher, e.getKey(), e.getValue());
+			counts.put(e.getKey(), count);
+			orderedGroups.add(count);
 			if (count.size() > largestGroupSize)
 				largestGroupSize = count.size();
-			totalResults++;
+			totalResults += count.size();
+		}
+	}
+
+	/**
+	 * Count documents for several properties at once.
+	 *
+	 * Properties based on indexed DocValues (see DocProperty.getDocValues())
+	 * are counted per value index in a single pass over the document ids
+	 * (in parallel for large result sets), so we don't need to load each
+	 * document or create a property value per document. Other properties
+	 * are counted by calling DocProperty.get() for each document.
+	 *
+	 * @param docResults
+	 *            the results to count.
+	 * @param countBy
+	 *            the criteria to count.
+	 * @return the counts, in the same order as the criteria
+	 */
+	static List<DocCounts> countBy(DocResults docResults, List<DocProperty> countBy) {
+		List<Map<HitPropValue, Integer>> valueCounts = count(docResults, countBy);
+		List<DocCounts> result = new ArrayList<>();
+		for (int i = 0; i < countBy.size(); i++) {
+			result.add(new DocCounts(docResults, countBy.get(i), valueCounts.get(i)));
 		}
-		for (DocCount c: counts.values()) {
-			orderedGroups.add(c);
+		return result;
+	}
+
+	private static List<Map<HitPropValue, Integer>> count(DocResults docResults, List<DocProperty> countBy) {
+		List<DocResult> results = new ArrayList<>();
+		for (DocResult r: docResults) {
+			results.add(r);
+		}
+		int[] docIds = new int[results.size()];
+		for (int i = 0; i < docIds.length; i++) {
+			docIds[i] = results.get(i).getDocId();
+		}
+
+		// Count value indices for all properties based on DocValues
+		IndexReader reader = docResults.getSearcher().getIndexReader();
+		MetadataDocValues[] docValues = new MetadataDocValues[countBy.size()];
+		for (int i = 0; i < docValues.length; i++) {
+			docValues[i] = countBy.get(i).getDocValues(reader);
+		}
+		int[][] valueIndexCounts;
+		try {
+			valueIndexCounts = sumCounts(ParallelUtil.processRange(docIds.length, ParallelUtil.DEFAULT_MIN_PART_SIZE,
+					(start, end) -> countValueIndices(docValues, docIds, start, end)));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+
+		// Determine the counts per property value
+		List<Map<HitPropValue, Integer>> result = new ArrayList<>();
+		for (int i = 0; i < docValues.length; i++) {
+			DocProperty prop = countBy.get(i);
+			Map<HitPropValue, Integer> counts = new HashMap<>();
+			if (docValues[i] == null) {
+				for (DocResult r: results) {
+					counts.merge(prop.get(r), 1, Integer::sum);
+				}
+			} else {
+				MetadataDocValues dv = docValues[i];
+				int[] c = valueIndexCounts[i];
+				int numberOfValues = c.length - 2;
+				for (int valueIndex = 0; valueIndex < numberOfValues; valueIndex++) {
+					if (c[valueIndex] > 0)
+						counts.merge(prop.getForDocValue(dv.value(valueIndex)), c[valueIndex], Integer::sum);
+				}
+				if (c[numberOfValues] > 0)
+					counts.merge(prop.getForDocValue(null), c[numberOfValues], Integer::sum);
+				if (c[numberOfValues + 1] > 0) {
+					// Some documents don't have DocValues; get their value the slow way
+					for (DocResult r: results) {
+						if (dv.valueIndex(r.getDocId()) == MetadataDocValues.NOT_INDEXED)
+							counts.merge(prop.get(r), 1, Integer::sum);
+					}
+				}
+			}
+			result.add(counts);
+		}
+		return result;
+	}
+
+	/**
+	 * Count value indices for part of the documents.
+	 *
+	 * @param docValues DocValues per property (null if not based on DocValues)
+	 * @param docIds the document ids
+	 * @param start first document to count
+	 * @param end first document not to count
+	 * @return counts per property: number of documents per value index,
+	 *   followed by the number of documents without a value and the number
+	 *   of documents without DocValues
+	 */
+	private static int[][] countValueIndices(MetadataDocValues[] docValues, int[] docIds, int start, int end) {
+		int[][] counts = new int[docValues.length][];
+		for (int i = 0; i < docValues.length; i++) {
+			if (docValues[i] != null)
+				counts[i] = new int[docValues[i].numberOfValues() + 2];
+		}
+		for (int j = start; j < end; j++) {
+			int doc = docIds[j];
+			for (int i = 0; i < docValues.length; i++) {
+				if (docValues[i] == null)
+					continue;
+				int valueIndex = docValues[i].valueIndex(doc);
+				int[] c = counts[i];
+				if (valueIndex >= 0)
+					c[valueIndex]++;
+				else
+					c[c.length + (valueIndex == MetadataDocValues.NO_VALUE ? -2 : -1)]++;
+			}
+		}
+		return counts;
+	}
+
+	private static int[][] sumCounts(List<int[][]> parts) {
+		int[][] sum = parts.get(0);
+		for (int p = 1; p < parts.size(); p++) {
+			int[][] part = parts.get(p);
+			for (int i = 0; i < sum.length; i++) {
+				if (sum[i] == null)
+					continue;
+				for (int j = 0; j < sum[i].length; j++) {
+					sum[i][j] += part[i][j];
+				}
+			}
 		}
+		return sum;
 	}
 
 	public Collection<DocCount> getCounts() {
@@ -24,6 +24,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.lucene.util.RamUsageEstimator;
+
 import nl.inl.blacklab.search.Searcher;
 import nl.inl.blacklab.search.grouping.DocOrHitGroups;
 import nl.inl.blacklab.search.grouping.HitPropValue;
@@ -32,6 +34,12 @@ import nl.inl.blacklab.search.grouping.HitPropValue;
  * Applies grouping to the results in a DocResults object.
  */
 public class DocGroups implements Iterable<DocGroup>, DocOrHitGroups {
+
+	/** Estimated memory used per group, not counting its results (the group, its DocResults object and list, map entry and identity) */
+	private static final long BYTES_PER_GROUP = RamUsageEstimator.shallowSizeOfInstance(DocGroup.class) +
+			RamUsageEstimator.shallowSizeOfInstance(DocResults.class) + RamUsageEstimator.shallowSizeOfInstance(ArrayList.class) +
+			RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + 4 * RamUsageEstimator.NUM_BYTES_OBJECT_REF + 100; // (identity: rough estimate)
+
 	Map<HitPropValue, DocGroup> groups = new HashMap<>();
 
 	List<DocGroup> orderedGroups = new ArrayList<>();
@@ -82,6 +90,48 @@ public class DocGroups implements Iterable<DocGroup>, DocOrHitGroups {
 		}
 	}
 
+	/**
+	 * Constructor. Fills the groups from groups that were determined earlier.
+	 *
+	 * @param docResults the results that were grouped
+	 * @param groupBy the criterium the results were grouped on
+	 * @param identities the group identities, in order
+	 * @param groupIndices for each group, the indices of its results
+	 */
+	private DocGroups(DocResults docResults, DocProperty groupBy, List<HitPropValue> identities, List<int[]> groupIndices) {
+		this.docResults = docResults;
+		searcher = docResults.getSearcher();
+		this.groupBy = groupBy;
+		for (int i = 0; i < identities.size(); i++) {
+			int[] indices = groupIndices.get(i);
+			List<DocResult> group = new ArrayList<>(indices.length);
+			for (int index: indices) {
+				group.add(docResults.get(index));
+			}
+			if (group.size() > largestGroupSize)
+				largestGroupSize = group.size();
+			totalResults += group.size();
+			DocGroup docGroup = new DocGroup(searcher, identities.get(i), group);
+			groups.put(identities.get(i), docGroup);
+			orderedGroups.add(docGroup);
+		}
+	}
+
+	/**
+	 * Restore grouped document results from groups that were determined earlier.
+	 *
+	 * The groups keep the order in which they're given.
+	 *
+	 * @param docResults the results that were grouped
+	 * @param groupBy the criterium the results were grouped on
+	 * @param identities the group identities, in order
+	 * @param groupIndices for each group, the indices of its results
+	 * @return grouped results
+	 */
+	public static DocGroups fromGroups(DocResults docResults, DocProperty groupBy, List<HitPropValue> identities, List<int[]> groupIndices) {
+		return new DocGroups(docResults, groupBy, identities, groupIndices);
+	}
+
 	public Collection<DocGroup> getGroups() {
 		return Collections.unmodifiableCollection(orderedGroups);
 	}
@@ -126,6 +176,19 @@ public class DocGroups implements Iterable<DocGroup>, DocOrHitGroups {
 		return totalResults;
 	}
 
+	/**
+	 * Estimate how much memory the groups use.
+	 *
+	 * Doesn't include the document results themselves, which belong to the
+	 * DocResults object that was grouped.
+	 *
+	 * @return estimated memory use in bytes
+	 */
+	public long estimateSizeBytes() {
+		// Each group has its own list of references to the results
+		return groups.size() * BYTES_PER_GROUP + (long)totalResults * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+	}
+
 	public DocProperty getGroupCriteria() {
 		return groupBy;
 	}
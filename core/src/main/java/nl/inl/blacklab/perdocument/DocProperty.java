@@ -21,9 +21,11 @@ import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
 
 import nl.inl.blacklab.search.grouping.HitPropValue;
 import nl.inl.blacklab.search.grouping.PropValSerializeUtil;
+import nl.inl.blacklab.search.lucene.MetadataDocValues;
 
 /**
  * Abstract base class for criteria on which to group DocResult objects. Subclasses implement
@@ -59,6 +61,32 @@ public abstract class DocProperty {
 		return false;
 	}
 
+	/**
+	 * Get the indexed DocValues this property can be determined from.
+	 *
+	 * If this returns non-null, documents can be counted per value (see
+	 * DocCounts) without calling get() for each document; getForDocValue()
+	 * is used to determine the property value for each distinct value.
+	 *
+	 * @param reader the index reader
+	 * @return the DocValues, or null if this property isn't based on DocValues
+	 */
+	public MetadataDocValues getDocValues(IndexReader reader) {
+		return null;
+	}
+
+	/**
+	 * Get the property value for a document with the specified DocValues value.
+	 *
+	 * Only called if getDocValues() returned non-null.
+	 *
+	 * @param value the DocValues value, or null if the document has no value
+	 * @return the property value
+	 */
+	public HitPropValue getForDocValue(String value) {
+		throw new UnsupportedOperationException();
+	}
+
 	public abstract String getName();
 
 	public abstract String serialize();
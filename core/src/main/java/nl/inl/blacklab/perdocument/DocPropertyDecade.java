@@ -18,9 +18,12 @@ package nl.inl.blacklab.perdocument;
 import java.util.Arrays;
 import java.util.List;
 
+import org.apache.lucene.index.IndexReader;
+
 import nl.inl.blacklab.search.grouping.HitPropValueDecade;
 import nl.inl.blacklab.search.grouping.HitPropertyDocumentDecade;
 import nl.inl.blacklab.search.grouping.PropValSerializeUtil;
+import nl.inl.blacklab.search.lucene.MetadataDocValues;
 
 /**
  * For grouping DocResult objects by decade based on a
@@ -30,21 +33,19 @@ public class DocPropertyDecade extends DocProperty {
 
 	private String fieldName;
 
+	/** Indexed values of the field, so we don't have to load documents (initialized when needed) */
+	private MetadataDocValues docValues;
+
+	/** Index reader docValues was read from */
+	private IndexReader docValuesReader;
+
 	public DocPropertyDecade(String fieldName) {
 		this.fieldName = fieldName;
 	}
 
 	@Override
 	public HitPropValueDecade get(DocResult result) {
-		String strYear = result.getDocument().get(fieldName);
-		int year;
-		try {
-			year = Integer.parseInt(strYear);
-			year -= year % 10;
-		} catch (NumberFormatException e) {
-			year = HitPropertyDocumentDecade.UNKNOWN_VALUE;
-		}
-		return new HitPropValueDecade(year);
+		return new HitPropValueDecade(getDecade(result));
 	}
 
 	/**
@@ -55,32 +56,54 @@ public class DocPropertyDecade extends DocProperty {
 	 */
 	@Override
 	public int compare(DocResult a, DocResult b) {
-		String strYearA = a.getDocument().get(fieldName);
-		if (strYearA == null)
-			strYearA = "";
-		String strYearB = b.getDocument().get(fieldName);
-		if (strYearB == null)
-			strYearB = "";
-		if (strYearA.length() == 0) // sort missing year at the end
-			return strYearB.length() == 0 ? 0 : (reverse ? -1 : 1);
-		if (strYearB.length() == 0) // sort missing year at the end
+		boolean aMissing = isMissing(a);
+		boolean bMissing = isMissing(b);
+		if (aMissing) // sort missing year at the end
+			return bMissing ? 0 : (reverse ? -1 : 1);
+		if (bMissing) // sort missing year at the end
 			return reverse ? 1 : -1;
-		int year1;
-		try {
-			year1 = Integer.parseInt(strYearB);
-			year1 -= year1 % 10;
-		} catch (NumberFormatException e) {
-			year1 = HitPropertyDocumentDecade.UNKNOWN_VALUE;
+		int year1 = getDecade(a);
+		int year2 = getDecade(b);
+		return reverse ? year2 - year1 : year1 - year2;
+	}
+
+	@Override
+	public MetadataDocValues getDocValues(IndexReader reader) {
+		return MetadataDocValues.get(reader, fieldName);
+	}
+
+	@Override
+	public HitPropValueDecade getForDocValue(String value) {
+		return new HitPropValueDecade(value == null ? HitPropertyDocumentDecade.UNKNOWN_VALUE : HitPropertyDocumentDecade.decade(value));
+	}
+
+	private MetadataDocValues docValues(DocResult result) {
+		IndexReader reader = result.getSearcher().getIndexReader();
+		if (docValues == null || docValuesReader != reader) {
+			docValues = MetadataDocValues.get(reader, fieldName);
+			docValuesReader = reader;
 		}
-		int year2;
-		try {
-			year2 = Integer.parseInt(strYearB);
-			year2 -= year2 % 10;
-		} catch (NumberFormatException e) {
-			year2 = HitPropertyDocumentDecade.UNKNOWN_VALUE;
+		return docValues;
+	}
+
+	private boolean isMissing(DocResult result) {
+		int valueIndex = docValues(result).valueIndex(result.getDocId());
+		if (valueIndex == MetadataDocValues.NOT_INDEXED) {
+			String strYear = result.getDocument().get(fieldName);
+			return strYear == null || strYear.length() == 0;
 		}
+		return valueIndex == MetadataDocValues.NO_VALUE;
+	}
 
-		return reverse ? year2 - year1 : year1 - year2;
+	private int getDecade(DocResult result) {
+		MetadataDocValues dv = docValues(result);
+		int valueIndex = dv.valueIndex(result.getDocId());
+		if (valueIndex == MetadataDocValues.NOT_INDEXED)
+			return HitPropertyDocumentDecade.decade(result.getDocument().get(fieldName));
+		if (valueIndex == MetadataDocValues.NO_VALUE)
+			return HitPropertyDocumentDecade.UNKNOWN_VALUE;
+		int year = dv.intValue(valueIndex, HitPropertyDocumentDecade.UNKNOWN_VALUE);
+		return year - year % 10;
 	}
 
 	@Override
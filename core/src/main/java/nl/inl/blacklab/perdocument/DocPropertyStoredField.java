@@ -18,8 +18,11 @@ package nl.inl.blacklab.perdocument;
 import java.util.Arrays;
 import java.util.List;
 
+import org.apache.lucene.index.IndexReader;
+
 import nl.inl.blacklab.search.grouping.HitPropValueString;
 import nl.inl.blacklab.search.grouping.PropValSerializeUtil;
+import nl.inl.blacklab.search.lucene.MetadataDocValues;
 
 /**
  * For grouping DocResult objects by the value of a stored field in the Lucene documents. The field
@@ -29,6 +32,12 @@ public class DocPropertyStoredField extends DocProperty {
 	private String fieldName;
 	private String friendlyName;
 
+	/** Indexed values of the field, so we don't have to load documents (initialized when needed) */
+	private MetadataDocValues docValues;
+
+	/** Index reader docValues was read from */
+	private IndexReader docValuesReader;
+
 	public DocPropertyStoredField(String fieldName) {
 		this(fieldName, fieldName);
 	}
@@ -40,7 +49,11 @@ public class DocPropertyStoredField extends DocProperty {
 
 	@Override
 	public HitPropValueString get(DocResult result) {
-		return new HitPropValueString(result.getDocument().get(fieldName));
+		MetadataDocValues dv = docValues(result);
+		int valueIndex = dv.valueIndex(result.getDocId());
+		if (valueIndex == MetadataDocValues.NOT_INDEXED)
+			return new HitPropValueString(getStoredValue(result));
+		return new HitPropValueString(valueIndex == MetadataDocValues.NO_VALUE ? "" : dv.value(valueIndex));
 	}
 
 	/**
@@ -51,12 +64,46 @@ public class DocPropertyStoredField extends DocProperty {
 	 */
 	@Override
 	public int compare(DocResult a, DocResult b) {
-		String sa = a.getDocument().get(fieldName);
-		if (sa == null)
-			sa = "";
-		String sb = b.getDocument().get(fieldName);
-		if (sb == null)
-			sb = "";
+		MetadataDocValues dv = docValues(a);
+		int ia = dv.valueIndex(a.getDocId());
+		int ib = dv.valueIndex(b.getDocId());
+		if (ia == MetadataDocValues.NOT_INDEXED || ib == MetadataDocValues.NOT_INDEXED)
+			return compareStoredValues(a, b);
+		if (ia == MetadataDocValues.NO_VALUE) // sort empty string at the end
+			return ib == MetadataDocValues.NO_VALUE ? 0 : (reverse ? -1 : 1);
+		if (ib == MetadataDocValues.NO_VALUE) // sort empty string at the end
+			return reverse ? 1 : -1;
+		// Value indices are in String.compareTo() order
+		return reverse ? Integer.compare(ib, ia) : Integer.compare(ia, ib);
+	}
+
+	@Override
+	public MetadataDocValues getDocValues(IndexReader reader) {
+		return MetadataDocValues.get(reader, fieldName);
+	}
+
+	@Override
+	public HitPropValueString getForDocValue(String value) {
+		return new HitPropValueString(value == null ? "" : value);
+	}
+
+	private MetadataDocValues docValues(DocResult result) {
+		IndexReader reader = result.getSearcher().getIndexReader();
+		if (docValues == null || docValuesReader != reader) {
+			docValues = MetadataDocValues.get(reader, fieldName);
+			docValuesReader = reader;
+		}
+		return docValues;
+	}
+
+	private String getStoredValue(DocResult result) {
+		String value = result.getDocument().get(fieldName);
+		return value == null ? "" : value;
+	}
+
+	private int compareStoredValues(DocResult a, DocResult b) {
+		String sa = getStoredValue(a);
+		String sb = getStoredValue(b);
 		if (sa.length() == 0) // sort empty string at the end
 			return sb.length() == 0 ? 0 : (reverse ? -1 : 1);
 		if (sb.length() == 0) // sort empty string at the end
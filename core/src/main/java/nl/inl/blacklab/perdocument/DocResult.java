@@ -57,6 +57,15 @@ public class DocResult {
 		return hits.getSearcher().document(docId);
 	}
 
+	/**
+	 * Get the searcher this document was found in.
+	 *
+	 * @return the searcher
+	 */
+	public Searcher getSearcher() {
+		return hits.getSearcher();
+	}
+
 	/**
 	 * Get the number of hits in this document.
 	 * @return the number of hits in the document
@@ -31,9 +31,11 @@ import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.util.RamUsageEstimator;
 
 import nl.inl.blacklab.search.Hit;
 import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.HitsImpl;
 import nl.inl.blacklab.search.Prioritizable;
 import nl.inl.blacklab.search.Searcher;
 import nl.inl.blacklab.search.grouping.HitPropValueInt;
@@ -44,6 +46,12 @@ import nl.inl.util.ThreadPriority.Level;
  * A list of DocResult objects (document-level query results).
  */
 public class DocResults implements Iterable<DocResult>, Prioritizable {
+
+	/** Estimated memory used per document result, not counting its hits (the result, its Hits object and list) */
+	private static final long BYTES_PER_RESULT = RamUsageEstimator.NUM_BYTES_OBJECT_REF + RamUsageEstimator.shallowSizeOfInstance(DocResult.class) +
+			RamUsageEstimator.shallowSizeOfInstance(HitsImpl.class) + RamUsageEstimator.shallowSizeOfInstance(ArrayList.class) +
+			RamUsageEstimator.NUM_BYTES_ARRAY_HEADER;
+
 	/**
 	 * (Part of) our document results
 	 */
@@ -335,7 +343,7 @@ public class DocResults implements Iterable<DocResult>, Prioritizable {
 	 * @throws InterruptedException
 	 */
 	void ensureResultsRead(int index) throws InterruptedException {
-		if (sourceHitsFullyRead() || (index >= 0 && results.size() >= index))
+		if (sourceHitsFullyRead() || (index >= 0 && results.size() > index))
 			return;
 
 		while (!ensureResultsReadLock.tryLock()) {
@@ -345,7 +353,7 @@ public class DocResults implements Iterable<DocResult>, Prioritizable {
 			* So instead poll our own state, then if we're still missing results after that just count them ourselves
 			*/
 			Thread.sleep(50);
-			if (sourceHitsFullyRead() || (index >= 0 && results.size() >= index))
+			if (sourceHitsFullyRead() || (index >= 0 && results.size() > index))
 				return;
 		}
 
@@ -495,6 +503,22 @@ public class DocResults implements Iterable<DocResult>, Prioritizable {
 		return new DocResultsWindow(this, first, number);
 	}
 
+	/**
+	 * Estimate how much memory the document results use.
+	 *
+	 * Doesn't include the hits themselves, which belong to the Hits
+	 * object the results were created from.
+	 *
+	 * @return estimated memory use in bytes
+	 */
+	public long estimateSizeBytes() {
+		// Each result has its own list of references to its hits
+		long size = (long)results.size() * BYTES_PER_RESULT;
+		if (sourceHits != null)
+			size += (long)sourceHits.countSoFarHitsRetrieved() * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+		return size;
+	}
+
 	public Hits getOriginalHits() {
 		return sourceHits;
 	}
@@ -511,6 +535,20 @@ public class DocResults implements Iterable<DocResult>, Prioritizable {
 		return new DocCounts(this, countBy);
 	}
 
+	/**
+	 * Count the number of results that have the same value for each of
+	 * the specified properties.
+	 *
+	 * This is faster than calling countBy(DocProperty) for each property,
+	 * because all the properties are counted in one pass over the results.
+	 *
+	 * @param countBy properties to count
+	 * @return the counts, in the same order as the properties
+	 */
+	public List<DocCounts> countBy(List<DocProperty> countBy) {
+		return DocCounts.countBy(this, countBy);
+	}
+
 	/**
 	 * Sum a property for all the documents.
 	 *
@@ -0,0 +1,161 @@
+package nl.inl.blacklab.search;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.SimpleCollector;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+
+import nl.inl.blacklab.forwardindex.ForwardIndex;
+import nl.inl.blacklab.forwardindex.Terms;
+import nl.inl.blacklab.index.complex.ComplexFieldUtil;
+import nl.inl.util.ParallelUtil;
+
+/**
+ * Determines term frequencies in a set of documents using the forward index.
+ *
+ * Tokens are counted per term id (in parallel for large sets of documents),
+ * so we don't need to read term vectors or look up the terms for each
+ * document. Each part counts the terms it sees in a sparse map and adds
+ * those to one shared array when done, so memory use doesn't grow with the
+ * number of parts times the size of the vocabulary.
+ */
+class ForwardIndexTermFrequencies {
+
+	/** Don't split counting into parts smaller than this (number of documents) */
+	private static final int MIN_PART_SIZE = 1000;
+
+	private ForwardIndexTermFrequencies() {
+	}
+
+	/**
+	 * Determine the frequency of each term in a set of documents.
+	 *
+	 * @param searcher our searcher
+	 * @param documentFilterQuery which documents to count the terms in
+	 * @param fieldName complex field name, e.g. "contents"
+	 * @param propName property name, e.g. "word"
+	 * @param sensitive if false, terms that only differ in case or
+	 *   diacritics are counted together (and reported using their most frequent variant)
+	 * @return the term frequencies, sorted by decreasing frequency
+	 */
+	static TermFrequencyList count(Searcher searcher, Query documentFilterQuery, String fieldName, String propName, boolean sensitive) {
+		String fieldPropName = ComplexFieldUtil.propertyField(fieldName, propName);
+		ForwardIndex forwardIndex = searcher.getForwardIndex(fieldPropName);
+		if (forwardIndex == null)
+			throw new IllegalArgumentException("No forward index for " + fieldPropName);
+		Terms terms = forwardIndex.getTerms();
+		int numberOfTerms = terms.numberOfTerms();
+		boolean ignoreLastToken = searcher.getIndexStructure().alwaysHasClosingToken();
+
+		// Count tokens per term id
+		IntArrayList docIds = findDocuments(searcher, documentFilterQuery);
+		AtomicIntegerArray counts = new AtomicIntegerArray(numberOfTerms);
+		try {
+			ParallelUtil.processRange(docIds.size(), MIN_PART_SIZE,
+					(start, end) -> countTerms(forwardIndex, docIds, start, end, counts, ignoreLastToken));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+
+		TermFrequencyList result = new TermFrequencyList();
+		if (sensitive) {
+			for (int termId = 0; termId < numberOfTerms; termId++) {
+				int count = counts.get(termId);
+				if (count > 0)
+					result.add(new TermFrequency(terms.get(termId), count));
+			}
+		} else {
+			// Merge terms that only differ in case or diacritics
+			// (using the insensitive sort positions, which are equal for such terms)
+			int[] merged = new int[numberOfTerms];
+			int[] termIdPerEntry = new int[numberOfTerms];
+			for (int termId = 0; termId < numberOfTerms; termId++) {
+				int count = counts.get(termId);
+				if (count > 0) {
+					int sortPos = terms.idToSortPosition(termId, false);
+					if (merged[sortPos] == 0 || count > counts.get(termIdPerEntry[sortPos]))
+						termIdPerEntry[sortPos] = termId; // report the most frequent variant
+					merged[sortPos] += count;
+				}
+			}
+			for (int sortPos = 0; sortPos < numberOfTerms; sortPos++) {
+				if (merged[sortPos] > 0)
+					result.add(new TermFrequency(terms.get(termIdPerEntry[sortPos]), merged[sortPos]));
+			}
+		}
+		result.sort();
+		return result;
+	}
+
+	private static IntArrayList findDocuments(Searcher searcher, Query documentFilterQuery) {
+		final IntArrayList docIds = new IntArrayList();
+		try {
+			searcher.getIndexSearcher().search(documentFilterQuery, new SimpleCollector() {
+
+				private int docBase;
+
+				@Override
+				protected void doSetNextReader(LeafReaderContext context) throws IOException {
+					docBase = context.docBase;
+					super.doSetNextReader(context);
+				}
+
+				@Override
+				public void collect(int docId) throws IOException {
+					docIds.add(docId + docBase);
+				}
+
+				@Override
+				public void setScorer(Scorer scorer) {
+					// (ignore)
+				}
+
+				@Override
+				public boolean needsScores() {
+					return false;
+				}
+			});
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return docIds;
+	}
+
+	/**
+	 * Count the tokens in part of the documents.
+	 *
+	 * @param forwardIndex forward index to read the documents from
+	 * @param docIds Lucene ids of the documents
+	 * @param start first document to count
+	 * @param end first document not to count
+	 * @param counts number of tokens per term id, shared by all parts (added to)
+	 * @param ignoreLastToken if true, skip the closing token at the end of each document
+	 * @return null
+	 */
+	private static Void countTerms(ForwardIndex forwardIndex, IntArrayList docIds, int start, int end, AtomicIntegerArray counts, boolean ignoreLastToken) {
+		IntIntHashMap partCounts = new IntIntHashMap();
+		for (int i = start; i < end; i++) {
+			int fiid = forwardIndex.luceneDocIdToFiid(docIds.get(i));
+			int length = forwardIndex.getDocLength(fiid) - (ignoreLastToken ? 1 : 0);
+			if (length <= 0)
+				continue;
+			List<int[]> parts = forwardIndex.retrievePartsInt(fiid, new int[] { 0 }, new int[] { length });
+			if (parts == null)
+				continue; // deleted document
+			for (int termId: parts.get(0)) {
+				if (termId >= 0)
+					partCounts.addToValue(termId, 1);
+			}
+		}
+		partCounts.forEachKeyValue(counts::addAndGet);
+		return null;
+	}
+
+}
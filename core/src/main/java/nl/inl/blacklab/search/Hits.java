@@ -18,6 +18,7 @@ import nl.inl.blacklab.search.grouping.ResultsGrouper;
 import nl.inl.blacklab.search.lucene.BLSpanQuery;
 import nl.inl.blacklab.search.lucene.BLSpans;
 import nl.inl.blacklab.search.lucene.HitQueryContext;
+import nl.inl.blacklab.search.lucene.QueryBudget;
 import nl.inl.util.ThreadPriority;
 
 public abstract class Hits extends AbstractList<Hit> implements Cloneable, Prioritizable {
@@ -112,6 +113,25 @@ public abstract class Hits extends AbstractList<Hit> implements Cloneable, Prior
 		return new HitsImpl(searcher, docHits);
 	}
 
+	/**
+	 * Make a wrapper Hits object for a list of Hit objects, in a given sort order.
+	 *
+	 * Used to restore sorted hits that were stored earlier. Does not copy the list,
+	 * but reuses it.
+	 *
+	 * @param searcher
+	 *            the searcher object
+	 * @param hits the list of hits to wrap, in their original order
+	 * @param sortOrder for each position in the sorted hits, the index of the hit
+	 *   in the list (see getSortOrder())
+	 * @return hits found
+	 */
+	public static Hits fromList(Searcher searcher, List<Hit> hits, int[] sortOrder) {
+		HitsImpl result = new HitsImpl(searcher, hits);
+		result.setSortOrder(sortOrder);
+		return result;
+	}
+
 	/**
 	 * Construct a Hits object from a SpanQuery.
 	 *
@@ -288,6 +308,19 @@ public abstract class Hits extends AbstractList<Hit> implements Cloneable, Prior
 	 */
 	public abstract boolean maxHitsCounted();
 
+	/**
+	 * Did we stop because the query used up its budget (see HitsSettings.setQueryBudget())?
+	 *
+	 * If so, maxHitsCounted() and maxHitsRetrieved() are true as well, and the
+	 * counts are the partial counts at the time we stopped.
+	 *
+	 * @return true if the query exceeded its budget
+	 */
+	public boolean queryBudgetExceeded() {
+		QueryBudget budget = hitQueryContext == null ? null : hitQueryContext.getBudget();
+		return budget != null && budget.isExceeded();
+	}
+
 	/**
 	 * Get the list of hits.
 	 *
@@ -423,6 +456,46 @@ public abstract class Hits extends AbstractList<Hit> implements Cloneable, Prior
 		return hits;
 	}
 
+	/**
+	 * Sort the list of hits, making sure only the first hits are in their final position.
+	 *
+	 * Implementations may use this to avoid sorting all hits if only the first
+	 * page is needed; the rest of the hits must be sorted as soon as they are
+	 * requested. The default implementation simply sorts all hits.
+	 *
+	 * @param sortProp
+	 *            the hit property to sort on
+	 * @param reverseSort
+	 *            if true, sort in descending order
+	 * @param firstN how many hits must be sorted right away, or -1 to sort all of them
+	 */
+	protected void sortPartially(HitProperty sortProp, boolean reverseSort, int firstN) {
+		sort(sortProp, reverseSort, searcher.isDefaultSearchCaseSensitive());
+	}
+
+	/**
+	 * Return a new Hits object with these hits sorted by the given property,
+	 * sorting only the first hits right away.
+	 *
+	 * Use this if you're only going to show the first page of a large result set.
+	 * The hits beyond the first firstN will be sorted as soon as one of them
+	 * is requested, so the result behaves exactly like that of the other sortedBy()
+	 * methods.
+	 *
+	 * @param sortProp
+	 *            the hit property to sort on
+	 * @param reverseSort
+	 *            if true, sort in descending order
+	 * @param firstN how many hits to sort right away, or -1 to sort all of them
+	 * @return a new Hits object with the same hits, sorted in the specified way
+	 */
+	public Hits sortedBy(HitProperty sortProp, boolean reverseSort, int firstN) {
+		Hits hits = copy();
+		sortProp = sortProp.copyWithHits(hits);
+		hits.sortPartially(sortProp, reverseSort, firstN);
+		return hits;
+	}
+
 	/**
 	 * Return a new Hits object with these hits sorted by the given property.
 	 *
@@ -669,6 +742,27 @@ public abstract class Hits extends AbstractList<Hit> implements Cloneable, Prior
 	 */
 	public abstract Hit getByOriginalOrder(int i);
 
+	/**
+	 * Estimate how much memory these hits use.
+	 *
+	 * Includes the hits (unless they're shared with the Hits object these
+	 * were copied from, e.g. when sorting), captured groups, context, sort
+	 * order and concordances.
+	 *
+	 * @return estimated memory use in bytes
+	 */
+	public abstract long estimateSizeBytes();
+
+	/**
+	 * Get the order the hits are sorted in.
+	 *
+	 * If the hits were only partially sorted, the sort is completed first.
+	 *
+	 * @return for each position in sort order, the index of the hit in the
+	 *   original order, or null if the hits aren't sorted
+	 */
+	public abstract int[] getSortOrder();
+
 	/**
 	 * Return the specified hit.
 	 *
@@ -803,6 +897,28 @@ public abstract class Hits extends AbstractList<Hit> implements Cloneable, Prior
 	 */
 	public abstract TermFrequencyList getCollocations(String propName, QueryExecutionContext ctx);
 
+	/**
+	 * Count occurrences of context words around hit.
+	 *
+	 * @param propName the property to use for the collocations, or null if default
+	 * @param ctx query execution context, containing the sensitivity settings
+	 * @param maxResults maximum number of (most frequent) words to return, or -1 for all
+	 *
+	 * @return the frequency of each occurring token, sorted by decreasing frequency
+	 */
+	public TermFrequencyList getCollocations(String propName, QueryExecutionContext ctx, int maxResults) {
+		TermFrequencyList all = getCollocations(propName, ctx);
+		all.sort();
+		if (maxResults < 0 || maxResults >= all.size())
+			return all;
+		TermFrequencyList result = new TermFrequencyList(maxResults);
+		for (int i = 0; i < maxResults; i++) {
+			result.add(all.get(i));
+		}
+		result.setTotalFrequency(all.getTotalFrequency());
+		return result;
+	}
+
 	public abstract boolean hasCapturedGroups();
 
 	/**
@@ -16,15 +16,20 @@
 package nl.inl.blacklab.search;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.locks.Lock;
@@ -42,11 +47,13 @@ import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.search.spans.SpanWeight;
 import org.apache.lucene.search.spans.SpanWeight.Postings;
 import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.eclipse.collections.api.map.primitive.MutableIntIntMap;
 import org.eclipse.collections.api.map.primitive.MutableIntObjectMap;
 import org.eclipse.collections.api.tuple.primitive.IntIntPair;
 import org.eclipse.collections.impl.factory.primitive.IntIntMaps;
 import org.eclipse.collections.impl.factory.primitive.IntObjectMaps;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
 
 import nl.inl.blacklab.forwardindex.ForwardIndex;
 import nl.inl.blacklab.forwardindex.Terms;
@@ -55,6 +62,9 @@ import nl.inl.blacklab.index.complex.ComplexFieldUtil;
 import nl.inl.blacklab.search.grouping.HitProperty;
 import nl.inl.blacklab.search.lucene.BLSpanQuery;
 import nl.inl.blacklab.search.lucene.BLSpans;
+import nl.inl.blacklab.search.lucene.QueryBudget;
+import nl.inl.blacklab.search.lucene.SpanResultCache;
+import nl.inl.util.ParallelUtil;
 import nl.inl.util.StringUtil;
 import nl.inl.util.ThreadPriority;
 
@@ -66,6 +76,25 @@ public class HitsImpl extends Hits {
 
 	protected static final Logger logger = LogManager.getLogger(HitsImpl.class);
 
+	/** Minimum number of hits per part when counting collocations in parallel */
+	private static final int COLLOCATIONS_MIN_PART_SIZE = 10000;
+
+	/** Minimum number of hits per part when finding context in parallel */
+	private static final int CONTEXT_MIN_PART_SIZE = 10000;
+
+	/** Estimated memory used per hit: the Hit object and the reference to it in the list */
+	private static final long BYTES_PER_HIT = RamUsageEstimator.shallowSizeOfInstance(Hit.class) + RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+
+	/** Estimated memory used per HashMap entry (the entry object and the reference in the table) */
+	private static final long BYTES_PER_MAP_ENTRY = RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_OBJECT_HEADER +
+			RamUsageEstimator.NUM_BYTES_INT + 3 * RamUsageEstimator.NUM_BYTES_OBJECT_REF) + RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+
+	/** Estimated memory used per sort order entry (reference and Integer object) */
+	private static final long BYTES_PER_SORT_ENTRY = RamUsageEstimator.NUM_BYTES_OBJECT_REF + RamUsageEstimator.shallowSizeOfInstance(Integer.class);
+
+	/** Rough estimate of the memory used per KWIC or concordance (a few dozen short strings) */
+	private static final long BYTES_PER_KWIC = 2000;
+
 	/**
 	 * The hits.
 	 */
@@ -76,6 +105,12 @@ public class HitsImpl extends Hits {
 	 */
 	protected Map<Hit, Span[]> capturedGroups;
 
+	/**
+	 * Is our list of hits shared with the Hits object we were copied from?
+	 * (if so, it doesn't count towards our memory use)
+	 */
+	private boolean hitListShared = false;
+
 	/**
 	 * The hit contexts.
 	 *
@@ -101,6 +136,23 @@ public class HitsImpl extends Hits {
 	 */
 	Integer[] sortOrder;
 
+	/**
+	 * How many entries at the start of sortOrder are in their final position.
+	 *
+	 * If we did a partial sort (see sortPartially()), only the first entries
+	 * are sorted; the rest are sorted as soon as someone asks for them.
+	 */
+	private volatile int sortOrderFinalUpTo;
+
+	/**
+	 * If we did a partial sort, the property we still need to sort the rest of
+	 * the hits on. Null if there's no unfinished sort.
+	 */
+	private HitProperty pendingSortProp;
+
+	/** If we did a partial sort, the comparator to use for sorting the rest of the hits. */
+	private Comparator<Integer> pendingSortComparator;
+
 	/**
 	 * The KWIC data, if it has been retrieved.
 	 *
@@ -217,6 +269,7 @@ public class HitsImpl extends Hits {
 		}
 		hits = copyFrom.hits;
 		kwics = copyFrom.kwics;
+		hitListShared = true;
 		sourceSpansFullyRead = true;
 		hitsCounted = copyFrom.countSoFarHitsCounted();
 		docsRetrieved = copyFrom.countSoFarDocsRetrieved();
@@ -425,6 +478,98 @@ public class HitsImpl extends Hits {
 
 	Lock ensureHitsReadLock = new ReentrantLock();
 
+	/**
+	 * Advance the source spans to the next hit, moving to the next
+	 * segment when necessary.
+	 *
+	 * NOTE: should only be called while holding ensureHitsReadLock.
+	 *
+	 * @return true if we're at the next hit, false if there are no more hits
+	 * @throws IOException on error
+	 */
+	private boolean advanceToNextHit() throws IOException {
+		while (true) {
+			while (currentSourceSpans == null) {
+				// Exhausted (or not started yet); get next segment spans.
+
+				if (spanQuery == null) {
+					// We started from a Spans, not a SpanQuery. We're done now.
+					// (only used in deprecated methods or while testing)
+					return false;
+				}
+
+				atomicReaderContextIndex++;
+				if (atomicReaderContexts != null && atomicReaderContextIndex >= atomicReaderContexts.size()) {
+					sourceSpansFullyRead = true;
+					return false;
+				}
+				if (atomicReaderContexts != null) {
+					// Get the atomic reader context and get the next Spans from it.
+					LeafReaderContext context = atomicReaderContexts.get(atomicReaderContextIndex);
+					currentDocBase = context.docBase;
+					// (hits for segments we've searched before may be cached)
+					BLSpans spans = SpanResultCache.get().getSpans(spanQuery, weight, context, Postings.OFFSETS);
+					currentSourceSpans = spans; //BLSpansWrapper.optWrapSortUniq(spans);
+				} else {
+					// TESTING
+					currentDocBase = 0;
+					if (atomicReaderContextIndex > 0) {
+						sourceSpansFullyRead = true;
+						return false;
+					}
+					BLSpans spans = (BLSpans) weight.getSpans(null, Postings.OFFSETS);
+					currentSourceSpans = spans; //BLSpansWrapper.optWrapSortUniq(spans);
+				}
+
+				if (currentSourceSpans != null) {
+					if (hitQueryContext.getBudget() == null && settings.hasQueryBudget()) {
+						// Start the clock; the budget is shared by all segments
+						hitQueryContext.setBudget(new QueryBudget(settings.maxQueryCost(), settings.maxQueryTimeMs()));
+					}
+
+					// Update the hit query context with our new spans,
+					// and notify the spans of the hit query context
+					// (TODO: figure out if we need to call setHitQueryContext()
+					//    for each segment or not; if it's just about capture groups
+					//    registering themselves, we only need that for the first Spans.
+					//    But it's probably required for backreferences, etc. anyway,
+					//    and there won't be that many segments, so it's probably ok)
+					hitQueryContext.setSpans(currentSourceSpans);
+					currentSourceSpans.setHitQueryContext(hitQueryContext); // let captured groups register themselves
+					if (capturedGroups == null && hitQueryContext.numberOfCapturedGroups() > 0) {
+						capturedGroups = new HashMap<>();
+					}
+
+					int doc = currentSourceSpans.nextDoc();
+					if (doc == DocIdSetIterator.NO_MORE_DOCS)
+						currentSourceSpans = null; // no matching docs in this segment, try next
+				}
+			}
+
+			// Advance to next hit
+			int start = currentSourceSpans.nextStartPosition();
+			if (start == Spans.NO_MORE_POSITIONS) {
+				int doc = currentSourceSpans.nextDoc();
+				if (doc != DocIdSetIterator.NO_MORE_DOCS) {
+					if (hitQueryContext.getBudget() != null)
+						hitQueryContext.getBudget().checkTime();
+					// Go to first hit in doc
+					start = currentSourceSpans.nextStartPosition();
+				} else {
+					// This one is exhausted; go to the next one.
+					currentSourceSpans = null;
+				}
+			}
+			if (currentSourceSpans != null) {
+				// We're at the next hit. Count it, so every query uses up its
+				// budget, even if none of its spans report the work they do.
+				if (hitQueryContext.getBudget() != null)
+					hitQueryContext.getBudget().positionsExamined(1);
+				return true;
+			}
+		}
+	}
+
 	/**
 	 * Ensure that we have read at least as many hits as specified in the parameter.
 	 *
@@ -434,7 +579,8 @@ public class HitsImpl extends Hits {
 	 */
 	void ensureHitsRead(int number) throws InterruptedException {
 		// Prevent locking when not required
-		if (sourceSpansFullyRead || (number >= 0 && hits.size() >= number))
+		// (once we've stopped retrieving hits, the list won't grow, even if another thread is still counting)
+		if (sourceSpansFullyRead || (number >= 0 && (hits.size() >= number || maxHitsRetrieved)))
 			return;
 
 		while (!ensureHitsReadLock.tryLock()) {
@@ -444,15 +590,16 @@ public class HitsImpl extends Hits {
 			 * So instead poll our own state, then if we're still missing results after that just count them ourselves
 			 */
 			Thread.sleep(50);
-			if (sourceSpansFullyRead || (number >= 0 && hits.size() >= number))
+			if (sourceSpansFullyRead || (number >= 0 && (hits.size() >= number || maxHitsRetrieved)))
 				return;
 		}
 
 		boolean readAllHits = number < 0;
+		hitQueryContext.setReadingAllHits(readAllHits); // (applies to segments we haven't started yet)
 		try {
 			int maxHitsToCount = settings.maxHitsToCount();
 			int maxHitsToRetrieve = settings.maxHitsToRetrieve();
-			while (readAllHits || hits.size() < number) {
+			while (readAllHits || (hits.size() < number && !maxHitsRetrieved)) {
 
 				// Don't hog the CPU, don't take too long
 				etiquette.behave();
@@ -465,75 +612,8 @@ public class HitsImpl extends Hits {
 
 				// Get the next hit from the spans, moving to the next
 				// segment when necessary.
-				while (true) {
-					while (currentSourceSpans == null) {
-						// Exhausted (or not started yet); get next segment spans.
-
-						if (spanQuery == null) {
-							// We started from a Spans, not a SpanQuery. We're done now.
-							// (only used in deprecated methods or while testing)
-							return;
-						}
-
-						atomicReaderContextIndex++;
-						if (atomicReaderContexts != null && atomicReaderContextIndex >= atomicReaderContexts.size()) {
-							sourceSpansFullyRead = true;
-							return;
-						}
-						if (atomicReaderContexts != null) {
-							// Get the atomic reader context and get the next Spans from it.
-							LeafReaderContext context = atomicReaderContexts.get(atomicReaderContextIndex);
-							currentDocBase = context.docBase;
-							BLSpans spans = (BLSpans) weight.getSpans(context, Postings.OFFSETS);
-							currentSourceSpans = spans; //BLSpansWrapper.optWrapSortUniq(spans);
-						} else {
-							// TESTING
-							currentDocBase = 0;
-							if (atomicReaderContextIndex > 0) {
-								sourceSpansFullyRead = true;
-								return;
-							}
-							BLSpans spans = (BLSpans) weight.getSpans(null, Postings.OFFSETS);
-							currentSourceSpans = spans; //BLSpansWrapper.optWrapSortUniq(spans);
-						}
-
-						if (currentSourceSpans != null) {
-							// Update the hit query context with our new spans,
-							// and notify the spans of the hit query context
-							// (TODO: figure out if we need to call setHitQueryContext()
-							//    for each segment or not; if it's just about capture groups
-							//    registering themselves, we only need that for the first Spans.
-							//    But it's probably required for backreferences, etc. anyway,
-							//    and there won't be that many segments, so it's probably ok)
-							hitQueryContext.setSpans(currentSourceSpans);
-							currentSourceSpans.setHitQueryContext(hitQueryContext); // let captured groups register themselves
-							if (capturedGroups == null && hitQueryContext.numberOfCapturedGroups() > 0) {
-								capturedGroups = new HashMap<>();
-							}
-
-							int doc = currentSourceSpans.nextDoc();
-							if (doc == DocIdSetIterator.NO_MORE_DOCS)
-								currentSourceSpans = null; // no matching docs in this segment, try next
-						}
-					}
-
-					// Advance to next hit
-					int start = currentSourceSpans.nextStartPosition();
-					if (start == Spans.NO_MORE_POSITIONS) {
-						int doc = currentSourceSpans.nextDoc();
-						if (doc != DocIdSetIterator.NO_MORE_DOCS) {
-							// Go to first hit in doc
-							start = currentSourceSpans.nextStartPosition();
-						} else {
-							// This one is exhausted; go to the next one.
-							currentSourceSpans = null;
-						}
-					}
-					if (currentSourceSpans != null) {
-						// We're at the next hit.
-						break;
-					}
-				}
+				if (!advanceToNextHit())
+					return;
 
 				// Count the hit and add it (unless we've reached the maximum number of hits we
 				// want)
@@ -560,6 +640,84 @@ public class HitsImpl extends Hits {
 		} catch (InterruptedException e) {
 			maxHitsRetrieved = maxHitsCounted = true; // we've stopped retrieving/counting
 			throw e;
+		} catch (InterruptedIOException e) {
+			// Spans were interrupted (see PostingsUnion); treat like any other abort
+			maxHitsRetrieved = maxHitsCounted = true; // we've stopped retrieving/counting
+			throw new InterruptedException(e.getMessage());
+		} catch (QueryBudgetExceededException e) {
+			stopQueryOverBudget();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			ensureHitsReadLock.unlock();
+		}
+	}
+
+	/**
+	 * Handles hits read from the source spans without storing them.
+	 */
+	interface HitHandler {
+		/**
+		 * Handle a hit.
+		 *
+		 * @param hit the hit
+		 * @param groups the captured groups for this hit, or null if none
+		 */
+		void handle(Hit hit, Span[] groups);
+	}
+
+	/**
+	 * Read the remaining hits from the source spans, passing each
+	 * one to a handler instead of storing it.
+	 *
+	 * Hits and documents are counted as usual, up to the maximum number
+	 * of hits to count. Used to sample hits without retrieving all of them.
+	 *
+	 * @param handler what to do with each hit
+	 * @throws InterruptedException if the thread was interrupted
+	 */
+	void readRemainingHits(HitHandler handler) throws InterruptedException {
+		ensureHitsReadLock.lock();
+		hitQueryContext.setReadingAllHits(true);
+		try {
+			int maxHitsToCount = settings.maxHitsToCount();
+			while (true) {
+
+				// Don't hog the CPU, don't take too long
+				etiquette.behave();
+
+				// Stop if we're at the maximum number of hits we want to count
+				if (maxHitsToCount >= 0 && hitsCounted >= maxHitsToCount) {
+					maxHitsCounted = true;
+					break;
+				}
+
+				if (!advanceToNextHit())
+					break;
+
+				hitsCounted++;
+				int hitDoc = currentSourceSpans.docID() + currentDocBase;
+				if (hitDoc != previousHitDoc) {
+					docsCounted++;
+					previousHitDoc = hitDoc;
+				}
+				Hit hit = currentSourceSpans.getHit();
+				Hit offsetHit = new Hit(hit.doc + currentDocBase, hit.start, hit.end);
+				Span[] groups = null;
+				if (capturedGroups != null) {
+					groups = new Span[hitQueryContext.numberOfCapturedGroups()];
+					hitQueryContext.getCapturedGroups(groups);
+				}
+				handler.handle(offsetHit, groups);
+			}
+		} catch (InterruptedException e) {
+			maxHitsCounted = true; // we've stopped counting
+			throw e;
+		} catch (InterruptedIOException e) {
+			maxHitsCounted = true; // we've stopped counting
+			throw new InterruptedException(e.getMessage());
+		} catch (QueryBudgetExceededException e) {
+			stopQueryOverBudget();
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		} finally {
@@ -567,6 +725,21 @@ public class HitsImpl extends Hits {
 		}
 	}
 
+	/**
+	 * Stop reading hits because the query used up its budget.
+	 *
+	 * We keep the hits we have; the spans are in an undefined state, so we
+	 * can't continue reading from them. (see queryBudgetExceeded())
+	 *
+	 * NOTE: should only be called while holding ensureHitsReadLock.
+	 */
+	private void stopQueryOverBudget() {
+		logger.debug("Stopped reading hits: " + hitQueryContext.getBudget());
+		maxHitsRetrieved = maxHitsCounted = true;
+		currentSourceSpans = null;
+		sourceSpansFullyRead = true;
+	}
+
 	/**
 	 * Sort the list of hits.
 	 *
@@ -585,6 +758,24 @@ public class HitsImpl extends Hits {
 	@Override
 	@Deprecated
 	public synchronized void sort(final HitProperty sortProp, boolean reverseSort, boolean sensitive) {
+		sortPartially(sortProp, reverseSort, -1);
+	}
+
+	/**
+	 * Sort the list of hits, making sure only the first hits are in their final position.
+	 *
+	 * When firstN is much smaller than the number of hits, we select the top
+	 * hits using a bounded heap (O(n log firstN)) instead of sorting all of them.
+	 * The rest of the hits are sorted the first time one of them is requested.
+	 *
+	 * @param sortProp
+	 *            the hit property to sort on
+	 * @param reverseSort
+	 *            if true, sort in descending order
+	 * @param firstN how many hits must be sorted right away, or -1 to sort all of them
+	 */
+	@Override
+	protected synchronized void sortPartially(final HitProperty sortProp, boolean reverseSort, int firstN) {
 		try {
 			ensureAllHitsRead();
 		} catch (InterruptedException e) {
@@ -598,28 +789,93 @@ public class HitsImpl extends Hits {
 		if (sortOrder == null || sortOrder.length < hits.size()) {
 			sortOrder = new Integer[hits.size()];
 		}
-		// Fill the array with the original hit order (0, 1, 2, ...)
 		int n = hits.size();
-		for (int i = 0; i < n; i++)
-			sortOrder[i] = i;
 
 		// If we need context, make sure we have it.
 		List<String> requiredContext = sortProp.needsContext();
 		if (requiredContext != null)
 			findContext(requiredContext);
 
-		// Perform the actual sort.
-		Arrays.sort(sortOrder, sortProp);
+		if (firstN < 0 || firstN >= n) {
+			// Fill the array with the original hit order (0, 1, 2, ...)
+			for (int i = 0; i < n; i++)
+				sortOrder[i] = i;
+
+			// Perform the actual sort.
+			Arrays.sort(sortOrder, 0, n, sortProp);
+
+			if (reverseSort) {
+				// Instead of creating a new Comparator that reverses the order of the
+				// sort property (which adds an extra layer of indirection to each of the
+				// O(n log n) comparisons), just reverse the hits now (which runs
+				// in linear time).
+				for (int i = 0; i < n / 2; i++) {
+					Integer t = sortOrder[i];
+					sortOrder[i] = sortOrder[n - i - 1];
+					sortOrder[n - i - 1] = t;
+				}
+			}
+			pendingSortProp = null;
+			pendingSortComparator = null;
+			sortOrderFinalUpTo = n;
+			return;
+		}
 
-		if (reverseSort) {
-			// Instead of creating a new Comparator that reverses the order of the
-			// sort property (which adds an extra layer of indirection to each of the
-			// O(n log n) comparisons), just reverse the hits now (which runs
-			// in linear time).
-			for (int i = 0; i < n / 2; i++) {
-				sortOrder[i] = sortOrder[n - i - 1];
+		// Partial sort. Break ties using the original hit order, so the result
+		// is exactly the same as that of the (stable) full sort above.
+		Comparator<Integer> cmp = reverseSort ?
+			(a, b) -> { int c = sortProp.compare(b, a); return c != 0 ? c : Integer.compare(b, a); } :
+			(a, b) -> { int c = sortProp.compare(a, b); return c != 0 ? c : Integer.compare(a, b); };
+
+		// Keep the best firstN hits in a heap; the head of the heap is the worst of those,
+		// so we can quickly decide whether a new hit should replace it.
+		PriorityQueue<Integer> best = new PriorityQueue<>(firstN + 1, Collections.reverseOrder(cmp));
+		for (int i = 0; i < n; i++) {
+			if (best.size() < firstN) {
+				best.add(i);
+			} else if (firstN > 0 && cmp.compare(i, best.peek()) < 0) {
+				best.poll();
+				best.add(i);
 			}
 		}
+
+		// The best hits go at the start (in sorted order), the rest after them (unsorted).
+		BitSet isBest = new BitSet(n);
+		for (int i = firstN - 1; i >= 0; i--) {
+			int index = best.poll();
+			sortOrder[i] = index;
+			isBest.set(index);
+		}
+		int j = firstN;
+		for (int i = isBest.nextClearBit(0); i < n; i = isBest.nextClearBit(i + 1)) {
+			sortOrder[j] = i;
+			j++;
+		}
+		pendingSortProp = sortProp;
+		pendingSortComparator = cmp;
+		sortOrderFinalUpTo = firstN;
+	}
+
+	/**
+	 * Finish a partial sort, if there is one.
+	 *
+	 * Called when a hit is requested that isn't in its final sorted position yet.
+	 */
+	private synchronized void completeSort() {
+		if (pendingSortComparator == null)
+			return;
+		// Make sure we (still) have the context we need. Someone may have requested
+		// a different context since we did the partial sort.
+		List<String> requiredContext = pendingSortProp.needsContext();
+		if (requiredContext != null)
+			findContext(requiredContext);
+		// All hits beyond the first sortOrderFinalUpTo come after those in sort order,
+		// so we only have to sort that part of the array.
+		int n = hits.size();
+		Arrays.sort(sortOrder, sortOrderFinalUpTo, n, pendingSortComparator);
+		pendingSortProp = null;
+		pendingSortComparator = null;
+		sortOrderFinalUpTo = n;
 	}
 
 	/**
@@ -846,7 +1102,11 @@ public class HitsImpl extends Hits {
 				// Check if there is a next, taking unread hits from Spans into account
 				if (hasNext()) {
 					index++;
-					return hits.get( (originalOrder || sortOrder == null) ? index : sortOrder[index]);
+					if (originalOrder || sortOrder == null)
+						return hits.get(index);
+					if (index >= sortOrderFinalUpTo)
+						completeSort();
+					return hits.get(sortOrder[index]);
 				}
 				throw new NoSuchElementException();
 			}
@@ -881,6 +1141,75 @@ public class HitsImpl extends Hits {
 		return hits.get(i);
 	}
 
+	/**
+	 * Estimate how much memory these hits use.
+	 *
+	 * Not synchronized, so it doesn't have to wait for a long running
+	 * operation (e.g. sorting); the result may be slightly out of date.
+	 *
+	 * @return estimated memory use in bytes
+	 */
+	@Override
+	public long estimateSizeBytes() {
+		long size = RamUsageEstimator.shallowSizeOfInstance(HitsImpl.class);
+		int n = hits.size();
+		if (!hitListShared) {
+			size += n * BYTES_PER_HIT;
+			Map<Hit, Kwic> theKwics = kwics;
+			if (theKwics != null)
+				size += theKwics.size() * (BYTES_PER_MAP_ENTRY + BYTES_PER_KWIC);
+		}
+		Map<Hit, Span[]> theCapturedGroups = capturedGroups;
+		if (theCapturedGroups != null && hitQueryContext != null) {
+			int groupsPerHit = hitQueryContext.numberOfCapturedGroups();
+			long bytesPerGroups = RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + groupsPerHit * RamUsageEstimator.NUM_BYTES_OBJECT_REF) +
+					groupsPerHit * RamUsageEstimator.shallowSizeOfInstance(Span.class);
+			size += theCapturedGroups.size() * (BYTES_PER_MAP_ENTRY + bytesPerGroups);
+		}
+		int[][] theContexts = contexts;
+		if (theContexts != null) {
+			// (all contexts have about the same length, so we don't have to look at each of them)
+			size += RamUsageEstimator.shallowSizeOf(theContexts);
+			int[] first = theContexts.length > 0 ? theContexts[0] : null;
+			if (first != null)
+				size += theContexts.length * RamUsageEstimator.sizeOf(first);
+		}
+		Integer[] theSortOrder = sortOrder;
+		if (theSortOrder != null)
+			size += RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + theSortOrder.length * BYTES_PER_SORT_ENTRY;
+		Map<Hit, Concordance> theConcordances = concordances;
+		if (theConcordances != null)
+			size += theConcordances.size() * (BYTES_PER_MAP_ENTRY + BYTES_PER_KWIC);
+		return size;
+	}
+
+	@Override
+	public synchronized int[] getSortOrder() {
+		if (sortOrder == null)
+			return null;
+		completeSort();
+		int n = hits.size();
+		int[] result = new int[n];
+		for (int i = 0; i < n; i++)
+			result[i] = sortOrder[i];
+		return result;
+	}
+
+	/**
+	 * Set the sort order of the hits (all hits must have been read).
+	 *
+	 * @param order for each position in sort order, the index of the hit in the
+	 *   original order
+	 */
+	synchronized void setSortOrder(int[] order) {
+		sortOrder = new Integer[order.length];
+		for (int i = 0; i < order.length; i++)
+			sortOrder[i] = order[i];
+		pendingSortProp = null;
+		pendingSortComparator = null;
+		sortOrderFinalUpTo = order.length;
+	}
+
 	/**
 	 * Return the specified hit.
 	 *
@@ -899,7 +1228,11 @@ public class HitsImpl extends Hits {
 		}
 		if (i >= hits.size())
 			return null;
-		return hits.get(sortOrder == null ? i : sortOrder[i]);
+		if (sortOrder == null)
+			return hits.get(i);
+		if (i >= sortOrderFinalUpTo)
+			completeSort();
+		return hits.get(sortOrder[i]);
 	}
 
 	/**
@@ -1198,59 +1531,70 @@ public class HitsImpl extends Hits {
 		}
 
 		// Get the context
-		// Group hits per document
-		List<Hit> hitsInSameDoc = new ArrayList<>();
-		int currentDoc = -1;
-		int index = 0;
-		if (contexts == null || contexts.length < hits.size()) {
-			contexts = new int[hits.size()][];
+		// Split the hits into parts (without splitting up documents) and process those in parallel
+		int n = hits.size();
+		if (contexts == null || contexts.length < n) {
+			contexts = new int[n][];
 		}
-		for (Hit hit: hits) {
-			if (hit.doc != currentDoc) {
-				if (currentDoc >= 0) {
-					try {
-						etiquette.behave();
-					} catch (InterruptedException e) {
-						// Thread was interrupted. Just go ahead with the hits we did
-						// get, so at least we can return with valid context.
-						Thread.currentThread().interrupt();
-					}
-
-					findPartOfContext(hitsInSameDoc, index - hitsInSameDoc.size(), fis);
-
-					// Reset hits list for next doc
-					hitsInSameDoc.clear();
-				}
-				currentDoc = hit.doc; // start a new document
-			}
-			hitsInSameDoc.add(hit);
-			index++;
+		final int[][] theContexts = contexts;
+		final int wordsAroundHit = settings().contextSize();
+		int[] parts = ParallelUtil.alignBoundaries(ParallelUtil.split(n, CONTEXT_MIN_PART_SIZE), i -> hits.get(i).doc);
+		// (if we were interrupted while reading hits, we still want to wait for the context)
+		boolean wasInterrupted = Thread.interrupted();
+		List<Boolean> interrupted;
+		try {
+			interrupted = ParallelUtil.processParts(parts,
+					(start, end) -> findPartOfContext(start, end, wordsAroundHit, fis, theContexts));
+		} catch (InterruptedException e) {
+			// We can't return with partial context
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		if (wasInterrupted || interrupted.contains(true)) {
+			// Thread was interrupted. We went ahead with the hits we did
+			// get, so at least we can return with valid context.
+			Thread.currentThread().interrupt();
 		}
-		if (!hitsInSameDoc.isEmpty())
-			findPartOfContext(hitsInSameDoc, index - hitsInSameDoc.size(), fis);
 
 		currentContextSize = settings().contextSize();
 		contextFieldsPropName = new ArrayList<>(fieldProps);
 	}
 
 	/**
-	 * Helper method for findContext(). Finds the hits in a single document and adds
-	 * context to our contexts array.
+	 * Helper method for findContext(). Finds context for part of the hits,
+	 * one document at a time.
 	 *
-	 * @param hitsInSameDoc the hits in one document
-	 * @param firstHitIndex index of the first hit
+	 * May be called from multiple threads at once for different parts.
+	 *
+	 * @param start first hit to find context for (should be the first hit in its document)
+	 * @param end first hit not to find context for (should be the first hit in its document)
+	 * @param wordsAroundHit how many words of context we want
 	 * @param fis forward indices needed for contexts
-	 */
-	private void findPartOfContext(List<Hit> hitsInSameDoc, int firstHitIndex, List<ForwardIndex> fis) {
-		// Find context for the hits in the current document
-		HitsImpl hitsObj = new HitsImpl(searcher, searcher.getMainContentsFieldName(), hitsInSameDoc);
-		hitsObj.copySettingsFrom(this);
-		hitsObj.getContextWords(settings().contextSize(), fis);
+	 * @param theContexts where to store the contexts
+	 * @return true if the thread was interrupted, false if not
+	 */
+	private boolean findPartOfContext(int start, int end, int wordsAroundHit, List<ForwardIndex> fis, int[][] theContexts) {
+		boolean interrupted = false;
+		int docStart = start;
+		while (docStart < end) {
+			if (!interrupted) {
+				try {
+					etiquette.behave();
+				} catch (InterruptedException e) {
+					// Remember this, but go ahead and get the rest of the context
+					interrupted = true;
+				}
+			}
 
-		// Copy the contexts from the temporary Hits object to this one
-		for (int i = 0; i < hitsInSameDoc.size(); i++) {
-			contexts[firstHitIndex + i] = hitsObj.getHitContext(i);
+			// Find context for the hits in the current document
+			int doc = hits.get(docStart).doc;
+			int docEnd = docStart + 1;
+			while (docEnd < end && hits.get(docEnd).doc == doc)
+				docEnd++;
+			getContextWords(hits, docStart, docEnd, wordsAroundHit, fis, theContexts);
+			docStart = docEnd;
 		}
+		return interrupted;
 	}
 
 	/**
@@ -1262,16 +1606,130 @@ public class HitsImpl extends Hits {
 	 * @return the frequency of each occurring token
 	 */
 	@Override
-	public synchronized TermFrequencyList getCollocations(String propName,
+	public TermFrequencyList getCollocations(String propName,
 			QueryExecutionContext ctx) {
+		return getCollocations(propName, ctx, -1);
+	}
+
+	/**
+	 * Count occurrences of context words around hit.
+	 *
+	 * Words are counted per term id, in parallel for large numbers of hits.
+	 * Sensitivity folding is done using the term sort positions where
+	 * possible, and only the returned words are looked up.
+	 *
+	 * @param propName the property to use for the collocations, or null if default
+	 * @param ctx query execution context, containing the sensitivity settings
+	 * @param maxResults maximum number of (most frequent) words to return, or -1 for all
+	 *
+	 * @return the frequency of each occurring token, sorted by decreasing frequency
+	 */
+	@Override
+	public synchronized TermFrequencyList getCollocations(String propName,
+			QueryExecutionContext ctx, int maxResults) {
 		if (propName == null)
 			propName = searcher.getIndexStructure().getMainContentsField().getMainProperty().getName();
 		if (ctx == null)
 			ctx = searcher.getDefaultExecutionContext(settings().concordanceField());
 		ctx = ctx.withProperty(propName);
 		findContext(Arrays.asList(ctx.luceneField(false)));
+
+		// Count words per term id (in parallel if there's a lot of hits)
+		final int[][] theContexts = contexts;
+		List<MutableIntIntMap> partialCounts;
+		try {
+			partialCounts = ParallelUtil.processRange(hits.size(), COLLOCATIONS_MIN_PART_SIZE,
+					(start, end) -> countContextWords(theContexts, start, end));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		MutableIntIntMap coll = partialCounts.get(0);
+		for (int i = 1; i < partialCounts.size(); i++) {
+			MutableIntIntMap part = partialCounts.get(i);
+			part.forEachKeyValue((w, n) -> coll.addToValue(w, n));
+		}
+
+		// Merge words that are equal according to the sensitivity settings.
+		// We end up with a list of (representative) term ids and their frequencies.
+		boolean caseSensitive = searcher.isDefaultSearchCaseSensitive();
+		boolean diacSensitive = searcher.isDefaultSearchDiacriticsSensitive();
+		Terms terms = searcher.getTerms(contextFieldsPropName.get(0));
+		IntArrayList termIds = new IntArrayList(coll.size());
+		IntArrayList freqs = new IntArrayList(coll.size());
+		List<String> words = null;
+		if (caseSensitive && diacSensitive) {
+			// No merging needed
+			coll.forEachKeyValue((w, n) -> {
+				termIds.add(w);
+				freqs.add(n);
+			});
+		} else if (!caseSensitive && !diacSensitive) {
+			// Merge on insensitive sort position
+			MutableIntIntMap indexPerSortPos = IntIntMaps.mutable.empty();
+			coll.forEachKeyValue((w, n) -> {
+				int sortPos = w < 0 ? w : terms.idToSortPosition(w, false);
+				if (indexPerSortPos.containsKey(sortPos)) {
+					int index = indexPerSortPos.get(sortPos);
+					freqs.set(index, freqs.get(index) + n);
+				} else {
+					indexPerSortPos.put(sortPos, termIds.size());
+					termIds.add(w);
+					freqs.add(n);
+				}
+			});
+		} else {
+			// Only case or only diacritics insensitive; we don't have sort positions for that,
+			// so merge on the desensitized words instead.
+			Map<String, Integer> indexPerWord = new HashMap<>();
+			words = new ArrayList<>();
+			for (IntIntPair e: coll.keyValuesView()) {
+				String word = desensitize(terms.get(e.getOne()), caseSensitive, diacSensitive);
+				Integer index = indexPerWord.get(word);
+				if (index == null) {
+					indexPerWord.put(word, termIds.size());
+					termIds.add(e.getOne());
+					freqs.add(e.getTwo());
+					words.add(word);
+				} else {
+					freqs.set(index, freqs.get(index) + e.getTwo());
+				}
+			}
+		}
+
+		// Sort by decreasing frequency (frequency in the high bits, index in the low bits)
+		long total = 0;
+		long[] order = new long[freqs.size()];
+		for (int i = 0; i < order.length; i++) {
+			total += freqs.get(i);
+			order[i] = ((long)freqs.get(i) << 32) | i;
+		}
+		Arrays.sort(order);
+
+		// Only look up the words we're going to return
+		int n = maxResults < 0 ? order.length : Math.min(maxResults, order.length);
+		TermFrequencyList collocations = new TermFrequencyList(n);
+		for (int i = 0; i < n; i++) {
+			int index = (int)order[order.length - 1 - i];
+			String word = words != null ? words.get(index) :
+					desensitize(terms.get(termIds.get(index)), caseSensitive, diacSensitive);
+			collocations.add(new TermFrequency(word, freqs.get(index)));
+		}
+		collocations.setTotalFrequency(total);
+		return collocations;
+	}
+
+	/**
+	 * Count the context words around part of the hits.
+	 *
+	 * @param contexts the contexts for all hits
+	 * @param start first hit to count
+	 * @param end first hit not to count
+	 * @return frequency per term id
+	 */
+	private static MutableIntIntMap countContextWords(int[][] contexts, int start, int end) {
 		MutableIntIntMap coll = IntIntMaps.mutable.empty();
-		for (int j = 0; j < hits.size(); j++) {
+		for (int j = start; j < end; j++) {
 			int[] context = contexts[j];
 
 			// Count words
@@ -1282,47 +1740,20 @@ public class HitsImpl extends Hits {
 			for (int i = 0; i < contextLength; i++, indexInContent++) {
 				if (i >= contextHitStart && i < contextRightStart)
 					continue; // don't count words in hit itself, just around [option..?]
-				int w = context[indexInContent];
-				int n;
-				if (!coll.contains(w))
-					n = 1;
-				else
-					n = coll.get(w) + 1;
-				coll.put(w, n);
+				coll.addToValue(context[indexInContent], 1);
 			}
 		}
+		return coll;
+	}
 
-		// Get the actual words from the sort positions
-		boolean caseSensitive = searcher.isDefaultSearchCaseSensitive();
-		boolean diacSensitive = searcher.isDefaultSearchDiacriticsSensitive();
-		TermFrequencyList collocations = new TermFrequencyList(coll.size());
-		Terms terms = searcher.getTerms(contextFieldsPropName.get(0));
-		Map<String, Integer> wordFreq = new HashMap<>();
-		for (IntIntPair e: coll.keyValuesView()) {
-			int key = e.getOne();
-			int value = e.getTwo();
-			String word = terms.get(key);
-			if (!diacSensitive) {
-				word = StringUtil.stripAccents(word);
-			}
-			if (!caseSensitive) {
-				word = word.toLowerCase();
-			}
-			// Note that multiple ids may map to the same word (because of sensitivity settings)
-			// Here, those groups are merged.
-			Integer n = wordFreq.get(word);
-			if (n == null) {
-				n = 0;
-			}
-			n += value;
-			wordFreq.put(word, n);
+	private static String desensitize(String word, boolean caseSensitive, boolean diacSensitive) {
+		if (!diacSensitive) {
+			word = StringUtil.stripAccents(word);
 		}
-
-		// Transfer from map to list
-		for (Map.Entry<String, Integer> e: wordFreq.entrySet()) {
-			collocations.add(new TermFrequency(e.getKey(), e.getValue()));
+		if (!caseSensitive) {
+			word = word.toLowerCase();
 		}
-		return collocations;
+		return word;
 	}
 
 	@Override
@@ -1511,21 +1942,39 @@ public class HitsImpl extends Hits {
 	 *            forward indices to get context from
 	 */
 	private void getContextWords(int wordsAroundHit, List<ForwardIndex> contextSources) {
+		if (contexts == null || contexts.length < hits.size()) {
+			contexts = new int[hits.size()][];
+		}
+		getContextWords(hits, 0, hits.size(), wordsAroundHit, contextSources, contexts);
+	}
 
-		int n = hits.size();
-		if (n == 0)
+	/**
+	 * Get context words from the forward index for hits in a single document.
+	 *
+	 * Retrieves the snippets for all the hits with a single call per forward index.
+	 *
+	 * @param hits the hits
+	 * @param first first hit to get context for
+	 * @param end first hit not to get context for
+	 * @param wordsAroundHit how many words of context we want
+	 * @param contextSources forward indices to get context from
+	 * @param contexts where to store the contexts
+	 */
+	private static void getContextWords(List<Hit> hits, int first, int end, int wordsAroundHit,
+			List<ForwardIndex> contextSources, int[][] contexts) {
+		int n = end - first;
+		if (n <= 0)
 			return;
 		int[] startsOfSnippets = new int[n];
 		int[] endsOfSnippets = new int[n];
-		int i = 0;
-		for (Hit h: hits) {
+		for (int i = 0; i < n; i++) {
+			Hit h = hits.get(first + i);
 			startsOfSnippets[i] = wordsAroundHit >= h.start ? 0 : h.start - wordsAroundHit;
 			endsOfSnippets[i] = h.end + wordsAroundHit;
-			i++;
 		}
 
 		int fiNumber = 0;
-		int doc = hits.get(0).doc;
+		int doc = hits.get(first).doc;
 		for (ForwardIndex forwardIndex: contextSources) {
 			// Get all the words from the forward index
 			List<int[]> words;
@@ -1539,15 +1988,13 @@ public class HitsImpl extends Hits {
 
 			// Build the actual concordances
 			Iterator<int[]> wordsIt = words.iterator();
-			int hitNum = 0;
-			if (contexts == null || contexts.length < hits.size()) {
-				contexts = new int[hits.size()][];
-			}
-			for (Hit hit: hits) {
+			for (int i = 0; i < n; i++) {
+				Hit hit = hits.get(first + i);
 				int[] theseWords = wordsIt.next();
 
 				// Put the concordance in the Hit object
-				int firstWordIndex = startsOfSnippets[hitNum];
+				int firstWordIndex = startsOfSnippets[i];
+				int hitNum = first + i;
 
 				if (fiNumber == 0) {
 					// Allocate context array and set hit and right start and context length
@@ -1559,7 +2006,6 @@ public class HitsImpl extends Hits {
 				// Copy the context we just retrieved into the context array
 				int start = fiNumber * theseWords.length + CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS;
 				System.arraycopy(theseWords, 0, contexts[hitNum], start, theseWords.length);
-				hitNum++;
 			}
 
 			fiNumber++;
@@ -1597,7 +2043,7 @@ public class HitsImpl extends Hits {
 			if (contexts[i] == null || contexts[i].length != saved[i].length) {
 				contexts[i] = new int[saved[i].length];
 			}
-			System.arraycopy(saved[i], 0, contexts, 0, saved[i].length);
+			System.arraycopy(saved[i], 0, contexts[i], 0, saved[i].length);
 		}
 	}
 
@@ -31,7 +31,7 @@ public abstract class HitsSample extends HitsImpl {
 		super(searcher, new ArrayList<Hit>());
 		this.ratioOfHitsToSelect = ratio;
 		this.seed = seed == RANDOM_SEED ? getRandomSeed() : seed;
-		this.random = new Random(seed);
+		this.random = new Random(this.seed);
 	}
 
 	protected HitsSample(Searcher searcher, int number, long seed) {
@@ -39,14 +39,14 @@ public abstract class HitsSample extends HitsImpl {
 		this.numberOfHitsToSelect = number;
 		exactNumberGiven = true;
 		this.seed = seed == RANDOM_SEED ? getRandomSeed() : seed;
-		this.random = new Random(seed);
+		this.random = new Random(this.seed);
 	}
 
 	protected HitsSample(Searcher searcher, List<Hit> hits, float ratio, long seed) {
 		super(searcher, hits);
 		this.ratioOfHitsToSelect = ratio;
 		this.seed = seed == RANDOM_SEED ? getRandomSeed() : seed;
-		this.random = new Random(seed);
+		this.random = new Random(this.seed);
 	}
 
 	/**
@@ -87,11 +87,9 @@ public abstract class HitsSample extends HitsImpl {
 	 * @return the sample
 	 */
 	public static HitsSample fromSpanQuery(Searcher searcher, SpanQuery query, float ratio, long seed) {
-		// We can later provide an optimized version that uses a HitsSampleSpans or somesuch
-		// (this class could save memory by only storing the hits we're interested in)
 		if (!(query instanceof BLSpanQuery))
 			throw new IllegalArgumentException("Supplied query must be a BLSpanQuery!");
-		return new HitsSampleImpl(Hits.fromSpanQuery(searcher, query), ratio, seed);
+		return fromUnreadHits(Hits.fromSpanQuery(searcher, query), ratio, seed);
 	}
 
 	/**
@@ -104,11 +102,57 @@ public abstract class HitsSample extends HitsImpl {
 	 * @return the sample
 	 */
 	public static HitsSample fromSpanQuery(Searcher searcher, SpanQuery query, int number, long seed) {
-		// We can later provide an optimized version that uses a HitsSampleSpans or somesuch
-		// (this class could save memory by only storing the hits we're interested in)
 		if (!(query instanceof BLSpanQuery))
 			throw new IllegalArgumentException("Supplied query must be a BLSpanQuery!");
-		return new HitsSampleImpl(Hits.fromSpanQuery(searcher, query), number, seed);
+		return fromUnreadHits(Hits.fromSpanQuery(searcher, query), number, seed);
+	}
+
+	/**
+	 * Take a sample of hits while they are being read.
+	 *
+	 * Only the chosen hits are stored, so this is much cheaper than sampling
+	 * hits that have all been retrieved. Each hit is chosen with the specified
+	 * probability, so the size of the sample may vary slightly.
+	 *
+	 * The hits object passed in should not be used afterwards. If it has already
+	 * retrieved hits, this falls back to fromHits().
+	 *
+	 * @param hits hits object to sample from (e.g. new from Hits.fromSpanQuery(), with the desired settings)
+	 * @param ratio ratio of hits to select, from 0 (none) to 1 (all)
+	 * @param seed seed for the random generator, or HitsSample.RANDOM_SEED to use a randomly chosen seed
+	 * @return the sample
+	 */
+	public static HitsSample fromUnreadHits(Hits hits, float ratio, long seed) {
+		if (isUnread(hits))
+			return new HitsSampleSpans((HitsImpl)hits, ratio, seed);
+		return fromHits(hits, ratio, seed);
+	}
+
+	/**
+	 * Take a sample of hits while they are being read.
+	 *
+	 * Only the chosen hits are stored, so this is much cheaper than sampling
+	 * hits that have all been retrieved.
+	 *
+	 * The hits object passed in should not be used afterwards. If it has already
+	 * retrieved hits, this falls back to fromHits().
+	 *
+	 * @param hits hits object to sample from (e.g. new from Hits.fromSpanQuery(), with the desired settings)
+	 * @param number number of hits to select
+	 * @param seed seed for the random generator, or HitsSample.RANDOM_SEED to use a randomly chosen seed
+	 * @return the sample
+	 */
+	public static HitsSample fromUnreadHits(Hits hits, int number, long seed) {
+		if (isUnread(hits))
+			return new HitsSampleSpans((HitsImpl)hits, number, seed);
+		return fromHits(hits, number, seed);
+	}
+
+	private static boolean isUnread(Hits hits) {
+		if (!(hits instanceof HitsImpl) || hits instanceof HitsSample)
+			return false;
+		HitsImpl hitsImpl = (HitsImpl)hits;
+		return !hitsImpl.sourceSpansFullyRead && hitsImpl.hitsCounted == 0;
 	}
 
 	public float ratio() {
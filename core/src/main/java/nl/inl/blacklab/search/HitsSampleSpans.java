@@ -0,0 +1,122 @@
+package nl.inl.blacklab.search;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Implements HitsSample by sampling hits while they are read from the Spans.
+ *
+ * Only the chosen hits (and their captured groups) are stored, so taking
+ * a sample costs about as much as counting the hits.
+ *
+ * A fixed number of hits is chosen using reservoir sampling. A ratio of hits
+ * is chosen by selecting each hit independently with that probability, so the
+ * size of the sample will vary slightly.
+ */
+class HitsSampleSpans extends HitsSample {
+
+	/**
+	 * Sample a ratio of the hits.
+	 *
+	 * @param source hits to sample; must not have retrieved any hits yet, and should not be used afterwards
+	 * @param ratio ratio of hits to select, from 0 (none) to 1 (all)
+	 * @param seed seed for the random generator, or HitsSample.RANDOM_SEED to use a randomly chosen seed
+	 */
+	HitsSampleSpans(HitsImpl source, float ratio, long seed) {
+		super(source.getSearcher(), ratio, seed);
+		if (ratio < 0 || ratio > 1)
+			throw new IllegalArgumentException("ratio must be in the range 0-1");
+		readHits(source, (hit, groups) -> {
+			if (random.nextFloat() < ratio)
+				addHit(hit, groups);
+		});
+		numberOfHitsToSelect = hits.size();
+	}
+
+	/**
+	 * Sample a fixed number of the hits.
+	 *
+	 * @param source hits to sample; must not have retrieved any hits yet, and should not be used afterwards
+	 * @param number number of hits to select
+	 * @param seed seed for the random generator, or HitsSample.RANDOM_SEED to use a randomly chosen seed
+	 */
+	HitsSampleSpans(HitsImpl source, int number, long seed) {
+		super(source.getSearcher(), number, seed);
+		if (number < 0)
+			throw new IllegalArgumentException("Negative sample number specified");
+
+		// Reservoir sampling: keep the first hits, then replace
+		// randomly chosen ones with decreasing probability.
+		final Hit[] reservoir = new Hit[number];
+		final Span[][] reservoirGroups = new Span[number][];
+		final int[] reservoirIndex = new int[number];
+		final int[] hitsSeen = { 0 };
+		readHits(source, (hit, groups) -> {
+			int i = hitsSeen[0]++;
+			int slot = i < number ? i : random.nextInt(i + 1);
+			if (slot < number) {
+				reservoir[slot] = hit;
+				reservoirGroups[slot] = groups;
+				reservoirIndex[slot] = i;
+			}
+		});
+
+		// Add the chosen hits in their original order
+		int n = Math.min(number, hitsSeen[0]);
+		long[] order = new long[n];
+		for (int slot = 0; slot < n; slot++) {
+			order[slot] = ((long)reservoirIndex[slot] << 32) | slot;
+		}
+		Arrays.sort(order);
+		for (long o: order) {
+			int slot = (int)o;
+			addHit(reservoir[slot], reservoirGroups[slot]);
+		}
+		numberOfHitsToSelect = n;
+		ratioOfHitsToSelect = hitsSeen[0] == 0 ? 0 : (float)n / hitsSeen[0];
+	}
+
+	private HitsSampleSpans(HitsSampleSpans copyFrom) {
+		super(copyFrom.searcher, copyFrom.hits, copyFrom.ratioOfHitsToSelect, copyFrom.seed);
+	}
+
+	@Override
+	public Hits copy() {
+		return new HitsSampleSpans(this);
+	}
+
+	private void readHits(HitsImpl source, HitHandler handler) {
+		copySettingsFrom(source);
+		try {
+			source.readRemainingHits(handler);
+		} catch (InterruptedException e) {
+			// Thread was interrupted. Just go ahead with the hits we did
+			// get, so at least we can return a valid sample.
+			Thread.currentThread().interrupt();
+		}
+		setHitQueryContext(source.getHitQueryContext()); // for the captured group names
+		setMaxHitsCounted(source.maxHitsCounted());
+		setMaxHitsRetrieved(source.maxHitsCounted());
+	}
+
+	private void addHit(Hit hit, Span[] groups) {
+		if (hit.doc != previousHitDoc) {
+			docsRetrieved++;
+			docsCounted++;
+			previousHitDoc = hit.doc;
+		}
+		hits.add(hit);
+		hitsCounted++;
+		if (groups != null) {
+			if (capturedGroups == null)
+				capturedGroups = new HashMap<>();
+			capturedGroups.put(hit, groups);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "HitsSampleSpans#" + hitsObjId;
+	}
+
+}
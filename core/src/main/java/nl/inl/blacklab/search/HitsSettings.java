@@ -2,6 +2,8 @@ package nl.inl.blacklab.search;
 
 import java.util.Collection;
 
+import nl.inl.blacklab.search.lucene.QueryBudget;
+
 public class HitsSettings {
 
 	/**
@@ -36,6 +38,12 @@ public class HitsSettings {
 	/** Our desired context size */
 	private int desiredContextSize;
 
+	/** Maximum cost of executing the query (see QueryBudget), or UNLIMITED */
+	private long maxQueryCost = QueryBudget.UNLIMITED;
+
+	/** Maximum time to spend executing the query in ms, or UNLIMITED */
+	private long maxQueryTimeMs = QueryBudget.UNLIMITED;
+
 	@SuppressWarnings("deprecation")
 	public HitsSettings(HitsSettings defaults, boolean staticHitsFieldsOverrideDefaults) {
 		concordanceFieldName = defaults.concordanceFieldName;
@@ -46,6 +54,8 @@ public class HitsSettings {
 		concPunctProps = defaults.concPunctProps;
 		concAttrProps = defaults.concAttrProps;
 		desiredContextSize = defaults.desiredContextSize;
+		maxQueryCost = defaults.maxQueryCost;
+		maxQueryTimeMs = defaults.maxQueryTimeMs;
 	}
 
 	public HitsSettings() {
@@ -161,4 +171,35 @@ public class HitsSettings {
 		desiredContextSize = n;
 	}
 
+	/** @return the maximum cost of executing the query, or QueryBudget.UNLIMITED */
+	public long maxQueryCost() {
+		return maxQueryCost;
+	}
+
+	/** @return the maximum time to spend executing the query in ms, or QueryBudget.UNLIMITED */
+	public long maxQueryTimeMs() {
+		return maxQueryTimeMs;
+	}
+
+	/** @return true if query execution is limited by cost or time */
+	public boolean hasQueryBudget() {
+		return maxQueryCost >= 0 || maxQueryTimeMs >= 0;
+	}
+
+	/**
+	 * Limit the work done executing the query.
+	 *
+	 * When the limit is reached, we stop reading hits and keep the ones
+	 * found so far (see Hits.queryBudgetExceeded()). Must be set before
+	 * hits are read to have effect.
+	 *
+	 * @param maxCost maximum cost (positions examined + NFA states visited + a
+	 *   fixed cost per bucket; see QueryBudget), or QueryBudget.UNLIMITED
+	 * @param maxTimeMs maximum time in ms, or QueryBudget.UNLIMITED
+	 */
+	public void setQueryBudget(long maxCost, long maxTimeMs) {
+		this.maxQueryCost = maxCost;
+		this.maxQueryTimeMs = maxTimeMs;
+	}
+
 }
@@ -0,0 +1,14 @@
+package nl.inl.blacklab.search;
+
+/**
+ * Thrown from inside the Spans when a query has used up its budget
+ * (see QueryBudget). Hits catches this and stops reading hits, keeping
+ * what was found so far.
+ */
+public class QueryBudgetExceededException extends BLRuntimeException {
+
+	public QueryBudgetExceededException(String message) {
+		super(message);
+	}
+
+}
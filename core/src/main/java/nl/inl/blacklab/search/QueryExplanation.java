@@ -1,6 +1,10 @@
 package nl.inl.blacklab.search;
 
+import java.util.Collections;
+import java.util.List;
+
 import nl.inl.blacklab.search.lucene.BLSpanQuery;
+import nl.inl.blacklab.search.lucene.optimize.SequencePlan;
 
 /**
  * Object used to explain how a SpanQuery is rewritten.
@@ -10,11 +14,18 @@ public class QueryExplanation {
 	private BLSpanQuery spanQuery;
 	
 	private BLSpanQuery rewrittenQuery;
+
+	private List<SequencePlan> planAlternatives;
 	
 	public QueryExplanation(BLSpanQuery spanQuery, BLSpanQuery rewrittenQuery) {
+		this(spanQuery, rewrittenQuery, Collections.<SequencePlan>emptyList());
+	}
+
+	public QueryExplanation(BLSpanQuery spanQuery, BLSpanQuery rewrittenQuery, List<SequencePlan> planAlternatives) {
 		super();
 		this.spanQuery = spanQuery;
 		this.rewrittenQuery = rewrittenQuery;
+		this.planAlternatives = planAlternatives;
 	}
 
 	public BLSpanQuery getOriginalQuery() {
@@ -24,4 +35,13 @@ public class QueryExplanation {
 	public BLSpanQuery getRewrittenQuery() {
 		return rewrittenQuery;
 	}
+
+	/**
+	 * Get the estimated costs of the ways to match the sequences considered while rewriting.
+	 *
+	 * @return the alternatives, in the order they were considered
+	 */
+	public List<SequencePlan> getPlanAlternatives() {
+		return planAlternatives;
+	}
 }
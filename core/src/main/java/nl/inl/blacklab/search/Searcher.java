@@ -53,6 +53,9 @@ import nl.inl.blacklab.perdocument.DocResults;
 import nl.inl.blacklab.search.indexstructure.IndexStructure;
 import nl.inl.blacklab.search.lucene.BLSpanQuery;
 import nl.inl.blacklab.search.lucene.SpanQueryFiltered;
+import nl.inl.blacklab.search.lucene.optimize.CostModel;
+import nl.inl.blacklab.search.lucene.optimize.IndexStatistics;
+import nl.inl.blacklab.search.lucene.optimize.PlanFeedback;
 import nl.inl.util.VersionFile;
 
 public abstract class Searcher {
@@ -406,6 +409,12 @@ public abstract class Searcher {
 	 */
 	protected Map<String, ForwardIndex> forwardIndices = new HashMap<>();
 
+	/** Term and field statistics, used for query planning (created when first needed) */
+	private IndexStatistics indexStatistics;
+
+	/** Observed costs of query plans on this index (created when first needed) */
+	private PlanFeedback planFeedback;
+
 	protected HitsSettings hitsSettings;
 
 	/**
@@ -880,9 +889,13 @@ public abstract class Searcher {
 	public QueryExplanation explain(BLSpanQuery query, String fieldName) throws BooleanQuery.TooManyClauses {
 		try {
 			IndexReader indexReader = getIndexReader();
-			return new QueryExplanation(query, query.optimize(indexReader).rewrite(indexReader));
+			CostModel.startRecording();
+			BLSpanQuery rewritten = query.optimize(indexReader).rewrite(indexReader);
+			return new QueryExplanation(query, rewritten, CostModel.stopRecording());
 		} catch (IOException e) {
 			throw new RuntimeException(e);
+		} finally {
+			CostModel.stopRecording();
 		}
 	}
 
@@ -1099,6 +1112,29 @@ public abstract class Searcher {
 	 */
 	public abstract IndexReader getIndexReader();
 
+	/**
+	 * Get term and field statistics for this index, used for query planning.
+	 *
+	 * @return the statistics
+	 */
+	public synchronized IndexStatistics getIndexStatistics() {
+		if (indexStatistics == null)
+			indexStatistics = new IndexStatistics(getIndexReader());
+		return indexStatistics;
+	}
+
+	/**
+	 * Get the costs of query plans observed on this index, used to correct
+	 * the estimates for future queries.
+	 *
+	 * @return the observations
+	 */
+	public synchronized PlanFeedback getPlanFeedback() {
+		if (planFeedback == null)
+			planFeedback = new PlanFeedback();
+		return planFeedback;
+	}
+
 	/**
 	 * Highlight part of field content with the specified hits,
 	 * and make sure it's well-formed.
@@ -1520,6 +1556,22 @@ public abstract class Searcher {
 		return DocResults._fromQuery(this, documentFilterQuery);
 	}
 
+	/**
+	 * Determine the frequency of each term in a set of documents.
+	 *
+	 * Terms are counted using the forward index of the property.
+	 *
+	 * @param documentFilterQuery which documents to count the terms in
+	 * @param fieldName complex field name, e.g. "contents"
+	 * @param propName property name, e.g. "word"
+	 * @param sensitive if false, terms that only differ in case or
+	 *   diacritics are counted together (and reported using their most frequent variant)
+	 * @return the term frequencies, sorted by decreasing frequency
+	 */
+	public TermFrequencyList termFrequencies(Query documentFilterQuery, String fieldName, String propName, boolean sensitive) {
+		return ForwardIndexTermFrequencies.count(this, documentFilterQuery, fieldName, propName, sensitive);
+	}
+
 	/**
 	 * Return the list of terms that occur in a field.
 	 *
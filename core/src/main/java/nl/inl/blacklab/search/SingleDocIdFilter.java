@@ -70,7 +70,7 @@ public class SingleDocIdFilter extends Query {
 					@Override
 					public DocIdSetIterator iterator() {
 						// Check that id could be in this segment, and bits allows this doc id
-						if (luceneDocId >= ctx.docBase) {
+						if (luceneDocId >= ctx.docBase && luceneDocId < ctx.docBase + ctx.reader().maxDoc()) {
 							// ctx is a single segment, so use docBase to adjust the id
 							return new SingleDocIdSet(luceneDocId - ctx.docBase).iterator();
 						}
@@ -90,4 +90,14 @@ public class SingleDocIdFilter extends Query {
 		return "SingleDocIdFilter(" + luceneDocId + ")";
 	}
 
+	@Override
+	public boolean equals(Object obj) {
+		return super.equals(obj) && ((SingleDocIdFilter) obj).luceneDocId == luceneDocId;
+	}
+
+	@Override
+	public int hashCode() {
+		return super.hashCode() * 31 + luceneDocId;
+	}
+
 }
@@ -124,4 +124,18 @@ public abstract class ForwardIndexAccessor {
 
 	public abstract boolean termsEqual(int propIndex, int[] termId, boolean caseSensitive, boolean diacSensitive);
 
+	/**
+	 * Get the sort position for each term id of a property.
+	 *
+	 * Term ids with the same sort position are equal given the sensitivity
+	 * (like termsEqual(), diacSensitive is currently ignored).
+	 *
+	 * @param propIndex property we're looking at
+	 * @param caseSensitive whether we're comparing case-sensitively
+	 * @return sort position per term id (must not be modified), or null if not available
+	 */
+	public int[] getSortPositionPerId(int propIndex, boolean caseSensitive) {
+		return null;
+	}
+
 }
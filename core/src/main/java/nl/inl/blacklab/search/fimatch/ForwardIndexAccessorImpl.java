@@ -83,6 +83,11 @@ class ForwardIndexAccessorImpl extends ForwardIndexAccessor {
 		return fis.get(propIndex).getTerms().termsEqual(termId, caseSensitive, diacSensitive);
 	}
 
+	@Override
+	public int[] getSortPositionPerId(int propIndex, boolean caseSensitive) {
+		return terms.get(propIndex).sortPositionPerId(caseSensitive);
+	}
+
 	@Override
 	public int numberOfProperties() {
 		return fis.size();
@@ -0,0 +1,215 @@
+package nl.inl.blacklab.search.fimatch;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.collections.api.map.primitive.MutableIntIntMap;
+import org.eclipse.collections.api.set.primitive.MutableIntSet;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
+
+/**
+ * An NFA converted to a compact, integer-indexed form, for building a DFA from.
+ *
+ * Token, pattern and OR states are converted to nodes; OR states whose clauses
+ * don't loop back (NfaStateOrAcyclic) are converted by continuing at their next
+ * state from their clauses' match states. AND and NOT states cannot be
+ * converted; compile() returns null for NFAs containing those, and the NFA
+ * should be interpreted instead (see NfaState.findMatches()).
+ *
+ * Instances are immutable, so they can be shared between threads. Use
+ * newDfa() to get a (non-thread-safe) matcher.
+ */
+public class NfaCompiled {
+
+	/** Node matching a token from a set of terms (or any token) */
+	static final int TOKEN = 0;
+
+	/** Node matching a token using a regex, wildcard or prefix pattern */
+	static final int PATTERN = 1;
+
+	/** Node with epsilon transitions to a number of other nodes */
+	static final int SPLIT = 2;
+
+	/** The match node */
+	static final int ACCEPT = 3;
+
+	/**
+	 * Compile an NFA.
+	 *
+	 * The NFA must have been finished, and its property numbers must have been
+	 * looked up.
+	 *
+	 * @param startingState starting state of the NFA
+	 * @return the compiled NFA, or null if the NFA contains states we can't compile
+	 */
+	public static NfaCompiled compile(NfaState startingState) {
+		NfaCompiled compiled = new NfaCompiled();
+		int accept = compiled.addNode(ACCEPT, -1, null);
+		try {
+			compiled.start = compiled.convert(startingState, accept, new IdentityHashMap<NfaState, MutableIntIntMap>());
+		} catch (UnsupportedOperationException e) {
+			return null;
+		}
+		return compiled;
+	}
+
+	/** Type of each node (TOKEN, PATTERN, SPLIT or ACCEPT) */
+	private IntArrayList kind = new IntArrayList();
+
+	/** Property to match for each TOKEN and PATTERN node, or -1 for any token */
+	private IntArrayList property = new IntArrayList();
+
+	/** Next node for TOKEN and PATTERN nodes, or -1 */
+	private IntArrayList next = new IntArrayList();
+
+	/** Terms to match for TOKEN nodes (null if any token matches), state for PATTERN nodes */
+	private List<Object> match = new ArrayList<>();
+
+	/** Epsilon targets for SPLIT nodes */
+	private List<IntArrayList> splitTargets = new ArrayList<>();
+
+	/** Starting node */
+	private int start;
+
+	private NfaCompiled() {
+	}
+
+	private int addNode(int nodeKind, int prop, Object nodeMatch) {
+		kind.add(nodeKind);
+		property.add(prop);
+		next.add(-1);
+		match.add(nodeMatch);
+		splitTargets.add(nodeKind == SPLIT ? new IntArrayList() : null);
+		return kind.size() - 1;
+	}
+
+	/**
+	 * Convert a state and the states reachable from it.
+	 *
+	 * @param state state to convert
+	 * @param continuation node to go to if we reach the match state
+	 * @param converted nodes created so far, per state and continuation (for cycles)
+	 * @return node index
+	 */
+	private int convert(NfaState state, int continuation, Map<NfaState, MutableIntIntMap> converted) {
+		if (state == null || state instanceof NfaStateMatch)
+			return continuation;
+		MutableIntIntMap forState = converted.get(state);
+		if (forState == null) {
+			forState = new IntIntHashMap();
+			converted.put(state, forState);
+		} else if (forState.containsKey(continuation)) {
+			return forState.get(continuation);
+		}
+		int node;
+		if (state instanceof NfaStateToken) {
+			NfaStateToken token = (NfaStateToken) state;
+			node = token.acceptsAnyToken() ? addNode(TOKEN, -1, null) : addNode(TOKEN, token.getPropertyNumber(), token.getInputTokens());
+			forState.put(continuation, node);
+			next.set(node, convert(token.getNextState(), continuation, converted));
+		} else if (state instanceof NfaStateMultiTermPattern) {
+			NfaStateMultiTermPattern pattern = (NfaStateMultiTermPattern) state;
+			node = addNode(PATTERN, pattern.getPropertyNumber(), pattern);
+			forState.put(continuation, node);
+			next.set(node, convert(pattern.getNextState(), continuation, converted));
+		} else if (state instanceof NfaStateOr) {
+			node = addNode(SPLIT, -1, null);
+			forState.put(continuation, node);
+			for (NfaState nextState: ((NfaStateOr) state).nextStates) {
+				splitTargets.get(node).add(convert(nextState, continuation, converted));
+			}
+		} else if (state instanceof NfaStateOrAcyclic) {
+			NfaStateOrAcyclic or = (NfaStateOrAcyclic) state;
+			node = addNode(SPLIT, -1, null);
+			forState.put(continuation, node);
+			int afterClauses = convert(or.nextState, continuation, converted);
+			for (NfaState clause: or.clauses) {
+				splitTargets.get(node).add(convert(clause, afterClauses, converted));
+			}
+		} else {
+			throw new UnsupportedOperationException("Cannot compile " + state.getClass().getSimpleName());
+		}
+		return node;
+	}
+
+	/**
+	 * Create a DFA for this NFA.
+	 *
+	 * @return the DFA
+	 */
+	public NfaDfa newDfa() {
+		return new NfaDfa(this);
+	}
+
+	int getStart() {
+		return start;
+	}
+
+	int numberOfNodes() {
+		return kind.size();
+	}
+
+	int kind(int node) {
+		return kind.get(node);
+	}
+
+	int property(int node) {
+		return property.get(node);
+	}
+
+	int next(int node) {
+		return next.get(node);
+	}
+
+	IntArrayList splitTargets(int node) {
+		return splitTargets.get(node);
+	}
+
+	/**
+	 * Does a TOKEN or PATTERN node match this term?
+	 *
+	 * @param node the node
+	 * @param fiDoc where to get term strings
+	 * @param termId the term, for the node's property (must be a valid term)
+	 * @return true if the node matches, false if not
+	 */
+	boolean matches(int node, ForwardIndexDocument fiDoc, int termId) {
+		Object m = match.get(node);
+		if (kind.get(node) == PATTERN)
+			return ((NfaStateMultiTermPattern) m).matchesTerm(fiDoc, termId);
+		return m == null || ((MutableIntSet) m).contains(termId);
+	}
+
+	/**
+	 * Add the nodes reachable through epsilon transitions.
+	 *
+	 * @param nodes nodes to start from
+	 * @return the TOKEN, PATTERN and ACCEPT nodes reachable, sorted
+	 */
+	int[] closure(IntArrayList nodes) {
+		IntHashSet seen = new IntHashSet();
+		IntArrayList result = new IntArrayList();
+		IntArrayList todo = new IntArrayList();
+		todo.addAll(nodes);
+		while (!todo.isEmpty()) {
+			int node = todo.removeAtIndex(todo.size() - 1);
+			if (!seen.add(node))
+				continue;
+			if (kind.get(node) == SPLIT)
+				todo.addAll(splitTargets.get(node));
+			else
+				result.add(node);
+		}
+		return result.sortThis().toArray();
+	}
+
+	@Override
+	public String toString() {
+		return "NfaCompiled(" + kind.size() + " nodes)";
+	}
+
+}
@@ -0,0 +1,276 @@
+package nl.inl.blacklab.search.fimatch;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+
+/**
+ * A DFA for a compiled NFA, built lazily while matching.
+ *
+ * Each DFA state is a set of NFA nodes. States are only created when a token
+ * leading to them is encountered (subset construction on demand), and the
+ * transitions found are stored per state, indexed by term id: low term ids in
+ * a dense array, the rest in a hash map. After the first few anchor hits, most
+ * positions can be matched with a single lookup instead of interpreting the NFA.
+ *
+ * States that contain nodes for more than one property can't use a single
+ * term id as the key; for those, the transition is determined each time (the
+ * resulting state is still reused). If the number of states grows too large,
+ * they are all discarded and built again as needed.
+ *
+ * Not thread-safe; use a separate instance per thread (see NfaCompiled.newDfa()).
+ */
+public class NfaDfa {
+
+	/** Maximum number of DFA states to keep */
+	private static final int MAX_STATES = 4096;
+
+	/** Number of term ids to store transitions for in an array; higher ids use a hash map */
+	private static final int DENSE_SIZE = 256;
+
+	/** State property value: no nodes that read a token */
+	private static final int PROP_NONE = -3;
+
+	/** State property value: nodes read more than one property */
+	private static final int PROP_MULTIPLE = -2;
+
+	/** State property value: all nodes accept any token */
+	private static final int PROP_ANY = -1;
+
+	/** A state in the DFA */
+	private static class State {
+
+		/** NFA nodes in this state (sorted) */
+		int[] nodes;
+
+		/** Does this state contain the accept node? */
+		boolean accepting;
+
+		/** Property all nodes read (if any), or one of the PROP_ constants */
+		int property = PROP_NONE;
+
+		/** Transitions for low term ids (null entries haven't been determined yet) */
+		State[] dense;
+
+		/** Transitions for other term ids */
+		IntObjectHashMap<State> sparse;
+
+		/** Transition for states that accept any token */
+		State any;
+
+		State(int[] nodes, NfaCompiled nfa) {
+			this.nodes = nodes;
+			for (int node: nodes) {
+				int kind = nfa.kind(node);
+				if (kind == NfaCompiled.ACCEPT) {
+					accepting = true;
+					continue;
+				}
+				int prop = nfa.property(node);
+				if (property == PROP_NONE || property == PROP_ANY)
+					property = prop;
+				else if (prop >= 0 && prop != property)
+					property = PROP_MULTIPLE;
+			}
+		}
+
+		State getTransition(int termId) {
+			if (termId < DENSE_SIZE)
+				return dense == null ? null : dense[termId];
+			return sparse == null ? null : sparse.get(termId);
+		}
+
+		void setTransition(int termId, State target) {
+			if (termId < DENSE_SIZE) {
+				if (dense == null)
+					dense = new State[DENSE_SIZE];
+				dense[termId] = target;
+			} else {
+				if (sparse == null)
+					sparse = new IntObjectHashMap<>();
+				sparse.put(termId, target);
+			}
+		}
+	}
+
+	/** Key for looking up states by their set of NFA nodes */
+	private static class NodeSet {
+
+		int[] nodes;
+
+		NodeSet(int[] nodes) {
+			this.nodes = nodes;
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(nodes);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof NodeSet && Arrays.equals(nodes, ((NodeSet) obj).nodes);
+		}
+	}
+
+	/** The state without any nodes; matching stops here */
+	private static final State DEAD = new State(new int[0], null);
+
+	/** The NFA we're matching */
+	private NfaCompiled nfa;
+
+	/** The states built so far */
+	private Map<NodeSet, State> states = new HashMap<>();
+
+	/** Starting state, or null if not built yet */
+	private State startState;
+
+	/** Number of tokens read while matching so far */
+	private long tokensRead;
+
+	/** Nodes reached by a transition (reused) */
+	private IntArrayList targets = new IntArrayList();
+
+	NfaDfa(NfaCompiled nfa) {
+		this.nfa = nfa;
+	}
+
+	/**
+	 * Find all matches for the NFA in the token source.
+	 *
+	 * Match ends are added in the order they're found, so they're ascending when
+	 * matching forward and descending when matching backward, without duplicates.
+	 *
+	 * @param fiDoc where to read tokens from
+	 * @param pos position to start matching at
+	 * @param direction matching direction (1 or -1)
+	 * @param matchEnds where to add the match ends found
+	 * @return true if any matches were found, false if not
+	 */
+	public boolean findMatches(ForwardIndexDocument fiDoc, int pos, int direction, IntArrayList matchEnds) {
+		if (startState == null) {
+			targets.clear();
+			targets.add(nfa.getStart());
+			startState = getState(nfa.closure(targets));
+		}
+		boolean found = false;
+		State state = startState;
+		while (true) {
+			if (state.accepting) {
+				matchEnds.add(pos);
+				found = true;
+			}
+			if (state.property != PROP_NONE)
+				tokensRead++;
+			state = step(state, fiDoc, pos);
+			if (state == DEAD)
+				return found;
+			pos += direction;
+		}
+	}
+
+	/**
+	 * Determine the next state after reading the token at a position.
+	 *
+	 * @param state current state
+	 * @param fiDoc where to read tokens from
+	 * @param pos position of the token to read
+	 * @return the next state (DEAD if there's no match)
+	 */
+	private State step(State state, ForwardIndexDocument fiDoc, int pos) {
+		State next;
+		switch (state.property) {
+		case PROP_NONE:
+			return DEAD;
+		case PROP_ANY:
+			if (!fiDoc.validPos(pos))
+				return DEAD;
+			if (state.any == null)
+				state.any = move(state, fiDoc, pos, -1);
+			return state.any;
+		case PROP_MULTIPLE:
+			if (!fiDoc.validPos(pos))
+				return DEAD;
+			return move(state, fiDoc, pos, -1);
+		default:
+			int termId = fiDoc.getToken(state.property, pos);
+			if (termId < 0)
+				return DEAD;
+			next = state.getTransition(termId);
+			if (next == null) {
+				next = move(state, fiDoc, pos, termId);
+				state.setTransition(termId, next);
+			}
+			return next;
+		}
+	}
+
+	/**
+	 * Determine the state reached from a state by reading a token (subset construction).
+	 *
+	 * @param state current state
+	 * @param fiDoc where to read tokens from
+	 * @param pos position of the token to read
+	 * @param termId the token for the state's property, or -1 if not read yet
+	 * @return the next state (DEAD if there's no match)
+	 */
+	private State move(State state, ForwardIndexDocument fiDoc, int pos, int termId) {
+		targets.clear();
+		for (int node: state.nodes) {
+			if (nfa.kind(node) == NfaCompiled.ACCEPT)
+				continue;
+			int prop = nfa.property(node);
+			int token = prop < 0 ? 0 : (prop == state.property ? termId : fiDoc.getToken(prop, pos));
+			if (prop < 0 || token >= 0 && nfa.matches(node, fiDoc, token))
+				targets.add(nfa.next(node));
+		}
+		if (targets.isEmpty())
+			return DEAD;
+		return getState(nfa.closure(targets));
+	}
+
+	/**
+	 * Get the state for a set of nodes, creating it if necessary.
+	 *
+	 * @param nodes the nodes (sorted)
+	 * @return the state
+	 */
+	private State getState(int[] nodes) {
+		if (nodes.length == 0)
+			return DEAD;
+		NodeSet key = new NodeSet(nodes);
+		State state = states.get(key);
+		if (state == null) {
+			if (states.size() >= MAX_STATES) {
+				// Too many states; start over. (states still in use stay valid)
+				states.clear();
+				startState = null;
+			}
+			state = new State(nodes, nfa);
+			states.put(key, state);
+		}
+		return state;
+	}
+
+	/**
+	 * Get the number of tokens read while matching so far.
+	 *
+	 * @return number of tokens read
+	 */
+	public long getTokensRead() {
+		return tokensRead;
+	}
+
+	/**
+	 * Get the number of DFA states built so far.
+	 *
+	 * @return number of states
+	 */
+	public int getNumberOfStates() {
+		return states.size();
+	}
+
+}
@@ -50,15 +50,32 @@ public abstract class NfaStateMultiTermPattern extends NfaState {
 	public boolean findMatchesInternal(ForwardIndexDocument fiDoc, int pos, int direction, Set<Integer> matchEnds) {
 		// Token state. Check if it matches token from token source, and if so, continue.
 		int actualToken = fiDoc.getToken(propertyNumber, pos);
-		if (actualToken >= 0) {
-			String tokenString = fiDoc.getTermString(propertyNumber, actualToken);
-			if (matchesPattern(desensitize(tokenString))) {
-				return nextState.findMatchesInternal(fiDoc, pos + direction, direction, matchEnds);
-			}
+		if (actualToken >= 0 && matchesTerm(fiDoc, actualToken)) {
+			return nextState.findMatchesInternal(fiDoc, pos + direction, direction, matchEnds);
 		}
 		return false;
 	}
 
+	/**
+	 * Does a term match our pattern?
+	 *
+	 * @param fiDoc where to get the term string
+	 * @param termId the term id (for our property)
+	 * @return true if the term matches, false if not
+	 */
+	boolean matchesTerm(ForwardIndexDocument fiDoc, int termId) {
+		String tokenString = fiDoc.getTermString(propertyNumber, termId);
+		return matchesPattern(desensitize(tokenString));
+	}
+
+	int getPropertyNumber() {
+		return propertyNumber;
+	}
+
+	NfaState getNextState() {
+		return nextState;
+	}
+
 	private String desensitize(String tokenString) {
 		if (!caseSensitive)
 			tokenString = tokenString.toLowerCase();
@@ -77,6 +77,22 @@ public class NfaStateToken extends NfaState {
 		return false;
 	}
 
+	int getPropertyNumber() {
+		return propertyNumber;
+	}
+
+	boolean acceptsAnyToken() {
+		return acceptAnyToken;
+	}
+
+	MutableIntSet getInputTokens() {
+		return inputTokens;
+	}
+
+	NfaState getNextState() {
+		return nextState;
+	}
+
 	@Override
 	void fillDangling(NfaState state) {
 		if (nextState == null)
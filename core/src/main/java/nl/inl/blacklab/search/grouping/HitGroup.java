@@ -15,6 +15,7 @@
  *******************************************************************************/
 package nl.inl.blacklab.search.grouping;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import nl.inl.blacklab.search.Hit;
@@ -24,9 +25,25 @@ import nl.inl.blacklab.search.Searcher;
 /**
  * A group of results, with its group identity and the results themselves, that you can access
  * randomly (i.e. you can obtain a list of Hit objects)
+ *
+ * A group may also just store the indices of its hits in the grouped hits; the
+ * list of Hit objects is then only created when the hits are requested.
  */
 public class HitGroup extends Group {
-	Hits results;
+	/** Our hits, or null if not created yet (see getHits()) */
+	private Hits results;
+
+	/** The hits that were grouped, if we store indices (otherwise null) */
+	private Hits source;
+
+	/** Indices (in original order) of our hits in source, if we store indices (otherwise null) */
+	private int[] indices;
+
+	/** Concordance field for our hits */
+	private String defaultConcField;
+
+	/** Context field for our hits, or null if not set */
+	private List<String> contextField;
 
 	HitGroup(Searcher searcher, HitPropValue groupIdentity, String defaultConcField) {
 		super(groupIdentity);
@@ -50,20 +67,58 @@ public class HitGroup extends Group {
 		results.settings().setConcordanceField(defaultConcField);
 	}
 
-	public Hits getHits() {
+	/**
+	 * Create a group that stores the indices of its hits.
+	 *
+	 * NOTE: the array is not copied!
+	 *
+	 * @param source the hits that were grouped
+	 * @param groupIdentity grouping identity of this group of hits
+	 * @param defaultConcField concordance field
+	 * @param indices indices (in original order) of the hits in source
+	 */
+	HitGroup(Hits source, HitPropValue groupIdentity, String defaultConcField, int[] indices) {
+		super(groupIdentity);
+		this.source = source;
+		this.indices = indices;
+		this.defaultConcField = defaultConcField;
+	}
+
+	public synchronized Hits getHits() {
+		if (results == null) {
+			List<Hit> hitList = new ArrayList<>(indices.length);
+			for (int index: indices) {
+				hitList.add(source.getByOriginalOrder(index));
+			}
+			results = Hits.fromList(source.getSearcher(), hitList);
+			results.settings().setConcordanceField(defaultConcField);
+			if (contextField != null)
+				results.setContextField(contextField);
+		}
 		return results;
 	}
 
+	/**
+	 * Get the indices of our hits in the hits that were grouped, if we store them.
+	 *
+	 * @return indices (in original order), or null if this group doesn't store them
+	 */
+	public int[] getHitIndices() {
+		return indices;
+	}
+
 	public int size() {
-		return results.size();
+		return indices != null ? indices.length : results.size();
 	}
 
 	@Override
 	public String toString() {
-		return "GroupOfHits, identity = " + groupIdentity + ", size = " + results.size();
+		return "GroupOfHits, identity = " + groupIdentity + ", size = " + size();
 	}
 
-	public void setContextField(List<String> contextField) {
-		 results.setContextField(contextField);
+	public synchronized void setContextField(List<String> contextField) {
+		this.contextField = contextField;
+		if (results != null)
+			results.setContextField(contextField);
 	}
 }
@@ -107,4 +107,14 @@ public abstract class HitGroups extends GroupsAbstract implements Iterable<HitGr
 	 */
 	@Override
 	public abstract int numberOfGroups();
+
+	/**
+	 * Estimate how much memory the groups use.
+	 *
+	 * Doesn't include the hits themselves, which belong to the Hits object
+	 * that was grouped.
+	 *
+	 * @return estimated memory use in bytes
+	 */
+	public abstract long estimateSizeBytes();
 }
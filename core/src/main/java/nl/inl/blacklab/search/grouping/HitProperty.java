@@ -67,6 +67,72 @@ public abstract class HitProperty implements Comparator<Object> {
 		return hitPropValueA.compareTo(hitPropValueB);
 	}
 
+	/**
+	 * Returned by groupKey() if a hit has no primitive group key.
+	 */
+	public static final long NO_GROUP_KEY = -1L;
+
+	/**
+	 * Can this property produce primitive group keys (see groupKey())?
+	 *
+	 * @return true if groupKey() is implemented, false if not
+	 */
+	public boolean hasGroupKeys() {
+		return false;
+	}
+
+	/**
+	 * Get a primitive key identifying the group a hit belongs to.
+	 *
+	 * Two hits must get the same key if and only if get() returns equal values
+	 * for them. This allows us to group large numbers of hits without
+	 * creating a HitPropValue object for each hit.
+	 *
+	 * Implementations must be safe to call from multiple threads at once.
+	 *
+	 * @param hitNumber the hit (index in original order)
+	 * @return the group key, or NO_GROUP_KEY if this hit doesn't have one
+	 *   (in that case, get() should be used)
+	 */
+	public long groupKey(int hitNumber) {
+		return NO_GROUP_KEY;
+	}
+
+	/**
+	 * Encode (at most two) term sort positions as a group key.
+	 *
+	 * @param sortPositions array containing the sort positions
+	 * @param offset where the sort positions start in the array
+	 * @param length number of sort positions
+	 * @return the group key, or NO_GROUP_KEY if there are too many sort positions
+	 */
+	protected static long groupKeyFromSortPositions(int[] sortPositions, int offset, int length) {
+		if (length < 0 || length > 2)
+			return NO_GROUP_KEY;
+		return groupKeyFromSortPositions(length, length > 0 ? sortPositions[offset] : 0,
+				length > 1 ? sortPositions[offset + 1] : 0);
+	}
+
+	/**
+	 * Encode (at most two) term sort positions as a group key.
+	 *
+	 * @param length number of sort positions
+	 * @param first first sort position (ignored if length is 0)
+	 * @param second second sort position (ignored if length is less than 2)
+	 * @return the group key, or NO_GROUP_KEY if there are too many sort positions
+	 */
+	protected static long groupKeyFromSortPositions(int length, int first, int second) {
+		if (length < 0 || length > 2)
+			return NO_GROUP_KEY;
+		// 2 bits for the length, 31 bits for each sort position (+1, so -1 fits as well)
+		long key = (long)length << 62;
+		if (length > 0)
+			key |= (first + 1L) << 31;
+		if (length > 1)
+			key |= second + 1L;
+		return key;
+	}
+
 	/**
 	 * Retrieve context from which field(s) prior to sorting/grouping on this
 	 * property?
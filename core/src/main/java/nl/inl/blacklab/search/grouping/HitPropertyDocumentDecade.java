@@ -24,6 +24,7 @@ import org.apache.lucene.index.IndexReader;
 
 import nl.inl.blacklab.search.Hit;
 import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.lucene.MetadataDocValues;
 
 /**
  * A hit property for grouping on by decade based on a stored field
@@ -38,6 +39,9 @@ public class HitPropertyDocumentDecade extends HitProperty {
 
 	String fieldName;
 
+	/** Indexed values of the field, so we don't have to load documents (initialized when needed) */
+	private volatile MetadataDocValues docValues;
+
 	public HitPropertyDocumentDecade(Hits hits, String fieldName) {
 		super(hits);
 		this.reader = hits.getSearcher().getIndexReader();
@@ -46,62 +50,87 @@ public class HitPropertyDocumentDecade extends HitProperty {
 
 	@Override
 	public HitPropValueDecade get(int hitNumber) {
-		try {
-			Hit result = hits.getByOriginalOrder(hitNumber);
-			Document d = reader.document(result.doc);
-			String strYear = d.get(fieldName);
-			int year;
-			try {
-				year = Integer.parseInt(strYear);
-				year -= year % 10;
-			} catch (NumberFormatException e) {
-				year = UNKNOWN_VALUE;
-			}
-			return new HitPropValueDecade(year);
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+		int doc = hits.getByOriginalOrder(hitNumber).doc;
+		return new HitPropValueDecade(getDecade(doc));
+	}
+
+	@Override
+	public boolean hasGroupKeys() {
+		return true;
+	}
+
+	@Override
+	public long groupKey(int hitNumber) {
+		// Decades are multiples of 10, so this never equals NO_GROUP_KEY
+		return getDecade(hits.getByOriginalOrder(hitNumber).doc);
 	}
 
 	@Override
 	public int compare(Object i, Object j) {
-		try {
-			Hit a = hits.getByOriginalOrder((Integer)i);
-			Hit b = hits.getByOriginalOrder((Integer)j);
-			Document d = reader.document(a.doc);
-			String strYearA = d.get(fieldName);
-			if (strYearA == null)
-				strYearA = "";
-			d = reader.document(b.doc);
-			String strYearB = d.get(fieldName);
-			if (strYearB == null)
-				strYearB = "";
-			if (strYearA.length() == 0) // sort missing year at the end
-				return strYearB.length() == 0 ? 0 : (reverse ? -1 : 1);
-			if (strYearB.length() == 0) // sort missing year at the end
-				return reverse ? 1 : -1;
-			int aYear;
-			try {
-				aYear = Integer.parseInt(strYearA);
-				aYear -= aYear % 10;
-			} catch (NumberFormatException e) {
-				aYear = UNKNOWN_VALUE;
-			}
-			int bYear;
-			try {
-				bYear = Integer.parseInt(strYearB);
-				bYear -= bYear % 10;
-			} catch (NumberFormatException e) {
-				bYear = UNKNOWN_VALUE;
-			}
-
-			return reverse ? bYear - aYear : aYear - bYear;
+		Hit a = hits.getByOriginalOrder((Integer)i);
+		Hit b = hits.getByOriginalOrder((Integer)j);
+		boolean aMissing = isMissing(a.doc);
+		boolean bMissing = isMissing(b.doc);
+		if (aMissing) // sort missing year at the end
+			return bMissing ? 0 : (reverse ? -1 : 1);
+		if (bMissing) // sort missing year at the end
+			return reverse ? 1 : -1;
+		int aYear = getDecade(a.doc);
+		int bYear = getDecade(b.doc);
+		return reverse ? bYear - aYear : aYear - bYear;
+	}
+
+	private MetadataDocValues docValues() {
+		if (docValues == null)
+			docValues = MetadataDocValues.get(reader, fieldName);
+		return docValues;
+	}
+
+	private boolean isMissing(int doc) {
+		int valueIndex = docValues().valueIndex(doc);
+		if (valueIndex == MetadataDocValues.NOT_INDEXED)
+			return getStoredValue(doc).length() == 0;
+		return valueIndex == MetadataDocValues.NO_VALUE;
+	}
+
+	private int getDecade(int doc) {
+		MetadataDocValues dv = docValues();
+		int valueIndex = dv.valueIndex(doc);
+		if (valueIndex == MetadataDocValues.NOT_INDEXED)
+			return decade(getStoredValue(doc));
+		if (valueIndex == MetadataDocValues.NO_VALUE)
+			return UNKNOWN_VALUE;
+		int year = dv.intValue(valueIndex, UNKNOWN_VALUE);
+		return year - year % 10;
+	}
 
+	private String getStoredValue(int doc) {
+		try {
+			Document d = reader.document(doc);
+			String value = d.get(fieldName);
+			return value == null ? "" : value;
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	/**
+	 * Determine the decade for a year.
+	 *
+	 * @param strYear the year
+	 * @return the decade, or UNKNOWN_VALUE if strYear is not a number
+	 */
+	public static int decade(String strYear) {
+		int year;
+		try {
+			year = Integer.parseInt(strYear);
+			year -= year % 10;
+		} catch (NumberFormatException e) {
+			year = UNKNOWN_VALUE;
+		}
+		return year;
+	}
+
 	@Override
 	public String getName() {
 		return "decade";
@@ -36,6 +36,16 @@ public class HitPropertyDocumentId extends HitProperty {
 		return new HitPropValueInt(result.doc);
 	}
 
+	@Override
+	public boolean hasGroupKeys() {
+		return true;
+	}
+
+	@Override
+	public long groupKey(int hitNumber) {
+		return hits.getByOriginalOrder(hitNumber).doc;
+	}
+
 	@Override
 	public String getName() {
 		return "document id";
@@ -23,6 +23,7 @@ import org.apache.lucene.index.IndexReader;
 
 import nl.inl.blacklab.search.Hit;
 import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.lucene.MetadataDocValues;
 
 /**
  * A hit property for grouping on a stored field in the corresponding Lucene document.
@@ -34,6 +35,9 @@ public class HitPropertyDocumentStoredField extends HitProperty {
 
 	private String friendlyName;
 
+	/** Indexed values of the field, so we don't have to load documents (initialized when needed) */
+	private volatile MetadataDocValues docValues;
+
 	public HitPropertyDocumentStoredField(Hits hits, String fieldName) {
 		this(hits, fieldName, fieldName);
 	}
@@ -47,42 +51,78 @@ public class HitPropertyDocumentStoredField extends HitProperty {
 
 	@Override
 	public HitPropValueString get(int hitNumber) {
-		try {
-			Hit result = hits.getByOriginalOrder(hitNumber);
-			Document d = reader.document(result.doc);
-			String value = d.get(fieldName);
-			if (value == null)
-				value = "";
-			return new HitPropValueString(value);
-		} catch (Exception e) {
-			throw new RuntimeException(e);
+		int doc = hits.getByOriginalOrder(hitNumber).doc;
+		MetadataDocValues dv = docValues();
+		int valueIndex = dv.valueIndex(doc);
+		if (valueIndex == MetadataDocValues.NOT_INDEXED)
+			return new HitPropValueString(getStoredValue(doc));
+		return new HitPropValueString(valueIndex == MetadataDocValues.NO_VALUE ? "" : dv.value(valueIndex));
+	}
+
+	@Override
+	public boolean hasGroupKeys() {
+		return true;
+	}
+
+	@Override
+	public long groupKey(int hitNumber) {
+		int doc = hits.getByOriginalOrder(hitNumber).doc;
+		MetadataDocValues dv = docValues();
+		int valueIndex = dv.valueIndex(doc);
+		if (valueIndex == MetadataDocValues.NOT_INDEXED) {
+			// Use the same key if another document has this value in its DocValues
+			valueIndex = dv.findValue(getStoredValue(doc));
+			if (valueIndex == MetadataDocValues.NOT_INDEXED)
+				return NO_GROUP_KEY;
 		}
+		return valueIndex + 1; // NO_VALUE (empty) becomes 0
 	}
 
 	@Override
 	public int compare(Object i, Object j) {
+		Hit a = hits.getByOriginalOrder((Integer)i);
+		Hit b = hits.getByOriginalOrder((Integer)j);
+		MetadataDocValues dv = docValues();
+		int ia = dv.valueIndex(a.doc);
+		int ib = dv.valueIndex(b.doc);
+		if (ia == MetadataDocValues.NOT_INDEXED || ib == MetadataDocValues.NOT_INDEXED)
+			return compareStoredValues(a.doc, b.doc);
+		if (ia == MetadataDocValues.NO_VALUE) // sort empty string at the end
+			return ib == MetadataDocValues.NO_VALUE ? 0 : (reverse ? -1 : 1);
+		if (ib == MetadataDocValues.NO_VALUE) // sort empty string at the end
+			return reverse ? 1 : -1;
+		int ra = dv.collationRank(ia);
+		int rb = dv.collationRank(ib);
+		return reverse ? Integer.compare(rb, ra) : Integer.compare(ra, rb);
+	}
+
+	private MetadataDocValues docValues() {
+		if (docValues == null)
+			docValues = MetadataDocValues.get(reader, fieldName);
+		return docValues;
+	}
+
+	private String getStoredValue(int doc) {
 		try {
-			Hit a = hits.getByOriginalOrder((Integer)i);
-			Hit b = hits.getByOriginalOrder((Integer)j);
-			Document d = reader.document(a.doc);
-			String va = d.get(fieldName);
-			if (va == null)
-				va = "";
-			d = reader.document(b.doc);
-			String vb = d.get(fieldName);
-			if (vb == null)
-				vb = "";
-			if (va.length() == 0) // sort empty string at the end
-				return vb.length() == 0 ? 0 : (reverse ? -1 : 1);
-			if (vb.length() == 0) // sort empty string at the end
-				return reverse ? 1 : -1;
-
-			return reverse ? HitPropValue.collator.compare(vb, va) : HitPropValue.collator.compare(va, vb);
+			Document d = reader.document(doc);
+			String value = d.get(fieldName);
+			return value == null ? "" : value;
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	private int compareStoredValues(int docA, int docB) {
+		String va = getStoredValue(docA);
+		String vb = getStoredValue(docB);
+		if (va.length() == 0) // sort empty string at the end
+			return vb.length() == 0 ? 0 : (reverse ? -1 : 1);
+		if (vb.length() == 0) // sort empty string at the end
+			return reverse ? 1 : -1;
+
+		return reverse ? HitPropValue.collator.compare(vb, va) : HitPropValue.collator.compare(va, vb);
+	}
+
 	@Override
 	public String getName() {
 		return friendlyName;
@@ -38,6 +38,16 @@ public class HitPropertyHitPosition extends HitProperty {
 		return new HitPropValueInt(result.start);
 	}
 
+	@Override
+	public boolean hasGroupKeys() {
+		return true;
+	}
+
+	@Override
+	public long groupKey(int hitNumber) {
+		return hits.getByOriginalOrder(hitNumber).start;
+	}
+
 	@Override
 	public String getName() {
 		return "hit position";
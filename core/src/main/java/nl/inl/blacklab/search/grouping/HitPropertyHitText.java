@@ -95,6 +95,28 @@ public class HitPropertyHitText extends HitProperty {
 		return new HitPropValueContextWords(hits, propName, dest, sensitive);
 	}
 
+	@Override
+	public boolean hasGroupKeys() {
+		return true;
+	}
+
+	@Override
+	public long groupKey(int hitNumber) {
+		int[] context = hits.getHitContext(hitNumber);
+		int contextHitStart = context[Hits.CONTEXTS_HIT_START_INDEX];
+		int contextRightStart = context[Hits.CONTEXTS_RIGHT_START_INDEX];
+		int contextLength = context[Hits.CONTEXTS_LENGTH_INDEX];
+
+		int n = Math.max(0, contextRightStart - contextHitStart);
+		if (n > 2)
+			return NO_GROUP_KEY; // too long to fit in a key
+		int contextStart = contextLength * contextIndices.get(0) + Hits.CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS + contextHitStart;
+		// (no array needed for at most two sort positions; this is called for every hit)
+		int first = n > 0 ? terms.idToSortPosition(context[contextStart], sensitive) : 0;
+		int second = n > 1 ? terms.idToSortPosition(context[contextStart + 1], sensitive) : 0;
+		return groupKeyFromSortPositions(n, first, second);
+	}
+
 	@Override
 	public int compare(Object i, Object j) {
 		int[] ca = hits.getHitContext((Integer)i);
@@ -88,6 +88,24 @@ public class HitPropertyWordLeft extends HitProperty {
 				+ contextHitStart - 1], sensitive);
 	}
 
+	@Override
+	public boolean hasGroupKeys() {
+		return true;
+	}
+
+	@Override
+	public long groupKey(int hitNumber) {
+		int[] context = hits.getHitContext(hitNumber);
+		int contextHitStart = context[Hits.CONTEXTS_HIT_START_INDEX];
+		int contextLength = context[Hits.CONTEXTS_LENGTH_INDEX];
+
+		if (contextHitStart <= 0)
+			return 0; // no word to the left
+		int contextStart = contextLength * contextIndices.get(0) + Hits.CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS;
+		int termId = context[contextStart + contextHitStart - 1];
+		return (termId < 0 ? termId : terms.idToSortPosition(termId, sensitive)) + 1L;
+	}
+
 	@Override
 	public int compare(Object i, Object j) {
 		int[] ca = hits.getHitContext((Integer)i);
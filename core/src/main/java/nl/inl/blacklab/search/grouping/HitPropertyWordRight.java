@@ -85,6 +85,24 @@ public class HitPropertyWordRight extends HitProperty {
 		return new HitPropValueContextWord(hits, propName, context[contextStart + contextRightStart], sensitive);
 	}
 
+	@Override
+	public boolean hasGroupKeys() {
+		return true;
+	}
+
+	@Override
+	public long groupKey(int hitNumber) {
+		int[] context = hits.getHitContext(hitNumber);
+		int contextRightStart = context[Hits.CONTEXTS_RIGHT_START_INDEX];
+		int contextLength = context[Hits.CONTEXTS_LENGTH_INDEX];
+
+		if (contextLength <= contextRightStart)
+			return 0; // no word to the right
+		int contextStart = contextLength * contextIndices.get(0) + Hits.CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS;
+		int termId = context[contextStart + contextRightStart];
+		return (termId < 0 ? termId : terms.idToSortPosition(termId, sensitive)) + 1L;
+	}
+
 	@Override
 	public int compare(Object i, Object j) {
 		int[] ca = hits.getHitContext((Integer)i);
@@ -16,14 +16,20 @@
 package nl.inl.blacklab.search.grouping;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import nl.inl.blacklab.search.Hit;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.eclipse.collections.api.map.primitive.MutableLongObjectMap;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+
 import nl.inl.blacklab.search.Hits;
+import nl.inl.util.ParallelUtil;
 
 /**
  * Groups results on the basis of a list of criteria, and provide random access to the resulting
@@ -34,6 +40,11 @@ import nl.inl.blacklab.search.Hits;
  * grouped are sequential (in which case you should use ResultsGrouperSequential).
  */
 public class ResultsGrouper extends HitGroups {
+
+	/** Estimated memory used per group, not counting its hits (the group, its index array, map entry and identity) */
+	private static final long BYTES_PER_GROUP = RamUsageEstimator.shallowSizeOfInstance(HitGroup.class) +
+			RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + 4 * RamUsageEstimator.NUM_BYTES_OBJECT_REF + 100; // (identity: rough estimate)
+
 	/**
 	 * The groups.
 	 */
@@ -90,6 +101,49 @@ public class ResultsGrouper extends HitGroups {
 		return new ResultsGrouper(hits, criteria);
 	}
 
+	/**
+	 * Construct a ResultsGrouper object from groups that were determined earlier.
+	 *
+	 * @param hits the hits that were grouped
+	 * @param criteria the criteria the hits were grouped on
+	 * @param identities the group identities, in order
+	 * @param groupIndices for each group, the indices (in original order) of its hits
+	 */
+	private ResultsGrouper(Hits hits, HitProperty criteria, List<HitPropValue> identities, List<int[]> groupIndices) {
+		super(hits.getSearcher(), criteria);
+		defaultConcField = hits.settings().concordanceField();
+		contextField = hits.getContextFieldPropName();
+		for (int i = 0; i < identities.size(); i++) {
+			addGroup(hits, identities.get(i), groupIndices.get(i));
+		}
+	}
+
+	/**
+	 * Restore grouped hits from groups that were determined earlier.
+	 *
+	 * The groups keep the order in which they're given.
+	 *
+	 * @param hits the hits that were grouped
+	 * @param criteria the criteria the hits were grouped on
+	 * @param identities the group identities, in order
+	 * @param groupIndices for each group, the indices (in original order) of its hits
+	 * @return grouped hits
+	 */
+	public static ResultsGrouper fromGroups(Hits hits, HitProperty criteria, List<HitPropValue> identities, List<int[]> groupIndices) {
+		return new ResultsGrouper(hits, criteria, identities, groupIndices);
+	}
+
+	private void addGroup(Hits hits, HitPropValue groupId, int[] indices) {
+		// (the group's list of hits is only created when it is requested)
+		HitGroup group = new HitGroup(hits, groupId, defaultConcField, indices);
+		group.setContextField(contextField);
+		groups.put(groupId, group);
+		groupsOrdered.add(group);
+		if (indices.length > largestGroupSize)
+			largestGroupSize = indices.length;
+		totalHits += indices.length;
+	}
+
 	private void init(Hits hits, HitProperty criteria_) {
 		defaultConcField = hits.settings().concordanceField();
 		List<String> requiredContext = criteria_.needsContext();
@@ -97,33 +151,98 @@ public class ResultsGrouper extends HitGroups {
 			hits.findContext(requiredContext);
 		}
 		contextField = hits.getContextFieldPropName();
-		//Thread currentThread = Thread.currentThread();
-		Map<HitPropValue, List<Hit>> groupLists = new HashMap<>();
-		for (int i = 0; i < hits.size(); i++) {
-
-			HitPropValue identity = getGroupIdentity(i);
-			List<Hit> group = groupLists.get(identity);
-			if (group == null) {
-				group = new ArrayList<>();
-				groupLists.put(identity, group);
+
+		// Collect the hit indices per group. If the criteria can produce primitive
+		// group keys, we can split the hits into parts and group them in parallel.
+		int numberOfHits = hits.size();
+		List<PartialGrouping> parts;
+		if (criteria_.hasGroupKeys()) {
+			try {
+				parts = ParallelUtil.processRange(numberOfHits, ParallelUtil.DEFAULT_MIN_PART_SIZE,
+						(start, end) -> groupPart(criteria_, start, end));
+			} catch (InterruptedException e) {
+				// Thread was interrupted; don't complete the operation but return
+				// and let the caller detect and deal with the interruption.
+				Thread.currentThread().interrupt();
+				return;
+			}
+		} else {
+			parts = Arrays.asList(groupPart(criteria_, 0, numberOfHits));
+		}
+
+		// Merge the partial groupings (in order, so hits stay in their original order)
+		MutableLongObjectMap<IntArrayList> keyedGroups = new LongObjectHashMap<>();
+		Map<HitPropValue, IntArrayList> otherGroups = new HashMap<>();
+		for (PartialGrouping part: parts) {
+			part.keyedGroups.forEachKeyValue((key, indices) -> {
+				IntArrayList group = keyedGroups.get(key);
+				if (group == null)
+					keyedGroups.put(key, indices);
+				else
+					group.addAll(indices);
+			});
+			for (Map.Entry<HitPropValue, IntArrayList> e: part.otherGroups.entrySet()) {
+				IntArrayList group = otherGroups.get(e.getKey());
+				if (group == null)
+					otherGroups.put(e.getKey(), e.getValue());
+				else
+					group.addAll(e.getValue());
 			}
-			group.add(hits.getByOriginalOrder(i));
-			if (group.size() > largestGroupSize)
-				largestGroupSize = group.size();
-			totalHits++;
 		}
-		for (Map.Entry<HitPropValue, List<Hit>> e: groupLists.entrySet()) {
-			HitPropValue groupId = e.getKey();
-			List<Hit> hitList = e.getValue();
-			HitGroup group = new HitGroup(searcher, groupId, defaultConcField, hitList);
-			group.setContextField(contextField);
-			groups.put(groupId, group);
-			groupsOrdered.add(group);
+		List<IntArrayList> groupIndices = new ArrayList<>(keyedGroups.size() + otherGroups.size());
+		groupIndices.addAll(keyedGroups.values());
+		groupIndices.addAll(otherGroups.values());
+
+		// Create the groups, in order of first occurrence
+		groupIndices.sort((a, b) -> Integer.compare(a.get(0), b.get(0)));
+		for (IntArrayList indices: groupIndices) {
+			HitPropValue groupId = getGroupIdentity(indices.get(0));
+			addGroup(hits, groupId, indices.toArray());
 		}
+	}
+
+	/**
+	 * Hit indices per group for part of the hits.
+	 */
+	private static class PartialGrouping {
+		/** Groups for hits with a primitive group key */
+		MutableLongObjectMap<IntArrayList> keyedGroups = new LongObjectHashMap<>();
 
-		// If the group identities are context words, we should possibly merge
-		// some groups if they have identical sort orders (up to now, we've grouped on
-		// token id, not sort order).
+		/** Groups for hits without a primitive group key */
+		Map<HitPropValue, IntArrayList> otherGroups = new HashMap<>();
+	}
+
+	/**
+	 * Group part of the hits.
+	 *
+	 * @param criteria what to group on
+	 * @param start first hit to group
+	 * @param end first hit not to group
+	 * @return the hit indices per group
+	 */
+	private static PartialGrouping groupPart(HitProperty criteria, int start, int end) {
+		PartialGrouping result = new PartialGrouping();
+		boolean useKeys = criteria.hasGroupKeys();
+		for (int i = start; i < end; i++) {
+			long key = useKeys ? criteria.groupKey(i) : HitProperty.NO_GROUP_KEY;
+			IntArrayList group;
+			if (key != HitProperty.NO_GROUP_KEY) {
+				group = result.keyedGroups.get(key);
+				if (group == null) {
+					group = new IntArrayList();
+					result.keyedGroups.put(key, group);
+				}
+			} else {
+				HitPropValue identity = criteria.get(i);
+				group = result.otherGroups.get(identity);
+				if (group == null) {
+					group = new IntArrayList();
+					result.otherGroups.put(identity, group);
+				}
+			}
+			group.add(i);
+		}
+		return result;
 	}
 
 	/**
@@ -192,6 +311,13 @@ public class ResultsGrouper extends HitGroups {
 		return groups.size();
 	}
 
+	@Override
+	public long estimateSizeBytes() {
+		// Each group stores the indices of its hits
+		// (lists of hits are created when requested, usually only for a few groups)
+		return groups.size() * BYTES_PER_GROUP + (long)totalHits * RamUsageEstimator.NUM_BYTES_INT;
+	}
+
 	@Override
 	public String toString() {
 		return "ResultsGrouper with " + numberOfGroups() + " groups";
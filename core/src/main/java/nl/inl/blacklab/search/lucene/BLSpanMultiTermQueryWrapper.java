@@ -20,6 +20,7 @@ import nl.inl.blacklab.index.complex.ComplexFieldUtil;
 import nl.inl.blacklab.search.fimatch.ForwardIndexAccessor;
 import nl.inl.blacklab.search.fimatch.Nfa;
 import nl.inl.blacklab.search.fimatch.NfaState;
+import nl.inl.blacklab.search.lucene.optimize.IndexStatistics;
 import nl.inl.util.StringUtil;
 
 /**
@@ -171,23 +172,31 @@ public class BLSpanMultiTermQueryWrapper<Q extends MultiTermQuery>
 		String pattern = term.text();
 		Query wrapped = query.getWrappedQuery();
 		int numberOfChars;
+		boolean hasPrefix;
 		if (wrapped instanceof RegexpQuery) {
 			String prefixPostfix = findRegexPrefixSuffix(pattern);
 			numberOfChars = prefixPostfix.length();
+			hasPrefix = pattern.replaceAll("^\\^(\\(\\?\\-?[ic]\\))?", "").matches("^\\w.*");
 		} else if (wrapped instanceof WildcardQuery) {
 			numberOfChars = pattern.replaceAll("[\\*\\?]", "").length();
+			hasPrefix = pattern.length() > 0 && pattern.charAt(0) != '*' && pattern.charAt(0) != '?';
 		} else if (wrapped instanceof PrefixQuery) {
 			numberOfChars = pattern.length();
+			hasPrefix = pattern.length() > 0;
 		} else {
 			// Don't know; just use reverse matching
 			numberOfChars = 5;
+			hasPrefix = false;
 		}
-		long n;
-		try {
-			n = reader.getSumTotalTermFreq(term.field()); // total terms in field
-		} catch (IOException e) {
-			throw new RuntimeException(e);
+		IndexStatistics stats = IndexStatistics.get(reader);
+		if (hasPrefix && wrapped instanceof AutomatonQuery) {
+			// The matching terms can be found quickly using the term index;
+			// use their actual frequency (unless too many terms match)
+			long freq = stats.patternTermFreq((AutomatonQuery) wrapped, term.field());
+			if (freq >= 0)
+				return freq;
 		}
+		long n = stats.sumTotalTermFreq(term.field()); // total terms in field
 		// Make a very rough estimate of the number of terms that could match
 		// this. We tend to guess on the high side, because clauses matching lots
 		// of terms benefit a lot from using NFAs, and clauses that don't match that
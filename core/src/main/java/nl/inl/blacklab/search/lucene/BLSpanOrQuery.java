@@ -52,6 +52,12 @@ import nl.inl.blacklab.search.fimatch.NfaState;
  */
 public final class BLSpanOrQuery extends BLSpanQuery {
 
+	/** Read the postings of term clauses up front (see PostingsUnion) if there are at least this many */
+	private static final int UNION_MIN_CLAUSES = 64;
+
+	/** ...and if the total number of hits in the segment is at most this (to limit memory use) */
+	private static final long UNION_MAX_HITS = 5000000;
+
 	SpanOrQuery inner;
 
 	String field;
@@ -388,8 +394,22 @@ public final class BLSpanOrQuery extends BLSpanQuery {
 				//   that's why we bypass ScoringWrapperSpans here.
 				return subSpans.get(0) instanceof BLSpans ? (BLSpans)subSpans.get(0) : new BLSpansWrapper(subSpans.get(0));
 				//return new BLSpansWrapper(new ScoringWrapperSpans(subSpans.get(0), getSimScorer(context)));
+			} else if (subSpans.size() >= UNION_MIN_CLAUSES && canUsePostingsUnion(context)) {
+				// Many terms (e.g. an expanded wildcard); if all hits will be read, merging
+				// them per position through the priority queues is slow, so read and merge
+				// them up front. Otherwise, merge them lazily as usual.
+				return new SpansManyTermsOr(subSpans, mergeSpans(subSpans));
 			}
+			return mergeSpans(subSpans);
+		}
 
+		/**
+		 * Merge the clause spans lazily, using priority queues.
+		 *
+		 * @param subSpans the clause spans
+		 * @return the merged spans
+		 */
+		private BLSpans mergeSpans(final List<Spans> subSpans) {
 			final DisiPriorityQueue byDocQueue = new DisiPriorityQueue(subSpans.size());
 			for (Spans spans: subSpans) {
 				byDocQueue.add(new DisiWrapper(spans));
@@ -615,6 +635,31 @@ public final class BLSpanOrQuery extends BLSpanQuery {
 		}
 	}
 
+	/**
+	 * Can we determine our hits in this segment using PostingsUnion?
+	 *
+	 * Only if all our clauses are terms, and there aren't too many hits.
+	 * (whether we actually do also depends on whether all hits will be read)
+	 *
+	 * @param context the segment
+	 * @return true if we can
+	 * @throws IOException
+	 */
+	boolean canUsePostingsUnion(LeafReaderContext context) throws IOException {
+		long hits = 0;
+		for (SpanQuery clause: getClauses()) {
+			if (!(clause instanceof BLSpanTermQuery))
+				return false;
+			long freq = context.reader().totalTermFreq(((BLSpanTermQuery) clause).getTerm());
+			if (freq < 0)
+				return false; // (not recorded)
+			hits += freq;
+			if (hits > UNION_MAX_HITS)
+				return false;
+		}
+		return true;
+	}
+
 	@Override
 	public Nfa getNfa(ForwardIndexAccessor fiAccessor, int direction) {
 		// See if this is really just an expanded wildcard/regex query, and if so,
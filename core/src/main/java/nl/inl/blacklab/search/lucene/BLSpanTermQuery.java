@@ -37,6 +37,7 @@ import nl.inl.blacklab.index.complex.ComplexFieldUtil;
 import nl.inl.blacklab.search.fimatch.ForwardIndexAccessor;
 import nl.inl.blacklab.search.fimatch.Nfa;
 import nl.inl.blacklab.search.fimatch.NfaState;
+import nl.inl.blacklab.search.lucene.optimize.IndexStatistics;
 
 /**
  * BL-specific subclass of SpanTermQuery that changes what getField() returns
@@ -201,11 +202,7 @@ public class BLSpanTermQuery extends BLSpanQuery {
 
 	@Override
 	public long reverseMatchingCost(IndexReader reader) {
-		try {
-			return reader.totalTermFreq(query.getTerm());
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+		return IndexStatistics.get(reader).totalTermFreq(query.getTerm());
 	}
 
 	@Override
@@ -43,6 +43,9 @@ public abstract class BLSpans extends Spans {
 	 */
 	protected boolean childClausesCaptureGroups = true;
 
+	/** Budget to report our work to (see HitQueryContext), or null if none */
+	protected QueryBudget queryBudget;
+
 	/**
 	 * Makes a new Hit object from the document id, start and end positions.
 	 *
@@ -82,6 +85,7 @@ public abstract class BLSpans extends Spans {
 	 * @param context the hit query context, that e.g. keeps track of captured groups
 	 */
 	public void setHitQueryContext(HitQueryContext context) {
+		queryBudget = context.getBudget();
 		int before = context.getCaptureRegisterNumber();
 		passHitQueryContextToClauses(context);
 		if (context.getCaptureRegisterNumber() == before) {
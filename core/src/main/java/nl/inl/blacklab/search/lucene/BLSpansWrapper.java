@@ -134,6 +134,8 @@ public class BLSpansWrapper extends BLSpans {
 
 	@Override
 	public int nextStartPosition() throws IOException {
+		if (queryBudget != null)
+			queryBudget.positionsExamined(1);
 		return source.nextStartPosition();
 	}
 
@@ -145,7 +147,7 @@ public class BLSpansWrapper extends BLSpans {
 		// Naive implementations; subclasses may provide a faster version.
 		int pos;
 		do {
-			pos = source.nextStartPosition();
+			pos = nextStartPosition();
 		} while(pos < target && pos != NO_MORE_POSITIONS);
 		return pos;
 	}
@@ -180,4 +182,9 @@ public class BLSpansWrapper extends BLSpans {
 		return source.positionsCost();
 	}
 
+	@Override
+	public long cost() {
+		return source.cost();
+	}
+
 }
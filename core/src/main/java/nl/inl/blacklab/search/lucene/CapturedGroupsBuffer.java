@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2012 Institute for Dutch Lexicology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package nl.inl.blacklab.search.lucene;
+
+import java.util.Arrays;
+
+import nl.inl.blacklab.search.Span;
+
+/**
+ * Stores the captured groups for the hits in a bucket, in primitive arrays
+ * that are reused for the next bucket.
+ *
+ * Groups that weren't captured are stored with a start of -1.
+ */
+class CapturedGroupsBuffer {
+
+	/** Initial number of hits to allocate room for */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** Number of groups per hit */
+	private int numberOfGroups;
+
+	/** Start of each group, per hit (hit * numberOfGroups + group) */
+	private int[] starts = new int[0];
+
+	/** End of each group, per hit */
+	private int[] ends = new int[0];
+
+	/** Used to get the captured groups from the source spans (reused) */
+	private Span[] buffer = new Span[0];
+
+	/**
+	 * Remove all hits and set the number of groups per hit.
+	 *
+	 * @param numberOfGroups number of groups per hit
+	 */
+	void clear(int numberOfGroups) {
+		this.numberOfGroups = numberOfGroups;
+		if (buffer.length != numberOfGroups)
+			buffer = new Span[numberOfGroups];
+		if (starts.length > SpansInBuckets.ARRAYLIST_REALLOC_THRESHOLD * numberOfGroups) {
+			// Reallocate to avoid holding on to a lot of memory
+			starts = new int[0];
+			ends = new int[0];
+		}
+	}
+
+	/**
+	 * Store the current captured groups from a spans.
+	 *
+	 * @param hit index of the hit in the bucket
+	 * @param source spans to get the captured groups from
+	 */
+	void store(int hit, BLSpans source) {
+		Arrays.fill(buffer, null);
+		source.getCapturedGroups(buffer);
+		int offset = hit * numberOfGroups;
+		if (offset + numberOfGroups > starts.length) {
+			int newLength = Math.max(offset + numberOfGroups, Math.max(INITIAL_CAPACITY * numberOfGroups, starts.length * 2));
+			starts = Arrays.copyOf(starts, newLength);
+			ends = Arrays.copyOf(ends, newLength);
+		}
+		for (int i = 0; i < numberOfGroups; i++) {
+			Span group = buffer[i];
+			starts[offset + i] = group == null ? -1 : group.start;
+			ends[offset + i] = group == null ? -1 : group.end;
+		}
+	}
+
+	/**
+	 * Get the captured groups for a hit.
+	 *
+	 * Only sets the groups that were captured; others are left alone.
+	 *
+	 * @param hit index of the hit in the bucket
+	 * @param capturedGroups where to add the captured groups
+	 */
+	void get(int hit, Span[] capturedGroups) {
+		int offset = hit * numberOfGroups;
+		int n = Math.min(numberOfGroups, capturedGroups.length);
+		for (int i = 0; i < n; i++) {
+			if (starts[offset + i] >= 0)
+				capturedGroups[i] = new Span(starts[offset + i], ends[offset + i]);
+		}
+	}
+
+	/**
+	 * Swap the captured groups of two hits.
+	 *
+	 * @param i index of the first hit
+	 * @param j index of the second hit
+	 */
+	void swap(int i, int j) {
+		int a = i * numberOfGroups, b = j * numberOfGroups;
+		for (int k = 0; k < numberOfGroups; k++) {
+			int t = starts[a + k];
+			starts[a + k] = starts[b + k];
+			starts[b + k] = t;
+			t = ends[a + k];
+			ends[a + k] = ends[b + k];
+			ends[b + k] = t;
+		}
+	}
+
+}
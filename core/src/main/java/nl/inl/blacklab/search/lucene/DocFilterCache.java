@@ -0,0 +1,155 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BitDocIdSet;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RoaringDocIdSet;
+
+/**
+ * Caches the documents matching a filter query, per index segment.
+ *
+ * Searches often use the same metadata filter; this way, the filter only has
+ * to be evaluated once per segment. Entries are keyed by the (rewritten)
+ * filter query and the segment, so they can be reused as long as the segment
+ * exists, also after the index was reopened (see SegmentCache). The least
+ * recently used entries are evicted when the cache grows too large.
+ *
+ * Dense sets are stored as a bitset, sparse sets as a RoaringDocIdSet.
+ */
+public class DocFilterCache {
+
+	/** Default maximum size of the cache: 100 MB */
+	public static final long DEFAULT_MAX_SIZE_BYTES = 100 * 1000 * 1000;
+
+	/** Use a bitset if at least 1 in this many documents matches */
+	private static final int DENSE_RATIO = 128;
+
+	/** The cache used by SpanQueryFiltered */
+	private static DocFilterCache instance = new DocFilterCache(DEFAULT_MAX_SIZE_BYTES);
+
+	/**
+	 * Get the cache used for filtering span queries.
+	 *
+	 * @return the filter cache
+	 */
+	public static DocFilterCache get() {
+		return instance;
+	}
+
+	/** The cached document sets */
+	private SegmentCache<DocIdSet> cache;
+
+	/**
+	 * Create a filter cache.
+	 *
+	 * @param maxSizeBytes maximum size of the cache in bytes, or -1 for no limit
+	 */
+	public DocFilterCache(long maxSizeBytes) {
+		cache = new SegmentCache<>(maxSizeBytes, false); // (filter results don't depend on deletions)
+	}
+
+	/**
+	 * Get the documents in a segment matching a filter.
+	 *
+	 * @param filter the (rewritten) filter query, used as the cache key
+	 * @param filterWeight weight for the filter query, used to find the documents
+	 * @param context the segment
+	 * @return the matching documents, or null if there are none
+	 * @throws IOException on error
+	 */
+	public DocIdSetIterator iterator(Query filter, Weight filterWeight, LeafReaderContext context) throws IOException {
+		if (!hasEquals(filter)) {
+			// We can't use this query as a cache key
+			Scorer scorer = filterWeight.scorer(context);
+			return scorer == null ? null : scorer.iterator();
+		}
+		DocIdSet docs = cache.get(filter, context.reader());
+		if (docs == null) {
+			// Not cached yet; evaluate the filter (outside the lock, so other searches can continue)
+			docs = findDocs(filterWeight, context);
+			cache.put(filter, context.reader(), docs);
+		}
+		return docs.iterator();
+	}
+
+	/**
+	 * Does the query's class implement equals()?
+	 *
+	 * Query's own equals() only compares class and boost, so we can't use
+	 * queries that don't override it as a cache key.
+	 *
+	 * @param query the query
+	 * @return true if the query can be used as a cache key
+	 */
+	static boolean hasEquals(Query query) {
+		try {
+			return query.getClass().getMethod("equals", Object.class).getDeclaringClass() != Query.class;
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static DocIdSet findDocs(Weight filterWeight, LeafReaderContext context) throws IOException {
+		Scorer scorer = filterWeight.scorer(context);
+		if (scorer == null)
+			return DocIdSet.EMPTY;
+		DocIdSetIterator it = scorer.iterator();
+		int maxDoc = context.reader().maxDoc();
+		if (it.cost() * DENSE_RATIO >= maxDoc) {
+			FixedBitSet bits = new FixedBitSet(maxDoc);
+			bits.or(it);
+			return new BitDocIdSet(bits);
+		}
+		RoaringDocIdSet.Builder builder = new RoaringDocIdSet.Builder(maxDoc);
+		for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+			builder.add(doc);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Set the maximum size of the cache.
+	 *
+	 * @param maxSizeBytes maximum size in bytes, or -1 for no limit
+	 */
+	public void setMaxSizeBytes(long maxSizeBytes) {
+		cache.setMaxSizeBytes(maxSizeBytes);
+	}
+
+	public long getMaxSizeBytes() {
+		return cache.getMaxSizeBytes();
+	}
+
+	/** Remove all entries from the cache. */
+	public void clear() {
+		cache.clear();
+	}
+
+	public long getSizeBytes() {
+		return cache.getSizeBytes();
+	}
+
+	public int getNumberOfEntries() {
+		return cache.getNumberOfEntries();
+	}
+
+	public long getHits() {
+		return cache.getHits();
+	}
+
+	public long getMisses() {
+		return cache.getMisses();
+	}
+
+	public long getEvictions() {
+		return cache.getEvictions();
+	}
+
+}
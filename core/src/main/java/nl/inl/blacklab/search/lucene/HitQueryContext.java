@@ -13,6 +13,7 @@ import nl.inl.blacklab.search.Span;
  * over the hits. Captured groups will register themselves here and receive
  * an index in the captured group array, and BLSpans objects that need access
  * to captured groups will store a reference to this context and use it later.
+ * BLSpans objects that do a lot of work report it to the query budget, if any.
  */
 public class HitQueryContext {
 
@@ -25,6 +26,12 @@ public class HitQueryContext {
 	/** We use this to check if subclauses capture groups or not */
 	private int numberOfTimesGroupRegistered = 0;
 
+	/** Limits the work the query may do, or null for no limits */
+	private QueryBudget budget;
+
+	/** Will all hits be read (e.g. to count them), or just the first few? */
+	private boolean readingAllHits = false;
+
 	public HitQueryContext(BLSpans spans) {
 		this.rootSpans = spans;
 	}
@@ -91,4 +98,47 @@ public class HitQueryContext {
 		return numberOfTimesGroupRegistered;
 	}
 
+	/**
+	 * Get the budget for this query.
+	 *
+	 * @return the budget, or null if there are no limits
+	 */
+	public QueryBudget getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Set the budget for this query.
+	 *
+	 * Must be called before the context is passed to the BLSpans tree.
+	 *
+	 * @param budget the budget, or null for no limits
+	 */
+	public void setBudget(QueryBudget budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Will all hits be read?
+	 *
+	 * If so, BLSpans may choose to find all their hits in a segment up front
+	 * (see PostingsUnion) instead of lazily.
+	 *
+	 * @return true if all hits will be read, false if we don't know
+	 */
+	public boolean isReadingAllHits() {
+		return readingAllHits;
+	}
+
+	/**
+	 * Indicate whether all hits will be read.
+	 *
+	 * Must be called before the BLSpans tree starts iterating.
+	 *
+	 * @param readingAllHits true if all hits will be read, false if we don't know
+	 */
+	public void setReadingAllHits(boolean readingAllHits) {
+		this.readingAllHits = readingAllHits;
+	}
+
 }
@@ -0,0 +1,280 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.util.BytesRef;
+
+import nl.inl.util.ExUtil;
+import nl.inl.util.StringUtil;
+
+/**
+ * Gives fast access to the (first) value of a metadata field for each document,
+ * using the sorted DocValues that are indexed alongside the stored field.
+ *
+ * Values are numbered in sort order, so sorting and grouping on a metadata
+ * field can compare ints instead of loading stored documents.
+ *
+ * Older indices don't have DocValues for metadata fields; for those documents,
+ * valueIndex() returns NOT_INDEXED and the caller should use the stored field.
+ * The same goes for all documents if the field has too many distinct values
+ * (see MAX_VALUES).
+ */
+public class MetadataDocValues {
+
+	/** Document has no (or an empty) value for this field */
+	public static final int NO_VALUE = -1;
+
+	/** DocValues not available for this document; use the stored field instead */
+	public static final int NOT_INDEXED = -2;
+
+	/** Maximum length in bytes of a DocValues value; longer values are truncated */
+	public static final int MAX_VALUE_LENGTH = 32766;
+
+	/**
+	 * Don't build a value table for fields with more distinct values than this
+	 * (e.g. titles); that would take too much memory, and grouping on such a
+	 * field isn't useful anyway. The stored field is used instead.
+	 */
+	public static final int MAX_VALUES = 250000;
+
+	/** DocValues for fields we don't build a value table for (all documents NOT_INDEXED) */
+	private static final MetadataDocValues NOT_AVAILABLE = new MetadataDocValues();
+
+	/** DocValues per index reader and field name (being) built */
+	private static Map<IndexReader, Map<String, FutureTask<MetadataDocValues>>> cache = new WeakHashMap<>();
+
+	/**
+	 * Get the DocValues for a metadata field.
+	 *
+	 * The result is cached for as long as the index reader is in use. Building it
+	 * only blocks other threads that need the same field.
+	 *
+	 * @param reader the index reader
+	 * @param fieldName the metadata field
+	 * @return the DocValues for the field
+	 */
+	public static MetadataDocValues get(IndexReader reader, String fieldName) {
+		Map<String, FutureTask<MetadataDocValues>> fields;
+		synchronized (cache) {
+			fields = cache.get(reader);
+			if (fields == null) {
+				fields = new ConcurrentHashMap<>();
+				cache.put(reader, fields);
+			}
+		}
+		FutureTask<MetadataDocValues> task = fields.computeIfAbsent(fieldName,
+				f -> new FutureTask<>(() -> build(reader, fieldName)));
+		task.run(); // (does nothing if another thread ran or is running it)
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			// Let the caller detect the interruption; meanwhile, use the stored field
+			Thread.currentThread().interrupt();
+			return NOT_AVAILABLE;
+		} catch (ExecutionException e) {
+			fields.remove(fieldName, task); // (try again next time)
+			throw ExUtil.wrapRuntimeException(e.getCause());
+		}
+	}
+
+	private static MetadataDocValues build(IndexReader reader, String fieldName) throws IOException {
+		// Collect the distinct values from all segments
+		TreeSet<String> distinct = new TreeSet<>();
+		for (LeafReaderContext leaf: reader.leaves()) {
+			SortedDocValues dv = leaf.reader().getSortedDocValues(fieldName);
+			if (dv != null) {
+				for (int ord = 0; ord < dv.getValueCount(); ord++) {
+					distinct.add(dv.lookupOrd(ord).utf8ToString());
+					if (distinct.size() > MAX_VALUES)
+						return NOT_AVAILABLE;
+				}
+			}
+		}
+		return new MetadataDocValues(reader, fieldName, distinct.toArray(new String[0]));
+	}
+
+	/**
+	 * Create the DocValues field to add to a document for a metadata value.
+	 *
+	 * @param fieldName the metadata field
+	 * @param value the value
+	 * @return the DocValues field
+	 */
+	public static SortedDocValuesField createField(String fieldName, String value) {
+		BytesRef bytes = new BytesRef(value);
+		if (bytes.length > MAX_VALUE_LENGTH)
+			bytes.length = MAX_VALUE_LENGTH; // valueIndex() will fall back to the stored field
+		return new SortedDocValuesField(fieldName, bytes);
+	}
+
+	/** Index in values for each document, or NO_VALUE / NOT_INDEXED (null if all are NOT_INDEXED) */
+	private int[] valueIndexPerDoc;
+
+	/** The distinct values, in String.compareTo() order */
+	private String[] values;
+
+	/** Position of each value in collator order (collator-equal values share a rank) */
+	private int[] collationRank;
+
+	/** Each value parsed as an int, or Integer.MIN_VALUE if it's not an int */
+	private int[] intValues;
+
+	/** Create DocValues for which all documents are NOT_INDEXED */
+	private MetadataDocValues() {
+		values = new String[0];
+		collationRank = new int[0];
+		intValues = new int[0];
+	}
+
+	private MetadataDocValues(IndexReader reader, String fieldName, String[] values) throws IOException {
+		this.values = values;
+
+		// Determine the value for each document
+		valueIndexPerDoc = new int[reader.maxDoc()];
+		for (LeafReaderContext leaf: reader.leaves()) {
+			LeafReader leafReader = leaf.reader();
+			int docBase = leaf.docBase;
+			int maxDoc = leafReader.maxDoc();
+			SortedDocValues dv = leafReader.getSortedDocValues(fieldName);
+			if (dv == null) {
+				// Either no document in this segment has the field, or the
+				// segment was indexed without DocValues.
+				FieldInfo fieldInfo = leafReader.getFieldInfos().fieldInfo(fieldName);
+				Arrays.fill(valueIndexPerDoc, docBase, docBase + maxDoc, fieldInfo == null ? NO_VALUE : NOT_INDEXED);
+				continue;
+			}
+			int[] ordToIndex = new int[dv.getValueCount()];
+			for (int ord = 0; ord < ordToIndex.length; ord++) {
+				BytesRef bytes = dv.lookupOrd(ord);
+				String value = bytes.utf8ToString();
+				if (value.length() == 0)
+					ordToIndex[ord] = NO_VALUE;
+				else if (bytes.length >= MAX_VALUE_LENGTH)
+					ordToIndex[ord] = NOT_INDEXED; // may have been truncated
+				else
+					ordToIndex[ord] = Arrays.binarySearch(values, value);
+			}
+			for (int i = 0; i < maxDoc; i++) {
+				int ord = dv.getOrd(i);
+				// (no ord may also mean the document came from a segment
+				//  without DocValues that was merged into this one)
+				valueIndexPerDoc[docBase + i] = ord < 0 ? NOT_INDEXED : ordToIndex[ord];
+			}
+		}
+
+		// Rank the values according to the collator
+		Collator collator = StringUtil.getDefaultCollator(); // same as HitPropValue uses
+		CollationKey[] keys = new CollationKey[values.length];
+		Integer[] order = new Integer[values.length];
+		for (int i = 0; i < values.length; i++) {
+			keys[i] = collator.getCollationKey(values[i]);
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> keys[a].compareTo(keys[b]));
+		collationRank = new int[values.length];
+		int rank = 0;
+		for (int i = 0; i < order.length; i++) {
+			if (i > 0 && keys[order[i]].compareTo(keys[order[i - 1]]) != 0)
+				rank = i;
+			collationRank[order[i]] = rank;
+		}
+
+		intValues = new int[values.length];
+		for (int i = 0; i < values.length; i++) {
+			try {
+				intValues[i] = Integer.parseInt(values[i]);
+			} catch (NumberFormatException e) {
+				intValues[i] = Integer.MIN_VALUE;
+			}
+		}
+	}
+
+	/**
+	 * Get the value index for a document.
+	 *
+	 * Value indices are in String.compareTo() order of the values.
+	 *
+	 * @param doc the (global) document id
+	 * @return the value index, NO_VALUE if the document has no value,
+	 *   or NOT_INDEXED if the stored field should be used
+	 */
+	public int valueIndex(int doc) {
+		return valueIndexPerDoc == null ? NOT_INDEXED : valueIndexPerDoc[doc];
+	}
+
+	/**
+	 * Get the number of distinct values.
+	 *
+	 * @return the number of values
+	 */
+	public int numberOfValues() {
+		return values.length;
+	}
+
+	/**
+	 * Get a value.
+	 *
+	 * @param valueIndex the value index
+	 * @return the value
+	 */
+	public String value(int valueIndex) {
+		return values[valueIndex];
+	}
+
+	/**
+	 * Get the collation rank for a value.
+	 *
+	 * Comparing ranks gives the same result as comparing the values
+	 * using the default collator (as HitPropValue does).
+	 *
+	 * @param valueIndex the value index
+	 * @return the collation rank
+	 */
+	public int collationRank(int valueIndex) {
+		return collationRank[valueIndex];
+	}
+
+	/**
+	 * Get a value parsed as an int.
+	 *
+	 * @param valueIndex the value index
+	 * @param defaultValue what to return if the value is not an int
+	 * @return the int value
+	 */
+	public int intValue(int valueIndex, int defaultValue) {
+		int n = intValues[valueIndex];
+		if (n == Integer.MIN_VALUE && !values[valueIndex].equals(Integer.toString(n)))
+			return defaultValue;
+		return n;
+	}
+
+	/**
+	 * Find the value index for a value (e.g. one read from the stored field).
+	 *
+	 * @param value the value
+	 * @return the value index, NO_VALUE if the value is empty,
+	 *   or NOT_INDEXED if no document has this value in its DocValues
+	 */
+	public int findValue(String value) {
+		if (value == null || value.length() == 0)
+			return NO_VALUE;
+		int index = Arrays.binarySearch(values, value);
+		return index < 0 ? NOT_INDEXED : index;
+	}
+
+}
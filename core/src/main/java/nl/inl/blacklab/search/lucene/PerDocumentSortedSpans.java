@@ -16,20 +16,19 @@
 package nl.inl.blacklab.search.lucene;
 
 import java.io.IOException;
-import java.util.Comparator;
-
 import org.apache.lucene.search.spans.SpanCollector;
 import nl.inl.blacklab.search.Hit;
 import nl.inl.blacklab.search.Span;
+import nl.inl.blacklab.search.lucene.SpansInBuckets.BucketSpanComparator;
 
 /**
  * Sort the given Spans per document, according to the given comparator.
  */
 class PerDocumentSortedSpans extends BLSpans {
 
-	final static Comparator<Hit> cmpStartPoint = new SpanComparatorStartPoint();
+	final static BucketSpanComparator cmpStartPoint = new SpanComparatorStartPoint();
 
-	final static Comparator<Hit> cmpEndPoint = new SpanComparatorEndPoint();
+	final static BucketSpanComparator cmpEndPoint = new SpanComparatorEndPoint();
 
 	protected BLSpans source;
 
@@ -43,8 +42,12 @@ class PerDocumentSortedSpans extends BLSpans {
 
 	private int indexInBucket = -2; // -2 == no bucket yet; -1 == just started a bucket
 
-	public PerDocumentSortedSpans(BLSpans src, Comparator<Hit> comparator, boolean eliminateDuplicates) {
+	/** Are we sorted by start point? (if so, we can skip through the bucket in advanceStartPosition()) */
+	private boolean startPointSorted;
+
+	public PerDocumentSortedSpans(BLSpans src, BucketSpanComparator comparator, boolean eliminateDuplicates) {
 		this.source = src;
+		startPointSorted = comparator == cmpStartPoint;
 
 		// Wrap a HitsPerDocument and show it to the client as a normal, sequential Spans.
 		bucketedSpans = new SpansInBucketsPerDocumentSorted(src, comparator);
@@ -131,6 +134,52 @@ class PerDocumentSortedSpans extends BLSpans {
 		return curStart;
 	}
 
+	/**
+	 * Advance the start position in the current doc to target or beyond.
+	 *
+	 * If we're sorted by start point, the bucket is searched by galloping (doubling
+	 * the step until we pass the target, then binary searching the last step), so
+	 * skipping far ahead doesn't visit every hit in between.
+	 */
+	@Override
+	public int advanceStartPosition(int target) throws IOException {
+		if (!startPointSorted)
+			return super.advanceStartPosition(target);
+		if (nextStartPosition() == NO_MORE_POSITIONS || curStart >= target)
+			return startPosition();
+
+		// Gallop: find an index with start >= target (or the end of the bucket)
+		int n = bucketedSpans.bucketSize();
+		int lo = indexInBucket; // start < target
+		int step = 1;
+		int hi = lo + step;
+		while (hi < n && bucketedSpans.startPosition(hi) < target) {
+			lo = hi;
+			step <<= 1;
+			hi = lo + step;
+		}
+		if (hi > n)
+			hi = n;
+
+		// Binary search between lo (start < target) and hi (start >= target, or end of bucket)
+		while (hi - lo > 1) {
+			int mid = (lo + hi) >>> 1;
+			if (bucketedSpans.startPosition(mid) < target)
+				lo = mid;
+			else
+				hi = mid;
+		}
+		if (hi == n) {
+			// No hit at or beyond target; we're done with this bucket
+			indexInBucket = n - 1;
+			return nextStartPosition();
+		}
+		indexInBucket = hi;
+		curStart = bucketedSpans.startPosition(indexInBucket);
+		curEnd = bucketedSpans.endPosition(indexInBucket);
+		return curStart;
+	}
+
 	@Override
 	public int advance(int target) throws IOException {
 		curDoc = bucketedSpans.advance(target);
@@ -173,4 +222,9 @@ class PerDocumentSortedSpans extends BLSpans {
 	public float positionsCost() {
 		return 0; // should maybe be bucketedSpans.positionsCost()
 	}
+
+	@Override
+	public long cost() {
+		return source.cost();
+	}
 }
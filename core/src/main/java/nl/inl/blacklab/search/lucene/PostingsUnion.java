@@ -0,0 +1,168 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.spans.Spans;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+
+import nl.inl.util.ExUtil;
+import nl.inl.util.ParallelUtil;
+
+/**
+ * Computes the union of the hits of many single-token clauses (e.g. the terms
+ * an expanded wildcard or regex matched) in a segment up front, instead of
+ * merging the clauses through a priority queue while iterating.
+ *
+ * The clauses are read in groups, in parallel. Each clause produces a sorted
+ * run of hits, encoded as (doc &lt;&lt; 32 | start); the runs in a group are
+ * combined using a k-way merge on these primitive values, and the group
+ * results are merged in the same way.
+ *
+ * This reads all hits in the segment before returning the first one, so it's
+ * only used if all hits will be read anyway (see SpansManyTermsOr).
+ */
+class PostingsUnion {
+
+	/** Minimum number of clauses to read and merge in one part */
+	private static final int MIN_CLAUSES_PER_PART = 16;
+
+	private PostingsUnion() {
+	}
+
+	/**
+	 * Read all hits from single-token clauses and return their union.
+	 *
+	 * Like the OR spans, this doesn't eliminate duplicates.
+	 *
+	 * @param clauses the clause spans (not started yet); must all match single tokens
+	 * @return spans over the union of the hits
+	 * @throws InterruptedIOException if the thread was interrupted (e.g. the search was aborted)
+	 */
+	static BLSpans union(final List<Spans> clauses) throws InterruptedIOException {
+		List<long[]> runs;
+		try {
+			runs = ParallelUtil.processRange(clauses.size(), MIN_CLAUSES_PER_PART, (start, end) -> {
+				List<long[]> groupRuns = new ArrayList<>(end - start);
+				for (int i = start; i < end; i++) {
+					try {
+						groupRuns.add(read(clauses.get(i)));
+					} catch (IOException e) {
+						throw ExUtil.wrapRuntimeException(e);
+					}
+				}
+				return merge(groupRuns);
+			});
+		} catch (InterruptedException e) {
+			// Spans can only throw IOException; Hits turns this back into an InterruptedException
+			Thread.currentThread().interrupt();
+			InterruptedIOException ex = new InterruptedIOException("Operation aborted");
+			ex.initCause(e);
+			throw ex;
+		}
+		long[] hits = merge(runs);
+		int n = hits.length;
+		int[] docs = new int[n], starts = new int[n], ends = new int[n];
+		for (int i = 0; i < n; i++) {
+			docs[i] = (int) (hits[i] >>> 32);
+			starts[i] = (int) hits[i];
+			ends[i] = starts[i] + 1;
+		}
+		return new SpansCached(docs, starts, ends, n);
+	}
+
+	/**
+	 * Read all hits from a clause.
+	 *
+	 * @param spans the clause
+	 * @return the hits, encoded as (doc &lt;&lt; 32 | start), in order
+	 * @throws IOException
+	 */
+	static long[] read(Spans spans) throws IOException {
+		LongArrayList hits = new LongArrayList();
+		int doc;
+		while ((doc = spans.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+			int start;
+			while ((start = spans.nextStartPosition()) != Spans.NO_MORE_POSITIONS) {
+				hits.add((long) doc << 32 | start);
+			}
+		}
+		return hits.toArray();
+	}
+
+	/**
+	 * Merge sorted runs of values into one sorted array.
+	 *
+	 * Uses a binary heap of run indices, ordered by each run's current value.
+	 *
+	 * @param runs the sorted runs (may be modified)
+	 * @return the merged values
+	 */
+	static long[] merge(List<long[]> runs) {
+		// Leave out empty runs
+		int total = 0;
+		for (int i = runs.size() - 1; i >= 0; i--) {
+			if (runs.get(i).length == 0)
+				runs.remove(i);
+			else
+				total += runs.get(i).length;
+		}
+		if (runs.isEmpty())
+			return new long[0];
+		if (runs.size() == 1)
+			return runs.get(0);
+
+		long[][] run = runs.toArray(new long[0][]);
+		int[] pos = new int[run.length];
+		int[] heap = new int[run.length];
+		int heapSize = run.length;
+		for (int i = 0; i < heapSize; i++) {
+			heap[i] = i;
+		}
+		for (int i = heapSize / 2 - 1; i >= 0; i--) {
+			siftDown(heap, heapSize, i, run, pos);
+		}
+
+		long[] result = new long[total];
+		for (int i = 0; i < total; i++) {
+			int r = heap[0];
+			result[i] = run[r][pos[r]];
+			pos[r]++;
+			if (pos[r] == run[r].length) {
+				// Run exhausted; remove it from the heap
+				heapSize--;
+				heap[0] = heap[heapSize];
+			}
+			if (heapSize > 0)
+				siftDown(heap, heapSize, 0, run, pos);
+		}
+		return result;
+	}
+
+	private static void siftDown(int[] heap, int heapSize, int i, long[][] run, int[] pos) {
+		int r = heap[i];
+		long value = run[r][pos[r]];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= heapSize)
+				break;
+			long childValue = run[heap[child]][pos[heap[child]]];
+			if (child + 1 < heapSize) {
+				long rightValue = run[heap[child + 1]][pos[heap[child + 1]]];
+				if (rightValue < childValue) {
+					child++;
+					childValue = rightValue;
+				}
+			}
+			if (value <= childValue)
+				break;
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = r;
+	}
+
+}
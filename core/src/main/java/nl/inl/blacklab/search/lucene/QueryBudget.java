@@ -0,0 +1,159 @@
+package nl.inl.blacklab.search.lucene;
+
+import nl.inl.blacklab.search.QueryBudgetExceededException;
+
+/**
+ * Limits the work a single query may do, so pathological queries (e.g. nested
+ * repetitions or broad negations) can't run for minutes.
+ *
+ * The budget is passed to the BLSpans tree through the HitQueryContext. Spans
+ * report the work they do (positions examined, buckets built, NFA states
+ * visited); the cost limit is checked whenever work is reported, the time
+ * limit at document and bucket boundaries. When either limit is exceeded, a
+ * QueryBudgetExceededException is thrown; Hits catches it and keeps the hits
+ * found so far.
+ *
+ * A budget is used by one thread at a time, like the Spans themselves.
+ */
+public class QueryBudget {
+
+	/** Value for limits that indicates there is no limit */
+	public static final long UNLIMITED = -1;
+
+	/** Cost of building a bucket, in addition to the positions in it */
+	private static final int BUCKET_COST = 10;
+
+	/** Check the time every 1024 buckets (buckets may be small and numerous) */
+	private static final int TIME_CHECK_INTERVAL_MASK = 0x3FF;
+
+	/** Maximum cost (positions examined + NFA states visited + BUCKET_COST per bucket), or UNLIMITED */
+	private long maxCost;
+
+	/** Maximum time in ms, or UNLIMITED */
+	private long maxTimeMs;
+
+	/** When we started (System.nanoTime()) */
+	private long startTime;
+
+	private long positionsExamined;
+
+	private long bucketsBuilt;
+
+	private long nfaStatesVisited;
+
+	/** Why we stopped, or null if we didn't */
+	private String exceeded;
+
+	/**
+	 * Create a query budget, starting the clock.
+	 *
+	 * @param maxCost maximum cost, or UNLIMITED
+	 * @param maxTimeMs maximum time in ms, or UNLIMITED
+	 */
+	public QueryBudget(long maxCost, long maxTimeMs) {
+		this.maxCost = maxCost;
+		this.maxTimeMs = maxTimeMs;
+		startTime = System.nanoTime();
+	}
+
+	/**
+	 * Report that positions were examined.
+	 *
+	 * @param n number of positions
+	 */
+	public void positionsExamined(long n) {
+		positionsExamined += n;
+		checkCost();
+	}
+
+	/**
+	 * Report that a bucket was built, checking the time every so often.
+	 *
+	 * @param hits number of hits in the bucket
+	 */
+	public void bucketBuilt(int hits) {
+		bucketsBuilt++;
+		positionsExamined += hits;
+		checkCost();
+		if ((bucketsBuilt & TIME_CHECK_INTERVAL_MASK) == 0)
+			checkTime();
+	}
+
+	/**
+	 * Report that NFA states were visited while matching using the forward index.
+	 *
+	 * @param n number of states visited
+	 */
+	public void nfaStatesVisited(long n) {
+		nfaStatesVisited += n;
+		checkCost();
+	}
+
+	/**
+	 * Check if we've exceeded the time limit. Called at document boundaries.
+	 */
+	public void checkTime() {
+		if (maxTimeMs >= 0 && getTimeMs() > maxTimeMs)
+			exceed("Query took longer than " + maxTimeMs + " ms");
+	}
+
+	private void checkCost() {
+		if (maxCost >= 0 && getCost() > maxCost)
+			exceed("Query cost exceeded " + maxCost);
+	}
+
+	private void exceed(String reason) {
+		if (exceeded == null)
+			exceeded = reason;
+		throw new QueryBudgetExceededException(reason);
+	}
+
+	/**
+	 * Get the cost so far.
+	 *
+	 * @return positions examined + NFA states visited + a fixed cost per bucket
+	 */
+	public long getCost() {
+		return positionsExamined + nfaStatesVisited + bucketsBuilt * BUCKET_COST;
+	}
+
+	public long getTimeMs() {
+		return (System.nanoTime() - startTime) / 1000000;
+	}
+
+	public long getPositionsExamined() {
+		return positionsExamined;
+	}
+
+	public long getBucketsBuilt() {
+		return bucketsBuilt;
+	}
+
+	public long getNfaStatesVisited() {
+		return nfaStatesVisited;
+	}
+
+	/**
+	 * Did the query exceed its budget?
+	 *
+	 * @return true if it did (so the results are incomplete)
+	 */
+	public boolean isExceeded() {
+		return exceeded != null;
+	}
+
+	/**
+	 * Get the reason the query was stopped.
+	 *
+	 * @return the reason, or null if it wasn't stopped
+	 */
+	public String getExceededReason() {
+		return exceeded;
+	}
+
+	@Override
+	public String toString() {
+		return "QueryBudget(maxCost=" + maxCost + ", maxTimeMs=" + maxTimeMs + ", cost=" + getCost() + ", timeMs=" + getTimeMs() + ")";
+	}
+
+}
@@ -0,0 +1,223 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.StringHelper;
+
+/**
+ * Caches values per query and index segment.
+ *
+ * Entries are keyed by a query and the segment's unique id (and optionally
+ * its deletions). A segment's id stays the same when the index is reopened,
+ * so entries for unchanged segments can be reused by the new reader, e.g.
+ * after documents were added. Entries for segments that no longer exist
+ * (e.g. because they were merged) are never used again, and are evicted
+ * like any other least recently used entry when the cache grows too large.
+ *
+ * Readers that don't give access to the segment id are keyed on their core
+ * cache key instead; those entries are removed when the segment is closed.
+ *
+ * @param <V> type of value to cache
+ */
+class SegmentCache<V extends Accountable> {
+
+	/** Key for a cache entry */
+	private static class Key {
+
+		Object query;
+
+		/** Identifies the segment (and possibly its deletions) */
+		Object segmentKey;
+
+		/** Segment core this entry belongs to, if it should be removed when the core is closed; otherwise null */
+		Object coreKey;
+
+		Key(Object query, Object segmentKey, Object coreKey) {
+			this.query = query;
+			this.segmentKey = segmentKey;
+			this.coreKey = coreKey;
+		}
+
+		@Override
+		public int hashCode() {
+			return query.hashCode() * 31 + segmentKey.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return segmentKey.equals(other.segmentKey) && query.equals(other.query);
+		}
+	}
+
+	/** Cached values, least recently used first */
+	private Map<Key, V> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+	/** Segments we've registered a close listener with */
+	private Set<Object> knownCores = new HashSet<>();
+
+	/** Maximum size of the cache in bytes, or -1 for no limit */
+	private long maxSizeBytes;
+
+	/** Current (estimated) size of the cache in bytes */
+	private long sizeBytes = 0;
+
+	private long hits = 0;
+
+	private long misses = 0;
+
+	private long evictions = 0;
+
+	/** If true, entries are only valid for the segment with the same deleted documents */
+	private boolean dependsOnDeletions;
+
+	/**
+	 * Create a cache.
+	 *
+	 * @param maxSizeBytes maximum size of the cache in bytes, or -1 for no limit
+	 * @param dependsOnDeletions if true, entries are only valid for the segment
+	 *   with the same deleted documents
+	 */
+	SegmentCache(long maxSizeBytes, boolean dependsOnDeletions) {
+		this.maxSizeBytes = maxSizeBytes;
+		this.dependsOnDeletions = dependsOnDeletions;
+	}
+
+	private Key key(Object query, LeafReader reader) {
+		LeafReader unwrapped = FilterLeafReader.unwrap(reader);
+		if (unwrapped instanceof SegmentReader) {
+			// Key on the segment's unique id, which stays the same when the index is reopened
+			SegmentCommitInfo info = ((SegmentReader) unwrapped).getSegmentInfo();
+			// (updated doc values would change filter results)
+			String segmentKey = StringHelper.idToString(info.info.getId()) + "/" + info.getDocValuesGen();
+			if (dependsOnDeletions) {
+				// (deletions that weren't committed yet don't change the delGen, but do change the count)
+				segmentKey += "/" + info.getDelGen() + "/" + reader.numDeletedDocs();
+			}
+			return new Key(query, segmentKey, null);
+		}
+		Object coreKey = reader.getCoreCacheKey();
+		return new Key(query, dependsOnDeletions ? reader.getCombinedCoreAndDeletesKey() : coreKey, coreKey);
+	}
+
+	/**
+	 * Get a value from the cache.
+	 *
+	 * @param query the query
+	 * @param reader the segment
+	 * @return the value, or null if not cached
+	 */
+	synchronized V get(Object query, LeafReader reader) {
+		V value = cache.get(key(query, reader));
+		if (value != null)
+			hits++;
+		else
+			misses++;
+		return value;
+	}
+
+	/**
+	 * Add a value to the cache.
+	 *
+	 * @param query the query
+	 * @param reader the segment
+	 * @param value the value
+	 */
+	synchronized void put(Object query, LeafReader reader, V value) {
+		long entrySize = entrySize(value);
+		if (maxSizeBytes >= 0 && entrySize > maxSizeBytes)
+			return; // would never fit
+		Key key = key(query, reader);
+		if (key.coreKey != null && knownCores.add(key.coreKey)) {
+			// Remove entries when the segment is closed
+			reader.addCoreClosedListener(this::removeCore);
+		}
+		V previous = cache.put(key, value);
+		if (previous != null)
+			sizeBytes -= entrySize(previous);
+		sizeBytes += entrySize;
+		evict();
+	}
+
+	private static long entrySize(Accountable value) {
+		return value.ramBytesUsed() + RamUsageEstimator.NUM_BYTES_OBJECT_REF * 4;
+	}
+
+	/** Evict least recently used entries until the cache is small enough */
+	private void evict() {
+		if (maxSizeBytes < 0)
+			return;
+		Iterator<V> it = cache.values().iterator();
+		while (sizeBytes > maxSizeBytes && it.hasNext()) {
+			sizeBytes -= entrySize(it.next());
+			it.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Remove all entries for a segment.
+	 *
+	 * Called when the segment is closed.
+	 *
+	 * @param coreKey the segment's core cache key
+	 */
+	synchronized void removeCore(Object coreKey) {
+		knownCores.remove(coreKey);
+		Iterator<Map.Entry<Key, V>> it = cache.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Key, V> entry = it.next();
+			if (entry.getKey().coreKey == coreKey) {
+				sizeBytes -= entrySize(entry.getValue());
+				it.remove();
+			}
+		}
+	}
+
+	synchronized void setMaxSizeBytes(long maxSizeBytes) {
+		this.maxSizeBytes = maxSizeBytes;
+		evict();
+	}
+
+	synchronized long getMaxSizeBytes() {
+		return maxSizeBytes;
+	}
+
+	synchronized void clear() {
+		cache.clear();
+		sizeBytes = 0;
+	}
+
+	synchronized long getSizeBytes() {
+		return sizeBytes;
+	}
+
+	synchronized int getNumberOfEntries() {
+		return cache.size();
+	}
+
+	synchronized long getHits() {
+		return hits;
+	}
+
+	synchronized long getMisses() {
+		return misses;
+	}
+
+	synchronized long getEvictions() {
+		return evictions;
+	}
+
+}
@@ -43,7 +43,7 @@ import nl.inl.blacklab.search.Hit;
  * (2, 4)
  * </pre>
  */
-class SpanComparatorEndPoint implements Comparator<Hit> {
+class SpanComparatorEndPoint implements Comparator<Hit>, SpansInBuckets.BucketSpanComparator {
 	@Override
 	public int compare(Hit o1, Hit o2) {
 		if (o2.end != o1.end)
@@ -51,4 +51,12 @@ class SpanComparatorEndPoint implements Comparator<Hit> {
 
 		return o1.start - o2.start;
 	}
+
+	@Override
+	public int compare(int start1, int end1, int start2, int end2) {
+		if (end2 != end1)
+			return end1 - end2;
+
+		return start1 - start2;
+	}
 }
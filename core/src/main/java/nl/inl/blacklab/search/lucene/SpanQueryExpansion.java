@@ -83,7 +83,7 @@ public class SpanQueryExpansion extends BLSpanQueryAbstract {
 			return false;
 
 		final SpanQueryExpansion that = (SpanQueryExpansion) o;
-		return expandToLeft == that.expandToLeft && min == that.min && max == that.max;
+		return expandToLeft == that.expandToLeft && min == that.min && max == that.max && ignoreLastToken == that.ignoreLastToken;
 	}
 
 	@Override
@@ -28,8 +28,13 @@ import org.apache.lucene.search.IndexSearcher;
 
 import nl.inl.blacklab.search.fimatch.ForwardIndexAccessor;
 import nl.inl.blacklab.search.fimatch.Nfa;
+import nl.inl.blacklab.search.fimatch.NfaCompiled;
+import nl.inl.blacklab.search.fimatch.NfaDfa;
 import nl.inl.blacklab.search.fimatch.NfaState;
 import nl.inl.blacklab.search.fimatch.NfaTwoWay;
+import nl.inl.blacklab.search.lucene.optimize.CostModel;
+import nl.inl.blacklab.search.lucene.optimize.PlanFeedback;
+import nl.inl.blacklab.search.lucene.optimize.SequencePlan;
 
 /**
  * Find hits that match the specified NFA, starting from the
@@ -84,18 +89,111 @@ public class SpanQueryFiSeq extends BLSpanQueryAbstract {
 		nfa.finish();
 		nfa.lookupPropertyNumbers(fiAccessor, new IdentityHashMap<NfaState,Boolean>());
 
+		// Compile it, so we can build a DFA while matching (if possible; otherwise we interpret the NFA)
+		NfaCompiled compiledNfa = NfaCompiled.compile(nfa.getNfa().getStartingState());
+
 		BLSpanWeight anchorWeight = clauses.get(0).createWeight(searcher, needsScores);
 		Map<Term, TermContext> contexts = needsScores ? getTermContexts(anchorWeight) : null;
-		return new SpanWeightFiSeq(anchorWeight, searcher, contexts);
+		return new SpanWeightFiSeq(anchorWeight, compiledNfa, searcher, contexts);
+	}
+
+	/**
+	 * Is there an alternative plan we can switch to while matching?
+	 *
+	 * That is: the anchor and NFA part don't overlap, so we can match them as a
+	 * regular sequence instead.
+	 *
+	 * @return true if we can switch
+	 */
+	private boolean canSwitchToSequence() {
+		boolean nonOverlapping = startOfAnchor && direction == -1 || !startOfAnchor && direction == 1;
+		return nonOverlapping && !nfaQuery.matchesEmptySequence();
+	}
+
+	/**
+	 * Get the left and right clause of the sequence we match.
+	 *
+	 * @return left and right clause
+	 */
+	private BLSpanQuery[] sequenceClauses() {
+		BLSpanQuery anchor = clauses.get(0);
+		return direction == 1 ? new BLSpanQuery[] { anchor, nfaQuery } : new BLSpanQuery[] { nfaQuery, anchor };
 	}
 
 	class SpanWeightFiSeq extends BLSpanWeight {
 
 		final BLSpanWeight anchorWeight;
 
-		public SpanWeightFiSeq(BLSpanWeight anchorWeight, IndexSearcher searcher, Map<Term, TermContext> terms) throws IOException {
+		/** Compiled NFA, or null if it couldn't be compiled */
+		final NfaCompiled compiledNfa;
+
+		final IndexSearcher searcher;
+
+		/** Where to report the observed cost */
+		final PlanFeedback feedback;
+
+		/** Shape of our sequence, for reporting observations */
+		final String shape;
+
+		/** Estimated cost of NFA-matching per document in the index (without feedback correction), or -1 if unknown */
+		final double estimatedCostPerDoc;
+
+		/** Weight for the alternative plan (created when first needed) */
+		private BLSpanWeight alternativeWeight;
+
+		/** Did we find the alternative plan has weaker guarantees than we do? */
+		private boolean alternativeImpossible;
+
+		/** Have we decided to use the alternative plan for the remaining segments? */
+		private volatile boolean useAlternative;
+
+		public SpanWeightFiSeq(BLSpanWeight anchorWeight, NfaCompiled compiledNfa, IndexSearcher searcher, Map<Term, TermContext> terms) throws IOException {
 			super(SpanQueryFiSeq.this, searcher, terms);
 			this.anchorWeight = anchorWeight;
+			this.compiledNfa = compiledNfa;
+			this.searcher = searcher;
+			IndexReader reader = searcher.getIndexReader();
+			BLSpanQuery[] seq = sequenceClauses();
+			feedback = PlanFeedback.get(reader);
+			shape = PlanFeedback.shape(seq[0], seq[1]);
+			double estimatedCost = -1;
+			if (canSwitchToSequence()) {
+				SequencePlan plan = CostModel.estimate(seq[0], seq[1], reader);
+				double cost = direction == 1 ? plan.getNfaForwardCost() : plan.getNfaBackwardCost();
+				if (cost >= 0)
+					estimatedCost = cost / plan.getNfaCostCorrection();
+			}
+			estimatedCostPerDoc = estimatedCost < 0 ? -1 : estimatedCost / Math.max(1, reader.maxDoc());
+		}
+
+		/**
+		 * Get the weight for matching our sequence using the postings.
+		 *
+		 * @return the weight, or null if the alternative has weaker guarantees than we do
+		 * @throws IOException
+		 */
+		synchronized BLSpanWeight getAlternativeWeight() throws IOException {
+			if (alternativeWeight == null && !alternativeImpossible) {
+				BLSpanQuery rewrittenNfaQuery = nfaQuery.rewrite(searcher.getIndexReader());
+				BLSpanQuery anchor = clauses.get(0);
+				SpanQuerySequence alternative = direction == 1 ? new SpanQuerySequence(anchor, rewrittenNfaQuery) :
+						new SpanQuerySequence(rewrittenNfaQuery, anchor);
+				if (hitsStartPointSorted() && !alternative.hitsStartPointSorted() ||
+						hitsEndPointSorted() && !alternative.hitsEndPointSorted() ||
+						hitsHaveUniqueStart() && !alternative.hitsHaveUniqueStart() ||
+						hitsHaveUniqueEnd() && !alternative.hitsHaveUniqueEnd()) {
+					alternativeImpossible = true;
+					return null;
+				}
+				alternativeWeight = alternative.createWeight(searcher, false);
+			}
+			return alternativeWeight;
+		}
+
+		BLSpans getAlternativeSpans(LeafReaderContext context, Postings requiredPostings) throws IOException {
+			BLSpans spans = getAlternativeWeight().getSpans(context, requiredPostings);
+			BLSpanQuery alternative = (BLSpanQuery) alternativeWeight.getQuery();
+			return BLSpans.optSortUniq(spans, false, hitsAreUnique() && !alternative.hitsAreUnique());
 		}
 
 		@Override
@@ -110,16 +208,58 @@ public class SpanQueryFiSeq extends BLSpanQueryAbstract {
 
 		@Override
 		public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+			if (useAlternative) {
+				// NFA-matching was far more expensive than estimated in an earlier segment
+				return getAlternativeSpans(context, requiredPostings);
+			}
 			BLSpans anchorSpans = anchorWeight.getSpans(context, requiredPostings);
 			if (anchorSpans == null)
 				return null;
 			if (!clauses.get(0).hitsAreUnique())
 				anchorSpans = BLSpans.optSortUniq(anchorSpans, false, true);
-			return new SpansFiSeq(anchorSpans, startOfAnchor, nfa.getNfa().getStartingState(), direction,
+			NfaDfa dfa = compiledNfa == null ? null : compiledNfa.newDfa();
+			SpansFiSeq spans = new SpansFiSeq(anchorSpans, startOfAnchor, nfa.getNfa().getStartingState(), dfa, direction,
 					fiAccessor.getForwardIndexAccessorLeafReader(context.reader()));
+			if (dfa == null || estimatedCostPerDoc < 0)
+				return spans; // we can't measure the cost or can't switch
+			return new SpansFiSeqAdaptive(spans, estimatedCostPerDoc * context.reader().maxDoc(), new SpansFiSeqAdaptive.Listener() {
+				@Override
+				public boolean canSwitch() throws IOException {
+					return getAlternativeWeight() != null;
+				}
+
+				@Override
+				public BLSpans getAlternativeSpans() throws IOException {
+					return SpanWeightFiSeq.this.getAlternativeSpans(context, requiredPostings);
+				}
+
+				@Override
+				public void done(double observedCost, long anchorsTested, long matchesFound, long timeMs, boolean switched) {
+					feedback.record(shape, observedCost, estimatedCostPerDoc * context.reader().maxDoc(), anchorsTested, matchesFound, timeMs);
+					if (switched)
+						useAlternative = true;
+				}
+			});
 		}
 	}
 
+	@Override
+	public boolean equals(Object o) {
+		if (!super.equals(o))
+			return false;
+		final SpanQueryFiSeq that = (SpanQueryFiSeq) o;
+		return nfaQuery.equals(that.nfaQuery) && direction == that.direction && startOfAnchor == that.startOfAnchor;
+	}
+
+	@Override
+	public int hashCode() {
+		int h = super.hashCode();
+		h ^= nfaQuery.hashCode();
+		h ^= direction << 5;
+		h ^= startOfAnchor ? 1 : 0;
+		return h;
+	}
+
 	@Override
 	public String toString(String field) {
 		return "FISEQ(" + clausesToString(field) + ", " + nfa.getNfa() + ", " + direction + ")";
@@ -62,7 +62,7 @@ public class SpanQueryFilterNGrams extends BLSpanQueryAbstract {
 			return false;
 
 		final SpanQueryFilterNGrams that = (SpanQueryFilterNGrams) o;
-		return op == that.op && min == that.min && max == that.max;
+		return op == that.op && min == that.min && max == that.max && ignoreLastToken == that.ignoreLastToken;
 	}
 
 	@Override
@@ -132,6 +132,7 @@ public class SpanQueryFilterNGrams extends BLSpanQueryAbstract {
 		h ^= min << 10;
 		h ^= max << 5;
 		h ^= op.hashCode();
+		h ^= ignoreLastToken ? 1231 : 1237;
 		return h;
 	}
 
@@ -142,18 +142,22 @@ public class SpanQueryFiltered extends BLSpanQueryAbstract {
         if (rewrite instanceof MatchNoDocsQuery)
             rewrite = new TermQuery(new Term("_nonexistentfield_", "_nonexistentvalue_")); // HACK. This "fixes" the 'Query does not implement createWeight issue'
         Weight filterWeight = rewrite.createWeight(searcher, false);
-		return new SpanWeightFiltered(weight, filterWeight, searcher, needsScores ? getTermContexts(weight) : null);
+		return new SpanWeightFiltered(weight, rewrite, filterWeight, searcher, needsScores ? getTermContexts(weight) : null);
 	}
 
 	class SpanWeightFiltered extends BLSpanWeight {
 
 		final BLSpanWeight weight;
 
+		/** Rewritten filter query (key for the filter cache) */
+		final Query filterQuery;
+
 		final Weight filterWeight;
 
-		public SpanWeightFiltered(BLSpanWeight weight, Weight filterWeight, IndexSearcher searcher, Map<Term, TermContext> terms) throws IOException {
+		public SpanWeightFiltered(BLSpanWeight weight, Query filterQuery, Weight filterWeight, IndexSearcher searcher, Map<Term, TermContext> terms) throws IOException {
 			super(SpanQueryFiltered.this, searcher, terms);
 			this.weight = weight;
+			this.filterQuery = filterQuery;
 			this.filterWeight = filterWeight;
 		}
 
@@ -172,11 +176,25 @@ public class SpanQueryFiltered extends BLSpanQueryAbstract {
 			BLSpans result = weight.getSpans(context, requiredPostings);
 			if (result == null)
 				return null;
-			return new SpansFiltered(result, filterWeight.scorer(context));
+			// Get the filtered documents in this segment from the cache (or evaluate the filter)
+			return new SpansFiltered(result, DocFilterCache.get().iterator(filterQuery, filterWeight, context));
 		}
 
 	}
 
+	@Override
+	public boolean equals(Object o) {
+		if (!super.equals(o))
+			return false;
+		Query otherFilter = ((SpanQueryFiltered) o).filter;
+		return filter == otherFilter || DocFilterCache.hasEquals(filter) && filter.equals(otherFilter);
+	}
+
+	@Override
+	public int hashCode() {
+		return super.hashCode() ^ filter.hashCode();
+	}
+
 	@Override
 	public String toString(String field) {
 		return "FILTER(" + clausesToString(field) + ", " + filter + ")";
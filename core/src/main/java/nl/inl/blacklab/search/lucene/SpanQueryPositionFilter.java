@@ -143,7 +143,10 @@ public class SpanQueryPositionFilter extends BLSpanQueryAbstract {
 				// If it's a negative filter, all producer hits match.
 				return invert ? spansProd : null;
 			}
-			boolean filterFixedLength = clauses.get(1).hitsAllSameLength();
+			// If the filter hits are end point sorted as well, we can search their ends directly
+			BLSpanQuery filterClause = clauses.get(1);
+			boolean filterEndSorted = filterClause.hitsAllSameLength() ||
+					filterClause.hitsStartPointSorted() && filterClause.hitsEndPointSorted();
 			SpansInBuckets filter;
 			if (clauses.get(1).hitsStartPointSorted()) {
 				// Already start point sorted; no need to sort buckets again
@@ -152,7 +155,7 @@ public class SpanQueryPositionFilter extends BLSpanQueryAbstract {
 				// Not sorted yet; sort buckets
 				filter = new SpansInBucketsPerDocumentSorted(spansFilter, cmpStartPoint);
 			}
-			return new SpansPositionFilter(spansProd, filter, filterFixedLength, op, invert, leftAdjust, rightAdjust);
+			return new SpansPositionFilter(spansProd, filter, filterEndSorted, op, invert, leftAdjust, rightAdjust);
 		}
 	}
 
@@ -182,6 +185,24 @@ public class SpanQueryPositionFilter extends BLSpanQueryAbstract {
 
 	}
 
+	@Override
+	public boolean equals(Object o) {
+		if (!super.equals(o))
+			return false;
+		final SpanQueryPositionFilter that = (SpanQueryPositionFilter) o;
+		return op == that.op && invert == that.invert && leftAdjust == that.leftAdjust && rightAdjust == that.rightAdjust;
+	}
+
+	@Override
+	public int hashCode() {
+		int h = super.hashCode();
+		h ^= op.hashCode();
+		h ^= invert ? 1 : 0;
+		h ^= leftAdjust << 10;
+		h ^= rightAdjust << 5;
+		return h;
+	}
+
 	@Override
 	public String toString(String field) {
 		String not = invert ? "NOT" : "";
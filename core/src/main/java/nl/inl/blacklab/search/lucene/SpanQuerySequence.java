@@ -527,6 +527,8 @@ public class SpanQuerySequence extends BLSpanQueryAbstract {
 
 			boolean sameLength;
 
+			int maxLength = MAX_UNLIMITED;
+
 			public CombiPart(BLSpanWeight weight, final LeafReaderContext context, Postings requiredPostings) throws IOException {
 				this.spans = weight.getSpans(context, requiredPostings);
 				BLSpanQuery q = (BLSpanQuery) weight.getQuery();
@@ -536,11 +538,12 @@ public class SpanQuerySequence extends BLSpanQueryAbstract {
 					this.startSorted = q.hitsStartPointSorted();
 					this.endSorted = q.hitsEndPointSorted();
 					this.sameLength = q.hitsAllSameLength();
+					this.maxLength = q.hitsLengthMax();
 				}
 			}
 
 			public CombiPart(BLSpans spans, boolean hitsHaveUniqueStart, boolean hitsHaveUniqueEnd, boolean hitsStartPointSorted,
-					boolean hitsEndPointSorted, boolean hitsAllSameLength) {
+					boolean hitsEndPointSorted, boolean hitsAllSameLength, int hitsLengthMax) {
 				super();
 				this.spans = spans;
 				this.uniqueStart = hitsHaveUniqueStart;
@@ -548,6 +551,29 @@ public class SpanQuerySequence extends BLSpanQueryAbstract {
 				this.startSorted = hitsStartPointSorted;
 				this.endSorted = hitsEndPointSorted;
 				this.sameLength = hitsAllSameLength;
+				this.maxLength = hitsLengthMax;
+			}
+
+			/**
+			 * Maximum length of our hits if they're sorted by both start and end point,
+			 * so the sequence can skip left hits that cannot reach the right hit.
+			 *
+			 * @return the maximum length, or MAX_UNLIMITED if we can't skip
+			 */
+			int skippableMaxLength() {
+				return startSorted && endSorted ? maxLength : MAX_UNLIMITED;
+			}
+
+			/**
+			 * Maximum length of the sequence of this part and another part.
+			 *
+			 * @param right the part following this one
+			 * @return the maximum length, or MAX_UNLIMITED
+			 */
+			int sequenceMaxLength(CombiPart right) {
+				if (maxLength == MAX_UNLIMITED || right.maxLength == MAX_UNLIMITED)
+					return MAX_UNLIMITED;
+				return (int) Math.min(MAX_UNLIMITED, (long) maxLength + right.maxLength);
 			}
 
 			@Override
@@ -578,9 +604,9 @@ public class SpanQuerySequence extends BLSpanQueryAbstract {
 				if (left.uniqueEnd && left.endSorted && right.startSorted && right.uniqueStart) {
 					// We can take a shortcut because of what we know about the Spans we're
 					// combining.
-					SpansSequenceSimple newSpans = new SpansSequenceSimple(left.spans, right.spans);
+					SpansSequenceSimple newSpans = new SpansSequenceSimple(left.spans, right.spans, left.skippableMaxLength());
 					newPart = new CombiPart(newSpans, left.uniqueStart, right.uniqueEnd, left.startSorted, right.sameLength,
-							left.sameLength && right.sameLength);
+							left.sameLength && right.sameLength, left.sequenceMaxLength(right));
 					parts.remove(i - 1);
 					parts.set(i - 1, newPart);
 					i--;
@@ -596,14 +622,16 @@ public class SpanQuerySequence extends BLSpanQueryAbstract {
 				// Note: the spans coming from SequenceSpansRaw may not be sorted by end point.
 				// We keep track of this and sort them manually if necessary.
 				CombiPart newPart = null;
+				int leftMaxLength = left.skippableMaxLength();
 				if (!left.endSorted)
 					left.spans = new PerDocumentSortedSpans(left.spans, PerDocumentSortedSpans.cmpEndPoint, false);
 				if (!right.startSorted)
 					right.spans = new PerDocumentSortedSpans(right.spans, PerDocumentSortedSpans.cmpStartPoint, false);
-				BLSpans newSpans = new SpansSequenceRaw(left.spans, right.spans);
+				BLSpans newSpans = new SpansSequenceRaw(left.spans, right.spans, leftMaxLength);
 				newPart = new CombiPart(newSpans, left.uniqueStart && left.uniqueEnd && right.uniqueStart,
-						left.uniqueEnd && right.uniqueStart && right.uniqueEnd, left.startSorted, right.sameLength,
-						left.sameLength && right.sameLength);
+						left.uniqueEnd && right.uniqueStart && right.uniqueEnd,
+						left.startSorted && (left.endSorted || left.sameLength), right.sameLength,
+						left.sameLength && right.sameLength, left.sequenceMaxLength(right));
 				parts.remove(0);
 				parts.set(0, newPart);
 			}
@@ -222,6 +222,9 @@ class SpanQuerySequenceOfTwo extends BLSpanQueryAbstract {
 				return null;
 			boolean combiUniqueEnds = clauses.get(0).hitsHaveUniqueEnd();
 			boolean combiEndpointSorted = clauses.get(0).hitsEndPointSorted();
+			// (if combi is sorted by start and end point, the sequence may skip hits that are too far left)
+			int combiMaxLength = combiEndpointSorted && clauses.get(0).hitsStartPointSorted() ?
+					clauses.get(0).hitsLengthMax() : MAX_UNLIMITED;
 			for (int i = 1; i < weights.size(); i++) {
 				BLSpanWeight weight = weights.get(i);
 				BLSpans si = weight.getSpans(context, requiredPostings);
@@ -233,7 +236,7 @@ class SpanQuerySequenceOfTwo extends BLSpanQueryAbstract {
 				if (combiUniqueEnds && combiEndpointSorted &&
 					clauses.get(i).hitsStartPointSorted() && clauses.get(i).hitsHaveUniqueStart()) {
 					// We can take a shortcut because of what we know about the Spans we're combining.
-					combi = new SpansSequenceSimple(combi, si);
+					combi = new SpansSequenceSimple(combi, si, combiMaxLength);
 					combiEndpointSorted = clauses.get(i).hitsAllSameLength();
 					combiUniqueEnds = clauses.get(i).hitsHaveUniqueEnd();
 				} else {
@@ -241,10 +244,11 @@ class SpanQuerySequenceOfTwo extends BLSpanQueryAbstract {
 						combi = new PerDocumentSortedSpans(combi, PerDocumentSortedSpans.cmpEndPoint, false);
 					if (!clauses.get(i).hitsStartPointSorted())
 						si = new PerDocumentSortedSpans(si, PerDocumentSortedSpans.cmpStartPoint, false);
-					combi = new SpansSequenceRaw(combi, si);
+					combi = new SpansSequenceRaw(combi, si, combiMaxLength);
 					combiUniqueEnds = combiUniqueEnds && clauses.get(i).hitsHaveUniqueEnd();
 					combiEndpointSorted = clauses.get(i).hitsAllSameLength();
 				}
+				combiMaxLength = MAX_UNLIMITED;
 			}
 
 			return combi;
@@ -1,7 +1,6 @@
 package nl.inl.blacklab.search.lucene;
 
 import java.io.IOException;
-import java.util.Comparator;
 import java.util.Map;
 import java.util.Set;
 
@@ -10,7 +9,7 @@ import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermContext;
 import org.apache.lucene.search.IndexSearcher;
-import nl.inl.blacklab.search.Hit;
+import nl.inl.blacklab.search.lucene.SpansInBuckets.BucketSpanComparator;
 
 /**
  * Ensure hits from a SpanQuery are sorted by start- or endpoint
@@ -83,7 +82,7 @@ class SpanQuerySorted extends BLSpanQuery {
 			BLSpans srcSpans = weight.getSpans(context, requiredPostings);
 			if (srcSpans == null)
 				return null;
-			Comparator<Hit> comparator = sortByEndpoint ? PerDocumentSortedSpans.cmpEndPoint : PerDocumentSortedSpans.cmpStartPoint;
+			BucketSpanComparator comparator = sortByEndpoint ? PerDocumentSortedSpans.cmpEndPoint : PerDocumentSortedSpans.cmpStartPoint;
 			return new PerDocumentSortedSpans(srcSpans, comparator, eliminateDuplicates);
 		}
 	}
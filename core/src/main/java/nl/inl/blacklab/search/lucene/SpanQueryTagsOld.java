@@ -140,6 +140,19 @@ public class SpanQueryTagsOld extends BLSpanQueryAbstract {
 		}
 	}
 
+	@Override
+	public boolean equals(Object o) {
+		if (!super.equals(o))
+			return false;
+		final SpanQueryTagsOld that = (SpanQueryTagsOld) o;
+		return tagName.equals(that.tagName) && (attr == null ? that.attr == null : attr.equals(that.attr));
+	}
+
+	@Override
+	public int hashCode() {
+		return super.hashCode() ^ tagName.hashCode() ^ (attr == null ? 0 : attr.hashCode());
+	}
+
 	@Override
 	public String toString(String field) {
 		if (attr != null && !attr.isEmpty())
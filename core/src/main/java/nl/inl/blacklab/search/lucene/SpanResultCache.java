@@ -0,0 +1,318 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.spans.SpanCollector;
+import org.apache.lucene.search.spans.SpanWeight;
+import org.apache.lucene.search.spans.SpanWeight.Postings;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+
+import nl.inl.blacklab.search.Span;
+
+/**
+ * Caches the hits for a span query, per index segment.
+ *
+ * Entries are keyed by the rewritten query and the segment (including its deletions).
+ * When documents are added to the index, the existing segments stay the same,
+ * so only the new segments have to be searched; the results for the other
+ * segments are taken from the cache, even though the index was reopened.
+ * The least recently used entries (including those for segments that were
+ * merged away) are evicted when the cache grows too large.
+ *
+ * Only hits are stored (document, start and end), so queries with captured
+ * groups are not cached.
+ */
+public class SpanResultCache {
+
+	/** Default maximum size of the cache: 100 MB */
+	public static final long DEFAULT_MAX_SIZE_BYTES = 100 * 1000 * 1000;
+
+	/** Size of a stored hit in bytes */
+	private static final int BYTES_PER_HIT = 3 * RamUsageEstimator.NUM_BYTES_INT;
+
+	/** The cache used by HitsImpl */
+	private static SpanResultCache instance = new SpanResultCache(DEFAULT_MAX_SIZE_BYTES);
+
+	/**
+	 * Get the cache used for finding hits.
+	 *
+	 * @return the span result cache
+	 */
+	public static SpanResultCache get() {
+		return instance;
+	}
+
+	/** The hits in a segment */
+	private static class SegmentHits implements Accountable {
+
+		int[] docs;
+
+		int[] starts;
+
+		int[] ends;
+
+		SegmentHits(IntArrayList docs, IntArrayList starts, IntArrayList ends) {
+			this.docs = docs.toArray();
+			this.starts = starts.toArray();
+			this.ends = ends.toArray();
+		}
+
+		@Override
+		public long ramBytesUsed() {
+			return RamUsageEstimator.sizeOf(docs) + RamUsageEstimator.sizeOf(starts) + RamUsageEstimator.sizeOf(ends);
+		}
+
+		@Override
+		public Collection<Accountable> getChildResources() {
+			return Collections.emptyList();
+		}
+
+		BLSpans spans() {
+			return new SpansCached(docs, starts, ends, docs.length);
+		}
+	}
+
+	/** The cached hits */
+	private SegmentCache<SegmentHits> cache;
+
+	/** Are we caching hits? */
+	private boolean enabled = true;
+
+	/**
+	 * Create a span result cache.
+	 *
+	 * @param maxSizeBytes maximum size of the cache in bytes, or -1 for no limit
+	 */
+	public SpanResultCache(long maxSizeBytes) {
+		cache = new SegmentCache<>(maxSizeBytes, true); // (e.g. SpansNot skips deleted documents)
+	}
+
+	/**
+	 * Get the hits in a segment, from the cache or from the query.
+	 *
+	 * If the hits aren't cached yet, the spans returned will store the hits
+	 * as they are read, and add them to the cache when the segment has been
+	 * read completely (unless the query turns out to capture groups, or the
+	 * spans are advanced past hits).
+	 *
+	 * @param query the (rewritten) query, used as the cache key
+	 * @param weight weight for the query, used to find the hits if they're not cached
+	 * @param context the segment
+	 * @param requiredPostings postings to use if we have to find the hits
+	 * @return the spans, or null if there are no hits in this segment
+	 * @throws IOException on error
+	 */
+	public BLSpans getSpans(BLSpanQuery query, SpanWeight weight, LeafReaderContext context, Postings requiredPostings) throws IOException {
+		if (!enabled)
+			return (BLSpans) weight.getSpans(context, requiredPostings);
+		SegmentHits hits = cache.get(query, context.reader());
+		if (hits != null)
+			return hits.docs.length == 0 ? null : hits.spans();
+		BLSpans spans = (BLSpans) weight.getSpans(context, requiredPostings);
+		if (spans == null) {
+			cache.put(query, context.reader(), new SegmentHits(new IntArrayList(), new IntArrayList(), new IntArrayList()));
+			return null;
+		}
+		return new SpansRecording(spans, query, context);
+	}
+
+	/**
+	 * Spans that stores the hits that are read from it, and adds them to
+	 * the cache when all hits have been read.
+	 */
+	private class SpansRecording extends BLSpans {
+
+		private BLSpans spans;
+
+		private BLSpanQuery query;
+
+		private LeafReaderContext context;
+
+		/** Are we still recording? */
+		private boolean recording = true;
+
+		/** Have we read all hits in the current document? */
+		private boolean docExhausted = true;
+
+		private IntArrayList docs = new IntArrayList();
+
+		private IntArrayList starts = new IntArrayList();
+
+		private IntArrayList ends = new IntArrayList();
+
+		/** Stop recording if we reach this many hits (wouldn't fit in the cache) */
+		private long maxHits;
+
+		SpansRecording(BLSpans spans, BLSpanQuery query, LeafReaderContext context) {
+			this.spans = spans;
+			this.query = query;
+			this.context = context;
+			long maxSizeBytes = cache.getMaxSizeBytes();
+			maxHits = maxSizeBytes < 0 ? Integer.MAX_VALUE : maxSizeBytes / BYTES_PER_HIT;
+		}
+
+		private void stopRecording() {
+			recording = false;
+			docs = starts = ends = null;
+		}
+
+		@Override
+		public int nextDoc() throws IOException {
+			if (recording && !docExhausted)
+				stopRecording(); // we skipped hits
+			int doc = spans.nextDoc();
+			docExhausted = doc == NO_MORE_DOCS;
+			if (doc == NO_MORE_DOCS && recording) {
+				// We've seen all the hits in this segment
+				cache.put(query, context.reader(), new SegmentHits(docs, starts, ends));
+				stopRecording();
+			}
+			return doc;
+		}
+
+		@Override
+		public int advance(int target) throws IOException {
+			if (recording)
+				stopRecording(); // we'll skip hits
+			return spans.advance(target);
+		}
+
+		@Override
+		public int nextStartPosition() throws IOException {
+			int start = spans.nextStartPosition();
+			if (start == NO_MORE_POSITIONS)
+				docExhausted = true;
+			else if (recording) {
+				if (docs.size() >= maxHits) {
+					stopRecording();
+				} else {
+					docs.add(spans.docID());
+					starts.add(start);
+					ends.add(spans.endPosition());
+				}
+			}
+			return start;
+		}
+
+		@Override
+		public int advanceStartPosition(int target) throws IOException {
+			if (recording)
+				stopRecording(); // we'll skip hits
+			return spans.advanceStartPosition(target);
+		}
+
+		@Override
+		public int docID() {
+			return spans.docID();
+		}
+
+		@Override
+		public int startPosition() {
+			return spans.startPosition();
+		}
+
+		@Override
+		public int endPosition() {
+			return spans.endPosition();
+		}
+
+		@Override
+		public int width() {
+			return spans.width();
+		}
+
+		@Override
+		public void collect(SpanCollector collector) throws IOException {
+			spans.collect(collector);
+		}
+
+		@Override
+		public float positionsCost() {
+			return spans.positionsCost();
+		}
+
+		@Override
+		public long cost() {
+			return spans.cost();
+		}
+
+		@Override
+		protected void passHitQueryContextToClauses(HitQueryContext context) {
+			int before = context.getCaptureRegisterNumber();
+			spans.setHitQueryContext(context);
+			if (context.getCaptureRegisterNumber() != before && recording)
+				stopRecording(); // we only store hits, not captured groups
+		}
+
+		@Override
+		public void getCapturedGroups(Span[] capturedGroups) {
+			if (!childClausesCaptureGroups)
+				return;
+			spans.getCapturedGroups(capturedGroups);
+		}
+
+		@Override
+		public String toString() {
+			return spans.toString();
+		}
+	}
+
+	/**
+	 * Enable or disable caching of hits.
+	 *
+	 * @param enabled true to cache hits
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		if (!enabled)
+			cache.clear();
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Set the maximum size of the cache.
+	 *
+	 * @param maxSizeBytes maximum size in bytes, or -1 for no limit
+	 */
+	public void setMaxSizeBytes(long maxSizeBytes) {
+		cache.setMaxSizeBytes(maxSizeBytes);
+	}
+
+	public long getMaxSizeBytes() {
+		return cache.getMaxSizeBytes();
+	}
+
+	/** Remove all entries from the cache. */
+	public void clear() {
+		cache.clear();
+	}
+
+	public long getSizeBytes() {
+		return cache.getSizeBytes();
+	}
+
+	public int getNumberOfEntries() {
+		return cache.getNumberOfEntries();
+	}
+
+	public long getHits() {
+		return cache.getHits();
+	}
+
+	public long getMisses() {
+		return cache.getMisses();
+	}
+
+	public long getEvictions() {
+		return cache.getEvictions();
+	}
+
+}
@@ -37,6 +37,13 @@ class SpansAnd extends BLSpans {
 
 	private boolean alreadyAtFirstMatch = false;
 
+	/**
+	 * The clause that drives document iteration: the one with the lowest cost
+	 * (i.e. in the fewest documents). The other clause only skips to the
+	 * documents the lead clause is in.
+	 */
+	private int lead;
+
 	/**
 	 * Construct SpansAnd.
 	 *
@@ -50,6 +57,7 @@ class SpansAnd extends BLSpans {
 		spans[1] = rightClause;
 		currentDoc[0] = currentDoc[1] = -1;
 		currentStart[0] = currentStart[1] = -1;
+		lead = rightClause.cost() < leftClause.cost() ? 1 : 0;
 	}
 
 	@Override
@@ -82,9 +90,9 @@ class SpansAnd extends BLSpans {
 		alreadyAtFirstMatch = false;
 		if (currentDoc[0] == NO_MORE_DOCS || currentDoc[1] == NO_MORE_DOCS)
 			return NO_MORE_DOCS;
-		currentDoc[0] = spans[0].nextDoc();
-		currentStart[0] = -1;
-		if (currentDoc[0] == NO_MORE_DOCS)
+		currentDoc[lead] = spans[lead].nextDoc();
+		currentStart[lead] = -1;
+		if (currentDoc[lead] == NO_MORE_DOCS)
 			return NO_MORE_DOCS;
 		int laggingSpans = currentDoc[0] < currentDoc[1] ? 0 : 1;
 		if (currentDoc[laggingSpans] < currentDoc[1 - laggingSpans])
@@ -180,9 +188,9 @@ class SpansAnd extends BLSpans {
 
 			if (synchronizePosition() == NO_MORE_POSITIONS) {
 				// This doc doesn't match; try next doc.
-				currentDoc[0] = spans[0].nextDoc();
-				currentStart[0] = -1;
-				if (currentDoc[0] == NO_MORE_DOCS)
+				currentDoc[lead] = spans[lead].nextDoc();
+				currentStart[lead] = -1;
+				if (currentDoc[lead] == NO_MORE_DOCS)
 					return NO_MORE_DOCS;
 				continue;
 			}
@@ -261,4 +269,9 @@ class SpansAnd extends BLSpans {
 		return Math.max(spans[0].positionsCost(), spans[1].positionsCost());
 	}
 
+	@Override
+	public long cost() {
+		return Math.min(spans[0].cost(), spans[1].cost());
+	}
+
 }
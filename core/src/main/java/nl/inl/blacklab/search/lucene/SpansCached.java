@@ -0,0 +1,135 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.search.spans.SpanCollector;
+
+import nl.inl.blacklab.search.Span;
+
+/**
+ * Spans over hits that were stored in SpanResultCache.
+ */
+class SpansCached extends BLSpans {
+
+	private int[] docs;
+
+	private int[] starts;
+
+	private int[] ends;
+
+	private int size;
+
+	/** Current document */
+	private int currentDoc = -1;
+
+	/** Index of the current hit (or of the next hit if we're before the first hit in the doc) */
+	private int index = -1;
+
+	/** Current start position: -1 before the first hit in the doc, NO_MORE_POSITIONS after the last */
+	private int currentStart = -1;
+
+	SpansCached(int[] docs, int[] starts, int[] ends, int size) {
+		this.docs = docs;
+		this.starts = starts;
+		this.ends = ends;
+		this.size = size;
+	}
+
+	@Override
+	public int docID() {
+		return currentDoc;
+	}
+
+	@Override
+	public int nextDoc() throws IOException {
+		return advance(currentDoc + 1);
+	}
+
+	@Override
+	public int advance(int target) throws IOException {
+		if (currentDoc == NO_MORE_DOCS)
+			return NO_MORE_DOCS;
+		// Find the first hit in a document >= target
+		int from = Math.max(index, 0);
+		int i = Arrays.binarySearch(docs, from, size, target);
+		if (i < 0) {
+			i = -i - 1;
+		} else {
+			while (i > from && docs[i - 1] == target)
+				i--;
+		}
+		if (i >= size) {
+			currentDoc = NO_MORE_DOCS;
+			index = size;
+		} else {
+			currentDoc = docs[i];
+			index = i;
+		}
+		currentStart = -1;
+		return currentDoc;
+	}
+
+	@Override
+	public int nextStartPosition() throws IOException {
+		if (currentStart == NO_MORE_POSITIONS)
+			return NO_MORE_POSITIONS;
+		if (currentStart >= 0)
+			index++;
+		if (index >= size || docs[index] != currentDoc)
+			currentStart = NO_MORE_POSITIONS;
+		else
+			currentStart = starts[index];
+		return currentStart;
+	}
+
+	@Override
+	public int startPosition() {
+		return currentStart;
+	}
+
+	@Override
+	public int endPosition() {
+		if (currentStart < 0)
+			return -1;
+		if (currentStart == NO_MORE_POSITIONS)
+			return NO_MORE_POSITIONS;
+		return ends[index];
+	}
+
+	@Override
+	public int width() {
+		return 0;
+	}
+
+	@Override
+	public void collect(SpanCollector collector) throws IOException {
+		// (we don't keep term information)
+	}
+
+	@Override
+	public float positionsCost() {
+		return 0;
+	}
+
+	@Override
+	public long cost() {
+		return size;
+	}
+
+	@Override
+	protected void passHitQueryContextToClauses(HitQueryContext context) {
+		// (no clauses)
+	}
+
+	@Override
+	public void getCapturedGroups(Span[] capturedGroups) {
+		// (queries with captured groups are not cached)
+	}
+
+	@Override
+	public String toString() {
+		return "SpansCached(" + size + " hits)";
+	}
+
+}
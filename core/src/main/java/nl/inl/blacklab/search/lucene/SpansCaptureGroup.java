@@ -63,6 +63,15 @@ class SpansCaptureGroup extends BLSpans {
 		this.rightAdjust = rightAdjust;
 	}
 
+	/**
+	 * Get the spans we capture.
+	 *
+	 * @return the clause
+	 */
+	BLSpans getClause() {
+		return clause;
+	}
+
 	/**
 	 * @return the Lucene document id of the current hit
 	 */
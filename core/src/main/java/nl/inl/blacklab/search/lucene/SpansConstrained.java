@@ -146,7 +146,7 @@ public class SpansConstrained extends BLSpans {
 				Arrays.fill(capturedGroups, null);
 			}
 			context.getCapturedGroups(capturedGroups);
-			if (constraint.evaluate(currentFiDoc, capturedGroups).isTruthy())
+			if (constraint.matches(currentFiDoc, capturedGroups))
 				break;
 			startPos = clause.nextStartPosition();
 		}
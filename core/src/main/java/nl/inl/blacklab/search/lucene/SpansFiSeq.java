@@ -16,14 +16,15 @@
 package nl.inl.blacklab.search.lucene;
 
 import java.io.IOException;
-import java.util.Iterator;
 import java.util.NavigableSet;
 
 import org.apache.lucene.search.spans.SpanCollector;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
 
 import nl.inl.blacklab.search.Span;
 import nl.inl.blacklab.search.fimatch.ForwardIndexAccessor.ForwardIndexAccessorLeafReader;
 import nl.inl.blacklab.search.fimatch.ForwardIndexDocument;
+import nl.inl.blacklab.search.fimatch.NfaDfa;
 import nl.inl.blacklab.search.fimatch.NfaState;
 
 /**
@@ -55,22 +56,48 @@ class SpansFiSeq extends BLSpans {
 	/** The NFA to use to find matches in the forward index. */
 	private NfaState nfa;
 
+	/** DFA built from the NFA, or null if it couldn't be compiled (then we interpret the NFA) */
+	private NfaDfa dfa;
+
 	/** The direction to match in (-1 = backward, 1 = forward). */
 	private int direction;
 
 	/** Maps from term strings to term indices for each property. */
 	private ForwardIndexAccessorLeafReader fiAccessor;
 
-	/** Iterator over NFA-matched endpoints */
-	private Iterator<Integer> matchEndPointIt;
+	/** NFA-matched endpoints for the current anchor, in the order we return them */
+	private IntArrayList matchEndPoints = new IntArrayList();
+
+	/** Index of the current endpoint in matchEndPoints */
+	private int matchEndPointIndex;
 
 	/** Current NFA-matched endpoint */
 	private int currentMatchEndPoint = -1;
 
-	public SpansFiSeq(BLSpans anchorSpans, boolean startOfAnchor, NfaState nfa, int direction, ForwardIndexAccessorLeafReader fiAccessor) {
+	/** Number of anchor positions we've matched the NFA from */
+	private long anchorsTested;
+
+	/** Number of NFA matches found */
+	private long matchesFound;
+
+	/** NFA work already reported to the query budget (see reportNfaWork()) */
+	private long nfaWorkReported;
+
+	/**
+	 * Construct SpansFiSeq.
+	 *
+	 * @param anchorSpans the anchor spans
+	 * @param startOfAnchor if true, match from the start of the anchor hit, otherwise from the end
+	 * @param nfa the NFA to match
+	 * @param dfa DFA for the NFA, or null to interpret the NFA
+	 * @param direction the direction to match in (-1 = backward, 1 = forward)
+	 * @param fiAccessor forward index accessor for this segment
+	 */
+	public SpansFiSeq(BLSpans anchorSpans, boolean startOfAnchor, NfaState nfa, NfaDfa dfa, int direction, ForwardIndexAccessorLeafReader fiAccessor) {
 		this.anchor = anchorSpans;
 		this.startOfAnchor = startOfAnchor;
 		this.nfa = nfa;
+		this.dfa = dfa;
 		this.direction = direction;
 		this.fiAccessor = fiAccessor;
 	}
@@ -135,8 +162,8 @@ class SpansFiSeq extends BLSpans {
 		if (anchorStart == NO_MORE_POSITIONS)
 			return NO_MORE_POSITIONS;
 
-		if (matchEndPointIt.hasNext()) {
-			currentMatchEndPoint = matchEndPointIt.next();
+		if (matchEndPointIndex < matchEndPoints.size() - 1) {
+			currentMatchEndPoint = matchEndPoints.get(++matchEndPointIndex);
 			return startPosition();
 		}
 
@@ -176,6 +203,7 @@ class SpansFiSeq extends BLSpans {
 	private int findDocWithMatch() throws IOException {
 		// Find the next "valid" container, if there is one.
 		while (anchorDoc != NO_MORE_DOCS) {
+			reportNfaWork();
 
 			// Are there search results in this document?
 			if (anchorStart != NO_MORE_POSITIONS) {
@@ -200,6 +228,20 @@ class SpansFiSeq extends BLSpans {
 		return anchorDoc;
 	}
 
+	/**
+	 * Report the NFA work done since the last call to the query budget, if any,
+	 * and check the time. Called at document boundaries.
+	 */
+	private void reportNfaWork() {
+		if (queryBudget == null)
+			return;
+		// (if we're interpreting the NFA, we don't know how many states were visited; count the anchors)
+		long work = anchorsTested + Math.max(0, getTokensRead());
+		queryBudget.nfaStatesVisited(work - nfaWorkReported);
+		nfaWorkReported = work;
+		queryBudget.checkTime();
+	}
+
 	/**
 	 * Find a anchor span that has an NFA match, starting from the current anchor span.
 	 *
@@ -214,13 +256,9 @@ class SpansFiSeq extends BLSpans {
 			int anchorPos = startOfAnchor ? anchorStart : anchor.endPosition();
 			if (direction < 0)
 				anchorPos--;
-			NavigableSet<Integer> setMatchEndpoints = nfa.findMatches(currentFiDoc, anchorPos, direction);
-			if (setMatchEndpoints.size() > 0) {
-				if (direction == 1)
-					matchEndPointIt = setMatchEndpoints.iterator();
-				else
-					matchEndPointIt = setMatchEndpoints.descendingSet().iterator();
-				currentMatchEndPoint = matchEndPointIt.next();
+			if (findMatchEndPoints(anchorPos)) {
+				matchEndPointIndex = 0;
+				currentMatchEndPoint = matchEndPoints.get(0);
 				return startPosition();
 			}
 
@@ -233,6 +271,53 @@ class SpansFiSeq extends BLSpans {
 		return anchorStart;
 	}
 
+	/**
+	 * Find the NFA matches from a position.
+	 *
+	 * @param anchorPos position to start matching at
+	 * @return true if any matches were found
+	 */
+	private boolean findMatchEndPoints(int anchorPos) {
+		anchorsTested++;
+		matchEndPoints.clear();
+		if (dfa != null)
+			dfa.findMatches(currentFiDoc, anchorPos, direction, matchEndPoints);
+		else {
+			NavigableSet<Integer> setMatchEndpoints = nfa.findMatches(currentFiDoc, anchorPos, direction);
+			for (Integer matchEnd: direction == 1 ? setMatchEndpoints : setMatchEndpoints.descendingSet())
+				matchEndPoints.add(matchEnd);
+		}
+		matchesFound += matchEndPoints.size();
+		return !matchEndPoints.isEmpty();
+	}
+
+	/**
+	 * Get the number of anchor positions we've matched the NFA from so far.
+	 *
+	 * @return number of anchor positions
+	 */
+	long getAnchorsTested() {
+		return anchorsTested;
+	}
+
+	/**
+	 * Get the number of NFA matches found so far.
+	 *
+	 * @return number of matches
+	 */
+	long getMatchesFound() {
+		return matchesFound;
+	}
+
+	/**
+	 * Get the number of forward index tokens read so far.
+	 *
+	 * @return number of tokens, or -1 if unknown (because we're interpreting the NFA)
+	 */
+	long getTokensRead() {
+		return dfa == null ? -1 : dfa.getTokensRead();
+	}
+
 	@Override
 	public int advance(int doc) throws IOException {
 		alreadyAtFirstMatch = false;
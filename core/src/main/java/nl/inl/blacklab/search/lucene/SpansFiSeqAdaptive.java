@@ -0,0 +1,264 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2012 Institute for Dutch Lexicology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+
+import org.apache.lucene.search.spans.SpanCollector;
+
+import nl.inl.blacklab.search.Span;
+import nl.inl.blacklab.search.lucene.optimize.CostModel;
+
+/**
+ * Matches using the forward index (SpansFiSeq), but keeps track of the cost,
+ * and switches to the alternative plan (matching both clauses using the
+ * postings) at the next document boundary if the cost turns out to be far
+ * higher than estimated.
+ *
+ * When done, the observed cost is reported, so it can be used to improve
+ * future estimates (see PlanFeedback).
+ */
+class SpansFiSeqAdaptive extends BLSpans {
+
+	/** Default value of switchFactor */
+	static final double DEFAULT_SWITCH_FACTOR = 10;
+
+	/** Default value of minSwitchCost */
+	static final double DEFAULT_MIN_SWITCH_COST = 100000;
+
+	/** Switch to the alternative if we've spent this many times the estimated cost */
+	private static double switchFactor = DEFAULT_SWITCH_FACTOR;
+
+	/** Never switch before we've spent this much (estimates for small segments are unreliable) */
+	private static double minSwitchCost = DEFAULT_MIN_SWITCH_COST;
+
+	/**
+	 * Set when to switch to the alternative plan.
+	 *
+	 * Used for testing (our test index is far too small to ever switch).
+	 *
+	 * @param switchFactor switch if we've spent this many times the estimated cost
+	 * @param minSwitchCost never switch before we've spent this much
+	 */
+	static void setSwitchThresholds(double switchFactor, double minSwitchCost) {
+		SpansFiSeqAdaptive.switchFactor = switchFactor;
+		SpansFiSeqAdaptive.minSwitchCost = minSwitchCost;
+	}
+
+	/** Creates the alternative spans and receives the observed cost */
+	interface Listener {
+
+		/**
+		 * Can we switch to the alternative plan?
+		 *
+		 * @return true if we can
+		 * @throws IOException
+		 */
+		boolean canSwitch() throws IOException;
+
+		/**
+		 * Get spans for the alternative plan.
+		 *
+		 * @return the spans, or null if there are no hits
+		 * @throws IOException
+		 */
+		BLSpans getAlternativeSpans() throws IOException;
+
+		/**
+		 * Called once, when we're done matching using the forward index.
+		 *
+		 * @param observedCost the observed cost (see CostModel.nfaMatchingCost())
+		 * @param anchorsTested number of anchor positions tested
+		 * @param matchesFound number of matches found
+		 * @param timeMs time spent
+		 * @param switched true if we're switching to the alternative
+		 */
+		void done(double observedCost, long anchorsTested, long matchesFound, long timeMs, boolean switched);
+	}
+
+	/** The forward index matcher */
+	private SpansFiSeq fiSeq;
+
+	/** Estimated cost of matching this segment using the forward index */
+	private double estimatedCost;
+
+	/** Creates alternative spans and receives the observed cost */
+	private Listener listener;
+
+	/** Spans we're currently reading from (fiSeq or the alternative) */
+	private BLSpans current;
+
+	/** Are we done matching using the forward index? */
+	private boolean fiSeqDone;
+
+	/** Did we find we can't switch after all? */
+	private boolean cannotSwitch;
+
+	/** Did we switch, but did the alternative have no hits? */
+	private boolean exhausted;
+
+	/** The hit query context, if set */
+	private HitQueryContext hitQueryContext;
+
+	/** When we started matching */
+	private long startTime = -1;
+
+	/**
+	 * Construct SpansFiSeqAdaptive.
+	 *
+	 * @param fiSeq the forward index matcher
+	 * @param estimatedCost estimated cost for this segment
+	 * @param listener creates the alternative spans and receives the observed cost
+	 */
+	public SpansFiSeqAdaptive(SpansFiSeq fiSeq, double estimatedCost, Listener listener) {
+		this.fiSeq = fiSeq;
+		this.estimatedCost = estimatedCost;
+		this.listener = listener;
+		current = fiSeq;
+	}
+
+	private double observedCost() {
+		return CostModel.nfaMatchingCost(fiSeq.getAnchorsTested(), fiSeq.getTokensRead());
+	}
+
+	private boolean shouldSwitch() throws IOException {
+		if (fiSeqDone || cannotSwitch || fiSeq.getTokensRead() < 0)
+			return false;
+		if (observedCost() <= Math.max(minSwitchCost, estimatedCost * switchFactor))
+			return false;
+		cannotSwitch = !listener.canSwitch();
+		return !cannotSwitch;
+	}
+
+	private void fiSeqDone(boolean switching) {
+		if (fiSeqDone)
+			return;
+		fiSeqDone = true;
+		if (fiSeq.getTokensRead() < 0)
+			return; // interpreted NFA; we can't determine the cost
+		long timeMs = startTime < 0 ? 0 : (System.nanoTime() - startTime) / 1000000;
+		listener.done(observedCost(), fiSeq.getAnchorsTested(), fiSeq.getMatchesFound(), timeMs, switching);
+	}
+
+	private int switchToAlternative(int target) throws IOException {
+		fiSeqDone(true);
+		BLSpans alternative = listener.getAlternativeSpans();
+		if (alternative == null) {
+			exhausted = true;
+			return NO_MORE_DOCS;
+		}
+		if (hitQueryContext != null)
+			alternative.setHitQueryContext(hitQueryContext);
+		current = alternative;
+		return current.advance(target);
+	}
+
+	/**
+	 * Did we switch to the alternative plan?
+	 *
+	 * @return true if we did
+	 */
+	boolean switched() {
+		return current != fiSeq || exhausted;
+	}
+
+	@Override
+	public int docID() {
+		return exhausted ? NO_MORE_DOCS : current.docID();
+	}
+
+	@Override
+	public int nextDoc() throws IOException {
+		if (exhausted)
+			return NO_MORE_DOCS;
+		if (startTime < 0)
+			startTime = System.nanoTime();
+		if (shouldSwitch())
+			return switchToAlternative(current.docID() + 1);
+		int doc = current.nextDoc();
+		if (doc == NO_MORE_DOCS)
+			fiSeqDone(false);
+		return doc;
+	}
+
+	@Override
+	public int advance(int target) throws IOException {
+		if (exhausted)
+			return NO_MORE_DOCS;
+		if (startTime < 0)
+			startTime = System.nanoTime();
+		if (shouldSwitch())
+			return switchToAlternative(Math.max(target, current.docID() + 1));
+		int doc = current.advance(target);
+		if (doc == NO_MORE_DOCS)
+			fiSeqDone(false);
+		return doc;
+	}
+
+	@Override
+	public int nextStartPosition() throws IOException {
+		return current.nextStartPosition();
+	}
+
+	@Override
+	public int advanceStartPosition(int target) throws IOException {
+		return current.advanceStartPosition(target);
+	}
+
+	@Override
+	public int startPosition() {
+		return current.startPosition();
+	}
+
+	@Override
+	public int endPosition() {
+		return current.endPosition();
+	}
+
+	@Override
+	public int width() {
+		return current.width();
+	}
+
+	@Override
+	public void collect(SpanCollector collector) throws IOException {
+		current.collect(collector);
+	}
+
+	@Override
+	public float positionsCost() {
+		return current.positionsCost();
+	}
+
+	@Override
+	public String toString() {
+		return "SpansFiSeqAdaptive(" + current + ")";
+	}
+
+	@Override
+	public void passHitQueryContextToClauses(HitQueryContext context) {
+		hitQueryContext = context;
+		current.setHitQueryContext(context);
+	}
+
+	@Override
+	public void getCapturedGroups(Span[] capturedGroups) {
+		if (!childClausesCaptureGroups)
+			return;
+		current.getCapturedGroups(capturedGroups);
+	}
+
+}
@@ -31,14 +31,25 @@ import nl.inl.blacklab.search.Span;
 class SpansFiltered extends BLSpans {
 	BLSpans spans;
 
-	/** Set of accepted docs. NOTE: this is not segment-based, but for the whole index! */
+	/** Set of accepted docs in this segment */
 	DocIdSetIterator docIdSetIter;
 
 	boolean more;
 
 	public SpansFiltered(BLSpans spans, Scorer filterDocs) throws IOException {
+		this(spans, filterDocs == null ? null : filterDocs.iterator());
+	}
+
+	/**
+	 * Filter spans.
+	 *
+	 * @param spans the spans to filter
+	 * @param filterDocs the accepted documents (e.g. from DocFilterCache), or null if none
+	 * @throws IOException on error
+	 */
+	public SpansFiltered(BLSpans spans, DocIdSetIterator filterDocs) throws IOException {
 		this.spans = spans;
-		docIdSetIter = filterDocs == null ? null : filterDocs.iterator(); //docIdSetIter = filterDocs.iterator();
+		docIdSetIter = filterDocs;
 		more = false;
 		if (docIdSetIter != null) {
 			more = (docIdSetIter.nextDoc() != NO_MORE_DOCS);
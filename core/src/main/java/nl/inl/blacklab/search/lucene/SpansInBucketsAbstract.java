@@ -16,15 +16,12 @@
 package nl.inl.blacklab.search.lucene;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.util.InPlaceMergeSorter;
+
 import nl.inl.blacklab.search.Hit;
 import nl.inl.blacklab.search.Span;
 
@@ -45,19 +42,30 @@ import nl.inl.blacklab.search.Span;
  *
  * Also, SpansInBuckets assumes all hits in a bucket are from a single document.
  *
+ * The start and end positions (and captured groups, if any) of the hits in a bucket
+ * are stored in primitive arrays that are reused for the next bucket, so gathering
+ * and sorting hits doesn't allocate any objects.
  */
 abstract class SpansInBucketsAbstract implements SpansInBuckets {
+
+	/** Initial number of hits to allocate room for */
+	private static final int INITIAL_CAPACITY = 16;
+
 	protected BLSpans source;
 
 	protected int currentDoc = -1;
 
-	private List<Hit> bucket = new ArrayList<>();
+	/** Start positions of the hits in the current bucket */
+	private int[] starts = new int[INITIAL_CAPACITY];
+
+	/** End positions of the hits in the current bucket */
+	private int[] ends = new int[INITIAL_CAPACITY];
 
 	/**
 	 * For each hit we fetched, store the captured groups, so we don't
 	 * lose this information.
 	 */
-	private Map<Hit, Span[]> capturedGroupsPerHit = new HashMap<>();
+	private CapturedGroupsBuffer capturedGroups = new CapturedGroupsBuffer();
 
 	/**
 	 * Size of the current bucket, or -1 if we're not at a valid bucket.
@@ -66,26 +74,55 @@ abstract class SpansInBucketsAbstract implements SpansInBuckets {
 
 	private HitQueryContext hitQueryContext;
 
+	/** Budget to report the buckets we build to, or null if none */
+	private QueryBudget budget;
+
 	/** Is there captured group information for each hit that we need to store? */
 	private boolean doCapturedGroups;
 
 	/** Does our clause capture any groups? If not, we don't need to mess with those */
 	protected boolean clauseCapturesGroups = true;
 
+	/** Comparator to use in the sorter */
+	private BucketSpanComparator sortComparator;
+
+	/** Sorts the hits in the bucket in place (stable, like Collections.sort()) */
+	private InPlaceMergeSorter sorter = new InPlaceMergeSorter() {
+		@Override
+		protected int compare(int i, int j) {
+			return sortComparator.compare(starts[i], ends[i], starts[j], ends[j]);
+		}
+
+		@Override
+		protected void swap(int i, int j) {
+			int t = starts[i];
+			starts[i] = starts[j];
+			starts[j] = t;
+			t = ends[i];
+			ends[i] = ends[j];
+			ends[j] = t;
+			if (doCapturedGroups)
+				capturedGroups.swap(i, j);
+		}
+	};
+
 	protected void addHitFromSource() {
-		Hit hit = source.getHit();
-		bucket.add(hit);
+		if (bucketSize == starts.length) {
+			starts = Arrays.copyOf(starts, bucketSize * 2);
+			ends = Arrays.copyOf(ends, bucketSize * 2);
+		}
+		starts[bucketSize] = source.startPosition();
+		ends[bucketSize] = source.endPosition();
 		if (doCapturedGroups) {
 			// Store captured group information
-			Span[] capturedGroups = new Span[hitQueryContext.numberOfCapturedGroups()];
-			source.getCapturedGroups(capturedGroups);
-			capturedGroupsPerHit.put(hit, capturedGroups);
+			capturedGroups.store(bucketSize, source);
 		}
 		bucketSize++;
 	}
 
-	protected void sortHits(Comparator<Hit> hitComparator) {
-		Collections.sort(bucket, hitComparator);
+	protected void sortHits(BucketSpanComparator comparator) {
+		sortComparator = comparator;
+		sorter.sort(0, bucketSize);
 	}
 
 	@Override
@@ -95,17 +132,17 @@ abstract class SpansInBucketsAbstract implements SpansInBuckets {
 
 	@Override
 	public int startPosition(int indexInBucket) {
-		return bucket.get(indexInBucket).start;
+		return starts[indexInBucket];
 	}
 
 	@Override
 	public int endPosition(int indexInBucket) {
-		return bucket.get(indexInBucket).end;
+		return ends[indexInBucket];
 	}
 
 	@Override
 	public Hit getHit(int indexInBucket) {
-		return bucket.get(indexInBucket);
+		return new Hit(currentDoc, starts[indexInBucket], ends[indexInBucket]);
 	}
 
 	public SpansInBucketsAbstract(BLSpans source) {
@@ -165,21 +202,21 @@ abstract class SpansInBucketsAbstract implements SpansInBuckets {
 	}
 
 	private int gatherHitsInternal() throws IOException {
-		// NOTE: we could call .clear() here, but we don't want to hold on to
+		// NOTE: we reuse our arrays, but we don't want to hold on to
 		// a lot of memory indefinitely after encountering one huge bucket.
-		if (bucket.size() < ARRAYLIST_REALLOC_THRESHOLD) {
-			// Not a huge amount of memory, so don't reallocate
-			bucket.clear();
-			capturedGroupsPerHit.clear();
-		} else {
+		if (starts.length > ARRAYLIST_REALLOC_THRESHOLD) {
 			// Reallocate in this case to avoid holding on to a lot of memory
-			bucket = new ArrayList<>();
-			capturedGroupsPerHit = new HashMap<>();
+			starts = new int[INITIAL_CAPACITY];
+			ends = new int[INITIAL_CAPACITY];
 		}
 
 		bucketSize = 0;
 		doCapturedGroups = clauseCapturesGroups && hitQueryContext != null && hitQueryContext.numberOfCapturedGroups() > 0;
+		if (doCapturedGroups)
+			capturedGroups.clear(hitQueryContext.numberOfCapturedGroups());
 		gatherHits();
+		if (budget != null)
+			budget.bucketBuilt(bucketSize);
 		return currentDoc;
 	}
 
@@ -196,6 +233,7 @@ abstract class SpansInBucketsAbstract implements SpansInBuckets {
 	@Override
 	public void setHitQueryContext(HitQueryContext context) {
 		this.hitQueryContext = context;
+		budget = context.getBudget();
 		int before = context.getCaptureRegisterNumber();
 		source.setHitQueryContext(context);
 		if (context.getCaptureRegisterNumber() == before) {
@@ -208,13 +246,7 @@ abstract class SpansInBucketsAbstract implements SpansInBuckets {
 	public void getCapturedGroups(int indexInBucket, Span[] capturedGroups) {
 		if (!doCapturedGroups)
 			return;
-		Span[] previouslyCapturedGroups = capturedGroupsPerHit.get(bucket.get(indexInBucket));
-		if (previouslyCapturedGroups != null) {
-			for (int i = 0; i < capturedGroups.length; i++) {
-				if (previouslyCapturedGroups[i] != null)
-					capturedGroups[i] = previouslyCapturedGroups[i];
-			}
-		}
+		this.capturedGroups.get(indexInBucket, capturedGroups);
 	}
 
 }
@@ -16,9 +16,8 @@
 package nl.inl.blacklab.search.lucene;
 
 import java.io.IOException;
-import java.util.Comparator;
 
-import nl.inl.blacklab.search.Hit;
+import nl.inl.blacklab.search.lucene.SpansInBuckets.BucketSpanComparator;
 
 /**
  * Wrap a Spans to retrieve hits per document, so we can process all matches in a document
@@ -27,9 +26,9 @@ import nl.inl.blacklab.search.Hit;
  * Hits are sorted by the given comparator.
  */
 class SpansInBucketsPerDocumentSorted extends SpansInBucketsPerDocument {
-	private Comparator<Hit> comparator;
+	private BucketSpanComparator comparator;
 
-	public SpansInBucketsPerDocumentSorted(BLSpans source, Comparator<Hit> comparator) {
+	public SpansInBucketsPerDocumentSorted(BLSpans source, BucketSpanComparator comparator) {
 		super(source);
 		this.comparator = comparator;
 	}
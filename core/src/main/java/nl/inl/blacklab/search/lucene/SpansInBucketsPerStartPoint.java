@@ -16,8 +16,6 @@
 package nl.inl.blacklab.search.lucene;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.spans.Spans;
@@ -44,12 +42,15 @@ class SpansInBucketsPerStartPoint extends DocIdSetIterator implements SpansInBuc
 
 	private IntArrayList endPoints = new IntArrayList();
 
-	private List<Span[]> capturedGroupsPerEndpoint = new ArrayList<>();
+	private CapturedGroupsBuffer capturedGroupsPerEndpoint = new CapturedGroupsBuffer();
 
 	private int bucketSize = 0;
 
 	private HitQueryContext hitQueryContext;
 
+	/** Budget to report the buckets we build to, or null if none */
+	private QueryBudget budget;
+
 	/** Do we have a hitQueryContext and does it contain captured groups? */
 	private boolean doCapturedGroups = true;
 
@@ -116,27 +117,26 @@ class SpansInBucketsPerStartPoint extends DocIdSetIterator implements SpansInBuc
 		if (endPoints.size() < ARRAYLIST_REALLOC_THRESHOLD) {
 			// Not a huge amount of memory, so don't reallocate
 			endPoints.clear();
-			capturedGroupsPerEndpoint.clear();
 		} else {
 			// Reallocate in this case to avoid holding on to a lot of memory
 			endPoints = new IntArrayList();
-			capturedGroupsPerEndpoint = new ArrayList<>();
 		}
 
 		doCapturedGroups = clauseCapturesGroups && source != null && hitQueryContext != null && hitQueryContext.numberOfCapturedGroups() > 0;
+		if (doCapturedGroups)
+			capturedGroupsPerEndpoint.clear(hitQueryContext.numberOfCapturedGroups());
 
 		bucketSize = 0;
 		currentBucketStart = currentSpansStart;
 		while (currentSpansStart != Spans.NO_MORE_POSITIONS && currentSpansStart == currentBucketStart) {
 			endPoints.add(source.endPosition());
-			if (doCapturedGroups) {
-				Span[] capturedGroups = new Span[hitQueryContext.numberOfCapturedGroups()];
-				source.getCapturedGroups(capturedGroups);
-				capturedGroupsPerEndpoint.add(capturedGroups);
-			}
+			if (doCapturedGroups)
+				capturedGroupsPerEndpoint.store(bucketSize, source);
 			bucketSize++;
 			currentSpansStart = source.nextStartPosition();
 		}
+		if (budget != null)
+			budget.bucketBuilt(bucketSize);
 		return currentDoc;
 	}
 
@@ -186,6 +186,7 @@ class SpansInBucketsPerStartPoint extends DocIdSetIterator implements SpansInBuc
 	@Override
 	public void setHitQueryContext(HitQueryContext context) {
 		this.hitQueryContext = context;
+		budget = context.getBudget();
 		int before = context.getCaptureRegisterNumber();
 		source.setHitQueryContext(context);
 		if (context.getCaptureRegisterNumber() == before) {
@@ -196,15 +197,9 @@ class SpansInBucketsPerStartPoint extends DocIdSetIterator implements SpansInBuc
 
 	@Override
 	public void getCapturedGroups(int indexInBucket, Span[] capturedGroups) {
-		if (!doCapturedGroups || capturedGroupsPerEndpoint.isEmpty())
+		if (!doCapturedGroups || bucketSize == 0)
 			return;
-		Span[] previouslyCapturedGroups = capturedGroupsPerEndpoint.get(indexInBucket);
-		if (previouslyCapturedGroups != null) {
-			for (int i = 0; i < capturedGroups.length; i++) {
-				if (previouslyCapturedGroups[i] != null)
-					capturedGroups[i] = previouslyCapturedGroups[i];
-			}
-		}
+		capturedGroupsPerEndpoint.get(indexInBucket, capturedGroups);
 	}
 
 	@Override
@@ -0,0 +1,127 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.search.spans.SpanCollector;
+import org.apache.lucene.search.spans.Spans;
+
+import nl.inl.blacklab.search.Span;
+
+/**
+ * OR of many single-token term clauses (e.g. an expanded wildcard).
+ *
+ * If all hits will be read (e.g. to count them) and there's no query budget to
+ * report our work to, the hits in the segment are read and merged up front using
+ * PostingsUnion, which is much faster than merging the clauses per position.
+ * Otherwise (e.g. if only the first page of hits is needed), the clauses are
+ * merged lazily as usual.
+ *
+ * Which is used is decided when iteration starts, because that's when we
+ * know (from the HitQueryContext) whether all hits will be read.
+ */
+class SpansManyTermsOr extends BLSpans {
+
+	/** The clause spans (not started yet) */
+	private List<Spans> clauses;
+
+	/** The clauses, merged lazily */
+	private BLSpans lazyMerge;
+
+	/** The spans we iterate over, or null if we haven't started yet */
+	private BLSpans spans;
+
+	/** Our hit query context, or null if we didn't get one */
+	private HitQueryContext context;
+
+	/**
+	 * Construct the OR.
+	 *
+	 * @param clauses the clause spans (not started yet); must all match single tokens
+	 * @param lazyMerge the clauses, merged lazily
+	 */
+	SpansManyTermsOr(List<Spans> clauses, BLSpans lazyMerge) {
+		this.clauses = clauses;
+		this.lazyMerge = lazyMerge;
+	}
+
+	private BLSpans spans() throws IOException {
+		if (spans == null) {
+			boolean readAll = context != null && context.isReadingAllHits() && context.getBudget() == null;
+			spans = readAll ? PostingsUnion.union(clauses) : lazyMerge;
+		}
+		return spans;
+	}
+
+	@Override
+	public int nextDoc() throws IOException {
+		return spans().nextDoc();
+	}
+
+	@Override
+	public int advance(int target) throws IOException {
+		return spans().advance(target);
+	}
+
+	@Override
+	public int docID() {
+		return spans == null ? -1 : spans.docID();
+	}
+
+	@Override
+	public int nextStartPosition() throws IOException {
+		return spans().nextStartPosition();
+	}
+
+	@Override
+	public int advanceStartPosition(int target) throws IOException {
+		return spans().advanceStartPosition(target);
+	}
+
+	@Override
+	public int startPosition() {
+		return spans == null ? -1 : spans.startPosition();
+	}
+
+	@Override
+	public int endPosition() {
+		return spans == null ? -1 : spans.endPosition();
+	}
+
+	@Override
+	public int width() {
+		return spans == null ? 0 : spans.width();
+	}
+
+	@Override
+	public void collect(SpanCollector collector) throws IOException {
+		spans().collect(collector);
+	}
+
+	@Override
+	public float positionsCost() {
+		return lazyMerge.positionsCost();
+	}
+
+	@Override
+	public long cost() {
+		return lazyMerge.cost();
+	}
+
+	@Override
+	protected void passHitQueryContextToClauses(HitQueryContext theContext) {
+		this.context = theContext;
+		lazyMerge.setHitQueryContext(theContext);
+	}
+
+	@Override
+	public void getCapturedGroups(Span[] capturedGroups) {
+		// (term clauses don't capture groups)
+	}
+
+	@Override
+	public String toString() {
+		return "SpansManyTermsOr(" + (spans == null ? lazyMerge : spans) + ")";
+	}
+
+}
@@ -146,6 +146,11 @@ class SpansNot extends BLSpans {
 			clauseStart = clauseDoc == NO_MORE_DOCS ? NO_MORE_POSITIONS : -1;
 			currentDocLength = lengthGetter.getFieldLength(currentDoc) - subtractFromLength;
 			currentStart = currentEnd = -1;
+			if (queryBudget != null) {
+				// We may produce a hit at every position in the document
+				queryBudget.positionsExamined(currentDocLength);
+				queryBudget.checkTime();
+			}
 		} while (nextStartPosition() == NO_MORE_POSITIONS);
 		alreadyAtFirstMatch = true;
 
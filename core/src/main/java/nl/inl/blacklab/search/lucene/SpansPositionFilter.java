@@ -16,6 +16,7 @@
 package nl.inl.blacklab.search.lucene;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.lucene.search.spans.SpanCollector;
 import nl.inl.blacklab.search.Span;
@@ -64,28 +65,50 @@ class SpansPositionFilter extends BLSpans {
 	 */
 	private boolean invert;
 
-	/** Are the filter hits guaranteed to have the same length? */
-	private boolean filterFixedLength;
+	/** Are the filter hits (sorted by start point) guaranteed to be sorted by end point as well? */
+	private boolean filterEndSorted;
+
+	/** Document of the filter bucket we've indexed (see indexFilterBucket()) */
+	private int indexedFilterDoc = -1;
+
+	/** Index of the first filter hit that may start at or after the current producer hit */
+	private int startCursor;
+
+	/** Position we last looked for using startCursor */
+	private int startCursorPos = -1;
+
+	/** Per filter hit: maximum end up to it (WITHIN) or minimum end from it on (CONTAINING) */
+	private int[] endIndex;
+
+	/** Filter hits sorted by end, encoded as end (high 32 bits) and index (ENDS_AT) */
+	private long[] hitsByEnd;
 
 	/**
 	 * Find hits from producer, filtered by the filter according to the specified op
 	 *
-	 * Both producer and filter should be start-point sorted.
+	 * Both producer and filter should be start-point sorted. Filter hits are
+	 * found by moving forward through the filter bucket as the producer
+	 * hits' start positions increase; where that's not enough (e.g. WITHIN a
+	 * filter hit that may start much earlier), we search indexes of the end
+	 * positions made per bucket, or the end positions themselves if the
+	 * filter is end-point sorted as well. So each producer hit takes
+	 * O(log n) instead of O(n).
 	 *
 	 * @param producer the hits we may be interested in
 	 * @param filter the hits used to filter the producer hits
-	 * @param filterFixedLength true if the filter hits are all the same length. Used for optimization.
+	 * @param filterEndSorted true if the filter hits are end-point sorted as well (e.g. because
+	 *   they are all the same length). Used for optimization.
 	 * @param op filter operation to use
 	 * @param invert if true, produce hits that DON'T match the filter instead
 	 * @param leftAdjust how to adjust the left edge of the producer hits while matching
 	 * @param rightAdjust how to adjust the right edge of the producer hits while matching
 	 */
-	public SpansPositionFilter(BLSpans producer, SpansInBuckets filter, boolean filterFixedLength, Operation op, boolean invert, int leftAdjust, int rightAdjust) {
+	public SpansPositionFilter(BLSpans producer, SpansInBuckets filter, boolean filterEndSorted, Operation op, boolean invert, int leftAdjust, int rightAdjust) {
 		this.producer = producer; // Sort
 		this.op = op;
 		this.invert = invert;
 		this.filter = filter;
-		this.filterFixedLength = filterFixedLength;
+		this.filterEndSorted = filterEndSorted;
 		this.leftAdjust = leftAdjust;
 		this.rightAdjust = rightAdjust;
 	}
@@ -228,209 +251,21 @@ class SpansPositionFilter extends BLSpans {
 				// No filter hits in this doc, so this is definitely a hit.
 				return producerStart;
 			}
+			if (indexedFilterDoc != filterDoc)
+				indexFilterBucket();
 
 			// We're at the first unchecked producer spans. Does it match our filter?
-			boolean invertedMatch = invert; // if looking for non-matches, keep track if there have been any matches.
-			int min = 0, max = filter.bucketSize() - 1;
-			switch(op) {
-			case CONTAINING:
-				// Looking for producer hits with a filter hit inside
-				while (min <= max) {
-					int i = (min + max) / 2;
-					if (filterFixedLength && filter.endPosition(i) > producer.endPosition() + rightAdjust) {
-						// Filter end position to the right of producer hit end position.
-						max = i - 1;
-					} else if (filter.startPosition(i) < producerStart + leftAdjust) {
-						// Filter start position to the left of producer hit start position.
-						min = i + 1;
-					} else {
-						// Can't narrow down the edges any further; do linear search from here.
-						break;
-					}
-				}
-				for (int i = min; i <= max; i++) {
-					if (filter.startPosition(i) >= producerStart + leftAdjust && filter.endPosition(i) <= producer.endPosition() + rightAdjust) {
-						if (invert) {
-							// This producer hit is no good; on to the next.
-							invertedMatch = false;
-							break;
-						}
-						// Yes, this producer hit contains this filter hit
-						filterIndex = i; // remember for captured groups
-						return producerStart;
-					}
-				}
-				break;
-			case CONTAINING_AT_START:
-				// Looking for producer hits with a filter hit inside, at the start
-				while (min <= max) {
-					int i = (min + max) / 2;
-					if (filterFixedLength && filter.endPosition(i) > producer.endPosition() + rightAdjust) {
-						// Filter end position to the right of producer hit end position.
-						max = i - 1;
-					} else if (filter.startPosition(i) < producerStart + leftAdjust) {
-						// Filter start position to the left of producer hit start position.
-						min = i + 1;
-					} else {
-						// Can't narrow down the edges any further; do linear search from here.
-						break;
-					}
-				}
-				for (int i = min; i <= max; i++) {
-					if (filter.startPosition(i) == producerStart + leftAdjust && filter.endPosition(i) <= producer.endPosition() + rightAdjust) {
-						if (invert) {
-							// This producer hit is no good; on to the next.
-							invertedMatch = false;
-							break;
-						}
-						// Yes, this producer hit contains this filter hit
-						filterIndex = i; // remember for captured groups
-						return producerStart;
-					}
-				}
-				break;
-			case CONTAINING_AT_END:
-				// Looking for producer hits with a filter hit inside, at the end
-				while (min <= max) {
-					int i = (min + max) / 2;
-					if (filterFixedLength && filter.endPosition(i) > producer.endPosition() + rightAdjust) {
-						// Filter end position to the right of producer hit end position.
-						max = i - 1;
-					} else if (filter.startPosition(i) < producerStart + leftAdjust) {
-						// Filter start position to the left of producer hit start position.
-						min = i + 1;
-					} else {
-						// Can't narrow down the edges any further; do linear search from here.
-						break;
-					}
-				}
-				for (int i = min; i <= max; i++) {
-					if (filter.startPosition(i) >= producerStart + leftAdjust && filter.endPosition(i) == producer.endPosition() + rightAdjust) {
-						if (invert) {
-							// This producer hit is no good; on to the next.
-							invertedMatch = false;
-							break;
-						}
-						// Yes, this producer hit contains this filter hit
-						filterIndex = i; // remember for captured groups
-						return producerStart;
-					}
-				}
-				break;
-			case WITHIN:
-				// Looking for producer hits contained by a filter hit
-				while (min <= max) {
-					int i = (min + max) / 2;
-					if (filter.startPosition(i) > producerStart + leftAdjust) {
-						// Filter start position to the right of producer hit start position.
-						max = i - 1;
-					} else if (filterFixedLength && filter.endPosition(i) < producer.endPosition() + rightAdjust) {
-						// Filter end position to the left of producer hit end position.
-						min = i + 1;
-					} else {
-						// Can't narrow down the edges any further; do linear search from here.
-						break;
-					}
-				}
-				for (int i = min; i <= max; i++) {
-					if (filter.startPosition(i) <= producerStart + leftAdjust && filter.endPosition(i) >= producer.endPosition() + rightAdjust) {
-						if (invert) {
-							// This producer hit is no good; on to the next.
-							invertedMatch = false;
-							break;
-						}
-						// Yes, this producer hit is contained within this filter hit
-						filterIndex = i; // remember for captured groups
-						return producerStart;
-					}
-				}
-				break;
-			case STARTS_AT:
-				// Looking for producer hits starting at a filter hit
-				while (min <= max) {
-					int i = (min + max) / 2;
-					if (filter.startPosition(i) > producerStart + leftAdjust) {
-						// Filter start position to the right of producer hit start position.
-						max = i - 1;
-					} else if (filter.startPosition(i) < producerStart + leftAdjust) {
-						// Filter start position to the left of producer hit start position.
-						min = i + 1;
-					} else {
-						// Found filter hit at the start of current producer hit.
-						if (invert) {
-							// This producer hit is no good; on to the next.
-							invertedMatch = false;
-							break;
-						}
-						// Yes, this producer hit starts at this filter hit
-						filterIndex = i; // remember for captured groups
-						return producerStart;
-					}
-				}
-				break;
-			case ENDS_AT:
-				// Looking for producer hits ending at a filter hit
-				if (filterFixedLength) {
-					while (min <= max) {
-						int i = (min + max) / 2;
-						if (filter.endPosition(i) > producer.endPosition() + rightAdjust) {
-							// Filter end position to the right of producer hit end position.
-							max = i - 1;
-						} else if (filter.endPosition(i) < producer.endPosition() + rightAdjust) {
-							// Filter end position to the left of producer hit end position.
-							min = i + 1;
-						} else {
-							// Can't narrow down the edges any further; do linear search from here.
-							break;
-						}
-					}
-				}
-				for (int i = min; i <= max; i++) {
-					if (filter.endPosition(i) == producer.endPosition() + rightAdjust) {
-						if (invert) {
-							// This producer hit is no good; on to the next.
-							invertedMatch = false;
-							break;
-						}
-						// Yes, this producer hit ends at this filter hit
-						filterIndex = i; // remember for captured groups
-						return producerStart;
-					}
-				}
-				break;
-			case MATCHES:
-				// Looking for producer hits exactly matching a filter hit
-				while (min <= max) {
-					int i = (min + max) / 2;
-					if (filter.startPosition(i) < producerStart + leftAdjust || filterFixedLength && filter.endPosition(i) < producer.endPosition() + rightAdjust) {
-						min = i + 1;
-					} else if (filter.startPosition(i) > producerStart + leftAdjust || filterFixedLength && filter.endPosition(i) > producer.endPosition() + rightAdjust) {
-						max = i - 1;
-					} else {
-						// Can't narrow down the edges any further; do linear search from here.
-						break;
-					}
-				}
-				for (int i = min; i <= max; i++) {
-					if (filter.startPosition(i) == producerStart + leftAdjust && filter.endPosition(i) == producer.endPosition() + rightAdjust) {
-						if (invert) {
-							// This producer hit is no good; on to the next.
-							invertedMatch = false;
-							break;
-						}
-						// Yes, this producer hit exactly matches this filter hit
-						filterIndex = i; // remember for captured groups
-						return producerStart;
-					}
-				}
-				break;
-			default:
-				throw new IllegalArgumentException("Unknown filter operation " + op);
+			int i = findFilterHit(producerStart + leftAdjust, producer.endPosition() + rightAdjust);
+			if (i >= 0 && !invert) {
+				// Yes, this producer hit matches this filter hit
+				filterIndex = i; // remember for captured groups
+				return producerStart;
 			}
-			// Were we looking for non-matching producer hits, and have we not found any?
-			if (invertedMatch) {
+			if (i < 0 && invert) {
+				// Looking for non-matching producer hits, and this is one
 				return producerStart;
 			}
+
 			// Didn't match filter; go to the next position.
 			producerStart = producer.nextStartPosition();
 			if (producerStart == NO_MORE_POSITIONS)
@@ -440,6 +275,200 @@ class SpansPositionFilter extends BLSpans {
 		return producerStart;
 	}
 
+	/**
+	 * Prepare to search a new filter bucket.
+	 *
+	 * Resets the start position cursor and, if the filter hits aren't also
+	 * sorted by end position, determines the end positions we need for the
+	 * filter operation: for WITHIN, the maximum end position up to each hit; for
+	 * CONTAINING(_AT_END), the minimum end position from each hit on; for
+	 * ENDS_AT, the hits sorted by end position.
+	 */
+	private void indexFilterBucket() {
+		indexedFilterDoc = filterDoc;
+		startCursor = 0;
+		startCursorPos = -1;
+		if (filterEndSorted)
+			return;
+		int n = filter.bucketSize();
+		switch (op) {
+		case WITHIN:
+			endIndex = ensureCapacity(endIndex, n);
+			for (int i = 0; i < n; i++)
+				endIndex[i] = i == 0 ? filter.endPosition(0) : Math.max(endIndex[i - 1], filter.endPosition(i));
+			break;
+		case CONTAINING:
+		case CONTAINING_AT_END:
+			endIndex = ensureCapacity(endIndex, n);
+			for (int i = n - 1; i >= 0; i--)
+				endIndex[i] = i == n - 1 ? filter.endPosition(i) : Math.min(endIndex[i + 1], filter.endPosition(i));
+			break;
+		case ENDS_AT:
+			// Sort the hits by end position, then by index, so we find the first matching hit
+			if (hitsByEnd == null || hitsByEnd.length < n || hitsByEnd.length > SpansInBuckets.ARRAYLIST_REALLOC_THRESHOLD && n < hitsByEnd.length / 4)
+				hitsByEnd = new long[n];
+			for (int i = 0; i < n; i++)
+				hitsByEnd[i] = (long) filter.endPosition(i) << 32 | i;
+			Arrays.sort(hitsByEnd, 0, n);
+			break;
+		default:
+			break;
+		}
+	}
+
+	private static int[] ensureCapacity(int[] array, int n) {
+		if (array == null || array.length < n || array.length > SpansInBuckets.ARRAYLIST_REALLOC_THRESHOLD && n < array.length / 4)
+			return new int[n];
+		return array;
+	}
+
+	/**
+	 * Find the first filter hit (in the current bucket) with a start position
+	 * of at least pos.
+	 *
+	 * Because the producer is start point sorted, the positions we look for
+	 * increase within a bucket, so we gallop forward from where we found the
+	 * previous one; matching a whole document this way is a linear merge of
+	 * the two.
+	 *
+	 * @param pos position to look for
+	 * @return index of the hit, or the bucket size if there's none
+	 */
+	private int firstStartAtLeast(int pos) {
+		if (pos < startCursorPos)
+			startCursor = 0; // (shouldn't happen; producer is start point sorted)
+		startCursorPos = pos;
+		int n = filter.bucketSize();
+		int lo = startCursor;
+		if (lo >= n || filter.startPosition(lo) >= pos)
+			return lo;
+		// Gallop until we're past pos, then binary search the last step
+		int step = 1;
+		int hi = lo + 1;
+		while (hi < n && filter.startPosition(hi) < pos) {
+			lo = hi;
+			step *= 2;
+			hi = lo + step;
+		}
+		hi = Math.min(hi, n);
+		while (hi - lo > 1) {
+			int mid = (lo + hi) >>> 1;
+			if (filter.startPosition(mid) < pos)
+				lo = mid;
+			else
+				hi = mid;
+		}
+		startCursor = hi;
+		return hi;
+	}
+
+	/**
+	 * Find the first filter hit in a range with an end position of at least pos.
+	 *
+	 * Only valid if the end positions in the range are sorted (so either the
+	 * filter hits are end point sorted, or we're searching endIndex).
+	 *
+	 * @param ends end positions to search, or null to use the filter's
+	 * @param from first index to search
+	 * @param to index after the last one to search
+	 * @param pos position to look for
+	 * @return index of the hit, or to if there's none
+	 */
+	private int firstEndAtLeast(int[] ends, int from, int to, int pos) {
+		int lo = from, hi = to;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			int end = ends == null ? filter.endPosition(mid) : ends[mid];
+			if (end < pos)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Find the first filter hit (in the current bucket) that matches the
+	 * (adjusted) producer hit according to our operation.
+	 *
+	 * @param start start of the producer hit
+	 * @param end end of the producer hit
+	 * @return index of the filter hit, or -1 if there's none
+	 */
+	private int findFilterHit(int start, int end) {
+		int n = filter.bucketSize();
+		int i;
+		switch(op) {
+		case CONTAINING:
+			// Looking for producer hits with a filter hit inside
+			i = firstStartAtLeast(start);
+			if (i >= n)
+				return -1;
+			if (filterEndSorted)
+				return filter.endPosition(i) <= end ? i : -1;
+			if (endIndex[i] > end)
+				return -1; // no filter hit from here on ends early enough
+			while (filter.endPosition(i) > end)
+				i++;
+			return i;
+		case CONTAINING_AT_START:
+			// Looking for producer hits with a filter hit inside, at the start
+			for (i = firstStartAtLeast(start); i < n && filter.startPosition(i) == start; i++) {
+				if (filter.endPosition(i) <= end)
+					return i;
+			}
+			return -1;
+		case CONTAINING_AT_END:
+			// Looking for producer hits with a filter hit inside, at the end
+			i = firstStartAtLeast(start);
+			if (filterEndSorted) {
+				i = firstEndAtLeast(null, i, n, end);
+				return i < n && filter.endPosition(i) == end ? i : -1;
+			}
+			if (i >= n || endIndex[i] > end)
+				return -1;
+			for (; i < n && filter.startPosition(i) <= end; i++) {
+				if (filter.endPosition(i) == end)
+					return i;
+			}
+			return -1;
+		case WITHIN:
+			// Looking for producer hits contained by a filter hit:
+			// the first hit starting at or before our start that ends at or after our end
+			int startsBefore = firstStartAtLeast(start + 1);
+			i = firstEndAtLeast(filterEndSorted ? null : endIndex, 0, startsBefore, end);
+			return i < startsBefore ? i : -1;
+		case STARTS_AT:
+			// Looking for producer hits starting at a filter hit
+			i = firstStartAtLeast(start);
+			return i < n && filter.startPosition(i) == start ? i : -1;
+		case ENDS_AT:
+			// Looking for producer hits ending at a filter hit
+			if (filterEndSorted) {
+				i = firstEndAtLeast(null, 0, n, end);
+				return i < n && filter.endPosition(i) == end ? i : -1;
+			}
+			int lo = 0, hi = n;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if ((int) (hitsByEnd[mid] >> 32) < end)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo < n && (int) (hitsByEnd[lo] >> 32) == end ? (int) hitsByEnd[lo] : -1;
+		case MATCHES:
+			// Looking for producer hits exactly matching a filter hit
+			for (i = firstStartAtLeast(start); i < n && filter.startPosition(i) == start; i++) {
+				if (filter.endPosition(i) == end)
+					return i;
+			}
+			return -1;
+		default:
+			throw new IllegalArgumentException("Unknown filter operation " + op);
+		}
+	}
+
 	@Override
 	public int advance(int doc) throws IOException {
 		alreadyAtFirstMatch = false;
@@ -83,6 +83,16 @@ class SpansSequenceRaw extends BLSpans {
 	 */
 	private boolean alreadyAtFirstMatch = false;
 
+	/**
+	 * Maximum length of a left hit, or BLSpanQuery.MAX_UNLIMITED if unknown or
+	 * if the left hits aren't also sorted by start point. Allows us to skip left
+	 * hits that cannot reach the current right bucket using advanceStartPosition().
+	 */
+	private int leftMaxLength;
+
+	/** Does the right clause drive document iteration? (if it has the lower cost) */
+	private boolean rightLeads;
+
 	/**
 	 * Construct SpansSequenceRaw.
 	 *
@@ -90,6 +100,20 @@ class SpansSequenceRaw extends BLSpans {
 	 * @param rightClause (startpoint-sorted) right clause
 	 */
 	public SpansSequenceRaw(BLSpans leftClause, BLSpans rightClause) {
+		this(leftClause, rightClause, BLSpanQuery.MAX_UNLIMITED);
+	}
+
+	/**
+	 * Construct SpansSequenceRaw.
+	 *
+	 * @param leftClause (endpoint-sorted) left clause
+	 * @param rightClause (startpoint-sorted) right clause
+	 * @param leftMaxLength maximum length of left hits if they're start point sorted
+	 *   as well, or BLSpanQuery.MAX_UNLIMITED
+	 */
+	public SpansSequenceRaw(BLSpans leftClause, BLSpans rightClause, int leftMaxLength) {
+		this.leftMaxLength = leftMaxLength;
+
 		// Sort the left spans by (1) document (2) end point (3) start point
 		left = leftClause; //new PerDocumentSortedSpans(leftClause, PerDocumentSortedSpans.cmpEndPoint, false);
 
@@ -97,6 +121,7 @@ class SpansSequenceRaw extends BLSpans {
 		// Already start point sorted.
 		origRight = rightClause; //Sort
 		right = new SpansInBucketsPerStartPoint(origRight);
+		rightLeads = origRight.cost() < left.cost();
 	}
 
 	@Override
@@ -115,9 +140,8 @@ class SpansSequenceRaw extends BLSpans {
 	public int nextDoc() throws IOException {
 		alreadyAtFirstMatch = false;
 		if (currentDoc != NO_MORE_DOCS) {
-			currentDoc = left.nextDoc();
+			currentDoc = nextLeadDoc();
 			if (currentDoc != NO_MORE_DOCS) {
-				right.nextDoc();
 				rightEnd = -1;
 				indexInBucket = -2;
 				realignDoc();
@@ -126,6 +150,26 @@ class SpansSequenceRaw extends BLSpans {
 		return currentDoc;
 	}
 
+	/**
+	 * Go to the next document of the lead clause, and put the left clause
+	 * in that document or beyond.
+	 *
+	 * If the left clause leads, the right clause is left behind;
+	 * realignDoc() will advance it to the left clause's document.
+	 *
+	 * @return the left clause's document, or NO_MORE_DOCS
+	 * @throws IOException
+	 */
+	private int nextLeadDoc() throws IOException {
+		if (!rightLeads)
+			return left.nextDoc();
+		int rightDoc = right.nextDoc();
+		if (rightDoc == NO_MORE_DOCS)
+			return NO_MORE_DOCS;
+		int leftDoc = left.docID();
+		return leftDoc < rightDoc ? left.advance(rightDoc) : leftDoc;
+	}
+
 	@Override
 	public int nextStartPosition() throws IOException {
 		if (alreadyAtFirstMatch) {
@@ -234,7 +278,7 @@ class SpansSequenceRaw extends BLSpans {
 			}
 
 			// No matches in this doc; on to the next
-			currentDoc = left.nextDoc();
+			currentDoc = nextLeadDoc();
 			if (currentDoc == NO_MORE_DOCS) {
 				leftStart = rightEnd = NO_MORE_POSITIONS;
 				return NO_MORE_DOCS;
@@ -277,7 +321,7 @@ class SpansSequenceRaw extends BLSpans {
 			} else {
 				// Advance left if necessary
 				while (leftEnd < rightStart) {
-					leftStart = left.nextStartPosition();
+					leftStart = nextLeftStart(rightStart);
 					leftEnd = left.endPosition();
 					if (leftStart == NO_MORE_POSITIONS) {
 						rightEnd = NO_MORE_POSITIONS;
@@ -288,20 +332,39 @@ class SpansSequenceRaw extends BLSpans {
 		}
 	}
 
+	/**
+	 * Go to the next left hit that may end at or after the right start.
+	 *
+	 * @param rightStart start of the current right bucket
+	 * @return start of the new left hit, or NO_MORE_POSITIONS
+	 * @throws IOException
+	 */
+	private int nextLeftStart(int rightStart) throws IOException {
+		if (leftMaxLength != BLSpanQuery.MAX_UNLIMITED) {
+			// Left hits starting before this cannot reach rightStart; skip them
+			int target = rightStart - leftMaxLength;
+			if (target > leftStart + 1)
+				return left.advanceStartPosition(target);
+		}
+		return left.nextStartPosition();
+	}
+
 	@Override
 	public int advance(int doc) throws IOException {
 		alreadyAtFirstMatch = false;
 		if (currentDoc != NO_MORE_DOCS) {
-			currentDoc = left.advance(doc);
-			if (currentDoc != NO_MORE_DOCS) {
+			if (rightLeads) {
 				int rightDoc = right.advance(doc);
-				if (rightDoc == NO_MORE_DOCS)
+				currentDoc = rightDoc == NO_MORE_DOCS ? NO_MORE_DOCS : left.advance(rightDoc);
+			} else {
+				currentDoc = left.advance(doc);
+				if (currentDoc != NO_MORE_DOCS && right.advance(currentDoc) == NO_MORE_DOCS)
 					currentDoc = NO_MORE_DOCS;
-				else {
-					rightEnd = -1;
-					indexInBucket = -2;
-					realignDoc();
-				}
+			}
+			if (currentDoc != NO_MORE_DOCS) {
+				rightEnd = -1;
+				indexInBucket = -2;
+				realignDoc();
 			}
 		}
 		return currentDoc;
@@ -353,4 +416,9 @@ class SpansSequenceRaw extends BLSpans {
 		return left.positionsCost();
 	}
 
+	@Override
+	public long cost() {
+		return Math.min(left.cost(), origRight.cost());
+	}
+
 }
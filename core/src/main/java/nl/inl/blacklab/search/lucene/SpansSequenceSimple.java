@@ -41,9 +41,33 @@ class SpansSequenceSimple extends BLSpans {
 
 	private int leftStart = NO_MORE_POSITIONS;
 
+	/**
+	 * Maximum length of a left hit, or BLSpanQuery.MAX_UNLIMITED if unknown or
+	 * if the left hits aren't also sorted by start point. Allows us to skip left
+	 * hits that cannot reach the current right hit using advanceStartPosition().
+	 */
+	private int leftMaxLength;
+
+	/** Does the right clause drive document iteration? (if it has the lower cost) */
+	private boolean rightLeads;
+
 	public SpansSequenceSimple(BLSpans leftClause, BLSpans rightClause) {
+		this(leftClause, rightClause, BLSpanQuery.MAX_UNLIMITED);
+	}
+
+	/**
+	 * Construct SpansSequenceSimple.
+	 *
+	 * @param leftClause left clause
+	 * @param rightClause right clause
+	 * @param leftMaxLength maximum length of left hits if they're start point sorted
+	 *   as well, or BLSpanQuery.MAX_UNLIMITED
+	 */
+	public SpansSequenceSimple(BLSpans leftClause, BLSpans rightClause, int leftMaxLength) {
 		left = leftClause;
 		right = rightClause;
+		this.leftMaxLength = leftMaxLength;
+		rightLeads = right.cost() < left.cost();
 	}
 
 	@Override
@@ -64,7 +88,7 @@ class SpansSequenceSimple extends BLSpans {
 	public int nextDoc() throws IOException {
 		alreadyAtFirstMatch = false;
 		if (currentDoc != NO_MORE_DOCS) {
-			currentDoc = left.nextDoc();
+			currentDoc = nextLeadDoc();
 			if (currentDoc != NO_MORE_DOCS) {
 				realignDoc();
 			}
@@ -72,6 +96,23 @@ class SpansSequenceSimple extends BLSpans {
 		return currentDoc;
 	}
 
+	/**
+	 * Go to the next document of the lead clause, and put the left clause
+	 * in that document or beyond.
+	 *
+	 * @return the left clause's document, or NO_MORE_DOCS
+	 * @throws IOException
+	 */
+	private int nextLeadDoc() throws IOException {
+		if (!rightLeads)
+			return left.nextDoc();
+		int rightDoc = right.nextDoc();
+		if (rightDoc == NO_MORE_DOCS)
+			return NO_MORE_DOCS;
+		int leftDoc = left.docID();
+		return leftDoc < rightDoc ? left.advance(rightDoc) : leftDoc;
+	}
+
 	@Override
 	public int nextStartPosition() throws IOException {
 		if (alreadyAtFirstMatch) {
@@ -143,7 +184,7 @@ class SpansSequenceSimple extends BLSpans {
 			}
 
 			// No matches in this doc; on to the next
-			currentDoc = left.nextDoc();
+			currentDoc = nextLeadDoc();
 			if (currentDoc == NO_MORE_DOCS)
 				return NO_MORE_DOCS;
 		}
@@ -166,7 +207,7 @@ class SpansSequenceSimple extends BLSpans {
 			} else {
 				// Advance left if necessary
 				while (leftEnd < rightStart) {
-					leftStart = left.nextStartPosition();
+					leftStart = nextLeftStart(rightStart);
 					leftEnd = left.endPosition();
 					if (leftStart == NO_MORE_POSITIONS)
 						break;
@@ -177,6 +218,23 @@ class SpansSequenceSimple extends BLSpans {
 		return leftStart;
 	}
 
+	/**
+	 * Go to the next left hit that may end at or after the right start.
+	 *
+	 * @param rightStart start of the current right hit
+	 * @return start of the new left hit, or NO_MORE_POSITIONS
+	 * @throws IOException
+	 */
+	private int nextLeftStart(int rightStart) throws IOException {
+		if (leftMaxLength != BLSpanQuery.MAX_UNLIMITED) {
+			// Left hits starting before this cannot reach rightStart; skip them
+			int target = rightStart - leftMaxLength;
+			if (target > leftStart + 1)
+				return left.advanceStartPosition(target);
+		}
+		return left.nextStartPosition();
+	}
+
 	@Override
 	public int advance(int doc) throws IOException {
 		alreadyAtFirstMatch = false;
@@ -236,4 +294,9 @@ class SpansSequenceSimple extends BLSpans {
 		return left.positionsCost();
 	}
 
+	@Override
+	public long cost() {
+		return Math.min(left.cost(), right.cost());
+	}
+
 }
@@ -16,10 +16,12 @@
 package nl.inl.blacklab.search.lucene;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 
-import org.apache.lucene.payloads.PayloadSpanCollector;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.search.spans.SpanCollector;
+import org.apache.lucene.util.BytesRef;
+
 import nl.inl.blacklab.search.Span;
 
 /**
@@ -73,9 +75,36 @@ class SpansTags extends BLSpans {
 		return tags.startPosition();
 	}
 
-    private final PayloadSpanCollector collector = new PayloadSpanCollector();
+	/**
+	 * Collects the end position of the current tag from its payload.
+	 *
+	 * Reads the payload bytes directly instead of copying them into a new
+	 * collection and wrapping them in a ByteBuffer (like PayloadSpanCollector
+	 * would), so getting the end of a tag doesn't allocate anything.
+	 */
+	private static class TagEndCollector implements SpanCollector {
+
+		/** End position read from the payload, or -1 if none */
+		int end = -1;
+
+		@Override
+		public void collectLeaf(PostingsEnum postings, int position, Term term) throws IOException {
+			BytesRef payload = postings.getPayload();
+			if (payload == null || payload.length < 4)
+				return;
+			// Big-endian int, as written by ByteBuffer.putInt() when indexing
+			byte[] b = payload.bytes;
+			int o = payload.offset;
+			end = (b[o] & 0xFF) << 24 | (b[o + 1] & 0xFF) << 16 | (b[o + 2] & 0xFF) << 8 | (b[o + 3] & 0xFF);
+		}
 
+		@Override
+		public void reset() {
+			end = -1;
+		}
+	}
 
+	private final TagEndCollector collector = new TagEndCollector();
 
 	@Override
 	public int endPosition() {
@@ -85,9 +114,9 @@ class SpansTags extends BLSpans {
 			if (end == -2) {
 				collector.reset();
 				tags.collect(collector);
-				byte[] payload = collector.getPayloads().iterator().next();
-				ByteBuffer bb = ByteBuffer.wrap(payload);
-				end = bb.getInt();
+				if (collector.end < 0)
+					throw new RuntimeException("Error getting payload");
+				end = collector.end;
 			}
 			return end;
 		} catch (IOException e) {
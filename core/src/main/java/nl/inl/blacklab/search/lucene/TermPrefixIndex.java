@@ -0,0 +1,247 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+
+import nl.inl.util.ExUtil;
+import nl.inl.util.StringUtil;
+
+/**
+ * In-memory index of the terms in a field, for autocompletion.
+ *
+ * Finds the most frequent terms starting with a prefix, without going through
+ * the Lucene terms dictionary. Terms are sorted by their normalized form, so all
+ * terms with a prefix form a range; a tree of the most frequent term per range of
+ * terms lets us find the top completions without looking at every term in the range.
+ *
+ * Indices are built when first needed and kept for as long as the index reader
+ * is in use, so they're rebuilt automatically when the index changes.
+ */
+public class TermPrefixIndex {
+
+	/** Don't build an index for fields with more terms than this (to limit memory use) */
+	public static final int MAX_TERMS = 2000000;
+
+	/** Prefix indices per index reader and field (being) built; the result is null if a field has too many terms */
+	private static Map<IndexReader, Map<String, FutureTask<TermPrefixIndex>>> cache = new WeakHashMap<>();
+
+	/**
+	 * Get the prefix index for a field.
+	 *
+	 * @param reader the index reader
+	 * @param luceneField the Lucene field name
+	 * @param sensitive if true, ignore only diacritics when matching; if false,
+	 *   ignore case and diacritics (same as LuceneUtil.findTermsByPrefix())
+	 * @return the prefix index, or null if the field has too many terms
+	 *   (or we were interrupted while waiting for it to be built)
+	 */
+	public static TermPrefixIndex get(IndexReader reader, String luceneField, boolean sensitive) {
+		Map<String, FutureTask<TermPrefixIndex>> fields;
+		synchronized (cache) {
+			fields = cache.get(reader);
+			if (fields == null) {
+				fields = new ConcurrentHashMap<>();
+				cache.put(reader, fields);
+			}
+		}
+		// (building only blocks other threads that need the same index)
+		String key = luceneField + (sensitive ? "/s" : "/i");
+		FutureTask<TermPrefixIndex> task = fields.computeIfAbsent(key,
+				k -> new FutureTask<>(() -> build(reader, luceneField, sensitive)));
+		task.run(); // (does nothing if another thread ran or is running it)
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			// Let the caller detect the interruption; meanwhile, do without the index
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			fields.remove(key, task); // (try again next time)
+			throw ExUtil.wrapRuntimeException(e.getCause());
+		}
+	}
+
+	private static TermPrefixIndex build(IndexReader reader, String luceneField, boolean sensitive) throws IOException {
+		Terms fieldTerms = MultiFields.getTerms(reader, luceneField);
+		if (fieldTerms == null)
+			return new TermPrefixIndex(new ArrayList<>(), new long[0], sensitive);
+
+		// The merged terms don't know their size, but each segment's terms usually do
+		// (and there are at least as many distinct terms as in the largest segment)
+		for (LeafReaderContext leaf: reader.leaves()) {
+			Terms segmentTerms = leaf.reader().terms(luceneField);
+			if (segmentTerms != null && segmentTerms.size() > MAX_TERMS)
+				return null;
+		}
+
+		// Count the terms before converting them to strings
+		TermsEnum termsEnum = fieldTerms.iterator();
+		int numberOfTerms = 0;
+		while (termsEnum.next() != null) {
+			numberOfTerms++;
+			if (numberOfTerms > MAX_TERMS)
+				return null;
+		}
+
+		List<String> terms = new ArrayList<>(numberOfTerms);
+		LongArrayList freqs = new LongArrayList(numberOfTerms);
+		termsEnum = fieldTerms.iterator();
+		for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+			long freq = termsEnum.totalTermFreq();
+			if (freq < 0)
+				freq = termsEnum.docFreq(); // frequencies not indexed (e.g. metadata)
+			terms.add(term.utf8ToString());
+			freqs.add(freq);
+		}
+		return new TermPrefixIndex(terms, freqs.toArray(), sensitive);
+	}
+
+	/** Were terms matched sensitively? */
+	private boolean sensitive;
+
+	/** Normalized form of each term, sorted */
+	private String[] keys;
+
+	/** The terms, in the order of their keys */
+	private String[] terms;
+
+	/** Frequency of each term */
+	private long[] freqs;
+
+	/** Tree of the most frequent term per range: node i has children 2i and 2i+1, leaf for term t is at n + t */
+	private int[] mostFrequent;
+
+	private TermPrefixIndex(List<String> termList, long[] freqList, boolean sensitive) {
+		this.sensitive = sensitive;
+		int n = termList.size();
+
+		// Sort the terms by their normalized form
+		String[] normalized = new String[n];
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			String term = termList.get(i);
+			normalized[i] = normalize(term);
+			if (normalized[i].equals(term))
+				normalized[i] = term; // don't keep two copies
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> normalized[a].compareTo(normalized[b]));
+		keys = new String[n];
+		terms = new String[n];
+		freqs = new long[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = normalized[order[i]];
+			terms[i] = termList.get(order[i]);
+			freqs[i] = freqList[order[i]];
+		}
+
+		// Build the tree
+		mostFrequent = new int[Math.max(2, 2 * n)];
+		for (int i = 0; i < n; i++)
+			mostFrequent[n + i] = i;
+		for (int i = n - 1; i > 0; i--)
+			mostFrequent[i] = moreFrequent(mostFrequent[2 * i], mostFrequent[2 * i + 1]);
+	}
+
+	private String normalize(String term) {
+		String result = StringUtil.stripAccents(term);
+		return sensitive ? result : result.toLowerCase();
+	}
+
+	/** Return the more frequent of two terms (or the first in sort order if equally frequent) */
+	private int moreFrequent(int a, int b) {
+		if (freqs[a] != freqs[b])
+			return freqs[a] > freqs[b] ? a : b;
+		return Math.min(a, b);
+	}
+
+	/** Find the most frequent term in the range [start, end) */
+	private int mostFrequent(int start, int end) {
+		int n = terms.length;
+		int best = start;
+		for (int lo = start + n, hi = end + n; lo < hi; lo >>= 1, hi >>= 1) {
+			if ((lo & 1) == 1)
+				best = moreFrequent(best, mostFrequent[lo++]);
+			if ((hi & 1) == 1)
+				best = moreFrequent(best, mostFrequent[--hi]);
+		}
+		return best;
+	}
+
+	/** A range of terms and its most frequent term */
+	private static class Range {
+		int start, end, best;
+
+		Range(int start, int end, int best) {
+			this.start = start;
+			this.end = end;
+			this.best = best;
+		}
+	}
+
+	/**
+	 * Find the most frequent terms starting with a prefix.
+	 *
+	 * @param prefix the prefix (normalized the same way as the terms)
+	 * @param maxResults maximum number of terms to return
+	 * @return the matching terms, most frequent first
+	 */
+	public List<String> findTermsByPrefix(String prefix, int maxResults) {
+		String key = normalize(prefix == null ? "" : prefix);
+
+		// Find the range of terms with this prefix
+		int start = Arrays.binarySearch(keys, key);
+		if (start < 0)
+			start = -start - 1;
+		int lo = start, hi = keys.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (keys[mid].startsWith(key))
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		int end = lo;
+
+		// Repeatedly take the most frequent term from the remaining ranges
+		List<String> results = new ArrayList<>();
+		PriorityQueue<Range> queue = new PriorityQueue<>((a, b) -> a.best == b.best ? 0 : (moreFrequent(a.best, b.best) == a.best ? -1 : 1));
+		if (start < end)
+			queue.add(new Range(start, end, mostFrequent(start, end)));
+		while (!queue.isEmpty() && results.size() < maxResults) {
+			Range r = queue.poll();
+			results.add(terms[r.best]);
+			if (r.start < r.best)
+				queue.add(new Range(r.start, r.best, mostFrequent(r.start, r.best)));
+			if (r.best + 1 < r.end)
+				queue.add(new Range(r.best + 1, r.end, mostFrequent(r.best + 1, r.end)));
+		}
+		return results;
+	}
+
+	/**
+	 * Get the number of terms in the index.
+	 *
+	 * @return number of terms
+	 */
+	public int numberOfTerms() {
+		return terms.length;
+	}
+
+}
@@ -27,6 +27,9 @@ public class ClauseCombinerNfa extends ClauseCombiner {
 
 	/**
 	 * The default value of nfaThreshold.
+	 *
+	 * (a bit below COST_RATIO_CONSTANT_FACTOR, i.e. NFA-matching must be estimated
+	 * to be somewhat cheaper, because the estimates are rough)
 	 */
 	public static final long DEFAULT_NFA_THRESHOLD = 900;
 
@@ -40,12 +43,6 @@ public class ClauseCombinerNfa extends ClauseCombiner {
 	 */
 	public static final long NO_NFA_MATCHING = 0;
 
-	/**
-	 * Indicates how expensive fetching a lot of term positions from Lucene is;
-	 * Used to calculate the cost of "regular" matching.
-	 */
-	private static final long TERM_FREQ_PENALTY_FACTOR = 500;
-
 	/**
 	 * What we multiply our calculated cost ratio by to get an integer in a reasonable
 	 * range.
@@ -53,9 +50,9 @@ public class ClauseCombinerNfa extends ClauseCombiner {
 	private static final long COST_RATIO_CONSTANT_FACTOR = 1000;
 
 	/**
-	 * The ratio of estimated numbers of hits that we use to decide
-	 * whether or not to try NFA-matching with two clauses / subsequences.
-	 * The lower the number, the more we use NFA-matching.
+	 * The ratio of the estimated cost of NFA-matching to that of regular matching
+	 * (times COST_RATIO_CONSTANT_FACTOR) below which we use NFA-matching with two
+	 * clauses / subsequences. The higher the number, the more we use NFA-matching.
 	 */
 	private static long nfaThreshold = DEFAULT_NFA_THRESHOLD;
 
@@ -69,53 +66,54 @@ public class ClauseCombinerNfa extends ClauseCombiner {
 			nfaThreshold = doNfaMatching ? DEFAULT_NFA_THRESHOLD : NO_NFA_MATCHING;
 	}
 
+	/**
+	 * Compare the estimated costs of NFA-matching and regular matching (see CostModel).
+	 *
+	 * @param left left clause
+	 * @param right right clause
+	 * @param reader index reader
+	 * @return 0 if NFA-matching isn't possible; otherwise, the cost ratio of the best
+	 *   direction (times COST_RATIO_CONSTANT_FACTOR), plus one, positive for forward
+	 *   and negative for backward
+	 */
 	private static long getFactor(BLSpanQuery left, BLSpanQuery right, IndexReader reader) {
 		if (nfaThreshold == NO_NFA_MATCHING)
 			return 0;
-		boolean leftEmpty = left.matchesEmptySequence();
-		boolean rightEmpty = right.matchesEmptySequence();
-		long numLeft = Math.max(1, left.reverseMatchingCost(reader));
-		long numRight = Math.max(1, right.reverseMatchingCost(reader));
-		long seqReverseCost = Math.min(numLeft, numRight) + (numLeft + numRight) / TERM_FREQ_PENALTY_FACTOR;
-		int fiCostLeft = left.forwardMatchingCost();
-		int fiCostRight = right.forwardMatchingCost();
-		long costNfaToReverseForward = COST_RATIO_CONSTANT_FACTOR * numLeft * fiCostRight / seqReverseCost;
-		long costNfaToReverseBackward = COST_RATIO_CONSTANT_FACTOR * numRight * fiCostLeft / seqReverseCost;
-		boolean leftNfa = left.canMakeNfa();
-		boolean rightNfa = right.canMakeNfa();
-		boolean backwardPossible = leftNfa && !rightEmpty;
-		boolean forwardPossible = rightNfa && !leftEmpty;
-		//fp1 bp1 rf242624 rb2568 fil5 fir1 nl27114064 nr57411
-		//factor == -2569, abs(factor) > nfaThreshold (2000)
+		SequencePlan plan = CostModel.estimate(left, right, reader);
+		boolean forwardPossible = plan.getNfaForwardCost() >= 0;
+		boolean backwardPossible = plan.getNfaBackwardCost() >= 0;
+		long costNfaToReverseForward = costRatio(plan.getNfaForwardCost(), plan.getPostingsCost());
+		long costNfaToReverseBackward = costRatio(plan.getNfaBackwardCost(), plan.getPostingsCost());
 		if (Searcher.traceOptimization) {
-			logger.debug(String.format("   fp%d bp%d rf%d rb%d fil%d fir%d nl%d nr%d",
+			logger.debug(String.format("   fp%d bp%d rf%d rb%d nl%d nr%d",
 				forwardPossible ? 1 : 0,
 				backwardPossible ? 1 : 0,
 				costNfaToReverseForward,
 				costNfaToReverseBackward,
-				fiCostLeft,
-				fiCostRight,
-				numLeft,
-				numRight
+				plan.getLeftHits(),
+				plan.getRightHits()
 			));
 		}
-		if (forwardPossible || backwardPossible) {
-			// Possible.
-			if (forwardPossible && backwardPossible) {
-				// Both possible; choose the best
-				if (costNfaToReverseBackward >= costNfaToReverseForward) {
-					// Forward
-					return costNfaToReverseForward + 1;
-				}
-				// Backward
-				return -costNfaToReverseBackward - 1;
-			}
-			// One possibility; which one?
-			if (forwardPossible)
-				return costNfaToReverseForward + 1;
-			return -costNfaToReverseBackward - 1;
+		long factor;
+		if (forwardPossible && (!backwardPossible || costNfaToReverseBackward >= costNfaToReverseForward)) {
+			// Forward
+			factor = costNfaToReverseForward + 1;
+		} else if (backwardPossible) {
+			// Backward
+			factor = -costNfaToReverseBackward - 1;
+		} else {
+			return 0; // not possible
 		}
-		return 0; // not possible
+		if (Math.abs(factor) <= nfaThreshold)
+			plan.setChosen(factor > 0 ? SequencePlan.NFA_FORWARD : SequencePlan.NFA_BACKWARD);
+		return factor;
+	}
+
+	private static long costRatio(double nfaCost, double reverseCost) {
+		if (nfaCost < 0)
+			return 0;
+		double ratio = COST_RATIO_CONSTANT_FACTOR * nfaCost / Math.max(1, reverseCost);
+		return (long) Math.min(ratio, Long.MAX_VALUE / 2);
 	}
 
 	@Override
@@ -0,0 +1,148 @@
+package nl.inl.blacklab.search.lucene.optimize;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
+import nl.inl.blacklab.search.lucene.BLSpanTermQuery;
+import nl.inl.blacklab.search.lucene.SpanQueryAnyToken;
+
+/**
+ * Estimates the cost of the different ways to match a sequence of two clauses,
+ * using statistics from the index (see IndexStatistics).
+ *
+ * The number of hits for each clause is estimated by the clause itself (see
+ * BLSpanQuery.reverseMatchingCost()); for terms, tags and patterns with a
+ * fixed prefix, this is the actual frequency in the index. Hits are assumed to
+ * be spread over documents and positions independently. Costs are expressed
+ * in "postings positions read":
+ *
+ * <ul>
+ * <li>postings: each clause reads its positions in the documents that also
+ *   contain the other clause (the rest is skipped), plus a cost per document
+ *   both clauses occur in;</li>
+ * <li>NFA: the anchor clause reads all its positions, and for each, the other
+ *   clause is matched using the forward index;</li>
+ * <li>expansion: each hit of the other clause is expanded once for each length
+ *   the any-token clause can have.</li>
+ * </ul>
+ *
+ * NFA costs are corrected using the costs observed while matching earlier
+ * queries on the same index (see PlanFeedback).
+ *
+ * While explaining a query (see Searcher.explain()), the estimates made are
+ * recorded, so they can be shown to the user.
+ */
+public class CostModel {
+
+	/**
+	 * Cost of matching a unit of forward matching cost (see
+	 * BLSpanQuery.forwardMatchingCost()) using the forward index, relative to
+	 * reading a position from the postings. (fetching forward index chunks is
+	 * considerably more expensive than decoding postings)
+	 */
+	static final double FORWARD_INDEX_COST = 5;
+
+	/** Cost of skipping to a document both clauses occur in, relative to reading a position */
+	static final double DOC_COST = 4;
+
+	/** Number of expansion steps we assume for an unlimited any-token clause */
+	private static final int UNLIMITED_EXPANSION_STEPS = 50;
+
+	/** Estimates recorded while explaining a query on this thread, by clauses, or null if not recording */
+	private static ThreadLocal<Map<String, SequencePlan>> recorded = new ThreadLocal<>();
+
+	private CostModel() {
+	}
+
+	/**
+	 * Estimate the costs of matching a sequence of two clauses.
+	 *
+	 * @param left left clause
+	 * @param right right clause
+	 * @param reader the index reader
+	 * @return the estimates
+	 */
+	public static SequencePlan estimate(BLSpanQuery left, BLSpanQuery right, IndexReader reader) {
+		IndexStatistics stats = IndexStatistics.get(reader);
+		long leftHits = Math.max(1, left.reverseMatchingCost(reader));
+		long rightHits = Math.max(1, right.reverseMatchingCost(reader));
+
+		// Determine the size of the index. (tag clauses use a field with fewer terms, so use the largest)
+		String leftField = left.getRealField(), rightField = right.getRealField();
+		String field = stats.sumTotalTermFreq(leftField) >= stats.sumTotalTermFreq(rightField) ? leftField : rightField;
+		double docs = Math.max(1, stats.docCount(field));
+		double tokens = Math.max(1, stats.sumTotalTermFreq(field));
+		double leftDocs = stats.estimateDocsWithHits(field, leftHits);
+		double rightDocs = stats.estimateDocsWithHits(field, rightHits);
+
+		long estimatedHits = (long) Math.min((double) leftHits * rightHits / tokens, Math.max(leftHits, rightHits));
+		double postingsCost = leftHits * (rightDocs / docs) + rightHits * (leftDocs / docs) +
+				Math.min(leftDocs, rightDocs) * DOC_COST;
+		double nfaForwardCost = -1, nfaBackwardCost = -1;
+		if (right.canMakeNfa() && !left.matchesEmptySequence())
+			nfaForwardCost = leftHits + leftHits * right.forwardMatchingCost() * FORWARD_INDEX_COST;
+		if (left.canMakeNfa() && !right.matchesEmptySequence())
+			nfaBackwardCost = rightHits + rightHits * left.forwardMatchingCost() * FORWARD_INDEX_COST;
+		double correction = 1;
+		if (nfaForwardCost >= 0 || nfaBackwardCost >= 0) {
+			correction = PlanFeedback.get(reader).getNfaCostCorrection(PlanFeedback.shape(left, right));
+			if (nfaForwardCost >= 0)
+				nfaForwardCost *= correction;
+			if (nfaBackwardCost >= 0)
+				nfaBackwardCost *= correction;
+		}
+		double expansionCost = -1;
+		if (right instanceof SpanQueryAnyToken)
+			expansionCost = (double) leftHits * expansionSteps(right);
+		else if (left instanceof SpanQueryAnyToken)
+			expansionCost = (double) rightHits * expansionSteps(left);
+
+		SequencePlan plan = new SequencePlan(left, right, leftHits, rightHits, estimatedHits,
+				postingsCost, nfaForwardCost, nfaBackwardCost, expansionCost, correction);
+		Map<String, SequencePlan> recording = recorded.get();
+		if (recording != null)
+			recording.put(left + " " + right, plan); // (estimated several times while optimizing; keep the last)
+		return plan;
+	}
+
+	/**
+	 * Determine the cost of NFA-matching that was actually observed, in the same
+	 * units as the estimates.
+	 *
+	 * @param anchorsTested number of anchor positions the NFA was matched from
+	 * @param tokensRead number of tokens read from the forward index
+	 * @return the cost
+	 */
+	public static double nfaMatchingCost(long anchorsTested, long tokensRead) {
+		return anchorsTested + tokensRead * BLSpanTermQuery.FIXED_FORWARD_MATCHING_COST * FORWARD_INDEX_COST;
+	}
+
+	private static int expansionSteps(BLSpanQuery anyToken) {
+		int max = anyToken.hitsLengthMax();
+		return max == BLSpanQuery.MAX_UNLIMITED ? UNLIMITED_EXPANSION_STEPS : max - anyToken.hitsLengthMin() + 1;
+	}
+
+	/**
+	 * Start recording the estimates made on this thread.
+	 */
+	public static void startRecording() {
+		recorded.set(new LinkedHashMap<String, SequencePlan>());
+	}
+
+	/**
+	 * Stop recording the estimates made on this thread.
+	 *
+	 * @return the estimates made since startRecording(), in order
+	 */
+	public static List<SequencePlan> stopRecording() {
+		Map<String, SequencePlan> recording = recorded.get();
+		recorded.remove();
+		return recording == null ? new ArrayList<SequencePlan>() : new ArrayList<>(recording.values());
+	}
+
+}
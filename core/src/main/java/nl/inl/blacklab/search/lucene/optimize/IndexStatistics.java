@@ -0,0 +1,203 @@
+package nl.inl.blacklab.search.lucene.optimize;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.AutomatonQuery;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+
+import nl.inl.blacklab.search.Searcher;
+
+/**
+ * Statistics about an index, used to estimate the cost of query plans.
+ *
+ * Term statistics are cheap to look up, so they're read from the index each
+ * time. Pattern frequencies (which require enumerating terms) are kept for the
+ * most recently used patterns, and field statistics for as long as the Searcher
+ * is open. Tags are indexed as terms, so their frequencies are available through
+ * totalTermFreq() as well.
+ */
+public class IndexStatistics {
+
+	/** Maximum number of terms to enumerate when determining the frequency of a pattern */
+	private static final int MAX_PATTERN_TERMS = 1000;
+
+	/** Maximum number of patterns to keep frequencies for */
+	private static final int MAX_PATTERNS = 1000;
+
+	/**
+	 * Get the statistics for an index.
+	 *
+	 * @param reader the index reader
+	 * @return the statistics (shared by all users of the same Searcher)
+	 */
+	public static IndexStatistics get(IndexReader reader) {
+		Searcher searcher = Searcher.fromIndexReader(reader);
+		if (searcher == null)
+			return new IndexStatistics(reader); // (not cached)
+		return searcher.getIndexStatistics();
+	}
+
+	private IndexReader reader;
+
+	/** Total number of occurrences of the terms matching a pattern, or -1 if too many terms match (LRU) */
+	private Map<AutomatonQuery, Long> patternFreqs = new LinkedHashMap<AutomatonQuery, Long>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<AutomatonQuery, Long> eldest) {
+			return size() > MAX_PATTERNS;
+		}
+	};
+
+	/** Total number of tokens per field */
+	private Map<String, Long> fieldTokens = new ConcurrentHashMap<>();
+
+	/** Number of documents having each field */
+	private Map<String, Integer> fieldDocs = new ConcurrentHashMap<>();
+
+	public IndexStatistics(IndexReader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Get the total number of occurrences of a term.
+	 *
+	 * @param term the term
+	 * @return number of occurrences
+	 */
+	public long totalTermFreq(Term term) {
+		try {
+			return reader.totalTermFreq(term);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Get the number of documents containing a term.
+	 *
+	 * @param term the term
+	 * @return number of documents
+	 */
+	public int docFreq(Term term) {
+		try {
+			return reader.docFreq(term);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Get the total number of occurrences of the terms matching a pattern.
+	 *
+	 * The matching terms are enumerated, so this should only be used for
+	 * patterns that can use the term index to find them (e.g. patterns with a
+	 * fixed prefix).
+	 *
+	 * @param query the regex, wildcard or prefix query
+	 * @param field field to look in
+	 * @return number of occurrences, or -1 if too many terms match to determine this cheaply
+	 */
+	public long patternTermFreq(AutomatonQuery query, String field) {
+		Long cached;
+		synchronized (patternFreqs) {
+			cached = patternFreqs.get(query);
+		}
+		if (cached != null)
+			return cached;
+		// (enumerate outside the lock; at worst, two threads determine the same frequency)
+		long freq = determinePatternTermFreq(query, field);
+		synchronized (patternFreqs) {
+			patternFreqs.put(query, freq);
+		}
+		return freq;
+	}
+
+	private long determinePatternTermFreq(AutomatonQuery query, String field) {
+		try {
+			Terms terms = MultiFields.getTerms(reader, field);
+			if (terms == null)
+				return 0;
+			TermsEnum termsEnum = new CompiledAutomaton(query.getAutomaton()).getTermsEnum(terms);
+			long freq = 0;
+			int n = 0;
+			while (termsEnum.next() != null) {
+				n++;
+				long termFreq = termsEnum.totalTermFreq();
+				if (n > MAX_PATTERN_TERMS || termFreq < 0)
+					return -1;
+				freq += termFreq;
+			}
+			return freq;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Get the total number of tokens in a field.
+	 *
+	 * @param field the field
+	 * @return number of tokens
+	 */
+	public long sumTotalTermFreq(String field) {
+		return fieldTokens.computeIfAbsent(field, f -> {
+			try {
+				return Math.max(0, reader.getSumTotalTermFreq(f));
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+	}
+
+	/**
+	 * Get the number of documents with a field.
+	 *
+	 * @param field the field
+	 * @return number of documents
+	 */
+	public int docCount(String field) {
+		return fieldDocs.computeIfAbsent(field, f -> {
+			try {
+				int n = reader.getDocCount(f);
+				return n < 0 ? reader.numDocs() : n;
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+	}
+
+	/**
+	 * Get the average document length for a field.
+	 *
+	 * @param field the field
+	 * @return average number of tokens per document
+	 */
+	public double averageDocLength(String field) {
+		int docs = docCount(field);
+		return docs == 0 ? 0 : (double) sumTotalTermFreq(field) / docs;
+	}
+
+	/**
+	 * Estimate the number of documents containing at least one of a number of hits.
+	 *
+	 * Assumes the hits are spread over the documents independently.
+	 *
+	 * @param field the field
+	 * @param hits number of hits
+	 * @return estimated number of documents
+	 */
+	public double estimateDocsWithHits(String field, double hits) {
+		int docs = docCount(field);
+		if (docs == 0)
+			return 0;
+		return docs * -Math.expm1(-hits / docs);
+	}
+
+}
@@ -0,0 +1,181 @@
+package nl.inl.blacklab.search.lucene.optimize;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.index.IndexReader;
+
+import nl.inl.blacklab.search.Searcher;
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
+
+/**
+ * Keeps track of the actual cost of NFA-matching, compared to what CostModel
+ * estimated, so future estimates for the same index can be corrected.
+ *
+ * Observations are kept per query shape (the clauses with their terms left
+ * out, so e.g. "the" followed by a regex and "a" followed by another regex
+ * share their observations) in a bounded store, and for the index as a whole.
+ * The correction is the (moving) geometric average of the ratio between
+ * observed and estimated cost; multiplying the NFA cost estimate by it
+ * effectively adjusts the NFA threshold for this index.
+ */
+public class PlanFeedback {
+
+	/** Maximum number of query shapes to keep observations for */
+	private static final int MAX_SHAPES = 1000;
+
+	/** Weight of a new observation in the moving average */
+	private static final double NEW_OBSERVATION_WEIGHT = 0.3;
+
+	/** Number of observations needed before we apply the index-wide correction to unknown shapes */
+	private static final int MIN_INDEX_OBSERVATIONS = 3;
+
+	/** Corrections are kept within this factor of the estimate in either direction */
+	private static final double MAX_CORRECTION = 100;
+
+	/** Matches the term (or pattern) part of a clause, e.g. "quick" in TERM(contents%word@i:quick) */
+	private static final Pattern TERM_VALUE = Pattern.compile("(%\\w+@\\w+:)[^,)]*");
+
+	/**
+	 * Get the feedback store for an index.
+	 *
+	 * @param reader the index reader
+	 * @return the feedback store (shared by all users of the same Searcher)
+	 */
+	public static PlanFeedback get(IndexReader reader) {
+		Searcher searcher = Searcher.fromIndexReader(reader);
+		if (searcher == null)
+			return new PlanFeedback(); // (not kept)
+		return searcher.getPlanFeedback();
+	}
+
+	/**
+	 * Determine the shape of a sequence, for looking up observations.
+	 *
+	 * @param left left clause
+	 * @param right right clause
+	 * @return the shape
+	 */
+	public static String shape(BLSpanQuery left, BLSpanQuery right) {
+		return TERM_VALUE.matcher(left + " " + right).replaceAll("$1?");
+	}
+
+	/** Observations for one query shape (or the whole index) */
+	public static class Observations {
+
+		/** Number of times NFA-matching was observed */
+		private long count;
+
+		/** Moving average of the natural log of observed cost / estimated cost */
+		private double logRatio;
+
+		/** Total number of anchor positions tested */
+		private long anchors;
+
+		/** Total number of hits produced */
+		private long hits;
+
+		/** Total time spent matching, in ms */
+		private long timeMs;
+
+		synchronized void add(double observedCost, double estimatedCost, long anchorsTested, long hitsProduced, long time) {
+			double ratio = Math.log(Math.max(1, observedCost) / Math.max(1, estimatedCost));
+			logRatio = count == 0 ? ratio : logRatio + NEW_OBSERVATION_WEIGHT * (ratio - logRatio);
+			count++;
+			anchors += anchorsTested;
+			hits += hitsProduced;
+			timeMs += time;
+		}
+
+		/**
+		 * Get the factor to multiply the estimated NFA cost by.
+		 * @return the correction
+		 */
+		public synchronized double getCorrection() {
+			double correction = Math.exp(logRatio);
+			return Math.max(1 / MAX_CORRECTION, Math.min(MAX_CORRECTION, correction));
+		}
+
+		public synchronized long getCount() {
+			return count;
+		}
+
+		public synchronized long getAnchors() {
+			return anchors;
+		}
+
+		public synchronized long getHits() {
+			return hits;
+		}
+
+		/**
+		 * Get the observed throughput.
+		 * @return hits produced per ms
+		 */
+		public synchronized double getHitsPerMs() {
+			return (double) hits / Math.max(1, timeMs);
+		}
+	}
+
+	/** Observations per query shape, least recently used first */
+	private Map<String, Observations> shapes = new LinkedHashMap<String, Observations>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Observations> eldest) {
+			return size() > MAX_SHAPES;
+		}
+	};
+
+	/** Observations for all shapes combined */
+	private Observations index = new Observations();
+
+	/**
+	 * Record the cost of NFA-matching a sequence (or part of it).
+	 *
+	 * @param shape shape of the sequence (see shape())
+	 * @param observedCost observed cost (see CostModel.nfaMatchingCost())
+	 * @param estimatedCost cost CostModel estimated for the same part of the index, without correction
+	 * @param anchorsTested number of anchor positions tested
+	 * @param hitsProduced number of hits produced
+	 * @param timeMs time spent matching
+	 */
+	public void record(String shape, double observedCost, double estimatedCost, long anchorsTested, long hitsProduced, long timeMs) {
+		Observations obs;
+		synchronized (shapes) {
+			obs = shapes.get(shape);
+			if (obs == null) {
+				obs = new Observations();
+				shapes.put(shape, obs);
+			}
+		}
+		obs.add(observedCost, estimatedCost, anchorsTested, hitsProduced, timeMs);
+		index.add(observedCost, estimatedCost, anchorsTested, hitsProduced, timeMs);
+	}
+
+	/**
+	 * Get the factor to multiply the estimated NFA cost for a sequence by.
+	 *
+	 * @param shape shape of the sequence (see shape())
+	 * @return the correction for this shape if observed, otherwise for the index
+	 *   (if observed often enough), otherwise 1
+	 */
+	public double getNfaCostCorrection(String shape) {
+		Observations obs;
+		synchronized (shapes) {
+			obs = shapes.get(shape);
+		}
+		if (obs != null)
+			return obs.getCorrection();
+		return index.getCount() >= MIN_INDEX_OBSERVATIONS ? index.getCorrection() : 1;
+	}
+
+	/**
+	 * Get the observations for the index as a whole.
+	 *
+	 * @return the observations
+	 */
+	public Observations getIndexObservations() {
+		return index;
+	}
+
+}
@@ -0,0 +1,139 @@
+package nl.inl.blacklab.search.lucene.optimize;
+
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
+
+/**
+ * The estimated costs of the ways to match a sequence of two adjacent clauses.
+ *
+ * Costs are in units of "postings positions read"; see CostModel. A cost of -1
+ * means that way of matching isn't possible for these clauses.
+ */
+public class SequencePlan {
+
+	/** Match both clauses using the postings and combine the results */
+	public static final String POSTINGS = "postings";
+
+	/** Match the left clause using the postings, the right using the forward index (NFA) */
+	public static final String NFA_FORWARD = "nfaForward";
+
+	/** Match the right clause using the postings, the left using the forward index (NFA) */
+	public static final String NFA_BACKWARD = "nfaBackward";
+
+	/** Expand the other clause by the number of tokens the any-token clause matches */
+	public static final String EXPANSION = "expansion";
+
+	private BLSpanQuery left;
+
+	private BLSpanQuery right;
+
+	private long leftHits;
+
+	private long rightHits;
+
+	private long estimatedHits;
+
+	private double postingsCost;
+
+	private double nfaForwardCost;
+
+	private double nfaBackwardCost;
+
+	private double expansionCost;
+
+	private double nfaCostCorrection;
+
+	private String chosen = POSTINGS;
+
+	SequencePlan(BLSpanQuery left, BLSpanQuery right, long leftHits, long rightHits, long estimatedHits,
+			double postingsCost, double nfaForwardCost, double nfaBackwardCost, double expansionCost, double nfaCostCorrection) {
+		this.left = left;
+		this.right = right;
+		this.leftHits = leftHits;
+		this.rightHits = rightHits;
+		this.estimatedHits = estimatedHits;
+		this.postingsCost = postingsCost;
+		this.nfaForwardCost = nfaForwardCost;
+		this.nfaBackwardCost = nfaBackwardCost;
+		this.expansionCost = expansionCost;
+		this.nfaCostCorrection = nfaCostCorrection;
+	}
+
+	void setChosen(String chosen) {
+		this.chosen = chosen;
+	}
+
+	public BLSpanQuery getLeft() {
+		return left;
+	}
+
+	public BLSpanQuery getRight() {
+		return right;
+	}
+
+	/**
+	 * Get the estimated number of hits for the left clause.
+	 * @return estimated number of hits
+	 */
+	public long getLeftHits() {
+		return leftHits;
+	}
+
+	/**
+	 * Get the estimated number of hits for the right clause.
+	 * @return estimated number of hits
+	 */
+	public long getRightHits() {
+		return rightHits;
+	}
+
+	/**
+	 * Get the estimated number of hits for the sequence.
+	 * @return estimated number of hits
+	 */
+	public long getEstimatedHits() {
+		return estimatedHits;
+	}
+
+	public double getPostingsCost() {
+		return postingsCost;
+	}
+
+	public double getNfaForwardCost() {
+		return nfaForwardCost;
+	}
+
+	public double getNfaBackwardCost() {
+		return nfaBackwardCost;
+	}
+
+	public double getExpansionCost() {
+		return expansionCost;
+	}
+
+	/**
+	 * Get the factor the NFA costs were multiplied by, based on the costs
+	 * observed for earlier queries (see PlanFeedback).
+	 *
+	 * @return the correction (1 if none)
+	 */
+	public double getNfaCostCorrection() {
+		return nfaCostCorrection;
+	}
+
+	/**
+	 * Get the way of matching the NFA combiner chose.
+	 *
+	 * @return POSTINGS, NFA_FORWARD or NFA_BACKWARD (EXPANSION is
+	 *   applied by a different combiner, before NFAs are considered)
+	 */
+	public String getChosen() {
+		return chosen;
+	}
+
+	@Override
+	public String toString() {
+		return "SequencePlan(" + left + ", " + right + ": postings=" + postingsCost + ", nfaForward=" + nfaForwardCost +
+				", nfaBackward=" + nfaBackwardCost + ", expansion=" + expansionCost + ", chosen=" + chosen + ")";
+	}
+
+}
@@ -31,6 +31,20 @@ public abstract class MatchFilter {
 	 */
 	public abstract ConstraintValue evaluate(ForwardIndexDocument fiDoc, Span[] capturedGroups);
 
+	/**
+	 * Does the constraint hold at the current match position?
+	 *
+	 * Same as evaluate(...).isTruthy(), but filters that can work on term ids
+	 * directly override this to avoid creating values for each hit.
+	 *
+	 * @param fiDoc document we're matching in right now
+	 * @param capturedGroups current captured groups state
+	 * @return true if the constraint holds
+	 */
+	public boolean matches(ForwardIndexDocument fiDoc, Span[] capturedGroups) {
+		return evaluate(fiDoc, capturedGroups).isTruthy();
+	}
+
 	/**
 	 * Let token property nodes look up the index of their property 
 	 * @param fiAccessor forward index accessor
@@ -54,6 +54,11 @@ public class MatchFilterNot extends MatchFilter {
 		return ConstraintValue.get(!a.evaluate(fiDoc, capturedGroups).isTruthy());
 	}
 
+	@Override
+	public boolean matches(ForwardIndexDocument fiDoc, Span[] capturedGroups) {
+		return !a.matches(fiDoc, capturedGroups);
+	}
+
 	@Override
 	public void lookupPropertyIndices(ForwardIndexAccessor fiAccessor) {
 		a.lookupPropertyIndices(fiAccessor);
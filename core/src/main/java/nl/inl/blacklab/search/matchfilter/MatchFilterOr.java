@@ -65,6 +65,11 @@ public class MatchFilterOr extends MatchFilter {
 		return b.evaluate(fiDoc, capturedGroups);
 	}
 
+	@Override
+	public boolean matches(ForwardIndexDocument fiDoc, Span[] capturedGroups) {
+		return a.matches(fiDoc, capturedGroups) || b.matches(fiDoc, capturedGroups);
+	}
+
 	@Override
 	public void lookupPropertyIndices(ForwardIndexAccessor fiAccessor) {
 		a.lookupPropertyIndices(fiAccessor);
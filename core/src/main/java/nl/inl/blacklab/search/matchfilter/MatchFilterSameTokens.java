@@ -20,6 +20,10 @@ public class MatchFilterSameTokens extends MatchFilter {
 
 	private boolean diacSensitive;
 
+	/** Sort position per term id for our sensitivity, or null if we compare term ids
+	 *  directly (sensitive, or no property) or the sort positions aren't available */
+	private int[] sortPositionPerId;
+
 	public MatchFilterSameTokens(String leftGroup, String rightGroup, String propertyName, boolean caseSensitive, boolean diacSensitive) {
 		this.groupName = new String[] {leftGroup, rightGroup};
 		this.groupIndex = new int[2];
@@ -95,10 +99,31 @@ public class MatchFilterSameTokens extends MatchFilter {
 		return ConstraintValue.get(fiDoc.termsEqual(propIndex, termId, caseSensitive, diacSensitive));
 	}
 
+	@Override
+	public boolean matches(ForwardIndexDocument fiDoc, Span[] capturedGroups) {
+		Span left = capturedGroups[groupIndex[0]];
+		Span right = capturedGroups[groupIndex[1]];
+		if (left == null || right == null)
+			return false; // if either side is undefined, they are not equal
+		if (propIndex < 0)
+			return left.start == right.start;
+		int leftTermId = fiDoc.getToken(propIndex, left.start);
+		int rightTermId = fiDoc.getToken(propIndex, right.start);
+		if (caseSensitive && diacSensitive)
+			return leftTermId == rightTermId;
+		if (sortPositionPerId != null) {
+			// (Somewhat) insensitive; terms are equal if they have the same sort position
+			return leftTermId >= 0 && rightTermId >= 0 && sortPositionPerId[leftTermId] == sortPositionPerId[rightTermId];
+		}
+		return evaluate(fiDoc, capturedGroups).isTruthy();
+	}
+
 	@Override
 	public void lookupPropertyIndices(ForwardIndexAccessor fiAccessor) {
 		if (propertyName != null) {
 			propIndex = fiAccessor.getPropertyNumber(propertyName);
+			if (!caseSensitive || !diacSensitive)
+				sortPositionPerId = fiAccessor.getSortPositionPerId(propIndex, caseSensitive);
 		}
 	}
 
@@ -96,6 +96,19 @@ public class MatchFilterTokenPropertyEqualsString extends MatchFilter {
 		return ConstraintValue.get(compareToTermIds.contains(leftTermId)); // multiple terms, use set.contains()
 	}
 
+	@Override
+	public boolean matches(ForwardIndexDocument fiDoc, Span[] capturedGroups) {
+		Span span = capturedGroups[groupIndex];
+		if (span == null)
+			return false;
+		if (propIndex < 0)
+			return true; // token position (an int) is always truthy
+		int leftTermId = fiDoc.getToken(propIndex, span.start);
+		if (compareToTermId >= 0)
+			return leftTermId == compareToTermId;
+		return compareToTermIds.contains(leftTermId);
+	}
+
 	@Override
 	public void lookupPropertyIndices(ForwardIndexAccessor fiAccessor) {
 		if (propertyName != null) {
@@ -0,0 +1,190 @@
+package nl.inl.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Splits CPU-heavy work on large result sets (grouping, counting, etc.)
+ * into parts that are processed by a shared pool of worker threads.
+ */
+public class ParallelUtil {
+
+	/** Don't split work into parts smaller than this (number of items) */
+	public static final int DEFAULT_MIN_PART_SIZE = 100000;
+
+	/**
+	 * Processes part of a range of items and produces a partial result.
+	 *
+	 * @param <T> type of the partial result
+	 */
+	@FunctionalInterface
+	public interface RangeProcessor<T> {
+		/**
+		 * Process items start (inclusive) to end (exclusive).
+		 *
+		 * @param start first item to process
+		 * @param end first item not to process
+		 * @return the partial result
+		 */
+		T process(int start, int end);
+	}
+
+	/** Maximum number of threads to use for one operation (1 disables parallel processing) */
+	private static int maxThreads = Runtime.getRuntime().availableProcessors();
+
+	/** Our worker threads, or null if not created yet */
+	private static ExecutorService workers;
+
+	/** Threads belonging to our pool; work submitted from these is done in the same thread */
+	private static final ThreadLocal<Boolean> isWorkerThread = new ThreadLocal<>();
+
+	private ParallelUtil() {
+	}
+
+	/**
+	 * Set the maximum number of threads to use for one operation.
+	 *
+	 * Must be called before any parallel work is done to have effect.
+	 *
+	 * @param n maximum number of threads (1 disables parallel processing)
+	 */
+	public static synchronized void setMaxThreads(int n) {
+		maxThreads = Math.max(1, n);
+	}
+
+	/**
+	 * Get the maximum number of threads to use for one operation.
+	 *
+	 * @return maximum number of threads
+	 */
+	public static int getMaxThreads() {
+		return maxThreads;
+	}
+
+	private static synchronized ExecutorService getWorkers() {
+		if (workers == null) {
+			final AtomicInteger threadNumber = new AtomicInteger(1);
+			ThreadFactory threadFactory = r -> {
+				Thread t = new Thread(() -> {
+					isWorkerThread.set(true);
+					r.run();
+				}, "BlackLabWorker-" + threadNumber.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			};
+			workers = Executors.newFixedThreadPool(maxThreads, threadFactory);
+		}
+		return workers;
+	}
+
+	/**
+	 * Split the range [0, n) into (roughly) equal parts for processing in parallel.
+	 *
+	 * Callers may move the boundaries (e.g. to make sure all hits from one
+	 * document end up in the same part) before passing them to processParts().
+	 *
+	 * @param n number of items
+	 * @param minPartSize minimum number of items per part
+	 * @return the part boundaries: part i is [boundaries[i], boundaries[i + 1])
+	 */
+	public static int[] split(int n, int minPartSize) {
+		int parts = Math.max(1, Math.min(maxThreads, n / Math.max(1, minPartSize)));
+		int[] boundaries = new int[parts + 1];
+		for (int i = 0; i <= parts; i++) {
+			boundaries[i] = (int)((long)n * i / parts);
+		}
+		return boundaries;
+	}
+
+	/**
+	 * Split the range [0, n) into parts and process them in parallel.
+	 *
+	 * @param n number of items
+	 * @param minPartSize minimum number of items per part
+	 * @param processor what to do with each part
+	 * @return the partial results, in the order of the parts
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 */
+	public static <T> List<T> processRange(int n, int minPartSize, RangeProcessor<T> processor) throws InterruptedException {
+		return processParts(split(n, minPartSize), processor);
+	}
+
+	/**
+	 * Process the specified parts of a range in parallel.
+	 *
+	 * If there's only one part, or we're called from one of our own worker threads,
+	 * the work is done in the calling thread.
+	 *
+	 * @param boundaries the part boundaries: part i is [boundaries[i], boundaries[i + 1])
+	 * @param processor what to do with each part
+	 * @return the partial results, in the order of the parts
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 */
+	public static <T> List<T> processParts(int[] boundaries, RangeProcessor<T> processor) throws InterruptedException {
+		int parts = boundaries.length - 1;
+		if (parts <= 1 || maxThreads <= 1 || isWorkerThread.get() != null) {
+			// Not worth it (or possible) to use other threads
+			List<T> results = new ArrayList<>();
+			for (int i = 0; i < parts; i++) {
+				results.add(processor.process(boundaries[i], boundaries[i + 1]));
+			}
+			return results;
+		}
+		ExecutorService executor = getWorkers();
+		List<Future<T>> futures = new ArrayList<>();
+		for (int i = 0; i < parts; i++) {
+			final int start = boundaries[i], end = boundaries[i + 1];
+			futures.add(executor.submit(() -> processor.process(start, end)));
+		}
+		List<T> results = new ArrayList<>();
+		try {
+			for (Future<T> future: futures) {
+				results.add(future.get());
+			}
+		} catch (ExecutionException e) {
+			throw ExUtil.wrapRuntimeException(e.getCause());
+		} finally {
+			// If we were interrupted or something went wrong, don't leave work running
+			for (Future<T> future: futures) {
+				future.cancel(true);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Move part boundaries forward so they don't fall inside a run of equal keys
+	 * (e.g. all the hits in one document).
+	 *
+	 * @param boundaries the part boundaries
+	 * @param keyAt returns the key for an item
+	 * @return the new boundaries, without empty parts
+	 */
+	public static int[] alignBoundaries(int[] boundaries, IntUnaryOperator keyAt) {
+		int n = boundaries[boundaries.length - 1];
+		int[] result = new int[boundaries.length];
+		int parts = 0;
+		result[0] = boundaries[0];
+		for (int i = 1; i < boundaries.length - 1; i++) {
+			int b = Math.max(boundaries[i], result[parts]);
+			while (b > 0 && b < n && keyAt.applyAsInt(b) == keyAt.applyAsInt(b - 1))
+				b++;
+			if (b > result[parts] && b < n) {
+				parts++;
+				result[parts] = b;
+			}
+		}
+		parts++;
+		result[parts] = n;
+		return Arrays.copyOf(result, parts + 1);
+	}
+
+}
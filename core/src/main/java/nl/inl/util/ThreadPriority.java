@@ -33,11 +33,16 @@ public class ThreadPriority implements Prioritizable {
 		ThreadPriority.enabled = enabled;
 	}
 
+	/** @return is this functionality enabled? */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
 	/** The thread we're running in. */
 	Thread currentThread;
 
 	/** What's the intended priority level? */
-	private Level level = Level.RUNNING;
+	private volatile Level level = Level.RUNNING;
 
 	/**
 	 * Create a ThreadEtiquette object.
@@ -47,12 +52,13 @@ public class ThreadPriority implements Prioritizable {
 	}
 
 	@Override
-	public void setPriorityLevel(Level level) {
+	public synchronized void setPriorityLevel(Level level) {
 		this.level = level;
+		notifyAll(); // wake up our thread if it was waiting in behave()
 	}
 
 	@Override
-	public Level getPriorityLevel() {
+	public synchronized Level getPriorityLevel() {
 		return level;
 	}
 
@@ -63,7 +69,7 @@ public class ThreadPriority implements Prioritizable {
 	/**
 	 * Make sure our thread is behaving like a respectable citizen.
 	 *
-	 * That means: if it's taking long, it should sleep from time to time;
+	 * That means: if it's paused, it should wait (without using the CPU) until it's resumed;
 	 * if it's taking too long, it should be interrupted.
 	 *
 	 * @throws InterruptedException if operation was taking too long,
@@ -79,8 +85,12 @@ public class ThreadPriority implements Prioritizable {
 			throw new InterruptedException("Operation aborted");
 		}
 
-		while (level != Level.RUNNING) {
-			Thread.sleep(100);
+		if (level != Level.RUNNING) {
+			synchronized (this) {
+				while (level != Level.RUNNING) {
+					wait();
+				}
+			}
 		}
 	}
 }
@@ -135,6 +135,16 @@ public class MockHits extends Hits {
 		return get(i);
 	}
 
+	@Override
+	public int[] getSortOrder() {
+		return null;
+	}
+
+	@Override
+	public long estimateSizeBytes() {
+		return 0;
+	}
+
 	@Override
 	public Hit get(int i) {
 		return new Hit(doc[i], start[i], end[i]);
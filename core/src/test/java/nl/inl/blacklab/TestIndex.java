@@ -26,7 +26,7 @@ public class TestIndex {
 	 * Some test XML data to index.
 	 */
 	final static String[] testData = {
-		"<doc><s><entity><w l='the'   p='art' >The</w> "
+		"<doc year='1995'><s><entity><w l='the'   p='art' >The</w> "
 		+ "<w l='quick' p='adj'>quick</w> "
 		+ "<w l='brown' p='adj'>brown</w> "
 		+ "<w l='fox'   p='nou'>fox</w></entity> "
@@ -36,7 +36,7 @@ public class TestIndex {
 		+ "<w l='lazy'  p='adj'>lazy</w> "
 		+ "<w l='dog'   p='nou'>dog</w></entity>" + ".</s></doc>",
 
-		"<doc> <s><w l='may' p='vrb'>May</w> "
+		"<doc year='2003'> <s><w l='may' p='vrb'>May</w> "
 		+ "<entity><w l='the' p='art'>the</w> "
 		+ "<w l='force' p='nou'>Force</w></entity> "
 		+ "<w l='be' p='vrb'>be</w> "
@@ -55,7 +55,7 @@ public class TestIndex {
 		+ "<w l='question' p='nou'>question</w>."
 		+ "</s></doc>",
 
-		"<doc> <w l='noot'>noot</w> "
+		"<doc year='1999'> <w l='noot'>noot</w> "
 		+ "<w l='mier'>mier</w> "
 		+ "<w l='aap'>aap</w> "
 		+ "<w l='mier'>mier</w> "
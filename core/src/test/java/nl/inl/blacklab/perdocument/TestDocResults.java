@@ -21,6 +21,7 @@ import org.junit.Test;
 import nl.inl.blacklab.MockHits;
 import nl.inl.blacklab.MockSearcher;
 import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.grouping.HitPropValueInt;
 
 public class TestDocResults {
 
@@ -43,4 +44,19 @@ public class TestDocResults {
 		}
 	}
 
+	@Test
+	public void testDocCounts() {
+		int[] aDoc = new int[] { 1, 1, 2, 3, 3, 4 };
+		int[] aStart = new int[] { 1, 2, 3, 4, 5, 6 };
+		int[] aEnd = new int[] { 2, 3, 4, 5, 6, 7 };
+
+		Hits hits = new MockHits(new MockSearcher(), aDoc, aStart, aEnd);
+		DocCounts counts = hits.perDocResults().countBy(new DocPropertyNumberOfHits());
+		Assert.assertEquals(2, counts.numberOfGroups());
+		Assert.assertEquals(4, counts.getTotalResults());
+		Assert.assertEquals(2, counts.getLargestGroupSize());
+		Assert.assertEquals(2, (int)counts.getCount(new HitPropValueInt(1)));
+		Assert.assertEquals(2, (int)counts.getCount(new HitPropValueInt(2)));
+	}
+
 }
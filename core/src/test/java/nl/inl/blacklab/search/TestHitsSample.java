@@ -15,11 +15,16 @@
  *******************************************************************************/
 package nl.inl.blacklab.search;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.Assert;
 import org.junit.Test;
 
 import nl.inl.blacklab.MockHits;
 import nl.inl.blacklab.MockSearcher;
+import nl.inl.blacklab.search.lucene.MockSpanQuery;
 
 public class TestHitsSample {
 
@@ -66,4 +71,46 @@ public class TestHitsSample {
 		assertSampleNumber(new int[] {0, 1, 2, 3, 4, 5}, 6, Long.MAX_VALUE);
 	}
 
+	private static Hits mockSpanHits() {
+		return Hits.fromSpanQuery(new MockSearcher(), new MockSpanQuery(aDoc, aStart, aEnd));
+	}
+
+	private static void assertSampleInOrder(Hits sample, int expectedSize) {
+		Assert.assertEquals(expectedSize, sample.size());
+		List<Hit> all = new ArrayList<>(mockSpanHits());
+		int previous = -1;
+		for (Hit hit: sample) {
+			int index = all.indexOf(hit);
+			Assert.assertTrue(index > previous); // chosen from the hits, in the original order
+			previous = index;
+		}
+	}
+
+	@Test
+	public void testSampleWhileReading() {
+		assertSampleInOrder(HitsSample.fromUnreadHits(mockSpanHits(), 0f, 1), 0);
+		assertSampleInOrder(HitsSample.fromUnreadHits(mockSpanHits(), 1f, 1), 6);
+		assertSampleInOrder(HitsSample.fromUnreadHits(mockSpanHits(), 0, 1), 0);
+		assertSampleInOrder(HitsSample.fromUnreadHits(mockSpanHits(), 3, 1337), 3);
+		assertSampleInOrder(HitsSample.fromUnreadHits(mockSpanHits(), 10, 42), 6);
+
+		// Same seed, same sample
+		Assert.assertEquals(new ArrayList<>(HitsSample.fromUnreadHits(mockSpanHits(), 3, 1337)),
+				new ArrayList<>(HitsSample.fromUnreadHits(mockSpanHits(), 3, 1337)));
+		Assert.assertEquals(new ArrayList<>(HitsSample.fromUnreadHits(mockSpanHits(), 0.5f, 1337)),
+				new ArrayList<>(HitsSample.fromUnreadHits(mockSpanHits(), 0.5f, 1337)));
+
+		// Reservoir sampling should be able to choose any of the hits
+		boolean[] chosen = new boolean[aDoc.length];
+		List<Hit> all = new ArrayList<>(mockSpanHits());
+		Random seeds = new Random(1);
+		for (int i = 0; i < 100; i++) {
+			for (Hit hit: HitsSample.fromUnreadHits(mockSpanHits(), 1, seeds.nextLong())) {
+				chosen[all.indexOf(hit)] = true;
+			}
+		}
+		for (boolean b: chosen)
+			Assert.assertTrue(b);
+	}
+
 }
@@ -1,9 +1,16 @@
 package nl.inl.blacklab.search;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.TermQuery;
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -12,9 +19,24 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import nl.inl.blacklab.TestIndex;
+import nl.inl.blacklab.index.complex.ComplexFieldUtil;
 import nl.inl.blacklab.queryParser.corpusql.ParseException;
+import nl.inl.blacklab.search.grouping.GroupPropertySize;
+import nl.inl.blacklab.search.grouping.HitGroup;
+import nl.inl.blacklab.search.grouping.HitGroups;
+import nl.inl.blacklab.search.grouping.HitPropValue;
+import nl.inl.blacklab.search.grouping.HitProperty;
+import nl.inl.blacklab.search.grouping.HitPropertyDocumentId;
+import nl.inl.blacklab.search.grouping.HitPropertyHitText;
+import nl.inl.blacklab.search.grouping.HitPropertyWordLeft;
+import nl.inl.blacklab.search.grouping.HitPropertyWordRight;
+import nl.inl.blacklab.search.grouping.ResultsGrouper;
 import nl.inl.blacklab.search.lucene.BLSpanTermQuery;
+import nl.inl.blacklab.search.lucene.DocFilterCache;
+import nl.inl.blacklab.search.lucene.QueryBudget;
 import nl.inl.blacklab.search.lucene.SpanQueryFiltered;
+import nl.inl.blacklab.search.lucene.SpanResultCache;
+import nl.inl.blacklab.search.lucene.TermPrefixIndex;
 
 public class TestSearches {
 
@@ -73,6 +95,48 @@ public class TestSearches {
 		Assert.assertEquals(expected, testIndex.findConc(new SpanQueryFiltered(patternQuery, filterQuery)));
 	}
 
+	@Test
+	public void testFilteredQueryCached() throws ParseException {
+		expected = Arrays.asList("May [the] Force");
+		BLSpanTermQuery patternQuery = new BLSpanTermQuery(new Term("contents%word@i", "the"));
+		TermQuery filterQuery = new TermQuery(new Term("contents%word@i", "be"));
+		DocFilterCache cache = DocFilterCache.get();
+		SpanResultCache.get().setEnabled(false); // so the filter is used each time
+		try {
+			long misses = cache.getMisses();
+			Assert.assertEquals(expected, testIndex.findConc(new SpanQueryFiltered(patternQuery, filterQuery)));
+			Assert.assertTrue(cache.getMisses() > misses);
+
+			// Second time, the filter comes from the cache
+			long hits = cache.getHits();
+			misses = cache.getMisses();
+			Assert.assertEquals(expected, testIndex.findConc(new SpanQueryFiltered(patternQuery, filterQuery)));
+			Assert.assertTrue(cache.getHits() > hits);
+			Assert.assertEquals(misses, cache.getMisses());
+			Assert.assertTrue(cache.getNumberOfEntries() > 0);
+		} finally {
+			SpanResultCache.get().setEnabled(true);
+		}
+	}
+
+	@Test
+	public void testSpanResultCache() throws ParseException {
+		SpanResultCache cache = SpanResultCache.get();
+		expected = Arrays.asList("[The] quick", "over [the] lazy", "May [the] Force", "is [the] question");
+		Assert.assertEquals(expected, testIndex.findConc(" 'the' "));
+
+		// Second time, the hits come from the cache
+		long hits = cache.getHits();
+		Assert.assertEquals(expected, testIndex.findConc(" 'the' "));
+		Assert.assertTrue(cache.getHits() > hits);
+
+		// Queries with captured groups are not cached
+		long misses = cache.getMisses();
+		testIndex.findConc(" A:'the' 'lazy' ");
+		testIndex.findConc(" A:'the' 'lazy' ");
+		Assert.assertTrue(cache.getMisses() >= misses + 2);
+	}
+
 	@Test
 	public void testSequences() throws ParseException {
 		expected = Arrays.asList(
@@ -250,6 +314,16 @@ public class TestSearches {
 		Assert.assertEquals(expected, testIndex.findConc("a:[] ([]{1,5} containing 'brown') b:[] :: a.lemma = b.lemma"));
 	}
 
+	@Test
+	public void testConstraintInsensitive() throws ParseException {
+		// Compared by sort position, so "The" equals "the"
+		expected = Arrays.asList(
+				"[The quick brown fox jumps over the] lazy",
+				"[noot mier aap mier mier mier noot] noot",
+				"mier [aap mier mier mier noot noot aap] aap");
+		Assert.assertEquals(expected, testIndex.findConc("a:[] []{5} b:[] :: a.word = b.word"));
+	}
+
 	@Test
 	public void testConstraintOr1() throws ParseException {
 		expected = Arrays.asList("noot [mier aap mier] mier", "noot [aap aap aap] aap", "aap [aap aap aap]");
@@ -305,6 +379,158 @@ public class TestSearches {
 		Assert.assertEquals(expected, testIndex.findConc("(c:'NOTININDEX')? a:[] 'aap' b:[] :: c -> a.word = b.word"));
 	}
 
+	@Test
+	public void testSortPartially() throws ParseException {
+		Hits hits = testIndex.find(" [] ");
+		HitProperty prop = new HitPropertyHitText(hits, false);
+		for (boolean reverse: new boolean[] { false, true }) {
+			List<Hit> expectedHits = new ArrayList<>(hits.sortedBy(prop, reverse));
+			for (int firstN: new int[] { 0, 1, 3, 10, 1000 }) {
+				Hits sorted = hits.sortedBy(prop, reverse, firstN);
+				// Get the first hits (which are sorted right away), then the rest (sorted on demand)
+				for (int i = 0; i < Math.min(firstN, expectedHits.size()); i++)
+					Assert.assertEquals(expectedHits.get(i), sorted.get(i));
+				Assert.assertEquals(expectedHits, new ArrayList<>(sorted));
+			}
+		}
+	}
+
+	@Test
+	public void testGroupKeys() throws ParseException {
+		for (String pattern: new String[] { " [] ", " [] [] ", " [] [] [] ", " 'the' [] " }) {
+			Hits hits = testIndex.find(pattern);
+			List<HitProperty> props = Arrays.asList(
+					new HitPropertyHitText(hits, false),
+					new HitPropertyHitText(hits, true),
+					new HitPropertyWordLeft(hits, false),
+					new HitPropertyWordRight(hits, true),
+					new HitPropertyDocumentId(hits));
+			for (HitProperty prop: props) {
+				HitGroups groups = hits.groupedBy(prop);
+
+				// Compare with grouping on the property values
+				Map<HitPropValue, List<Hit>> expectedGroups = new HashMap<>();
+				for (int i = 0; i < hits.size(); i++) {
+					List<Hit> group = expectedGroups.get(prop.get(i));
+					if (group == null) {
+						group = new ArrayList<>();
+						expectedGroups.put(prop.get(i), group);
+					}
+					group.add(hits.getByOriginalOrder(i));
+				}
+				Assert.assertEquals(expectedGroups.size(), groups.numberOfGroups());
+				Assert.assertEquals(hits.size(), groups.getTotalResults());
+				for (Map.Entry<HitPropValue, List<Hit>> e: expectedGroups.entrySet()) {
+					HitGroup group = groups.getGroup(e.getKey());
+					Assert.assertEquals(e.getValue(), new ArrayList<>(group.getHits()));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRestoreSortedAndGrouped() throws ParseException {
+		Hits hits = testIndex.find(" [] ");
+		HitProperty prop = new HitPropertyHitText(hits, false);
+
+		// Restore sorted hits from their original order and sort order
+		Hits sorted = hits.sortedBy(prop, true);
+		List<Hit> original = new ArrayList<>();
+		for (int i = 0; i < hits.size(); i++)
+			original.add(hits.getByOriginalOrder(i));
+		Hits restored = Hits.fromList(hits.getSearcher(), original, sorted.getSortOrder());
+		Assert.assertEquals(new ArrayList<>(sorted), new ArrayList<>(restored));
+		Assert.assertEquals(hits.numberOfDocs(), restored.numberOfDocs());
+
+		// Restore groups from their (serialized) identities and hit indices
+		HitGroups groups = hits.groupedBy(prop);
+		groups.sortGroups(new GroupPropertySize(), true);
+		List<HitPropValue> identities = new ArrayList<>();
+		List<int[]> groupIndices = new ArrayList<>();
+		for (HitGroup group: groups) {
+			identities.add(HitPropValue.deserialize(hits, group.getIdentity().serialize()));
+			int[] indices = new int[group.size()];
+			for (int i = 0; i < indices.length; i++)
+				indices[i] = original.indexOf(group.getHits().getByOriginalOrder(i));
+			groupIndices.add(indices);
+		}
+		HitGroups restoredGroups = ResultsGrouper.fromGroups(hits, prop, identities, groupIndices);
+		Assert.assertEquals(groups.numberOfGroups(), restoredGroups.numberOfGroups());
+		Assert.assertEquals(groups.getLargestGroupSize(), restoredGroups.getLargestGroupSize());
+		Iterator<HitGroup> it = restoredGroups.iterator();
+		for (HitGroup group: groups) {
+			HitGroup restoredGroup = it.next();
+			Assert.assertEquals(group.getIdentity(), restoredGroup.getIdentity());
+			Assert.assertEquals(new ArrayList<>(group.getHits()), new ArrayList<>(restoredGroup.getHits()));
+			Assert.assertTrue(restoredGroups.getGroup(group.getIdentity()) == restoredGroup);
+		}
+	}
+
+	@Test
+	public void testCollocations() throws ParseException {
+		Hits hits = testIndex.find(" 'find' ");
+		hits.settings().setContextSize(4);
+		TermFrequencyList colls = hits.getCollocations();
+		Assert.assertEquals(3, colls.getFrequency("to")); // "To" and "to" are merged
+		Assert.assertEquals(0, colls.getFrequency("To"));
+		Assert.assertEquals(2, colls.getFrequency("find"));
+
+		// Most frequent words first; total frequency still includes all words
+		TermFrequencyList top = hits.getCollocations(null, null, 2);
+		Assert.assertEquals(2, top.size());
+		Assert.assertEquals("to", top.get(0).term);
+		Assert.assertEquals(3, top.get(0).frequency);
+		Assert.assertEquals(colls.getTotalFrequency(), top.getTotalFrequency());
+	}
+
+	@Test
+	public void testTermFrequencies() {
+		Searcher searcher = testIndex.getSearcher();
+		TermFrequencyList freqs = searcher.termFrequencies(new TermQuery(new Term("year", "1999")), "contents", "word", true);
+		Assert.assertEquals(3, freqs.size());
+		Assert.assertEquals("aap", freqs.get(0).term); // most frequent first
+		Assert.assertEquals(5, freqs.getFrequency("aap"));
+		Assert.assertEquals(4, freqs.getFrequency("mier"));
+		Assert.assertEquals(3, freqs.getFrequency("noot"));
+		Assert.assertEquals(12, freqs.getTotalFrequency());
+
+		// Insensitive: "The" and "the" are merged (and reported as the more frequent "the")
+		freqs = searcher.termFrequencies(new MatchAllDocsQuery(), "contents", "word", false);
+		Assert.assertEquals(4, freqs.getFrequency("the"));
+		Assert.assertEquals(0, freqs.getFrequency("The"));
+		freqs = searcher.termFrequencies(new MatchAllDocsQuery(), "contents", "word", true);
+		Assert.assertEquals(3, freqs.getFrequency("the"));
+		Assert.assertEquals(1, freqs.getFrequency("The"));
+	}
+
+	@Test
+	public void testTermPrefixIndex() {
+		IndexReader reader = testIndex.getSearcher().getIndexReader();
+		TermPrefixIndex insensitive = TermPrefixIndex.get(reader, ComplexFieldUtil.propertyField("contents", "word", "i"), false);
+		Assert.assertEquals(Arrays.asList("the", "to", "that"), insensitive.findTermsByPrefix("T", 10)); // most frequent first
+		Assert.assertEquals(Arrays.asList("the", "that"), insensitive.findTermsByPrefix("th", 10));
+		Assert.assertEquals(Arrays.asList("mier"), insensitive.findTermsByPrefix("m", 1));
+		Assert.assertEquals(Collections.emptyList(), insensitive.findTermsByPrefix("zz", 10));
+		Assert.assertTrue(insensitive == TermPrefixIndex.get(reader, ComplexFieldUtil.propertyField("contents", "word", "i"), false)); // cached
+
+		TermPrefixIndex sensitive = TermPrefixIndex.get(reader, ComplexFieldUtil.propertyField("contents", "word", "s"), true);
+		Assert.assertEquals(Arrays.asList("That", "The", "To"), sensitive.findTermsByPrefix("T", 10)); // equally frequent: alphabetical
+	}
+
+	@Test
+	public void testQueryBudget() throws ParseException {
+		Hits hits = testIndex.find(" [] ");
+		Assert.assertFalse(hits.queryBudgetExceeded());
+		int total = hits.size();
+
+		hits = testIndex.find(" [] ");
+		hits.settings().setQueryBudget(5, QueryBudget.UNLIMITED);
+		int partial = hits.size();
+		Assert.assertTrue(hits.queryBudgetExceeded());
+		Assert.assertTrue(hits.maxHitsRetrieved());
+		Assert.assertTrue(partial < total);
+	}
+
 	// Backreferences not implemented yet
 	@Ignore
 	@Test
@@ -6,6 +6,7 @@ import java.util.IdentityHashMap;
 
 import org.apache.lucene.index.LeafReader;
 import org.eclipse.collections.api.set.primitive.MutableIntSet;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -136,4 +137,88 @@ public class TestNfa {
 		Assert.assertTrue(start.matches(new ForwardIndexDocumentString("ideaal"), 3, -1));
 	}
 
+	/**
+	 * Check that the DFA finds the same match ends as the NFA interpreter, at each position.
+	 */
+	private static void assertDfaMatchesNfa(NfaState start, String input, int direction) {
+		NfaCompiled compiled = NfaCompiled.compile(start);
+		Assert.assertNotNull(compiled);
+		NfaDfa dfa = compiled.newDfa();
+		ForwardIndexDocument fiDoc = new TestNfa().new ForwardIndexDocumentString(input);
+		for (int pos = 0; pos < input.length(); pos++) {
+			IntArrayList expected = new IntArrayList();
+			for (Integer matchEnd: direction == 1 ? start.findMatches(fiDoc, pos, direction) : start.findMatches(fiDoc, pos, direction).descendingSet())
+				expected.add(matchEnd);
+			IntArrayList actual = new IntArrayList();
+			Assert.assertEquals(!expected.isEmpty(), dfa.findMatches(fiDoc, pos, direction, actual));
+			Assert.assertEquals("pos " + pos, expected, actual);
+		}
+	}
+
+	@Test
+	public void testDfaSimple() {
+		// ab|ba
+		NfaState ab = NfaState.token("contents%word@i", "a", NfaState.token("contents%word@i", "b", null));
+		NfaState ba = NfaState.token("contents%word@i", "b", NfaState.token("contents%word@i", "a", null));
+		NfaState start = NfaState.or(false, Arrays.asList(ab, ba), true);
+		start.finish(new HashSet<NfaState>());
+		start.lookupPropertyNumbers(new MockFiAccessor(), new IdentityHashMap<NfaState, Boolean>());
+
+		assertDfaMatchesNfa(start, "abatoir", 1);
+		assertDfaMatchesNfa(start, "abatoir", -1);
+	}
+
+	@Test
+	public void testDfaRepetition() {
+		// ac*e?
+		NfaState c = NfaState.token("contents%word@i", "c", null);
+		NfaState split = NfaState.or(true, Arrays.asList(c, NfaState.token("contents%word@i", "e", null), null), false);
+		NfaState start = NfaState.token("contents%word@i", "a", split);
+		c.setNextState(0, split); // loopback
+		start.finish(new HashSet<NfaState>());
+		start.lookupPropertyNumbers(new MockFiAccessor(), new IdentityHashMap<NfaState, Boolean>());
+
+		assertDfaMatchesNfa(start, "accessaceacca", 1);
+		assertDfaMatchesNfa(start, "ecccaeca", -1);
+	}
+
+	@Test
+	public void testDfaAcyclicOrFollowedBySequence() {
+		// (a|ab|.)c
+		NfaState a = NfaState.token("contents%word@i", "a", null);
+		NfaState ab = NfaState.token("contents%word@i", "a", NfaState.token("contents%word@i", "b", null));
+		NfaState any = NfaState.anyToken("contents%word@i", null);
+		NfaState or = NfaState.or(false, Arrays.asList(a, ab, any), false);
+		Nfa nfa = new Nfa(or, Arrays.asList(or));
+		nfa.append(new Nfa(NfaState.token("contents%word@i", "c", null), null));
+		NfaState start = nfa.getStartingState();
+		start.finish(new HashSet<NfaState>());
+		start.lookupPropertyNumbers(new MockFiAccessor(), new IdentityHashMap<NfaState, Boolean>());
+
+		assertDfaMatchesNfa(start, "acabcxcaac", 1);
+	}
+
+	@Test
+	public void testDfaRegex() {
+		// a[bc]+
+		NfaState bc = NfaState.regex("contents%word@i", "[bc]", null);
+		NfaState split = NfaState.or(true, Arrays.asList(bc, null), false);
+		bc.setNextState(0, split); // loopback
+		NfaState start = NfaState.token("contents%word@i", "a", bc);
+		start.finish(new HashSet<NfaState>());
+		start.lookupPropertyNumbers(new MockFiAccessor(), new IdentityHashMap<NfaState, Boolean>());
+
+		assertDfaMatchesNfa(start, "abcbadacab", 1);
+	}
+
+	@Test
+	public void testDfaNotCompiled() {
+		// AND can't be compiled; we should fall back to the interpreter
+		NfaState a = NfaState.token("contents%word@i", "a", null);
+		NfaState any = NfaState.anyToken("contents%word@i", null);
+		NfaState start = NfaState.and(false, Arrays.asList(a, any));
+		start.finish(new HashSet<NfaState>());
+		Assert.assertNull(NfaCompiled.compile(start));
+	}
+
 }
@@ -16,6 +16,7 @@
 package nl.inl.blacklab.search.fimatch;
 
 import java.io.StringReader;
+import java.util.List;
 
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -31,6 +32,7 @@ import nl.inl.blacklab.search.Searcher;
 import nl.inl.blacklab.search.TextPattern;
 import nl.inl.blacklab.search.lucene.BLSpanQuery;
 import nl.inl.blacklab.search.lucene.optimize.ClauseCombinerNfa;
+import nl.inl.blacklab.search.lucene.optimize.SequencePlan;
 
 public class TestQueryRewriteNfa {
 
@@ -96,8 +98,22 @@ public class TestQueryRewriteNfa {
 
 	@Test
 	public void testRewritePrefix() {
+		// (no words starting with c occur in the test index, so that's the cheapest anchor)
 		assertRewriteResult("\"a.*\" \"b.*\" \"c.*\"",
-			"FISEQ(TERM(contents%word@i:aap), NFA:#1:REGEX(b.*,#2:REGEX(c.*,DANGLING)), 1)");
+			"FISEQ(OR(), NFA:#1:REGEX(b.*,#2:REGEX(a.*,DANGLING)), -1)");
+	}
+
+	@Test
+	public void testPlanAlternatives() {
+		QueryExplanation explanation = searcher.explain(getPatternFromCql("\"a.*\" \"b.*\""));
+		List<SequencePlan> plans = explanation.getPlanAlternatives();
+		Assert.assertFalse(plans.isEmpty());
+		SequencePlan plan = plans.get(0);
+		Assert.assertEquals("SPANWRAP(contents%word@i:/a.*/)", plan.getLeft().toString());
+		Assert.assertTrue(plan.getPostingsCost() >= 0);
+		Assert.assertTrue(plan.getNfaForwardCost() >= 0);
+		Assert.assertTrue(plan.getNfaBackwardCost() >= 0);
+		Assert.assertEquals(-1, plan.getExpansionCost(), 0);
 	}
 
 }
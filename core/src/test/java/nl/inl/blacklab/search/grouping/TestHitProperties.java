@@ -1,5 +1,9 @@
 package nl.inl.blacklab.search.grouping;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -8,8 +12,16 @@ import org.junit.Test;
 import nl.inl.blacklab.MockTerms;
 import nl.inl.blacklab.TestIndex;
 import nl.inl.blacklab.forwardindex.Terms;
+import nl.inl.blacklab.perdocument.DocCounts;
+import nl.inl.blacklab.perdocument.DocPropertyDecade;
+import nl.inl.blacklab.perdocument.DocPropertyNumberOfHits;
+import nl.inl.blacklab.perdocument.DocPropertyStoredField;
+import nl.inl.blacklab.perdocument.DocResult;
+import nl.inl.blacklab.perdocument.DocResults;
 import nl.inl.blacklab.queryParser.corpusql.ParseException;
+import nl.inl.blacklab.search.Hit;
 import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.lucene.MetadataDocValues;
 
 public class TestHitProperties {
 
@@ -74,6 +86,66 @@ public class TestHitProperties {
 		Assert.assertEquals(1, group.size());
 	}
 
+	@Test
+	public void testHitPropDocumentStoredField() throws ParseException {
+		Hits hits = testIndex.find(" 'the' ");
+		HitProperty p = new HitPropertyDocumentStoredField(hits, "year");
+		HitGroups g = hits.groupedBy(p);
+		Assert.assertEquals(3, g.numberOfGroups());
+		Assert.assertEquals(2, g.getGroup(new HitPropValueString("1995")).size());
+		Assert.assertEquals(1, g.getGroup(new HitPropValueString("2003")).size());
+		Assert.assertEquals(1, g.getGroup(new HitPropValueString("")).size()); // no year
+
+		// Years were indexed as DocValues
+		MetadataDocValues docValues = MetadataDocValues.get(testIndex.getSearcher().getIndexReader(), "year");
+		Assert.assertEquals("1995", docValues.value(docValues.valueIndex(hits.get(0).doc)));
+
+		// Missing year sorts at the end
+		assertYears(hits.sortedBy(p), "1995", "1995", "2003", null);
+		assertYears(hits.sortedBy(new HitPropertyDocumentDecade(hits, "year")), "1995", "1995", "2003", null);
+		assertYears(hits.sortedBy(new HitPropertyDocumentDecade(hits, "year"), true), null, "2003", "1995", "1995");
+	}
+
+	@Test
+	public void testDocPropStoredField() throws ParseException {
+		DocResults docs = testIndex.find(" 'the' ").perDocResults();
+		docs.sort(new DocPropertyStoredField("year"), false);
+		List<String> years = new ArrayList<>();
+		for (DocResult doc: docs) {
+			years.add(doc.getDocument().get("year"));
+		}
+		Assert.assertEquals(Arrays.asList("1995", "2003", null), years);
+		docs.sort(new DocPropertyDecade("year"), true);
+		Assert.assertEquals(new HitPropValueDecade(2000), new DocPropertyDecade("year").get(docs.get(1)));
+	}
+
+	@Test
+	public void testDocCounts() throws ParseException {
+		DocResults docs = testIndex.find(" 'the' ").perDocResults();
+		List<DocCounts> counts = docs.countBy(Arrays.asList(new DocPropertyStoredField("year"),
+				new DocPropertyDecade("year"), new DocPropertyNumberOfHits()));
+		DocCounts years = counts.get(0);
+		Assert.assertEquals(3, years.numberOfGroups());
+		Assert.assertEquals(1, (int)years.getCount(new HitPropValueString("1995")));
+		Assert.assertEquals(1, (int)years.getCount(new HitPropValueString("2003")));
+		Assert.assertEquals(1, (int)years.getCount(new HitPropValueString(""))); // no year
+		DocCounts decades = counts.get(1);
+		Assert.assertEquals(3, decades.numberOfGroups());
+		Assert.assertEquals(1, (int)decades.getCount(new HitPropValueDecade(1990)));
+		Assert.assertEquals(1, (int)decades.getCount(new HitPropValueDecade(HitPropertyDocumentDecade.UNKNOWN_VALUE)));
+		DocCounts numberOfHits = counts.get(2);
+		Assert.assertEquals(2, (int)numberOfHits.getCount(new HitPropValueInt(1)));
+		Assert.assertEquals(1, (int)numberOfHits.getCount(new HitPropValueInt(2)));
+	}
+
+	private static void assertYears(Hits hits, String... expected) {
+		List<String> years = new ArrayList<>();
+		for (Hit hit: hits) {
+			years.add(testIndex.getSearcher().document(hit.doc).get("year"));
+		}
+		Assert.assertEquals(Arrays.asList(expected), years);
+	}
+
 	@Test
 	public void testTermSerialization() {
         String[] words = {"aap", "~", "~~", ""};
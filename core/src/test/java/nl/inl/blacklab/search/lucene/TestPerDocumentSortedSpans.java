@@ -17,6 +17,8 @@ package nl.inl.blacklab.search.lucene;
 
 import java.io.IOException;
 
+import org.apache.lucene.search.spans.Spans;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -45,4 +47,50 @@ public class TestPerDocumentSortedSpans {
 		TestUtil.assertEquals(exp, hpd);
 	}
 
+	@Test
+	public void testLargeBucketStartPoint() throws IOException {
+		// More hits than the initial bucket capacity, in reverse order, each twice
+		int n = 40;
+		int[] doc = new int[n * 2], start = new int[n * 2], end = new int[n * 2];
+		for (int i = 0; i < n * 2; i++) {
+			doc[i] = 1;
+			start[i] = n - i / 2;
+			end[i] = start[i] + 1 + i % 2;
+		}
+		BLSpans spans = new MockSpans(doc, start, end);
+		BLSpans sorted = new PerDocumentSortedSpans(spans, PerDocumentSortedSpans.cmpStartPoint, false);
+
+		int[] expDoc = new int[n * 2], expStart = new int[n * 2], expEnd = new int[n * 2];
+		for (int i = 0; i < n * 2; i++) {
+			expDoc[i] = 1;
+			expStart[i] = 1 + i / 2;
+			expEnd[i] = expStart[i] + 1 + i % 2;
+		}
+		TestUtil.assertEquals(new MockSpans(expDoc, expStart, expEnd), sorted);
+	}
+
+	@Test
+	public void testAdvanceStartPosition() throws IOException {
+		int n = 40;
+		int[] doc = new int[n], start = new int[n], end = new int[n];
+		for (int i = 0; i < n; i++) {
+			doc[i] = i < n / 2 ? 1 : 2;
+			start[i] = n - i;
+			end[i] = start[i] + 1;
+		}
+		BLSpans spans = new MockSpans(doc, start, end);
+		BLSpans sorted = new PerDocumentSortedSpans(spans, PerDocumentSortedSpans.cmpStartPoint, false);
+
+		// Doc 1 has starts 21-40, doc 2 has starts 1-20
+		Assert.assertEquals(1, sorted.nextDoc());
+		Assert.assertEquals(30, sorted.advanceStartPosition(30));
+		Assert.assertEquals(31, sorted.endPosition());
+		Assert.assertEquals(31, sorted.advanceStartPosition(30)); // always advances
+		Assert.assertEquals(32, sorted.nextStartPosition());
+		Assert.assertEquals(40, sorted.advanceStartPosition(40));
+		Assert.assertEquals(Spans.NO_MORE_POSITIONS, sorted.advanceStartPosition(41));
+		Assert.assertEquals(2, sorted.nextDoc());
+		Assert.assertEquals(Spans.NO_MORE_POSITIONS, sorted.advanceStartPosition(100));
+	}
+
 }
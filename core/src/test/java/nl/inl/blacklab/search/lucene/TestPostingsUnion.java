@@ -0,0 +1,106 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.search.spans.Spans;
+import org.junit.Assert;
+import org.junit.Test;
+
+import nl.inl.blacklab.MockSpans;
+import nl.inl.blacklab.TestUtil;
+
+public class TestPostingsUnion {
+
+	@Test
+	public void testMerge() {
+		List<long[]> runs = new ArrayList<>(Arrays.asList(
+			new long[] { 1, 4, 9 },
+			new long[0],
+			new long[] { 2, 4, 5, 10 },
+			new long[] { 3 }
+		));
+		Assert.assertEquals("[1, 2, 3, 4, 4, 5, 9, 10]", Arrays.toString(PostingsUnion.merge(runs)));
+	}
+
+	@Test
+	public void testUnion() throws IOException {
+		List<Spans> clauses = new ArrayList<>();
+		clauses.add(new MockSpans(new int[] { 1, 1, 3 }, new int[] { 2, 7, 1 }, new int[] { 3, 8, 2 }));
+		clauses.add(new MockSpans(new int[] { 1, 2 }, new int[] { 5, 4 }, new int[] { 6, 5 }));
+		clauses.add(new MockSpans(new int[] { 3 }, new int[] { 0 }, new int[] { 1 }));
+
+		Spans exp = new MockSpans(
+			new int[] { 1, 1, 1, 2, 3, 3 },
+			new int[] { 2, 5, 7, 4, 0, 1 },
+			new int[] { 3, 6, 8, 5, 1, 2 });
+		TestUtil.assertEquals(exp, PostingsUnion.union(clauses));
+	}
+
+	private static List<Spans> clauses() {
+		List<Spans> clauses = new ArrayList<>();
+		clauses.add(new MockSpans(new int[] { 1, 2 }, new int[] { 5, 4 }, new int[] { 6, 5 }));
+		clauses.add(new MockSpans(new int[] { 1 }, new int[] { 2 }, new int[] { 3 }));
+		return clauses;
+	}
+
+	@Test
+	public void testManyTermsOrReadingAll() throws IOException {
+		// Lazy merge is a stand-in, so we can tell which one was used
+		BLSpans lazy = new MockSpans(new int[] { 9 }, new int[] { 9 }, new int[] { 10 });
+		BLSpans spans = new SpansManyTermsOr(clauses(), lazy);
+		HitQueryContext context = new HitQueryContext(spans);
+		context.setReadingAllHits(true);
+		spans.setHitQueryContext(context);
+
+		Spans exp = new MockSpans(new int[] { 1, 1, 2 }, new int[] { 2, 5, 4 }, new int[] { 3, 6, 5 });
+		TestUtil.assertEquals(exp, spans);
+	}
+
+	@Test
+	public void testManyTermsOrLazy() throws IOException {
+		// Not reading all hits: merge lazily
+		BLSpans spans = new SpansManyTermsOr(clauses(), new MockSpans(new int[] { 9 }, new int[] { 9 }, new int[] { 10 }));
+		spans.setHitQueryContext(new HitQueryContext(spans));
+		TestUtil.assertEquals(new MockSpans(new int[] { 9 }, new int[] { 9 }, new int[] { 10 }), spans);
+
+		// Reading all hits, but the query has a budget: merge lazily so the work is reported
+		spans = new SpansManyTermsOr(clauses(), new MockSpans(new int[] { 9 }, new int[] { 9 }, new int[] { 10 }));
+		HitQueryContext context = new HitQueryContext(spans);
+		context.setReadingAllHits(true);
+		context.setBudget(new QueryBudget(1000, QueryBudget.UNLIMITED));
+		spans.setHitQueryContext(context);
+		TestUtil.assertEquals(new MockSpans(new int[] { 9 }, new int[] { 9 }, new int[] { 10 }), spans);
+	}
+
+	@Test
+	public void testUnionManyClauses() throws IOException {
+		// Enough clauses to be read in several parts
+		int n = 100;
+		List<Spans> clauses = new ArrayList<>();
+		int[] expDoc = new int[n * 2], expStart = new int[n * 2], expEnd = new int[n * 2];
+		for (int i = 0; i < n; i++) {
+			clauses.add(new MockSpans(new int[] { i % 10, 20 }, new int[] { i, i }, new int[] { i + 1, i + 1 }));
+		}
+		// Doc d (0-9) has positions d, d + 10, ...; doc 20 has positions 0-99
+		int j = 0;
+		for (int d = 0; d < 10; d++) {
+			for (int i = d; i < n; i += 10) {
+				expDoc[j] = d;
+				expStart[j] = i;
+				expEnd[j] = i + 1;
+				j++;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			expDoc[j] = 20;
+			expStart[j] = i;
+			expEnd[j] = i + 1;
+			j++;
+		}
+		TestUtil.assertEquals(new MockSpans(expDoc, expStart, expEnd), PostingsUnion.union(clauses));
+	}
+
+}
@@ -0,0 +1,80 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.spans.SpanWeight;
+import org.apache.lucene.search.spans.SpanWeight.Postings;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestSpanResultCache {
+
+	private static void addDoc(IndexWriter writer, String text) throws IOException {
+		Document doc = new Document();
+		doc.add(new TextField("contents", text, Field.Store.NO));
+		writer.addDocument(doc);
+		writer.commit();
+	}
+
+	/** Read all hits from all segments, returns the number of hits */
+	private static int readHits(SpanResultCache cache, BLSpanQuery query, DirectoryReader reader) throws IOException {
+		SpanWeight weight = query.createWeight(new IndexSearcher(reader), false);
+		int n = 0;
+		for (LeafReaderContext context: reader.leaves()) {
+			BLSpans spans = cache.getSpans(query, weight, context, Postings.POSITIONS);
+			if (spans == null)
+				continue;
+			while (spans.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+				while (spans.nextStartPosition() != Spans.NO_MORE_POSITIONS) {
+					n++;
+				}
+			}
+		}
+		return n;
+	}
+
+	@Test
+	public void testReuseAfterReopen() throws IOException {
+		SpanResultCache cache = new SpanResultCache(SpanResultCache.DEFAULT_MAX_SIZE_BYTES);
+		BLSpanQuery query = new BLSpanTermQuery(new Term("contents", "aap"));
+		try (Directory dir = new RAMDirectory()) {
+			IndexWriterConfig config = new IndexWriterConfig(new WhitespaceAnalyzer());
+			config.setMergePolicy(NoMergePolicy.INSTANCE); // keep the first segment as it is
+			try (IndexWriter writer = new IndexWriter(dir, config)) {
+				addDoc(writer, "aap noot aap");
+				try (DirectoryReader reader = DirectoryReader.open(dir)) {
+					Assert.assertEquals(2, readHits(cache, query, reader));
+				}
+				Assert.assertEquals(0, cache.getHits());
+				Assert.assertEquals(1, cache.getMisses());
+
+				// Add a document and open a new reader, like BlackLab Server does
+				addDoc(writer, "mies aap");
+				try (DirectoryReader reader = DirectoryReader.open(dir)) {
+					Assert.assertEquals(2, reader.leaves().size());
+					Assert.assertEquals(3, readHits(cache, query, reader));
+				}
+				// The first segment didn't change, so its hits came from the cache
+				Assert.assertEquals(1, cache.getHits());
+				Assert.assertEquals(2, cache.getMisses());
+				Assert.assertEquals(2, cache.getNumberOfEntries());
+			}
+		}
+	}
+
+}
@@ -82,4 +82,29 @@ public class TestSpansAnd {
 		Assert.assertEquals(DocIdSetIterator.NO_MORE_DOCS, spans.advance(1000));
 		TestUtil.assertEquals(exp, spans, true);
 	}
+
+	@Test
+	public void testAndSpansRightLeads() throws IOException {
+		BLSpans a = MockSpans.fromLists(
+			new int[] {  1,  1,  2,  2,  2,  3,  4 },
+			new int[] { 10, 20, 10, 10, 30, 10, 10 },
+			new int[] { 15, 25, 15, 20, 35, 15, 15 }
+		);
+		BLSpans b = new MockSpans(
+			new int[] {  2,  3,  4 },
+			new int[] { 10, 20, 10 },
+			new int[] { 20, 25, 15 }
+		) {
+			@Override
+			public long cost() {
+				return 1; // cheaper than a, so b drives document iteration
+			}
+		};
+		Spans exp = MockSpans.fromLists(
+			new int[] {  2,  4 },
+			new int[] { 10, 10 },
+			new int[] { 20, 15 }
+		);
+		TestUtil.assertEquals(exp, new SpansAnd(a, b));
+	}
 }
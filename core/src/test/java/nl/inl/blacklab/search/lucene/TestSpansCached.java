@@ -0,0 +1,38 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.spans.Spans;
+import org.junit.Assert;
+import org.junit.Test;
+
+import nl.inl.blacklab.MockSpans;
+import nl.inl.blacklab.TestUtil;
+
+public class TestSpansCached {
+
+	private static final int[] aDoc   = {  1,  1,  2,  5,  5 };
+	private static final int[] aStart = { 10, 12, 10,  1,  3 };
+	private static final int[] aEnd   = { 11, 13, 11,  2,  4 };
+
+	@Test
+	public void testNext() throws IOException {
+		Spans spans = new SpansCached(aDoc, aStart, aEnd, aDoc.length);
+		TestUtil.assertEquals(new MockSpans(aDoc, aStart, aEnd), spans);
+	}
+
+	@Test
+	public void testAdvance() throws IOException {
+		Spans spans = new SpansCached(aDoc, aStart, aEnd, aDoc.length);
+		Assert.assertEquals(2, spans.advance(2));
+		Assert.assertEquals(10, spans.nextStartPosition());
+		Assert.assertEquals(5, spans.advance(3));
+		Assert.assertEquals(1, spans.nextStartPosition());
+		Assert.assertEquals(3, spans.nextStartPosition());
+		Assert.assertEquals(4, spans.endPosition());
+		Assert.assertEquals(Spans.NO_MORE_POSITIONS, spans.nextStartPosition());
+		Assert.assertEquals(DocIdSetIterator.NO_MORE_DOCS, spans.nextDoc());
+	}
+
+}
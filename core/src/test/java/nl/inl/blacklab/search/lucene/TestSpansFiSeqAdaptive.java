@@ -0,0 +1,109 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.spans.SpanWeight;
+import org.apache.lucene.search.spans.SpanWeight.Postings;
+import org.apache.lucene.search.spans.Spans;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.inl.blacklab.TestIndex;
+import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
+import nl.inl.blacklab.queryParser.corpusql.ParseException;
+import nl.inl.blacklab.search.Searcher;
+import nl.inl.blacklab.search.Span;
+import nl.inl.blacklab.search.lucene.optimize.ClauseCombinerNfa;
+
+public class TestSpansFiSeqAdaptive {
+
+	static TestIndex testIndex;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		testIndex = new TestIndex();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		if (testIndex != null)
+			testIndex.close();
+		ClauseCombinerNfa.setNfaThreshold(ClauseCombinerNfa.DEFAULT_NFA_THRESHOLD);
+		SpansFiSeqAdaptive.setSwitchThresholds(SpansFiSeqAdaptive.DEFAULT_SWITCH_FACTOR, SpansFiSeqAdaptive.DEFAULT_MIN_SWITCH_COST);
+	}
+
+	/** Result of running a query: hits with their captured groups, and whether the plan switched */
+	static class Result {
+		List<String> hits = new ArrayList<>();
+		boolean usedFiSeq = false;
+		boolean switched = false;
+	}
+
+	private static Result find(String pattern) throws ParseException, IOException {
+		Searcher searcher = testIndex.getSearcher();
+		IndexReader reader = searcher.getIndexReader();
+		BLSpanQuery query = searcher.createSpanQuery(CorpusQueryLanguageParser.parse(pattern), searcher.getMainContentsFieldName(), (Query) null);
+		query = query.optimize(reader).rewrite(reader);
+		SpanWeight weight = query.createWeight(searcher.getIndexSearcher(), false);
+		Result result = new Result();
+		BLSpanQuery fiSeqQuery = query instanceof SpanQueryCaptureGroup ? ((SpanQueryCaptureGroup) query).getClauses().get(0) : query;
+		result.usedFiSeq = fiSeqQuery instanceof SpanQueryFiSeq;
+		for (LeafReaderContext context: reader.leaves()) {
+			BLSpans spans = (BLSpans) weight.getSpans(context, Postings.OFFSETS);
+			if (spans == null)
+				continue;
+			HitQueryContext hitQueryContext = new HitQueryContext(spans);
+			spans.setHitQueryContext(hitQueryContext);
+			Span[] groups = new Span[hitQueryContext.numberOfCapturedGroups()];
+			while (spans.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+				while (spans.nextStartPosition() != Spans.NO_MORE_POSITIONS) {
+					spans.getCapturedGroups(groups);
+					result.hits.add(context.docBase + spans.docID() + ":" + spans.startPosition() + "-" + spans.endPosition() + " " + Arrays.toString(groups));
+				}
+			}
+			BLSpans fiSeqSpans = spans instanceof SpansCaptureGroup ? ((SpansCaptureGroup) spans).getClause() : spans;
+			if (fiSeqSpans instanceof SpansFiSeqAdaptive && ((SpansFiSeqAdaptive) fiSeqSpans).switched())
+				result.switched = true;
+		}
+		return result;
+	}
+
+	@Test
+	public void testSwitchMidSegment() throws ParseException, IOException {
+		// (the alternative plan must give the same guarantees, so no ORs: terms only)
+		String pattern = " A:[pos='art'] [pos='nou'] ";
+
+		// Pure postings
+		ClauseCombinerNfa.setNfaMatchingEnabled(false);
+		Result postings = find(pattern);
+		Assert.assertFalse(postings.usedFiSeq);
+
+		// Pure forward index (never switches on our small index)
+		ClauseCombinerNfa.setNfaThreshold(ClauseCombinerNfa.MAX_NFA_MATCHING);
+		SpansFiSeqAdaptive.setSwitchThresholds(SpansFiSeqAdaptive.DEFAULT_SWITCH_FACTOR, SpansFiSeqAdaptive.DEFAULT_MIN_SWITCH_COST);
+		Result fiSeq = find(pattern);
+		Assert.assertTrue(fiSeq.usedFiSeq);
+		Assert.assertFalse(fiSeq.switched);
+
+		// Switch to the postings after the first document
+		SpansFiSeqAdaptive.setSwitchThresholds(0, 0);
+		Result switched = find(pattern);
+		Assert.assertTrue(switched.usedFiSeq);
+		Assert.assertTrue(switched.switched);
+
+		// (hits in two documents in the same segment, so the second is found after switching)
+		Assert.assertEquals(Arrays.asList("1:1-3 [1-2]", "2:8-10 [8-9]"), postings.hits);
+		Assert.assertEquals(postings.hits, fiSeq.hits);
+		Assert.assertEquals(postings.hits, switched.hits);
+	}
+
+}
@@ -133,4 +133,64 @@ public class TestSpansPositionFilter {
 		TestUtil.assertEquals(exp, spans);
 	}
 
+	/** Producer and nested, variable-length filter hits (like tags) */
+	private static SpansPositionFilter getNestedSpans(SpanQueryPositionFilter.Operation type, boolean invert) {
+		BLSpans a = MockSpans.fromLists(
+			new int[] { 1, 1,  1,  1,  1,  2,  2,  2 },
+			new int[] { 2, 5,  9, 25, 40,  7, 10, 12 },
+			new int[] { 3, 8, 11, 40, 60, 15, 25, 20 }
+		);
+		BLSpans b = MockSpans.fromLists(
+			new int[] { 1, 1, 1,  1,  1, 2, 2, 2 },
+			new int[] { 0, 1, 5, 10, 20, 0, 6, 7 },
+			new int[] {50, 3, 8, 12, 30, 5, 20, 8 }
+		);
+		SpansInBuckets bb = new SpansInBucketsPerDocument(b);
+		return new SpansPositionFilter(a, bb, false, type, invert, 0, 0);
+	}
+
+	@Test
+	public void testWithinNested() throws IOException {
+		SpansPositionFilter spans = getNestedSpans(SpanQueryPositionFilter.Operation.WITHIN, false);
+		Spans exp = MockSpans.fromLists(
+			new int[] { 1, 1,  1,  1,  2,  2 },
+			new int[] { 2, 5,  9, 25,  7, 12 },
+			new int[] { 3, 8, 11, 40, 15, 20 }
+		);
+		TestUtil.assertEquals(exp, spans);
+	}
+
+	@Test
+	public void testContainingNested() throws IOException {
+		SpansPositionFilter spans = getNestedSpans(SpanQueryPositionFilter.Operation.CONTAINING, false);
+		Spans exp = MockSpans.fromLists(
+			new int[] { 1,  2 },
+			new int[] { 5,  7 },
+			new int[] { 8, 15 }
+		);
+		TestUtil.assertEquals(exp, spans);
+	}
+
+	@Test
+	public void testEndsAtNested() throws IOException {
+		SpansPositionFilter spans = getNestedSpans(SpanQueryPositionFilter.Operation.ENDS_AT, false);
+		Spans exp = MockSpans.fromLists(
+			new int[] { 1, 1,  2 },
+			new int[] { 2, 5, 12 },
+			new int[] { 3, 8, 20 }
+		);
+		TestUtil.assertEquals(exp, spans);
+	}
+
+	@Test
+	public void testNotWithinNested() throws IOException {
+		SpansPositionFilter spans = getNestedSpans(SpanQueryPositionFilter.Operation.WITHIN, true);
+		Spans exp = MockSpans.fromLists(
+			new int[] {  1,  2 },
+			new int[] { 40, 10 },
+			new int[] { 60, 25 }
+		);
+		TestUtil.assertEquals(exp, spans);
+	}
+
 }
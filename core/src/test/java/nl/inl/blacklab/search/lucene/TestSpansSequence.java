@@ -99,4 +99,98 @@ public class TestSpansSequence {
 		Spans exp = new MockSpans(expDoc, expStart, expEnd);
 		TestUtil.assertEquals(exp, spans);
 	}
+
+	@Test
+	public void testSequenceSpansSimpleSkipLeft() throws IOException {
+		int[] aDoc   = { 1, 1, 1, 1, 1, 2, 2 };
+		int[] aStart = { 1, 2, 3, 4, 8, 1, 5 };
+		int[] aEnd   = { 2, 3, 4, 5, 9, 2, 6 };
+		BLSpans a = new MockSpans(aDoc, aStart, aEnd);
+
+		int[] bDoc   = { 1, 1, 2 };
+		int[] bStart = { 5, 9, 6 };
+		int[] bEnd   = { 6, 10, 7 };
+		BLSpans b = new MockSpans(bDoc, bStart, bEnd);
+
+		Spans spans = new SpansSequenceSimple(a, b, 1);
+
+		int[] expDoc   = { 1, 1, 2 };
+		int[] expStart = { 4, 8, 5 };
+		int[] expEnd   = { 6, 10, 7 };
+		Spans exp = new MockSpans(expDoc, expStart, expEnd);
+		TestUtil.assertEquals(exp, spans);
+	}
+
+	@Test
+	public void testSequenceSpansRawSkipLeft() throws IOException {
+		int[] aDoc   = { 1, 1, 1, 1, 1 };
+		int[] aStart = { 1, 2, 3, 4, 5 };
+		int[] aEnd   = { 2, 4, 5, 6, 7 };
+		BLSpans a = new MockSpans(aDoc, aStart, aEnd);
+
+		int[] bDoc   = { 1, 1, 1 };
+		int[] bStart = { 6, 6, 7 };
+		int[] bEnd   = { 7, 8, 8 };
+		BLSpans b = new MockSpans(bDoc, bStart, bEnd);
+
+		Spans spans = new SpansSequenceRaw(a, b, 2);
+
+		int[] expDoc   = { 1, 1, 1 };
+		int[] expStart = { 4, 4, 5 };
+		int[] expEnd   = { 7, 8, 8 };
+		Spans exp = new MockSpans(expDoc, expStart, expEnd);
+		TestUtil.assertEquals(exp, spans);
+	}
+
+	/** Right clause that is cheaper than the left one, so it drives document iteration */
+	private static BLSpans cheapSpans(int[] doc, int[] start, int[] end) {
+		return new MockSpans(doc, start, end) {
+			@Override
+			public long cost() {
+				return 1;
+			}
+		};
+	}
+
+	@Test
+	public void testSequenceSpansSimpleRightLeads() throws IOException {
+		int[] aDoc   = { 1, 2, 2, 3, 4, 5 };
+		int[] aStart = { 1, 1, 3, 1, 1, 1 };
+		int[] aEnd   = { 2, 2, 4, 2, 2, 2 };
+		BLSpans a = new MockSpans(aDoc, aStart, aEnd);
+
+		int[] bDoc   = { 2, 4, 6 };
+		int[] bStart = { 4, 3, 2 };
+		int[] bEnd   = { 5, 4, 3 };
+		BLSpans b = cheapSpans(bDoc, bStart, bEnd);
+
+		Spans spans = new SpansSequenceSimple(a, b);
+
+		int[] expDoc   = { 2 };
+		int[] expStart = { 3 };
+		int[] expEnd   = { 5 };
+		Spans exp = new MockSpans(expDoc, expStart, expEnd);
+		TestUtil.assertEquals(exp, spans);
+	}
+
+	@Test
+	public void testSequenceSpansRawRightLeads() throws IOException {
+		int[] aDoc   = { 1, 2, 2, 3, 4, 5 };
+		int[] aStart = { 1, 1, 1, 1, 1, 1 };
+		int[] aEnd   = { 2, 2, 3, 2, 2, 2 };
+		BLSpans a = new MockSpans(aDoc, aStart, aEnd);
+
+		int[] bDoc   = { 2, 2, 4, 6 };
+		int[] bStart = { 2, 2, 3, 2 };
+		int[] bEnd   = { 3, 4, 4, 3 };
+		BLSpans b = cheapSpans(bDoc, bStart, bEnd);
+
+		Spans spans = new SpansSequenceRaw(a, b);
+
+		int[] expDoc   = { 2, 2 };
+		int[] expStart = { 1, 1 };
+		int[] expEnd   = { 3, 4 };
+		Spans exp = new MockSpans(expDoc, expStart, expEnd);
+		TestUtil.assertEquals(exp, spans);
+	}
 }
@@ -56,6 +56,19 @@ public class TestSpansTags {
 		TestUtil.assertEquals(exp, spans);
 	}
 
+	@Test
+	public void testLargePositions() throws IOException {
+		int[] aDoc   = {   1,      1 };
+		int[] aStart = { 300,  70000 };
+		int[] aEnd   = { 511, 16777300 };
+		BLSpans a = MockSpans.withEndInPayload(aDoc, aStart, aEnd);
+
+		Spans spans = new SpansTags(a);
+
+		Spans exp = new MockSpans(aDoc, aStart, aEnd);
+		TestUtil.assertEquals(exp, spans);
+	}
+
 	/**
 	 * Test the case where there's an empty tag between two tokens.
 	 *
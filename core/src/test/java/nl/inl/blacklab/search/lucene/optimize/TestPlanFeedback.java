@@ -0,0 +1,62 @@
+package nl.inl.blacklab.search.lucene.optimize;
+
+import org.apache.lucene.index.Term;
+import org.junit.Assert;
+import org.junit.Test;
+
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
+import nl.inl.blacklab.search.lucene.BLSpanTermQuery;
+
+public class TestPlanFeedback {
+
+	private static final double DELTA = 1e-6;
+
+	@Test
+	public void testNoObservations() {
+		PlanFeedback feedback = new PlanFeedback();
+		Assert.assertEquals(1.0, feedback.getNfaCostCorrection("a b"), DELTA);
+	}
+
+	@Test
+	public void testShapeCorrection() {
+		PlanFeedback feedback = new PlanFeedback();
+		feedback.record("a b", 4000, 1000, 10, 5, 1);
+		Assert.assertEquals(4.0, feedback.getNfaCostCorrection("a b"), DELTA);
+
+		// Moving average of the log ratio
+		feedback.record("a b", 1000, 1000, 10, 5, 1);
+		Assert.assertEquals(Math.exp(0.7 * Math.log(4)), feedback.getNfaCostCorrection("a b"), DELTA);
+
+		// Not enough observations yet to correct unknown shapes
+		Assert.assertEquals(1.0, feedback.getNfaCostCorrection("c d"), DELTA);
+	}
+
+	@Test
+	public void testIndexCorrection() {
+		PlanFeedback feedback = new PlanFeedback();
+		feedback.record("a b", 500, 1000, 10, 5, 1);
+		feedback.record("c d", 500, 1000, 10, 5, 1);
+		feedback.record("e f", 500, 1000, 10, 5, 1);
+		Assert.assertEquals(0.5, feedback.getNfaCostCorrection("g h"), DELTA);
+		Assert.assertEquals(3, feedback.getIndexObservations().getCount());
+		Assert.assertEquals(30, feedback.getIndexObservations().getAnchors());
+	}
+
+	@Test
+	public void testCorrectionLimited() {
+		PlanFeedback feedback = new PlanFeedback();
+		feedback.record("a b", 1e9, 1, 10, 5, 1);
+		Assert.assertEquals(100.0, feedback.getNfaCostCorrection("a b"), DELTA);
+	}
+
+	@Test
+	public void testShapeIgnoresTerms() {
+		BLSpanQuery quick = new BLSpanTermQuery(new Term("contents%word@i", "quick"));
+		BLSpanQuery fox = new BLSpanTermQuery(new Term("contents%lemma@s", "fox"));
+		BLSpanQuery the = new BLSpanTermQuery(new Term("contents%word@i", "the"));
+		BLSpanQuery dog = new BLSpanTermQuery(new Term("contents%lemma@s", "dog"));
+		Assert.assertEquals(PlanFeedback.shape(quick, fox), PlanFeedback.shape(the, dog));
+		Assert.assertNotEquals(PlanFeedback.shape(quick, fox), PlanFeedback.shape(dog, the));
+	}
+
+}
@@ -15,7 +15,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -35,6 +39,9 @@ import nl.inl.blacklab.server.datastream.DataStream;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.exceptions.ConfigurationException;
 import nl.inl.blacklab.server.exceptions.InternalServerError;
+import nl.inl.blacklab.server.exceptions.ServiceUnavailable;
+import nl.inl.blacklab.server.jobs.Job;
+import nl.inl.blacklab.server.jobs.User;
 import nl.inl.blacklab.server.requesthandlers.RequestHandler;
 import nl.inl.blacklab.server.requesthandlers.Response;
 import nl.inl.blacklab.server.requesthandlers.SearchParameters;
@@ -242,6 +249,25 @@ public class BlackLabServer extends HttpServlet {
 		// For some auth systems, we need to persist the logged-in user, e.g. by setting a cookie
 		searchManager.getAuthSystem().persistUser(this, request, responseObject, requestHandler.getUser());
 
+		// If we need to wait for a search, release this thread until it's done
+		if (request.isAsyncSupported() && handleAsync(request, responseObject, requestHandler, outputType, debugMode))
+			return;
+
+		writeResponse(request, responseObject, requestHandler, outputType, debugMode, null);
+	}
+
+	/**
+	 * Handle the request and write the response.
+	 *
+	 * @param request HTTP request object
+	 * @param responseObject where to write our response
+	 * @param requestHandler handles the request
+	 * @param outputType output format
+	 * @param debugMode are we in debug mode?
+	 * @param error if not null, respond with this error instead of handling the request
+	 */
+	private void writeResponse(HttpServletRequest request, HttpServletResponse responseObject, RequestHandler requestHandler,
+			DataFormat outputType, boolean debugMode, BlsException error) {
 		// Is this a JSONP request?
 		String callbackFunction = ServletUtil.getParameter(request, "jsonp", "");
 		boolean isJsonp = callbackFunction.length() > 0;
@@ -268,6 +294,8 @@ public class BlackLabServer extends HttpServlet {
 			// Illegal JSONP callback name
 			httpCode = Response.badRequest(es, "JSONP_ILLEGAL_CALLBACK", "Illegal JSONP callback function name. Must be a valid Javascript name.");
 			callbackFunction = "";
+		} else if (error != null) {
+			httpCode = Response.error(es, error.getBlsErrorCode(), error.getMessage(), error.getHttpStatusCode());
 		} else {
 			try {
 				httpCode = requestHandler.handle(ds);
@@ -313,6 +341,125 @@ public class BlackLabServer extends HttpServlet {
 		}
 	}
 
+	/**
+	 * If the request needs a search that isn't finished yet, start it, release
+	 * the request thread and write the response when it finishes (or when the
+	 * request handler is ready to respond, e.g. when the requested page of hits
+	 * is available).
+	 *
+	 * This way, slow searches don't tie up the servlet container's threads.
+	 * If the search doesn't finish in time (the maximum search time, or a short
+	 * time for block=no requests), the response is written anyway.
+	 *
+	 * @param request HTTP request object
+	 * @param responseObject where to write our response
+	 * @param requestHandler handles the request
+	 * @param outputType output format
+	 * @param debugMode are we in debug mode?
+	 * @return true if the response will be written asynchronously, false if we should write it now
+	 */
+	private boolean handleAsync(HttpServletRequest request, HttpServletResponse responseObject, RequestHandler requestHandler,
+			DataFormat outputType, boolean debugMode) {
+		Job job;
+		try {
+			job = requestHandler.startSearch();
+		} catch (BlsException | RuntimeException e) {
+			// (handle() will run into the same problem and report it)
+			return false;
+		}
+		if (job == null)
+			return false;
+		if (requestHandler.readyToRespond(job)) {
+			job.decrRef();
+			return false;
+		}
+		boolean block = requestHandler.isBlockingOperation();
+		AsyncContext asyncContext = request.startAsync(request, responseObject);
+		asyncContext.setTimeout(block ? searchManager.config().getCacheConfig().getMaxSearchTimeSec() * 1000L :
+				searchManager.getCache().getInitialJobFinishWaitMs());
+		new AsyncRequest(asyncContext, job, requestHandler, outputType, debugMode, block).start();
+		return true;
+	}
+
+	/** A request waiting for its search to finish, without holding a thread */
+	private class AsyncRequest implements AsyncListener {
+
+		private AsyncContext asyncContext;
+
+		private Job job;
+
+		private RequestHandler requestHandler;
+
+		private DataFormat outputType;
+
+		private boolean debugMode;
+
+		private boolean block;
+
+		/** Have we responded (or given up)? */
+		private AtomicBoolean done = new AtomicBoolean(false);
+
+		AsyncRequest(AsyncContext asyncContext, Job job, RequestHandler requestHandler, DataFormat outputType, boolean debugMode, boolean block) {
+			this.asyncContext = asyncContext;
+			this.job = job;
+			this.requestHandler = requestHandler;
+			this.outputType = outputType;
+			this.debugMode = debugMode;
+			this.block = block;
+		}
+
+		void start() {
+			asyncContext.addListener(this);
+			requestHandler.whenReadyToRespond(job, () -> {
+				if (done.get())
+					return;
+				try {
+					// Write the response in one of the container's threads
+					asyncContext.start(() -> respond(null));
+				} catch (IllegalStateException e) {
+					// Request timed out or was completed in the meantime
+				}
+			});
+		}
+
+		void respond(BlsException error) {
+			if (!done.compareAndSet(false, true))
+				return;
+			try {
+				writeResponse((HttpServletRequest)asyncContext.getRequest(), (HttpServletResponse)asyncContext.getResponse(),
+						requestHandler, outputType, debugMode, error);
+			} finally {
+				job.decrRef();
+				asyncContext.complete();
+			}
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			// For block=no, we respond that the search is still busy
+			respond(block ? new ServiceUnavailable("Search took too long, cancelled.") : null);
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			if (done.compareAndSet(false, true)) {
+				logger.debug("(error while waiting for search, client probably cancelled the request)");
+				job.decrRef();
+				asyncContext.complete();
+			}
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			// (nothing to do)
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			// (nothing to do)
+		}
+	}
+
 	@Override
 	public void destroy() {
 
@@ -347,10 +494,11 @@ public class BlackLabServer extends HttpServlet {
 	 * @param isDocs is this a docs operation? influences how the "sort" parameter is interpreted
 	 * @param request the HTTP request
 	 * @param indexName the index to search
+	 * @param user the user searching (determines the query budget)
 	 * @return the unique key
 	 */
-	public SearchParameters getSearchParameters(boolean isDocs, HttpServletRequest request, String indexName) {
-		return SearchParameters.get(searchManager, isDocs, indexName, request);
+	public SearchParameters getSearchParameters(boolean isDocs, HttpServletRequest request, String indexName, User user) {
+		return SearchParameters.get(searchManager, isDocs, indexName, request, user);
 	}
 
 	public SearchManager getSearchManager() {
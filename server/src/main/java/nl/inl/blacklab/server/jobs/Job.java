@@ -2,7 +2,9 @@ package nl.inl.blacklab.server.jobs;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
@@ -14,6 +16,8 @@ import nl.inl.blacklab.search.Searcher;
 import nl.inl.blacklab.server.datastream.DataStream;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.exceptions.ServiceUnavailable;
+import nl.inl.blacklab.server.search.ResultDiskCache;
+import nl.inl.blacklab.server.search.SearchExecutor;
 import nl.inl.blacklab.server.search.SearchManager;
 import nl.inl.util.ExUtil;
 import nl.inl.util.ThreadPriority;
@@ -35,6 +39,9 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 
 	private static final int REFS_INVALID = -9999;
 
+	/** Estimated memory used by a job, not counting its results (the job, its description and bookkeeping) */
+	private static final long JOB_OVERHEAD_BYTES = 2000;
+
 	/** If true (as it should be for production use), we call cleanup() on jobs that
 	 *  aren't referred to anymore in an effor to assist the Java garbage collector.
 	 *  EXPERIMENTAL
@@ -47,6 +54,18 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 	/** Unique job id */
 	long id = nextJobId++;
 
+	/** How long it took to get our results (see getCostMs()), or -1 if not finished yet */
+	private long costMs = -1;
+
+	/** Priority used by the cache to decide what job to remove first (see SearchCache) */
+	private double cachePriority;
+
+	/**
+	 * Are our results (see getObjectToPrioritize()) the same object as those of our
+	 * input job? If so, they don't count towards our memory use.
+	 */
+	protected boolean resultsShared = false;
+
 	/**
 	 * Number of references to this Job. If this reaches 0, and the thread
 	 * is not running, we can safely call cleanup().
@@ -74,9 +93,15 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 			waitingFor.add(job);
 			job.incrRef();
 		}
+		// Let the executor run another search while we wait
+		SearchExecutor.Task task = searchTask;
+		if (task != null)
+			task.setBlocked(true);
 		try {
 			job.waitUntilFinished();
 		} finally {
+			if (task != null)
+				task.setBlocked(false);
 			synchronized(waitingFor) {
 				job.decrRef();
 				waitingFor.remove(job);
@@ -102,6 +127,12 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 	/** If the search thread threw an exception, it's stored here. */
 	protected Throwable thrownException;
 
+	/**
+	 * Called when this job finishes (see addFinishedListener()).
+	 * Also used to notify threads waiting for this job to finish.
+	 */
+	private List<Runnable> finishedListeners = new ArrayList<>();
+
 	/** The last time the results of this search were accessed (for caching) */
 	private long lastAccessed;
 
@@ -120,8 +151,8 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 	/** Has cancelJob() been called or not? Don't call it twice! */
 	private boolean cancelJobCalled = false;
 
-	/** Thread object carrying out the search, if performing the search. */
-	private SearchThread searchThread = null;
+	/** Task carrying out the search in the executor, if performing the search. */
+	private SearchExecutor.Task searchTask = null;
 
 	/** Description of this job */
 	protected JobDescription jobDesc;
@@ -161,6 +192,15 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 		return searcher;
 	}
 
+	/**
+	 * Get the worthiness as determined by the last call to calculateWorthiness().
+	 *
+	 * @return the worthiness (higher is worthier)
+	 */
+	public double getWorthiness() {
+		return worthiness;
+	}
+
 	public void calculateWorthiness() {
 	    if (finished()) {
 	        // 0 ... 9999 : search is finished
@@ -244,23 +284,53 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
     		if (performCalled)
     			throw new RuntimeException("Already performing search!");
             performCalled = true;
+	    }
+	    synchronized (finishedListeners) {
+	    	finishedListeners.notifyAll(); // (in case someone is waiting for perform() to be called)
 	    }
 
-		// Create and start thread
-		// TODO: use thread pooling..?
+		// Queue the search in the executor
 		startedAt = System.currentTimeMillis();
 		//logger.debug("Search " + this + " started at " + startedAt);
 		setLevelRunningAt = startedAt;
-		searchThread = new SearchThread(this);
-		searchThread.start();
+		calculateWorthiness();
+		searchTask = searchMan.getCache().getExecutor().submit(this, this::run);
 
 		waitUntilFinished(waitTimeMs);
 	}
 
+	/**
+	 * Perform the search in the executor's worker thread.
+	 */
+	private void run() {
+		try {
+			performSearchInternal();
+			setFinished();
+		} catch (Throwable e) {
+			// NOTE: we catch Throwable here (while it's normally good practice to
+			//  catch only Exception and derived classes) because we need to know if
+			//  our search crashed or not. The Throwable will be re-thrown by the
+			//  thread waiting for the results, so any non-Exception Throwables will
+			//  then go uncaught as they "should".
+			//  Even then, some low-level ones (like OutOfMemoryException) may slip by.
+			logger.debug("Search threw an exception, saving it:\n" + e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			thrownException = e;
+			setFinished();
+		}
+	}
+
 	/**
 	 * @throws BlsException on error
 	 */
 	protected void performSearchInternal() throws BlsException {
+		long searchStartTime = System.currentTimeMillis();
+		ResultDiskCache diskCache = searchMan.getCache().getResultDiskCache();
+		if (diskCache != null && restoreResults(diskCache)) {
+			// Results were stored earlier; no need to perform the search
+			costMs = System.currentTimeMillis() - searchStartTime;
+			return;
+		}
 		JobDescription inputDesc = jobDesc.getInputDesc();
 		if (inputDesc != null) {
 			// Perform the input job and then call this job's performSearch method
@@ -268,6 +338,8 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 			try {
 				waitForJobToFinish(inputJob);
 				performSearch();
+				Prioritizable results = getObjectToPrioritize();
+				resultsShared = results != null && results == inputJob.getObjectToPrioritize();
 			} finally {
 				inputJob.decrRef();
 				inputJob = null;
@@ -276,7 +348,33 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 			// No input job.
 			performSearch();
 		}
+		costMs = System.currentTimeMillis() - searchStartTime;
+		if (diskCache != null && diskCache.shouldStore(costMs))
+			storeResults(diskCache);
+	}
 
+	/**
+	 * Restore this job's results from the disk cache, if they were stored there.
+	 *
+	 * Only jobs whose results are expensive to compute support this.
+	 *
+	 * @param diskCache the disk cache
+	 * @return true if the results were restored, false if the search must be performed
+	 * @throws BlsException on error
+	 */
+	protected boolean restoreResults(ResultDiskCache diskCache) throws BlsException {
+		return false;
+	}
+
+	/**
+	 * Store this job's results in the disk cache, if the job supports this.
+	 *
+	 * Called after an expensive search has been performed.
+	 *
+	 * @param diskCache the disk cache
+	 */
+	protected void storeResults(ResultDiskCache diskCache) {
+		// (not supported by default)
 	}
 
 	/**
@@ -338,20 +436,20 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 	 * @throws BlsException
 	 */
 	public void waitUntilFinished(int maxWaitMs) throws BlsException {
-		int defaultWaitStep = 100;
-		boolean waitUntilFinished = maxWaitMs < 0;
-		while (!performCalled || ( (waitUntilFinished || maxWaitMs > 0) && !finished())) {
-			int w = defaultWaitStep;
-			if (!waitUntilFinished) {
-				if (maxWaitMs < defaultWaitStep)
-					w = maxWaitMs;
-				maxWaitMs -= w;
-			}
-			try {
-				Thread.sleep(w);
-			} catch (InterruptedException e) {
-				throw new ServiceUnavailable("The server seems to be under heavy load right now. Please try again later. (job killed by scheduler)");
+		long waitUntil = System.currentTimeMillis() + maxWaitMs;
+		try {
+			synchronized (finishedListeners) {
+				while (!performCalled || !finished()) {
+					// (wait(0) waits until notified; we don't time out before perform() is called)
+					long w = maxWaitMs < 0 || !performCalled ? 0 : waitUntil - System.currentTimeMillis();
+					if (maxWaitMs >= 0 && performCalled && w <= 0)
+						break;
+					finishedListeners.wait(w);
+				}
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServiceUnavailable("The server seems to be under heavy load right now. Please try again later. (job killed by scheduler)");
 		}
 		// If an Exception occurred, re-throw it now.
 		rethrowException();
@@ -366,6 +464,25 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 		waitUntilFinished(-1);
 	}
 
+	/**
+	 * Call a listener when this job finishes (successfully or not).
+	 *
+	 * The listener is called from the thread that performed the job, so it
+	 * should return quickly. If the job is already finished, it is called
+	 * immediately.
+	 *
+	 * @param listener what to call
+	 */
+	public void addFinishedListener(Runnable listener) {
+		synchronized (finishedListeners) {
+			if (!finished()) {
+				finishedListeners.add(listener);
+				return;
+			}
+		}
+		listener.run();
+	}
+
 	/**
 	 * Try to cancel this job.
 	 */
@@ -376,8 +493,11 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 			return; // don't call this twice!
 		cancelJobCalled = true;
 
-		searchThread.interrupt();
-		searchThread = null; // ensure garbage collection
+		if (searchTask != null && searchTask.cancel()) {
+			// Search was still queued and will never run
+			thrownException = new ServiceUnavailable("The server seems to be under heavy load right now. Please try again later. (job killed by scheduler)");
+			setFinished();
+		}
 
 		// Tell the jobs we were waiting for we're no longer interested
 		if (waitingFor != null) {
@@ -393,14 +513,58 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 	/**
 	 * Estimate how much memory this Search object holds.
 	 *
-	 * For now, defaults to an arbitrary 1M.
-	 *
-	 * TODO: implement size estimation in subclasses
+	 * Subclasses add the size of their results, unless those are shared
+	 * with their input job (see resultsShared).
 	 *
 	 * @return estimated memory size in bytes
 	 */
 	public long estimateSizeBytes() {
-		return 1000000;
+		return JOB_OVERHEAD_BYTES;
+	}
+
+	/**
+	 * How long it took to get our results, in ms, or -1 if not finished yet.
+	 *
+	 * Includes the time it took to perform the input job(s), so this is the cost
+	 * of getting the results again if this job is removed from the cache.
+	 *
+	 * @return cost of the results in ms
+	 */
+	public long getCostMs() {
+		return costMs;
+	}
+
+	/**
+	 * Get the priority used by the cache to decide what job to remove first.
+	 *
+	 * @return cache priority (lowest is removed first)
+	 */
+	public double getCachePriority() {
+		return cachePriority;
+	}
+
+	public void setCachePriority(double cachePriority) {
+		this.cachePriority = cachePriority;
+	}
+
+	/**
+	 * How much CPU time has this job used so far?
+	 *
+	 * Doesn't include the time spent waiting for other jobs.
+	 *
+	 * @return CPU time in ms, or -1 if not started or not supported by the JVM
+	 */
+	public long getCpuTimeMs() {
+		SearchExecutor.Task task = searchTask;
+		return task == null ? -1 : task.getCpuTimeMs();
+	}
+
+	public User getUser() {
+		return user;
+	}
+
+	public long getId() {
+		return id;
 	}
 
 	@Override
@@ -442,6 +606,7 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 					.entry("status", status())
 					.entry("userWaitTime", userWaitTime())
 					.entry("totalExecTime", totalExecTime())
+					.entry("cpuTimeMs", getCpuTimeMs())
 					.entry("notAccessedFor", notAccessedFor())
 					.entry("pausedFor", currentPauseLength())
 					.entry("createdBy", shortUserId())
@@ -517,6 +682,7 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 			.startEntry("searchThread")
 				.startMap();
 		// Information about thread object, if any
+		Thread searchThread = searchTask == null ? null : searchTask.getThread();
 		if (searchThread != null) {
 			StackTraceElement[] stackTrace = searchThread.getStackTrace();
 			StringBuilder stackTraceStr = new StringBuilder();
@@ -561,7 +727,6 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 			}
 		}
 		thrownException = null;
-		searchThread = null;
 		jobDesc = null;
 		refsToJob = REFS_INVALID;
 	}
@@ -747,6 +912,10 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 				setLevelRunningAt = System.currentTimeMillis();
 			}
 			this.level = level;
+			if (searchTask != null && ThreadPriority.isEnabled()) {
+				// A paused search doesn't take up a place in the executor
+				searchTask.setPaused(level == Level.PAUSED);
+			}
 		}
 		setPriorityInternal();
 	}
@@ -800,6 +969,21 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 			//  "PAUSED")
 			setPriorityLevel(Level.RUNNING);
 		}
+
+		// Wake up any threads waiting for us and call our listeners
+		List<Runnable> listeners;
+		synchronized (finishedListeners) {
+			finishedListeners.notifyAll();
+			listeners = new ArrayList<>(finishedListeners);
+			finishedListeners.clear();
+		}
+		for (Runnable listener: listeners) {
+			try {
+				listener.run();
+			} catch (RuntimeException e) {
+				logger.error("Error calling job finished listener", e);
+			}
+		}
 	}
 
 	public int getRefCount() {
@@ -1,9 +1,20 @@
 package nl.inl.blacklab.server.jobs;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+
+import nl.inl.blacklab.perdocument.DocGroup;
 import nl.inl.blacklab.perdocument.DocGroups;
+import nl.inl.blacklab.perdocument.DocResults;
+import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.grouping.HitPropValue;
 import nl.inl.blacklab.server.datastream.DataStream;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.requesthandlers.SearchParameters;
+import nl.inl.blacklab.server.search.ResultDiskCache;
 import nl.inl.blacklab.server.search.SearchManager;
 
 /**
@@ -71,6 +82,56 @@ public class JobDocsGrouped extends JobWithDocs {
 		groups = theGroups; // we're done, caller can use the groups now
 	}
 
+	@Override
+	protected boolean restoreResults(ResultDiskCache diskCache) throws BlsException {
+		ByteBuffer buf = diskCache.get(searcher, jobDesc.uniqueIdentifier());
+		if (buf == null)
+			return false;
+		Hits restoredHits = Hits.fromList(searcher, ResultDiskCache.readHits(buf));
+		JobHits.applySettings(restoredHits, jobDesc);
+		DocResults restoredDocResults = restoredHits.perDocResults();
+		IntIntHashMap docIndices = new IntIntHashMap();
+		for (int i = 0; i < restoredDocResults.size(); i++)
+			docIndices.put(restoredDocResults.get(i).getDocId(), i);
+		int numberOfGroups = buf.getInt();
+		List<HitPropValue> identities = new ArrayList<>(numberOfGroups);
+		List<int[]> groupIndices = new ArrayList<>(numberOfGroups);
+		for (int i = 0; i < numberOfGroups; i++) {
+			HitPropValue identity = HitPropValue.deserialize(restoredHits, ResultDiskCache.readString(buf));
+			if (identity == null)
+				return false;
+			identities.add(identity);
+			int[] indices = ResultDiskCache.readInts(buf); // (document ids)
+			for (int j = 0; j < indices.length; j++)
+				indices[j] = docIndices.get(indices[j]);
+			groupIndices.add(indices);
+		}
+		docResults = restoredDocResults;
+		setPriorityInternal();
+		groups = DocGroups.fromGroups(docResults, jobDesc.getDocGroupSettings().groupBy(), identities, groupIndices);
+		return true;
+	}
+
+	@Override
+	protected void storeResults(ResultDiskCache diskCache) {
+		// We only store document results that were found by a hits search; these are the expensive ones
+		Hits hits = docResults.getOriginalHits();
+		if (hits == null || !ResultDiskCache.canStore(hits))
+			return;
+		diskCache.put(searcher, jobDesc.uniqueIdentifier(), out -> {
+			ResultDiskCache.writeHits(out, hits);
+			out.writeInt(groups.numberOfGroups());
+			for (DocGroup group: groups) {
+				ResultDiskCache.writeString(out, group.getIdentity().serialize());
+				DocResults groupResults = group.getResults();
+				int[] docIds = new int[groupResults.size()];
+				for (int i = 0; i < docIds.length; i++)
+					docIds[i] = groupResults.get(i).getDocId();
+				ResultDiskCache.writeInts(out, docIds);
+			}
+		});
+	}
+
 	/**
 	 * Get the grouped documents, or null if not available yet, or if no sortSettings were provided by the JobDesc.
 	 * @return the grouped document results.
@@ -85,6 +146,12 @@ public class JobDocsGrouped extends JobWithDocs {
 			.entry("numberOfGroups", groups == null ? -1 : groups.numberOfGroups());
 	}
 
+	@Override
+	public long estimateSizeBytes() {
+		DocGroups theGroups = groups;
+		return super.estimateSizeBytes() + (theGroups == null ? 0 : theGroups.estimateSizeBytes());
+	}
+
 	@Override
 	protected void cleanup() {
 		groups = null;
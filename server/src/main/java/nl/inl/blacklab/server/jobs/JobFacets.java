@@ -70,9 +70,8 @@ public class JobFacets extends Job {
 		List<DocProperty> props = jobDesc.getFacets();
 
 		Map<String, DocCounts> theCounts = new HashMap<>();
-		for (DocProperty facetBy: props) {
-			DocCounts facetCounts = docResults.countBy(facetBy);
-			theCounts.put(facetBy.getName(), facetCounts);
+		for (DocCounts facetCounts: docResults.countBy(props)) {
+			theCounts.put(facetCounts.getGroupCriteria().getName(), facetCounts);
 		}
 		counts = theCounts; // we're done, caller can use the groups now
 	}
@@ -4,6 +4,7 @@ package nl.inl.blacklab.server.jobs;
 import org.apache.lucene.search.BooleanQuery.TooManyClauses;
 import org.apache.lucene.search.Query;
 
+import nl.inl.blacklab.search.Hits;
 import nl.inl.blacklab.search.HitsSettings;
 import nl.inl.blacklab.search.RegexpTooLargeException;
 import nl.inl.blacklab.search.TextPattern;
@@ -115,15 +116,7 @@ public class JobHits extends JobWithHits {
 				ClauseCombinerNfa.setNfaThreshold(searchSett.getFiMatchNfaFactor());
 
 			hits = searcher.find(textPattern, filter);
-
-			// Set the max retrieve/count value
-			MaxSettings maxSettings = jobDesc.getMaxSettings();
-			HitsSettings hitsSettings = hits.settings();
-			hitsSettings.setMaxHitsToRetrieve(maxSettings.maxRetrieve());
-			hitsSettings.setMaxHitsToCount(maxSettings.maxCount());
-			ContextSettings contextSettings = jobDesc.getContextSettings();
-			hitsSettings.setConcordanceType(contextSettings.concType());
-			hitsSettings.setContextSize(contextSettings.size());
+			applySettings(hits, jobDesc);
 		} catch (RegexpTooLargeException e) {
 			throw new BadRequest("REGEXP_TOO_LARGE", "Regular expression too large.");
 		} catch (TooManyClauses e) {
@@ -133,6 +126,33 @@ public class JobHits extends JobWithHits {
 		}
 	}
 
+	/**
+	 * Set the max retrieve/count values and context settings from
+	 * a hits job description on a Hits object.
+	 *
+	 * If the job description doesn't have these settings, they are
+	 * taken from its input job description, and so on. Used for hits
+	 * restored from the disk cache.
+	 *
+	 * @param theHits the hits to apply the settings to
+	 * @param desc the job description
+	 */
+	static void applySettings(Hits theHits, JobDescription desc) {
+		while (desc.getContextSettings() == null) {
+			desc = desc.getInputDesc();
+			if (desc == null)
+				return;
+		}
+		MaxSettings maxSettings = desc.getMaxSettings();
+		HitsSettings hitsSettings = theHits.settings();
+		hitsSettings.setMaxHitsToRetrieve(maxSettings.maxRetrieve());
+		hitsSettings.setMaxHitsToCount(maxSettings.maxCount());
+		hitsSettings.setQueryBudget(maxSettings.maxCost(), maxSettings.maxTimeMs());
+		ContextSettings contextSettings = desc.getContextSettings();
+		hitsSettings.setConcordanceType(contextSettings.concType());
+		hitsSettings.setContextSize(contextSettings.size());
+	}
+
 	public TextPattern getTextPattern() {
 		return textPattern;
 	}
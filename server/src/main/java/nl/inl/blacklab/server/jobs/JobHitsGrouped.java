@@ -1,11 +1,24 @@
 package nl.inl.blacklab.server.jobs;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import nl.inl.blacklab.search.Hit;
+import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.grouping.HitGroup;
 import nl.inl.blacklab.search.grouping.HitGroups;
+import nl.inl.blacklab.search.grouping.HitPropValue;
 import nl.inl.blacklab.search.grouping.HitProperty;
+import nl.inl.blacklab.search.grouping.ResultsGrouper;
 import nl.inl.blacklab.server.datastream.DataStream;
 import nl.inl.blacklab.server.exceptions.BadRequest;
 import nl.inl.blacklab.server.exceptions.BlsException;
+import nl.inl.blacklab.server.exceptions.ServiceUnavailable;
 import nl.inl.blacklab.server.requesthandlers.SearchParameters;
+import nl.inl.blacklab.server.search.ResultDiskCache;
 import nl.inl.blacklab.server.search.SearchManager;
 
 /**
@@ -73,6 +86,10 @@ public class JobHitsGrouped extends JobWithHits {
 		if (groupProp == null)
 			throw new BadRequest("UNKNOWN_GROUP_PROPERTY", "Unknown group property '" + groupSett.groupBy() + "'.");
 		HitGroups theGroups = hits.groupedBy(groupProp);
+		if (Thread.interrupted()) {
+			// Grouping was aborted; the groups are incomplete, so don't use them
+			throw new ServiceUnavailable("Grouping hits took too long, cancelled");
+		}
 
 		HitGroupSortSettings sortSett = jobDesc.getHitGroupSortSettings();
 		if (sortSett != null)
@@ -81,6 +98,61 @@ public class JobHitsGrouped extends JobWithHits {
 		groups = theGroups; // we're done, caller can use the groups now
 	}
 
+	@Override
+	protected boolean restoreResults(ResultDiskCache diskCache) throws BlsException {
+		ByteBuffer buf = diskCache.get(searcher, jobDesc.uniqueIdentifier());
+		if (buf == null)
+			return false;
+		Hits restoredHits = Hits.fromList(searcher, ResultDiskCache.readHits(buf));
+		JobHits.applySettings(restoredHits, jobDesc);
+		HitProperty groupProp = HitProperty.deserialize(restoredHits, jobDesc.getHitGroupSettings().groupBy());
+		if (groupProp == null)
+			return false;
+		int numberOfGroups = buf.getInt();
+		List<HitPropValue> identities = new ArrayList<>(numberOfGroups);
+		List<int[]> groupIndices = new ArrayList<>(numberOfGroups);
+		for (int i = 0; i < numberOfGroups; i++) {
+			HitPropValue identity = HitPropValue.deserialize(restoredHits, ResultDiskCache.readString(buf));
+			if (identity == null)
+				return false;
+			identities.add(identity);
+			groupIndices.add(ResultDiskCache.readInts(buf));
+		}
+		hits = restoredHits;
+		setPriorityInternal();
+		groups = ResultsGrouper.fromGroups(hits, groupProp, identities, groupIndices);
+		return true;
+	}
+
+	@Override
+	protected void storeResults(ResultDiskCache diskCache) {
+		if (!ResultDiskCache.canStore(hits))
+			return;
+		// Find the index (in original order) of each hit, so we can store the groups as lists of indices
+		// (not needed if the groups store these indices themselves)
+		Map<Hit, Integer> hitIndices = new IdentityHashMap<>();
+		if (groups.getGroups().stream().anyMatch(group -> group.getHitIndices() == null)) {
+			for (int i = 0; i < hits.size(); i++)
+				hitIndices.put(hits.getByOriginalOrder(i), i);
+		}
+		diskCache.put(searcher, jobDesc.uniqueIdentifier(), out -> {
+			ResultDiskCache.writeHits(out, hits);
+			List<HitGroup> groupList = groups.getGroups();
+			out.writeInt(groupList.size());
+			for (HitGroup group: groupList) {
+				ResultDiskCache.writeString(out, group.getIdentity().serialize());
+				int[] indices = group.getHitIndices();
+				if (indices == null) {
+					Hits groupHits = group.getHits();
+					indices = new int[groupHits.size()];
+					for (int i = 0; i < indices.length; i++)
+						indices[i] = hitIndices.get(groupHits.getByOriginalOrder(i));
+				}
+				ResultDiskCache.writeInts(out, indices);
+			}
+		});
+	}
+
 	public HitGroups getGroups() {
 		return groups;
 	}
@@ -91,6 +163,12 @@ public class JobHitsGrouped extends JobWithHits {
 			.entry("numberOfGroups", groups == null ? -1 : groups.numberOfGroups());
 	}
 
+	@Override
+	public long estimateSizeBytes() {
+		HitGroups theGroups = groups;
+		return super.estimateSizeBytes() + (theGroups == null ? 0 : theGroups.estimateSizeBytes());
+	}
+
 	@Override
 	protected void cleanup() {
 		groups = null;
@@ -51,8 +51,8 @@ public class JobHitsSample extends JobWithHits {
 
 	@Override
 	protected void performSearch() throws BlsException {
-		Hits inputHits = ((JobWithHits)inputJob).getHits();
 		SampleSettings sample = jobDesc.getSampleSettings();
+		Hits inputHits = ((JobWithHits)inputJob).getHits();
 		if (sample.percentage() >= 0) {
 			hits = HitsSample.fromHits(inputHits, sample.percentage() / 100f, sample.seed());
 		} else if (sample.number() >= 0) {
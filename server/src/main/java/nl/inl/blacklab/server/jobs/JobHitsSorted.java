@@ -1,10 +1,15 @@
 package nl.inl.blacklab.server.jobs;
 
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import nl.inl.blacklab.search.Hit;
 import nl.inl.blacklab.search.Hits;
 import nl.inl.blacklab.search.grouping.HitProperty;
 import nl.inl.blacklab.server.datastream.DataStream;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.requesthandlers.SearchParameters;
+import nl.inl.blacklab.server.search.ResultDiskCache;
 import nl.inl.blacklab.server.search.SearchManager;
 
 /**
@@ -12,13 +17,24 @@ import nl.inl.blacklab.server.search.SearchManager;
  */
 public class JobHitsSorted extends JobWithHits {
 
+	/** Only sort the requested page right away if there are at least this many times as many hits;
+	 *  the rest of the hits will be sorted when a later page is requested. */
+	private static final int PARTIAL_SORT_MIN_RATIO = 10;
+
 	public static class JobDescHitsSorted extends JobDescription {
 
 		HitSortSettings sortSettings;
 
+		WindowSettings windowHint;
+
 		public JobDescHitsSorted(SearchParameters param, JobDescription hitsToSort, SearchSettings searchSettings, HitSortSettings sortSettings) {
+			this(param, hitsToSort, searchSettings, sortSettings, null);
+		}
+
+		public JobDescHitsSorted(SearchParameters param, JobDescription hitsToSort, SearchSettings searchSettings, HitSortSettings sortSettings, WindowSettings windowHint) {
 			super(param, JobHitsSorted.class, hitsToSort, searchSettings);
 			this.sortSettings = sortSettings;
+			this.windowHint = windowHint;
 		}
 
 		@Override
@@ -26,6 +42,19 @@ public class JobHitsSorted extends JobWithHits {
 			return sortSettings;
 		}
 
+		/**
+		 * The window of sorted hits the client asked for, if known.
+		 *
+		 * Only used to decide how many hits to sort right away; not part
+		 * of the unique identifier, because the sorted result is the same.
+		 *
+		 * @return the requested window, or null if unknown
+		 */
+		@Override
+		public WindowSettings getWindowSettings() {
+			return windowHint;
+		}
+
 		@Override
 		public String uniqueIdentifier() {
 			return super.uniqueIdentifier() + sortSettings + ")";
@@ -44,6 +73,9 @@ public class JobHitsSorted extends JobWithHits {
 
 	}
 
+	/** Did we sort all the hits? (if so, we can store the result on disk) */
+	private boolean sortedCompletely = false;
+
 	public JobHitsSorted(SearchManager searchMan, User user, JobDescription par) throws BlsException {
 		super(searchMan, user, par);
 	}
@@ -55,7 +87,15 @@ public class JobHitsSorted extends JobWithHits {
 		HitSortSettings sortSett = jobDesc.getHitSortSettings();
 		HitProperty sortProp = HitProperty.deserialize(hitsUnsorted, sortSett.sortBy());
 		if (sortProp != null) {
-			hits = hitsUnsorted.sortedBy(sortProp, sortSett.reverse());
+			WindowSettings window = jobDesc.getWindowSettings();
+			int firstN = window == null ? -1 : window.first() + window.size();
+			if (firstN >= 0 && hitsUnsorted.sizeAtLeast(firstN * PARTIAL_SORT_MIN_RATIO)) {
+				// Only the first page(s) are needed right now; don't sort all the hits yet
+				hits = hitsUnsorted.sortedBy(sortProp, sortSett.reverse(), firstN);
+			} else {
+				hits = hitsUnsorted.sortedBy(sortProp, sortSett.reverse());
+				sortedCompletely = true;
+			}
 		} else {
 			// Be lenient of clients passing wrong sortBy values; simply ignore bad sort requests.
 			hits = hitsUnsorted;
@@ -63,6 +103,30 @@ public class JobHitsSorted extends JobWithHits {
 		setPriorityInternal();
 	}
 
+	@Override
+	protected boolean restoreResults(ResultDiskCache diskCache) throws BlsException {
+		ByteBuffer buf = diskCache.get(searcher, jobDesc.uniqueIdentifier());
+		if (buf == null)
+			return false;
+		List<Hit> hitList = ResultDiskCache.readHits(buf);
+		int[] sortOrder = ResultDiskCache.readInts(buf);
+		Hits restoredHits = Hits.fromList(searcher, hitList, sortOrder);
+		JobHits.applySettings(restoredHits, jobDesc);
+		hits = restoredHits;
+		setPriorityInternal();
+		return true;
+	}
+
+	@Override
+	protected void storeResults(ResultDiskCache diskCache) {
+		if (!sortedCompletely || !ResultDiskCache.canStore(hits))
+			return;
+		diskCache.put(searcher, jobDesc.uniqueIdentifier(), out -> {
+			ResultDiskCache.writeHits(out, hits);
+			ResultDiskCache.writeInts(out, hits.getSortOrder());
+		});
+	}
+
 	@Override
 	protected void dataStreamSubclassEntries(DataStream ds) {
 		super.dataStreamSubclassEntries(ds);
@@ -1,5 +1,11 @@
 package nl.inl.blacklab.server.jobs;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import nl.inl.blacklab.search.Hits;
 import nl.inl.blacklab.server.datastream.DataStream;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.requesthandlers.SearchParameters;
@@ -28,17 +34,114 @@ public class JobHitsTotal extends JobWithHits {
 
 	}
 
+	/** Read hits in steps of this size, so we can notify hits available listeners */
+	private static final int HITS_AVAILABLE_STEP = 1000;
+
+	/** Waits for a number of hits to become available (see addHitsAvailableListener()) */
+	private static class HitsAvailableListener {
+
+		int number;
+
+		Runnable listener;
+
+		HitsAvailableListener(int number, Runnable listener) {
+			this.number = number;
+			this.listener = listener;
+		}
+	}
+
+	/** Listeners waiting for a number of hits to be available */
+	private List<HitsAvailableListener> hitsAvailableListeners = new ArrayList<>();
+
 	public JobHitsTotal(SearchManager searchMan, User user, JobDescription par) throws BlsException {
 		super(searchMan, user, par);
 	}
 
+	/**
+	 * Call a listener when a number of hits is available.
+	 *
+	 * The listener is also called if we won't retrieve that many hits (because
+	 * there are fewer, or we stopped retrieving), or the job finishes. It is
+	 * called once, from the thread that performs the job (or from this thread if
+	 * the hits are available already), so it should return quickly.
+	 *
+	 * @param number number of hits needed
+	 * @param listener what to call
+	 */
+	public void addHitsAvailableListener(int number, Runnable listener) {
+		AtomicBoolean called = new AtomicBoolean(false);
+		Runnable once = () -> {
+			if (called.compareAndSet(false, true))
+				listener.run();
+		};
+		addFinishedListener(once); // (in case something goes wrong)
+		boolean availableNow;
+		synchronized (hitsAvailableListeners) {
+			availableNow = hitsAvailable(number);
+			if (!availableNow)
+				hitsAvailableListeners.add(new HitsAvailableListener(number, once));
+		}
+		if (availableNow)
+			once.run();
+	}
+
+	/**
+	 * Are this many hits available, or will they never be?
+	 *
+	 * @param number number of hits needed
+	 * @return true if we have that many hits, or won't retrieve more
+	 */
+	public boolean hitsAvailable(int number) {
+		Hits theHits = hits;
+		return finished() || theHits != null && (theHits.countSoFarHitsRetrieved() >= number ||
+				theHits.maxHitsRetrieved() || theHits.doneFetchingHits());
+	}
+
+	/** Call the listeners whose hits are available now. */
+	private void notifyHitsAvailable() {
+		List<Runnable> toCall = new ArrayList<>();
+		synchronized (hitsAvailableListeners) {
+			Iterator<HitsAvailableListener> it = hitsAvailableListeners.iterator();
+			while (it.hasNext()) {
+				HitsAvailableListener l = it.next();
+				if (hitsAvailable(l.number)) {
+					toCall.add(l.listener);
+					it.remove();
+				}
+			}
+		}
+		for (Runnable listener: toCall) {
+			try {
+				listener.run();
+			} catch (RuntimeException e) {
+				logger.error("Error calling hits available listener", e);
+			}
+		}
+	}
+
 	@Override
 	protected void performSearch() throws BlsException {
 		// Get the total number of hits (we ignore the value because you can monitor progress
 		// and get the final total through the getHits() method yourself.
 		hits = ((JobWithHits)inputJob).getHits();
 		setPriorityInternal(); // make sure hits has the right priority
-		hits.size();
+		try {
+			// Read the hits in steps, so requests waiting for a page of hits can respond
+			// as soon as it's available (sizeAtLeast() returns false once we stop retrieving)
+			int n = HITS_AVAILABLE_STEP;
+			while (!Thread.currentThread().isInterrupted() && hits.sizeAtLeast(n)) {
+				notifyHitsAvailable();
+				n += HITS_AVAILABLE_STEP;
+			}
+			notifyHitsAvailable(); // (we may still be counting, but won't retrieve more hits)
+			hits.size();
+		} finally {
+			notifyHitsAvailable();
+			synchronized (hitsAvailableListeners) {
+				// (any remaining listeners are called when the job finishes)
+				hitsAvailableListeners.clear();
+			}
+		}
 		if (Thread.interrupted()) {
 			// We don't throw anymore because that will cause this error to re-throw even when we just
 			// want to look at a page of results. maxHitsCounted is set to true, however, so the application
@@ -0,0 +1,111 @@
+package nl.inl.blacklab.server.jobs;
+
+import org.apache.lucene.search.Query;
+
+import nl.inl.blacklab.search.Prioritizable;
+import nl.inl.blacklab.search.TermFrequencyList;
+import nl.inl.blacklab.server.datastream.DataStream;
+import nl.inl.blacklab.server.exceptions.BlsException;
+import nl.inl.blacklab.server.requesthandlers.SearchParameters;
+import nl.inl.blacklab.server.search.SearchManager;
+
+/**
+ * Represents determining the term frequencies in a set of documents.
+ */
+public class JobTermFreq extends Job {
+
+	public static class JobDescTermFreq extends JobDescription {
+
+		private String indexName;
+
+		private Query filterQuery;
+
+		private String propName;
+
+		private boolean sensitive;
+
+		public JobDescTermFreq(SearchParameters param, SearchSettings searchSettings, String indexName, Query filterQuery, String propName, boolean sensitive) {
+			super(param, JobTermFreq.class, null, searchSettings);
+			this.indexName = indexName;
+			this.filterQuery = filterQuery;
+			this.propName = propName;
+			this.sensitive = sensitive;
+		}
+
+		@Override
+		public String getIndexName() {
+			return indexName;
+		}
+
+		@Override
+		public Query getFilterQuery() {
+			return filterQuery;
+		}
+
+		public String getPropName() {
+			return propName;
+		}
+
+		public boolean isSensitive() {
+			return sensitive;
+		}
+
+		@Override
+		public String uniqueIdentifier() {
+			return super.uniqueIdentifier() + indexName + ", " + filterQuery + ", " + propName + ", " + sensitive + ")";
+		}
+
+		@Override
+		public void dataStreamEntries(DataStream ds) {
+			super.dataStreamEntries(ds);
+			ds	.entry("filterQuery", filterQuery)
+				.entry("property", propName)
+				.entry("sensitive", sensitive);
+		}
+
+		@Override
+		public String getUrlPath() {
+			return "termfreq";
+		}
+
+	}
+
+	private TermFrequencyList termFrequencies;
+
+	public JobTermFreq(SearchManager searchMan, User user, JobDescription par) throws BlsException {
+		super(searchMan, user, par);
+	}
+
+	@Override
+	protected void performSearch() throws BlsException {
+		JobDescTermFreq desc = (JobDescTermFreq)jobDesc;
+		String fieldName = searcher.getIndexStructure().getMainContentsField().getName();
+		termFrequencies = searcher.termFrequencies(desc.getFilterQuery(), fieldName, desc.getPropName(), desc.isSensitive());
+	}
+
+	/**
+	 * Get the term frequencies, sorted by decreasing frequency.
+	 *
+	 * @return the term frequencies
+	 */
+	public TermFrequencyList getTermFrequencies() {
+		return termFrequencies;
+	}
+
+	@Override
+	protected void dataStreamSubclassEntries(DataStream ds) {
+		ds	.entry("numberOfTerms", termFrequencies == null ? -1 : termFrequencies.size());
+	}
+
+	@Override
+	protected void cleanup() {
+		termFrequencies = null;
+		super.cleanup();
+	}
+
+	@Override
+	protected Prioritizable getObjectToPrioritize() {
+		return null; // (counting can't be paused)
+	}
+
+}
@@ -27,6 +27,12 @@ public abstract class JobWithDocs extends Job {
 		ds	.entry("countDocsRetrieved", countDocsRetrieved);
 	}
 
+	@Override
+	public long estimateSizeBytes() {
+		DocResults theDocResults = docResults;
+		return super.estimateSizeBytes() + (theDocResults == null || resultsShared ? 0 : theDocResults.estimateSizeBytes());
+	}
+
 	@Override
 	protected void cleanup() {
 		docResults = null;
@@ -32,6 +32,12 @@ public abstract class JobWithHits extends Job {
         }
 	}
 
+	@Override
+	public long estimateSizeBytes() {
+		Hits theHits = hits;
+		return super.estimateSizeBytes() + (theHits == null || resultsShared ? 0 : theHits.estimateSizeBytes());
+	}
+
 	@Override
 	protected void cleanup() {
 		hits = null;
@@ -1,14 +1,28 @@
 package nl.inl.blacklab.server.jobs;
 
+import nl.inl.blacklab.search.lucene.QueryBudget;
+
 public class MaxSettings {
 
 	private int maxRetrieve;
 
 	private int maxCount;
 
+	/** Maximum query cost, or -1 for no limit */
+	private long maxCost;
+
+	/** Maximum query time in ms, or -1 for no limit */
+	private long maxTimeMs;
+
 	public MaxSettings(int maxRetrieve, int maxCount) {
+		this(maxRetrieve, maxCount, QueryBudget.UNLIMITED, QueryBudget.UNLIMITED);
+	}
+
+	public MaxSettings(int maxRetrieve, int maxCount, long maxCost, long maxTimeMs) {
 		this.maxRetrieve = maxRetrieve;
 		this.maxCount = maxCount;
+		this.maxCost = maxCost;
+		this.maxTimeMs = maxTimeMs;
 	}
 
 	public int maxRetrieve() {
@@ -19,9 +33,17 @@ public class MaxSettings {
 		return maxCount;
 	}
 
+	public long maxCost() {
+		return maxCost;
+	}
+
+	public long maxTimeMs() {
+		return maxTimeMs;
+	}
+
 	@Override
 	public String toString() {
-		return "maxRetrieve=" + maxRetrieve + ", maxCount=" + maxCount;
+		return "maxRetrieve=" + maxRetrieve + ", maxCount=" + maxCount + ", maxCost=" + maxCost + ", maxTimeMs=" + maxTimeMs;
 	}
 
 }
@@ -39,6 +39,7 @@ import nl.inl.blacklab.server.exceptions.IndexNotFound;
 import nl.inl.blacklab.server.index.Index;
 import nl.inl.blacklab.server.index.Index.IndexStatus;
 import nl.inl.blacklab.server.index.IndexManager;
+import nl.inl.blacklab.server.jobs.Job;
 import nl.inl.blacklab.server.jobs.JobDescription;
 import nl.inl.blacklab.server.jobs.JobFacets;
 import nl.inl.blacklab.server.jobs.User;
@@ -340,7 +341,7 @@ public abstract class RequestHandler {
 		}
 
 		boolean isDocs = isDocsOperation();
-		searchParam = servlet.getSearchParameters(isDocs, request, indexName);
+		searchParam = servlet.getSearchParameters(isDocs, request, indexName, user);
 		this.indexName = indexName;
 		this.urlResource = urlResource;
 		this.urlPathInfo = urlPathInfo;
@@ -396,6 +397,49 @@ public abstract class RequestHandler {
 		logger.error(user.uniqueIdShort() + " " + msg);
 	}
 
+	/**
+	 * Start the search this request needs, without waiting for it.
+	 *
+	 * If the search isn't finished yet, BlackLabServer releases the request thread
+	 * and calls handle() when the search finishes (or the wait time runs out),
+	 * so handle() doesn't have to wait for it.
+	 *
+	 * Child classes that perform a (potentially slow) search should override this.
+	 *
+	 * @return the job (caller must call decrRef() when done with it), or null if none
+	 * @throws BlsException if the query can't be executed
+	 */
+	public Job startSearch() throws BlsException {
+		return null;
+	}
+
+	/**
+	 * Is the search started by startSearch() far enough along to respond?
+	 *
+	 * By default, we wait for the job to finish. Child classes that can respond
+	 * earlier (e.g. when the requested page of hits is available) should
+	 * override this and whenReadyToRespond().
+	 *
+	 * @param job the job returned by startSearch()
+	 * @return true if handle() can respond without waiting
+	 */
+	public boolean readyToRespond(Job job) {
+		return job.finished();
+	}
+
+	/**
+	 * Call a listener when we're ready to respond (see readyToRespond()).
+	 *
+	 * The listener may be called more than once, and from the thread performing
+	 * the job, so it should return quickly.
+	 *
+	 * @param job the job returned by startSearch()
+	 * @param listener what to call
+	 */
+	public void whenReadyToRespond(Job job, Runnable listener) {
+		job.addFinishedListener(listener);
+	}
+
 	/**
 	 * Child classes should override this to handle the request.
 	 * @param ds output stream
@@ -497,7 +541,7 @@ public abstract class RequestHandler {
 		return indexMan.getIndex(indexName).getSearcher();
 	}
 
-	protected boolean isBlockingOperation() {
+	public boolean isBlockingOperation() {
 		String str = ServletUtil.getParameter(request, "block", "yes").toLowerCase();
 		try {
 			return ParseUtil.strToBool(str);
@@ -575,6 +619,8 @@ public abstract class RequestHandler {
 				.entry("numberOfHitsRetrieved", totalHits.countSoFarHitsRetrieved())
 				.entry("stoppedCountingHits", totalHits.maxHitsCounted())
 				.entry("stoppedRetrievingHits", totalHits.maxHitsRetrieved());
+			if (totalHits.queryBudgetExceeded())
+				ds.entry("queryBudgetExceeded", true);
 			ds	.entry("numberOfDocs", countFailed ? -1 : totalHits.countSoFarDocsCounted())
 				.entry("numberOfDocsRetrieved", totalHits.countSoFarDocsRetrieved());
 		} else if (isViewDocGroup) {
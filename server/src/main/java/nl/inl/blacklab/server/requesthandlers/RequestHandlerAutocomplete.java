@@ -1,5 +1,6 @@
 package nl.inl.blacklab.server.requesthandlers;
 
+import java.util.Collection;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -11,6 +12,7 @@ import nl.inl.blacklab.search.Searcher;
 import nl.inl.blacklab.search.indexstructure.ComplexFieldDesc;
 import nl.inl.blacklab.search.indexstructure.IndexStructure;
 import nl.inl.blacklab.search.indexstructure.PropertyDesc;
+import nl.inl.blacklab.search.lucene.TermPrefixIndex;
 import nl.inl.blacklab.server.BlackLabServer;
 import nl.inl.blacklab.server.datastream.DataStream;
 import nl.inl.blacklab.server.exceptions.BadRequest;
@@ -94,7 +96,11 @@ public class RequestHandlerAutocomplete extends RequestHandler {
 
     public static void autoComplete(DataStream ds, String fieldName, String term, IndexReader reader, boolean sensitive) {
         ds.startList();
-        LuceneUtil.findTermsByPrefix(reader, fieldName, term, sensitive, MAX_VALUES).forEach((v) -> {
+        // Use the in-memory prefix index (most frequent terms first), unless the field has too many terms
+        TermPrefixIndex prefixIndex = TermPrefixIndex.get(reader, fieldName, sensitive);
+        Collection<String> terms = prefixIndex != null ? prefixIndex.findTermsByPrefix(term, MAX_VALUES) :
+                LuceneUtil.findTermsByPrefix(reader, fieldName, term, sensitive, MAX_VALUES);
+        terms.forEach((v) -> {
             ds.item("term", v);
         });
         ds.endList();
@@ -27,7 +27,7 @@ public class RequestHandlerDebug extends RequestHandler {
 			.entry("resource", urlResource)
 			.entry("rest", urlPathInfo)
 			.entry("queryString", request.getQueryString())
-			.entry("searchParam", servlet.getSearchParameters(false, request, indexName).toString())
+			.entry("searchParam", servlet.getSearchParameters(false, request, indexName, user).toString())
 		.endMap();
 		return HTTP_OK;
 	}
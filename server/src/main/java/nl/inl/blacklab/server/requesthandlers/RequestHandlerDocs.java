@@ -35,6 +35,15 @@ public class RequestHandlerDocs extends RequestHandler {
 		super(servlet, request, user, indexName, urlResource, urlPathPart);
 	}
 
+	@Override
+	public Job startSearch() throws BlsException {
+		String groupBy = searchParam.getString("group");
+		String viewGroup = searchParam.getString("viewgroup");
+		if (groupBy != null && groupBy.length() > 0 && viewGroup != null && viewGroup.length() > 0)
+			return searchMan.startSearch(user, searchParam.docsGrouped());
+		return searchMan.startSearch(user, searchParam.docsWindow());
+	}
+
 	@Override
 	public int handle(DataStream ds) throws BlsException {
 		// Do we want to view a single group after grouping?
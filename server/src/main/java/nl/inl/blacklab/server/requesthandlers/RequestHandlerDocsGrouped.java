@@ -24,6 +24,11 @@ public class RequestHandlerDocsGrouped extends RequestHandler {
 		super(servlet, request, user, indexName, urlResource, urlPathPart);
 	}
 
+	@Override
+	public Job startSearch() throws BlsException {
+		return searchMan.startSearch(user, searchParam.docsGrouped());
+	}
+
 	@Override
 	public int handle(DataStream ds) throws BlsException {
 		// Get the window we're interested in
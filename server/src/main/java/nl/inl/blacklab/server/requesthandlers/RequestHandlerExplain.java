@@ -8,6 +8,7 @@ import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
 import nl.inl.blacklab.queryParser.corpusql.ParseException;
 import nl.inl.blacklab.search.QueryExplanation;
 import nl.inl.blacklab.search.Searcher;
+import nl.inl.blacklab.search.lucene.optimize.SequencePlan;
 import nl.inl.blacklab.server.BlackLabServer;
 import nl.inl.blacklab.server.datastream.DataStream;
 import nl.inl.blacklab.server.exceptions.BlsException;
@@ -39,6 +40,30 @@ public class RequestHandlerExplain extends RequestHandler {
 				.entry("textPattern", patt)
 				.entry("originalQuery", explanation.getOriginalQuery())
 				.entry("rewrittenQuery", explanation.getRewrittenQuery());
+
+			// The ways to match each sequence considered, with their estimated costs
+			ds.startEntry("planAlternatives").startList();
+			for (SequencePlan plan: explanation.getPlanAlternatives()) {
+				ds.startItem("sequence").startMap()
+					.entry("left", plan.getLeft())
+					.entry("right", plan.getRight())
+					.entry("leftHits", plan.getLeftHits())
+					.entry("rightHits", plan.getRightHits())
+					.entry("estimatedHits", plan.getEstimatedHits())
+					.startEntry("estimatedCosts").startMap()
+						.entry(SequencePlan.POSTINGS, plan.getPostingsCost());
+				if (plan.getNfaForwardCost() >= 0)
+					ds.entry(SequencePlan.NFA_FORWARD, plan.getNfaForwardCost());
+				if (plan.getNfaBackwardCost() >= 0)
+					ds.entry(SequencePlan.NFA_BACKWARD, plan.getNfaBackwardCost());
+				if (plan.getExpansionCost() >= 0)
+					ds.entry(SequencePlan.EXPANSION, plan.getExpansionCost());
+				ds.endMap().endEntry()
+					.entry("nfaCostCorrection", plan.getNfaCostCorrection())
+					.entry("chosen", plan.getChosen())
+				.endMap().endItem();
+			}
+			ds.endList().endEntry();
 			ds.endMap();
 		} catch (TooManyClauses e) {
 			return Response.badRequest(ds, "QUERY_TOO_BROAD", "Query too broad, too many matching terms. Please be more specific.");
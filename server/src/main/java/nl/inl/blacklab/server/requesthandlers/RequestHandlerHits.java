@@ -45,6 +45,52 @@ public class RequestHandlerHits extends RequestHandler {
 		super(servlet, request, user, indexName, urlResource, urlPathPart);
 	}
 
+	@Override
+	public Job startSearch() throws BlsException {
+		String groupBy = searchParam.getString("group");
+		String viewGroup = searchParam.getString("viewgroup");
+		if (groupBy != null && groupBy.length() > 0 && viewGroup != null && viewGroup.length() > 0)
+			return searchMan.startSearch(user, searchParam.hitsGrouped());
+		// (if we're not waiting for the total, we resume when the requested page is available)
+		return searchMan.startSearch(user, searchParam.hitsTotal());
+	}
+
+	/**
+	 * Are we waiting for the requested page of hits, instead of for the search to finish?
+	 *
+	 * @param job the job returned by startSearch()
+	 * @return true if we can respond when the page is available
+	 */
+	private boolean waitingForPage(Job job) {
+		return job instanceof JobHitsTotal && !searchParam.getBoolean("waitfortotal");
+	}
+
+	/**
+	 * Number of hits we need to show the requested page.
+	 *
+	 * @return first hit plus page size
+	 */
+	private int hitsNeededForPage() {
+		int first = Math.max(0, searchParam.getInteger("first"));
+		int size = Math.min(Math.max(0, searchParam.getInteger("number")), searchMan.config().maxPageSize());
+		return first + size;
+	}
+
+	@Override
+	public boolean readyToRespond(Job job) {
+		if (waitingForPage(job))
+			return ((JobHitsTotal) job).hitsAvailable(hitsNeededForPage());
+		return super.readyToRespond(job);
+	}
+
+	@Override
+	public void whenReadyToRespond(Job job, Runnable listener) {
+		if (waitingForPage(job))
+			((JobHitsTotal) job).addHitsAvailableListener(hitsNeededForPage(), listener);
+		else
+			super.whenReadyToRespond(job, listener);
+	}
+
 	@Override
 	public int handle(DataStream ds) throws BlsException {
 		if (BlsConfig.traceRequestHandling) logger.debug("RequestHandlerHits.handle start");
@@ -105,6 +151,8 @@ public class RequestHandlerHits extends RequestHandler {
 				int sleepTime = 10;
 				int totalSleepTime = 0;
 				while ((total = jobTotal.getHits()) == null) { // Wait for job to start up for a bit
+					if (jobTotal.finished())
+						jobTotal.rethrowException(); // (job failed before it got the hits)
 					try {
 						totalSleepTime += sleepTime;
 						Thread.sleep(sleepTime = Math.max(sleepTime * 2, 500));
@@ -121,7 +169,9 @@ public class RequestHandlerHits extends RequestHandler {
 				int first = Math.max(0, searchParam.getInteger("first"));
 				int size = Math.min(Math.max(0, searchParam.getInteger("number")), searchMan.config().maxPageSize());
 
-				total.sizeAtLeast(first + size);
+				// (if we stopped retrieving hits, there won't be more, even if we're still counting)
+				if (!total.maxHitsRetrieved())
+					total.sizeAtLeast(first + size);
 
 				// We blocked, so if we don't have the page available, the request is out of bounds.
 				if (total.countSoFarHitsRetrieved() < first)
@@ -92,7 +92,7 @@ public class RequestHandlerHitsCsv extends RequestHandler {
                 }
             } else  {
                 // Use a regular job for hits, so that not all hits are actually retrieved yet, we'll have to construct a pagination view on top of the hits manually
-                job = (JobWithHits) searchMan.search(user, searchParam.hitsSample(), true);
+                job = (JobWithHits) searchMan.search(user, searchParam.hitsSorted(), true);
                 hits = job.getHits();
             }
         } finally {
@@ -10,6 +10,7 @@ import nl.inl.blacklab.search.grouping.HitGroups;
 import nl.inl.blacklab.server.BlackLabServer;
 import nl.inl.blacklab.server.datastream.DataStream;
 import nl.inl.blacklab.server.exceptions.BlsException;
+import nl.inl.blacklab.server.jobs.Job;
 import nl.inl.blacklab.server.jobs.JobHitsGrouped;
 import nl.inl.blacklab.server.jobs.User;
 import nl.inl.blacklab.server.jobs.WindowSettings;
@@ -23,6 +24,11 @@ public class RequestHandlerHitsGrouped extends RequestHandler {
 		super(servlet, request, user, indexName, urlResource, urlPathPart);
 	}
 
+	@Override
+	public Job startSearch() throws BlsException {
+		return searchMan.startSearch(user, searchParam.hitsGrouped());
+	}
+
 	@Override
 	public int handle(DataStream ds) throws BlsException {
 		// Get the window we're interested in
@@ -58,10 +58,13 @@ import nl.inl.blacklab.server.jobs.JobHitsSample.JobDescSampleHits;
 import nl.inl.blacklab.server.jobs.JobHitsSorted.JobDescHitsSorted;
 import nl.inl.blacklab.server.jobs.JobHitsTotal.JobDescHitsTotal;
 import nl.inl.blacklab.server.jobs.JobHitsWindow.JobDescHitsWindow;
+import nl.inl.blacklab.server.jobs.JobTermFreq.JobDescTermFreq;
 import nl.inl.blacklab.server.jobs.MaxSettings;
 import nl.inl.blacklab.server.jobs.SampleSettings;
 import nl.inl.blacklab.server.jobs.SearchSettings;
+import nl.inl.blacklab.server.jobs.User;
 import nl.inl.blacklab.server.jobs.WindowSettings;
+import nl.inl.blacklab.server.search.BlsConfigQueryBudget;
 import nl.inl.blacklab.server.search.SearchManager;
 import nl.inl.blacklab.server.util.BlsUtils;
 import nl.inl.blacklab.server.util.GapFiller;
@@ -116,9 +119,10 @@ public class SearchParameters {
 		defaultParameterValues.put(name, value);
 	}
 
-	public static SearchParameters get(SearchManager searchMan, boolean isDocs, String indexName, HttpServletRequest request) {
+	public static SearchParameters get(SearchManager searchMan, boolean isDocs, String indexName, HttpServletRequest request, User user) {
 		SearchParameters param = new SearchParameters(searchMan, isDocs);
 		param.put("indexname", indexName);
+		param.setUserId(user == null ? null : user.getUserId());
 		for (String name: SearchParameters.NAMES) {
 			String value = ServletUtil.getParameter(request, name, "");
 			if (value.length() == 0)
@@ -173,6 +177,9 @@ public class SearchParameters {
 
 	private boolean debugMode;
 
+	/** The user searching (for per-user query budgets), or null if unknown */
+	private String userId;
+
 	private Map<String, String> map = new TreeMap<>();
 
 	/** The pattern, if parsed already */
@@ -194,6 +201,10 @@ public class SearchParameters {
 		this.debugMode = debugMode;
 	}
 
+	private void setUserId(String userId) {
+		this.userId = userId;
+	}
+
 	public String put(String key, String value) {
 		return map.put(key, value);
 	}
@@ -351,7 +362,9 @@ public class SearchParameters {
 		if (searchManager.config().maxHitsToCountAllowed() >= 0 && maxCount > searchManager.config().maxHitsToCountAllowed()) {
 			maxCount = searchManager.config().maxHitsToCountAllowed();
 		}
-		return new MaxSettings(maxRetrieve, maxCount);
+		BlsConfigQueryBudget budget = searchManager.config().getQueryBudgetConfig();
+		String indexName = getIndexName();
+		return new MaxSettings(maxRetrieve, maxCount, budget.getMaxCost(indexName, userId), budget.getMaxTimeMs(indexName, userId));
 	}
 
 	WindowSettings getWindowSettings() {
@@ -519,26 +532,34 @@ public class SearchParameters {
 	public JobDescription hitsWindow() throws BlsException {
 		WindowSettings windowSettings = getWindowSettings();
 		if (windowSettings == null)
-			return hitsSample();
-		return new JobDescHitsWindow(this, hitsSample(), getSearchSettings(), windowSettings);
-	}
-
-	public JobDescription hitsSample() throws BlsException {
-		SampleSettings sampleSettings = getSampleSettings();
-		if (sampleSettings == null)
 			return hitsSorted();
-		return new JobDescSampleHits(this, hitsSorted(), getSearchSettings(), sampleSettings);
+		// The sort job can use the window to decide how much to sort right away.
+		return new JobDescHitsWindow(this, hitsSorted(windowSettings), getSearchSettings(), windowSettings);
 	}
 
 	public JobDescription hitsSorted() throws BlsException {
+		return hitsSorted(null);
+	}
+
+	private JobDescription hitsSorted(WindowSettings windowHint) throws BlsException {
 		HitSortSettings hitsSortSettings = hitsSortSettings();
 		if (hitsSortSettings == null)
+			return hitsSample();
+		return new JobDescHitsSorted(this, hitsSample(), getSearchSettings(), hitsSortSettings, windowHint);
+	}
+
+	public JobDescription hitsSample() throws BlsException {
+		// NOTE: we sample before sorting, so we don't need to sort hits we don't use
+		SampleSettings sampleSettings = getSampleSettings();
+		if (sampleSettings == null)
 			return hitsFiltered();
-		return new JobDescHitsSorted(this, hitsFiltered(), getSearchSettings(), hitsSortSettings);
+		return new JobDescSampleHits(this, hitsFiltered(), getSearchSettings(), sampleSettings);
 	}
 
 	public JobDescription hitsTotal() throws BlsException {
-		return new JobDescHitsTotal(this, hitsSample(), getSearchSettings());
+		// The /hits page is a window on these hits; the sort job can use the window
+		// to decide how much to sort right away.
+		return new JobDescHitsTotal(this, hitsSorted(getWindowSettings()), getSearchSettings());
 	}
 
 	public JobDescription hitsFiltered() throws BlsException {
@@ -589,6 +610,10 @@ public class SearchParameters {
 		return new JobDescFacets(this, docs(), getSearchSettings(), getFacets());
 	}
 
+	public JobDescription termFrequencies() throws BlsException {
+		return new JobDescTermFreq(this, getSearchSettings(), getIndexName(), getFilterQuery(), getString("property"), getBoolean("sensitive"));
+	}
+
 	public boolean hasFacets() {
 		return getFacets() != null;
 	}
@@ -81,6 +81,9 @@ public class BlsConfig extends YamlJsonReader {
 
 	private BlsConfigCacheAndPerformance cacheConfig;
 
+	/** Limits to the cost and time of a single query */
+	private BlsConfigQueryBudget queryBudgetConfig;
+
 	private String authClass;
 
 	Map<String, Object> authParam;
@@ -195,6 +198,7 @@ public class BlsConfig extends YamlJsonReader {
     				overrideUserIdIps.add(jsonOverrideUserIdIps.get(i).textValue());
     			}
 			}
+			queryBudgetConfig = new BlsConfigQueryBudget(reqProp.get("queryBudget"));
 		} else {
 			defaultOutputType = DataFormat.XML;
 			defaultPageSize = 20;
@@ -209,6 +213,7 @@ public class BlsConfig extends YamlJsonReader {
 			maxHitsToRetrieveAllowed = 10_000_000;
 			maxHitsToCountAllowed = -1;
 			overrideUserIdIps = new HashSet<>();
+			queryBudgetConfig = new BlsConfigQueryBudget(null);
 		}
 	}
 
@@ -232,6 +237,10 @@ public class BlsConfig extends YamlJsonReader {
 		return cacheConfig;
 	}
 
+	public BlsConfigQueryBudget getQueryBudgetConfig() {
+		return queryBudgetConfig;
+	}
+
 	public int maxContextSize() {
 		return maxContextSize;
 	}
@@ -1,5 +1,7 @@
 package nl.inl.blacklab.server.search;
 
+import java.io.File;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -11,9 +13,30 @@ public class BlsConfigCacheAndPerformance {
 
 	private static final Logger logger = LogManager.getLogger(BlsConfigCacheAndPerformance.class);
 
-	/** Maximum size in MB to target, or -1 for no limit. NOT IMPLEMENTED YET. */
+	/** Maximum size in MB to target, or -1 for no limit. */
 	private long maxSizeMegs = -1;
 
+	/** Maximum size in MB of the cached searches for one index, or -1 for no limit. */
+	private long maxSizeMegsPerIndex = -1;
+
+	/** Maximum size in MB of the cached searches for one user, or -1 for no limit. */
+	private long maxSizeMegsPerUser = -1;
+
+	/** Maximum size in MB of the per-segment document filter cache, or -1 for no limit. */
+	private long filterCacheMaxSizeMegs = 100;
+
+	/** Maximum size in MB of the per-segment hits cache, or -1 for no limit (0 disables it). */
+	private long spanResultCacheMaxSizeMegs = 100;
+
+	/** Directory to store the results of expensive searches in, or null to disable this. */
+	private File resultDiskCacheDir = null;
+
+	/** Maximum size in MB of the results stored on disk, or -1 for no limit. */
+	private long resultDiskCacheMaxSizeMegs = 1000;
+
+	/** Only store results on disk for searches that took at least this long. */
+	private int resultDiskCacheMinSearchTimeSec = 10;
+
 	/** Maximum number of searches to cache, or -1 for no limit. Defaults to 100.*/
 	private int maxNumberOfJobs = 100;
 
@@ -101,8 +124,15 @@ public class BlsConfigCacheAndPerformance {
 			maxJobAgeSec = JsonUtil.getIntProp(cacheSettings, "maxJobAgeSec", 3600);
 			maxNumberOfJobs = JsonUtil.getIntProp(cacheSettings, "maxNumberOfJobs", 20);
 			maxSizeMegs = JsonUtil.getIntProp(cacheSettings, "maxSizeMegs", -1);
+			maxSizeMegsPerIndex = JsonUtil.getIntProp(cacheSettings, "maxSizeMegsPerIndex", -1);
+			maxSizeMegsPerUser = JsonUtil.getIntProp(cacheSettings, "maxSizeMegsPerUser", -1);
 			minFreeMemTargetMegs = JsonUtil.getIntProp(cacheSettings, "targetFreeMemMegs", 100);
+			filterCacheMaxSizeMegs = JsonUtil.getIntProp(cacheSettings, "filterCacheMaxSizeMegs", 100);
+			spanResultCacheMaxSizeMegs = JsonUtil.getIntProp(cacheSettings, "spanResultCacheMaxSizeMegs", 100);
 			numberOfJobsToPurgeWhenBelowTargetMem = JsonUtil.getIntProp(cacheSettings, "numberOfJobsToPurgeWhenBelowTargetMem", 2);
+			resultDiskCacheDir = JsonUtil.getFileProp(cacheSettings, "resultDiskCacheDir", null);
+			resultDiskCacheMaxSizeMegs = JsonUtil.getIntProp(cacheSettings, "resultDiskCacheMaxSizeMegs", 1000);
+			resultDiskCacheMinSearchTimeSec = JsonUtil.getIntProp(cacheSettings, "resultDiskCacheMinSearchTimeSec", 10);
 		}
 
 		JsonNode serverLoadSettings = null;
@@ -141,6 +171,34 @@ public class BlsConfigCacheAndPerformance {
 		return maxSizeMegs;
 	}
 
+	public long getMaxSizeMegsPerIndex() {
+		return maxSizeMegsPerIndex;
+	}
+
+	public long getMaxSizeMegsPerUser() {
+		return maxSizeMegsPerUser;
+	}
+
+	public long getFilterCacheMaxSizeMegs() {
+		return filterCacheMaxSizeMegs;
+	}
+
+	public long getSpanResultCacheMaxSizeMegs() {
+		return spanResultCacheMaxSizeMegs;
+	}
+
+	public File getResultDiskCacheDir() {
+		return resultDiskCacheDir;
+	}
+
+	public long getResultDiskCacheMaxSizeMegs() {
+		return resultDiskCacheMaxSizeMegs;
+	}
+
+	public int getResultDiskCacheMinSearchTimeSec() {
+		return resultDiskCacheMinSearchTimeSec;
+	}
+
 	public int getMaxNumberOfJobs() {
 		return maxNumberOfJobs;
 	}
@@ -0,0 +1,86 @@
+package nl.inl.blacklab.server.search;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import nl.inl.blacklab.search.lucene.QueryBudget;
+import nl.inl.blacklab.server.util.JsonUtil;
+
+/**
+ * Limits to the cost and time of a single query (see QueryBudget).
+ *
+ * Configured in the "queryBudget" block of the "requests" section. Defaults
+ * may be overridden per index ("indexes") and per user ("users"); a user
+ * override takes precedence over an index override.
+ */
+public class BlsConfigQueryBudget {
+
+	/** Default maximum query cost, or -1 for no limit */
+	private long maxCost = QueryBudget.UNLIMITED;
+
+	/** Default maximum query time in ms, or -1 for no limit */
+	private long maxTimeMs = QueryBudget.UNLIMITED;
+
+	/** Overrides per index */
+	private Map<String, JsonNode> indexSettings = new HashMap<>();
+
+	/** Overrides per user id */
+	private Map<String, JsonNode> userSettings = new HashMap<>();
+
+	public BlsConfigQueryBudget(JsonNode settings) {
+		if (settings == null)
+			return;
+		maxCost = JsonUtil.getLongProp(settings, "maxCost", QueryBudget.UNLIMITED);
+		maxTimeMs = JsonUtil.getLongProp(settings, "maxTimeMs", QueryBudget.UNLIMITED);
+		readOverrides(settings.get("indexes"), indexSettings);
+		readOverrides(settings.get("users"), userSettings);
+	}
+
+	private static void readOverrides(JsonNode node, Map<String, JsonNode> overrides) {
+		if (node == null)
+			return;
+		Iterator<Entry<String, JsonNode>> it = node.fields();
+		while (it.hasNext()) {
+			Entry<String, JsonNode> e = it.next();
+			overrides.put(e.getKey(), e.getValue());
+		}
+	}
+
+	private long get(String key, long defVal, String indexName, String userId) {
+		long value = defVal;
+		JsonNode indexNode = indexName == null ? null : indexSettings.get(indexName);
+		if (indexNode != null)
+			value = JsonUtil.getLongProp(indexNode, key, value);
+		JsonNode userNode = userId == null ? null : userSettings.get(userId);
+		if (userNode != null)
+			value = JsonUtil.getLongProp(userNode, key, value);
+		return value;
+	}
+
+	/**
+	 * Get the maximum query cost for a search.
+	 *
+	 * @param indexName index searched
+	 * @param userId user searching
+	 * @return the maximum cost, or -1 for no limit
+	 */
+	public long getMaxCost(String indexName, String userId) {
+		return get("maxCost", maxCost, indexName, userId);
+	}
+
+	/**
+	 * Get the maximum query time for a search.
+	 *
+	 * @param indexName index searched
+	 * @param userId user searching
+	 * @return the maximum time in ms, or -1 for no limit
+	 */
+	public long getMaxTimeMs(String indexName, String userId) {
+		return get("maxTimeMs", maxTimeMs, indexName, userId);
+	}
+
+}
@@ -0,0 +1,333 @@
+package nl.inl.blacklab.server.search;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.util.StringHelper;
+
+import nl.inl.blacklab.search.Hit;
+import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.Searcher;
+
+/**
+ * Stores the results of expensive searches on disk, so they survive server
+ * restarts and removal from the SearchCache.
+ *
+ * Each result is stored in its own file, named after a hash of the job's unique
+ * identifier and a fingerprint of the index version (the ids of its segments and
+ * their deletions), so results for an index that has changed are never used.
+ * Results are written in a compact binary format (hits as int arrays, sort order,
+ * group identities and the indices of their hits) and memory-mapped when read
+ * back. The least recently used files are deleted when the total size of the
+ * cache exceeds the maximum.
+ */
+public class ResultDiskCache {
+
+	private static final Logger logger = LogManager.getLogger(ResultDiskCache.class);
+
+	/** Identifies our files ("BLRC") */
+	private static final int MAGIC = 0x424c5243;
+
+	/** Version of the file format */
+	private static final int FORMAT_VERSION = 1;
+
+	private static final String EXTENSION = ".results";
+
+	/** Writes a job's results to a cache file */
+	public interface ResultWriter {
+		void write(DataOutput out) throws IOException;
+	}
+
+	/** Directory to store results in */
+	private File dir;
+
+	/** Maximum total size of the stored results in bytes, or -1 for no limit */
+	private long maxSizeBytes;
+
+	/** Only store results of searches that took at least this long */
+	private int minSearchTimeMs;
+
+	private long hits = 0;
+
+	private long misses = 0;
+
+	private long stored = 0;
+
+	/**
+	 * Create a disk cache.
+	 *
+	 * @param dir directory to store results in (created if it doesn't exist)
+	 * @param maxSizeBytes maximum total size of the stored results in bytes, or -1 for no limit
+	 * @param minSearchTimeMs only store results of searches that took at least this long
+	 */
+	public ResultDiskCache(File dir, long maxSizeBytes, int minSearchTimeMs) {
+		this.dir = dir;
+		this.maxSizeBytes = maxSizeBytes;
+		this.minSearchTimeMs = minSearchTimeMs;
+		if (!dir.exists() && !dir.mkdirs())
+			throw new RuntimeException("Could not create result cache dir: " + dir);
+	}
+
+	/**
+	 * Should the results of a search that took this long be stored?
+	 *
+	 * @param searchTimeMs how long the search took
+	 * @return true if the results should be stored
+	 */
+	public boolean shouldStore(long searchTimeMs) {
+		return searchTimeMs >= minSearchTimeMs;
+	}
+
+	/**
+	 * Get the stored results of a job, if any.
+	 *
+	 * @param searcher the index searched
+	 * @param uniqueIdentifier the job's unique identifier
+	 * @return the results (positioned after the header), or null if not stored
+	 */
+	public ByteBuffer get(Searcher searcher, String uniqueIdentifier) {
+		String fingerprint = indexFingerprint(searcher.getIndexReader());
+		File file = fingerprint == null ? null : file(uniqueIdentifier, fingerprint);
+		if (file == null || !file.exists()) {
+			countMiss();
+			return null;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buf.getInt() != MAGIC || buf.getInt() != FORMAT_VERSION ||
+					!readString(buf).equals(uniqueIdentifier) || !readString(buf).equals(fingerprint)) {
+				countMiss(); // (old format, or hash collision)
+				return null;
+			}
+			if (!file.setLastModified(System.currentTimeMillis()))
+				logger.warn("Could not update last modified time of " + file);
+			countHit();
+			return buf;
+		} catch (IOException | RuntimeException e) {
+			logger.warn("Could not read stored results from " + file, e);
+			countMiss();
+			return null;
+		}
+	}
+
+	/**
+	 * Store the results of a job.
+	 *
+	 * The results are written to a temporary file first, so other threads never
+	 * see a partially written file.
+	 *
+	 * @param searcher the index searched
+	 * @param uniqueIdentifier the job's unique identifier
+	 * @param writer writes the results
+	 */
+	public void put(Searcher searcher, String uniqueIdentifier, ResultWriter writer) {
+		String fingerprint = indexFingerprint(searcher.getIndexReader());
+		if (fingerprint == null)
+			return;
+		File file = file(uniqueIdentifier, fingerprint);
+		File tempFile = new File(dir, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				writeString(out, uniqueIdentifier);
+				writeString(out, fingerprint);
+				writer.write(out);
+			}
+			if (file.exists() && !file.delete() || !tempFile.renameTo(file))
+				throw new IOException("Could not rename " + tempFile + " to " + file);
+		} catch (IOException e) {
+			logger.warn("Could not store results in " + file, e);
+			if (tempFile.exists() && !tempFile.delete())
+				logger.warn("Could not delete " + tempFile);
+			return;
+		}
+		synchronized (this) {
+			stored++;
+			removeOldFiles();
+		}
+	}
+
+	/** Delete the least recently used files until the cache is small enough */
+	private void removeOldFiles() {
+		if (maxSizeBytes < 0)
+			return;
+		File[] files = dir.listFiles((d, name) -> name.endsWith(EXTENSION));
+		if (files == null)
+			return;
+		long sizeBytes = 0;
+		for (File f: files)
+			sizeBytes += f.length();
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (int i = 0; i < files.length && sizeBytes > maxSizeBytes; i++) {
+			long length = files[i].length();
+			if (files[i].delete())
+				sizeBytes -= length;
+		}
+	}
+
+	private File file(String uniqueIdentifier, String fingerprint) {
+		try {
+			MessageDigest sha = MessageDigest.getInstance("SHA-256");
+			sha.update(uniqueIdentifier.getBytes(StandardCharsets.UTF_8));
+			sha.update((byte) 0);
+			sha.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+			String hashHex = String.format("%064x", new BigInteger(1, sha.digest()));
+			return new File(dir, hashHex + EXTENSION);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Determine a fingerprint of the current version of the index.
+	 *
+	 * Consists of the unique ids of the segments and the generations of their
+	 * deletions and updates, so it changes whenever documents are added or
+	 * deleted, even if the index is recreated.
+	 *
+	 * @param reader the index reader
+	 * @return the fingerprint, or null if it can't be determined
+	 */
+	static String indexFingerprint(IndexReader reader) {
+		StringBuilder fingerprint = new StringBuilder();
+		for (LeafReaderContext context: reader.leaves()) {
+			if (!(context.reader() instanceof SegmentReader))
+				return null;
+			SegmentCommitInfo info = ((SegmentReader) context.reader()).getSegmentInfo();
+			fingerprint.append(StringHelper.idToString(info.info.getId()))
+				.append(":").append(info.getDelGen())
+				.append(":").append(info.getFieldInfosGen())
+				.append(":").append(info.getDocValuesGen())
+				.append(";");
+		}
+		return fingerprint.toString();
+	}
+
+	/**
+	 * Can these hits be stored and restored exactly?
+	 *
+	 * Only complete results are stored (all hits read, not limited by the
+	 * maximum number of hits to retrieve or count), and captured groups
+	 * aren't stored.
+	 *
+	 * @param hitsToStore the hits
+	 * @return true if the hits can be stored
+	 */
+	public static boolean canStore(Hits hitsToStore) {
+		return hitsToStore.doneFetchingHits() && !hitsToStore.maxHitsRetrieved() &&
+				!hitsToStore.maxHitsCounted() && !hitsToStore.hasCapturedGroups();
+	}
+
+	/**
+	 * Write hits (in their original order).
+	 *
+	 * @param out where to write
+	 * @param hitsToWrite the hits
+	 * @throws IOException on error
+	 */
+	public static void writeHits(DataOutput out, Hits hitsToWrite) throws IOException {
+		int n = hitsToWrite.size();
+		out.writeInt(n);
+		for (int i = 0; i < n; i++)
+			out.writeInt(hitsToWrite.getByOriginalOrder(i).doc);
+		for (int i = 0; i < n; i++)
+			out.writeInt(hitsToWrite.getByOriginalOrder(i).start);
+		for (int i = 0; i < n; i++)
+			out.writeInt(hitsToWrite.getByOriginalOrder(i).end);
+	}
+
+	/**
+	 * Read hits written by writeHits().
+	 *
+	 * @param buf where to read
+	 * @return the hits, in their original order
+	 */
+	public static List<Hit> readHits(ByteBuffer buf) {
+		int n = buf.getInt();
+		int docsPos = buf.position();
+		int startsPos = docsPos + n * 4;
+		int endsPos = startsPos + n * 4;
+		List<Hit> result = new ArrayList<>(n);
+		for (int i = 0; i < n; i++)
+			result.add(new Hit(buf.getInt(docsPos + i * 4), buf.getInt(startsPos + i * 4), buf.getInt(endsPos + i * 4)));
+		buf.position(endsPos + n * 4);
+		return result;
+	}
+
+	public static void writeInts(DataOutput out, int[] values) throws IOException {
+		out.writeInt(values.length);
+		for (int value: values)
+			out.writeInt(value);
+	}
+
+	public static int[] readInts(ByteBuffer buf) {
+		int[] values = new int[buf.getInt()];
+		buf.asIntBuffer().get(values);
+		buf.position(buf.position() + values.length * 4);
+		return values;
+	}
+
+	public static void writeString(DataOutput out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	public static String readString(ByteBuffer buf) {
+		byte[] bytes = new byte[buf.getInt()];
+		buf.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private synchronized void countHit() {
+		hits++;
+	}
+
+	private synchronized void countMiss() {
+		misses++;
+	}
+
+	public File getDir() {
+		return dir;
+	}
+
+	public long getMaxSizeBytes() {
+		return maxSizeBytes;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getNumberStored() {
+		return stored;
+	}
+
+}
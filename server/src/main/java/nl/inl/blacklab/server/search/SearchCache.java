@@ -1,19 +1,25 @@
 package nl.inl.blacklab.server.search;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import nl.inl.blacklab.search.lucene.DocFilterCache;
+import nl.inl.blacklab.search.lucene.SpanResultCache;
 import nl.inl.blacklab.server.datastream.DataStream;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.exceptions.ServiceUnavailable;
@@ -51,10 +57,27 @@ public class SearchCache {
 	/** The cached search objects. */
 	private Map<String, Job> cachedSearches;
 
-	/** (Estimated) size of the cache. Only updated in removeOldSearches, so may not
+	/** (Estimated) size of the cache. Only updated in performLoadManagement, so may not
 	 * always be accurate. */
 	private long cacheSizeBytes;
 
+	/**
+	 * Finished searches in the cache, in the order they should be removed
+	 * (lowest cache priority first).
+	 *
+	 * Uses the GreedyDual-Size policy: a search's priority is the cost of
+	 * recomputing it per byte of memory it uses, plus an "inflation" value that
+	 * is raised to the priority of each search removed. Searches that are cheap
+	 * to recompute and take a lot of memory are removed first, and searches that
+	 * haven't been accessed for a while gradually lose out to ones that have.
+	 * A search's priority is updated when it is accessed.
+	 */
+	private TreeSet<Job> removalQueue = new TreeSet<>(
+			Comparator.comparingDouble(Job::getCachePriority).thenComparingLong(Job::getId));
+
+	/** GreedyDual-Size inflation value (the priority of the last search removed) */
+	private double cachePriorityInflation = 0;
+
 	/**
 	 * A thread that ensures load management continues even if
 	 * no new requests are coming in.
@@ -66,6 +89,12 @@ public class SearchCache {
 
 	private SearchManager searchMan;
 
+	/** Stores the results of expensive searches on disk, or null if not enabled */
+	private ResultDiskCache resultDiskCache;
+
+	/** Performs the searches */
+	private SearchExecutor executor;
+
 	/**
 	 * Initialize the cache.
 	 *
@@ -81,24 +110,64 @@ public class SearchCache {
 		// and automatically abort really long operations.
 		ThreadPriority.setEnabled(cacheConfig.enableThreadPriority());
 
+		// Size of the cache for document filters (metadata filters on searches)
+		long filterCacheMaxSizeMegs = cacheConfig.getFilterCacheMaxSizeMegs();
+		DocFilterCache.get().setMaxSizeBytes(filterCacheMaxSizeMegs < 0 ? -1 : filterCacheMaxSizeMegs * 1000 * 1000);
+
+		// Size of the cache for hits per index segment (survives adding documents to an index)
+		long spanResultCacheMaxSizeMegs = cacheConfig.getSpanResultCacheMaxSizeMegs();
+		SpanResultCache.get().setEnabled(spanResultCacheMaxSizeMegs != 0);
+		SpanResultCache.get().setMaxSizeBytes(spanResultCacheMaxSizeMegs < 0 ? -1 : spanResultCacheMaxSizeMegs * 1000 * 1000);
+
+		// Results of expensive searches may be stored on disk (survives restarts)
+		File resultDiskCacheDir = cacheConfig.getResultDiskCacheDir();
+		if (resultDiskCacheDir != null) {
+			long resultDiskCacheMaxSizeMegs = cacheConfig.getResultDiskCacheMaxSizeMegs();
+			resultDiskCache = new ResultDiskCache(resultDiskCacheDir,
+					resultDiskCacheMaxSizeMegs < 0 ? -1 : resultDiskCacheMaxSizeMegs * 1000 * 1000,
+					cacheConfig.getResultDiskCacheMinSearchTimeSec() * 1000);
+		}
+
 		cachedSearches = new HashMap<>();
 
+		// Searches are performed by a bounded pool of worker threads
+		executor = new SearchExecutor(cacheConfig.getMaxConcurrentSearches());
+
 		loadManagerThread = new LoadManagerThread(this);
 		loadManagerThread.start();
 
 	}
 
+	/**
+	 * Get the executor that performs the searches.
+	 *
+	 * @return the executor
+	 */
+	public SearchExecutor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Get the cache for storing results of expensive searches on disk.
+	 *
+	 * @return the disk cache, or null if not enabled
+	 */
+	public ResultDiskCache getResultDiskCache() {
+		return resultDiskCache;
+	}
+
 	/**
 	 * Remove all cache entries for the specified index.
 	 *
 	 * @param indexName the index
 	 */
-	public void clearCacheForIndex(String indexName) {
+	public synchronized void clearCacheForIndex(String indexName) {
 		// Iterate over the entries and remove the ones in the specified index
 		Iterator<Map.Entry<String, Job>> it = cachedSearches.entrySet().iterator();
 		while (it.hasNext()) {
 			Entry<String, Job> entry = it.next();
 			if (entry.getValue().getDescription().getIndexName().equals(indexName)) {
+				removalQueue.remove(entry.getValue());
 				entry.getValue().decrRef();
 				it.remove();
 			}
@@ -118,19 +187,53 @@ public class SearchCache {
 		loadManagerThread = null;
 
 		clearCache(true);
+		executor.shutdown();
 
 		searchMan = null;
 	}
 
 	public void dataStreamCacheStatus(DataStream ds) {
-		long maxSizeMegs = cacheConfig.getMaxSizeMegs();
-		long maxSizeBytes = maxSizeMegs < 0 ? -1 : maxSizeMegs * 1000 * 1000;
 		ds.startMap()
-			.entry("maxSizeBytes", maxSizeBytes)
+			.entry("maxSizeBytes", megsToBytes(cacheConfig.getMaxSizeMegs()))
+			.entry("maxSizeBytesPerIndex", megsToBytes(cacheConfig.getMaxSizeMegsPerIndex()))
+			.entry("maxSizeBytesPerUser", megsToBytes(cacheConfig.getMaxSizeMegsPerUser()))
 			.entry("maxNumberOfSearches", cacheConfig.getMaxNumberOfJobs())
 			.entry("maxSearchAgeSec", cacheConfig.getMaxJobAgeSec())
 			.entry("sizeBytes", calculateSizeBytes(cachedSearches.values()))
-			.entry("numberOfSearches", cachedSearches.size())
+			.entry("numberOfSearches", cachedSearches.size());
+		DocFilterCache filterCache = DocFilterCache.get();
+		ds	.startEntry("filterCache").startMap()
+				.entry("maxSizeBytes", filterCache.getMaxSizeBytes())
+				.entry("sizeBytes", filterCache.getSizeBytes())
+				.entry("numberOfEntries", filterCache.getNumberOfEntries())
+				.entry("hits", filterCache.getHits())
+				.entry("misses", filterCache.getMisses())
+				.entry("evictions", filterCache.getEvictions())
+			.endMap().endEntry();
+		SpanResultCache spanResultCache = SpanResultCache.get();
+		ds	.startEntry("spanResultCache").startMap()
+				.entry("maxSizeBytes", spanResultCache.getMaxSizeBytes())
+				.entry("sizeBytes", spanResultCache.getSizeBytes())
+				.entry("numberOfEntries", spanResultCache.getNumberOfEntries())
+				.entry("hits", spanResultCache.getHits())
+				.entry("misses", spanResultCache.getMisses())
+				.entry("evictions", spanResultCache.getEvictions())
+			.endMap().endEntry()
+			.startEntry("resultDiskCache").startMap()
+				.entry("enabled", resultDiskCache != null);
+		if (resultDiskCache != null) {
+			ds	.entry("maxSizeBytes", resultDiskCache.getMaxSizeBytes())
+				.entry("hits", resultDiskCache.getHits())
+				.entry("misses", resultDiskCache.getMisses())
+				.entry("stored", resultDiskCache.getNumberStored());
+		}
+		ds	.endMap().endEntry()
+			.startEntry("executor").startMap()
+				.entry("maxRunning", executor.getMaxRunning())
+				.entry("running", executor.getActive())
+				.entry("queued", executor.getQueued())
+				.entry("threads", executor.getWorkers())
+			.endMap().endEntry()
 		.endMap();
 	}
 
@@ -158,6 +261,37 @@ public class SearchCache {
 	 *             if the query couldn't be executed
 	 */
 	public Job search(User user, JobDescription jobDesc, boolean block) throws BlsException {
+		return search(user, jobDesc, block, INITIAL_JOB_FINISH_WAIT);
+	}
+
+	/**
+	 * Start a new search or return an existing one, without waiting for it.
+	 *
+	 * Used to start a search before releasing the request thread; the request
+	 * is resumed when the search finishes (see Job.addFinishedListener()).
+	 *
+	 * @param user user creating the job
+	 * @param jobDesc the search parameters
+	 * @return the job (caller must call decrRef() when done with it), or null if the
+	 *   search doesn't use the cache (so the request handler would perform it again)
+	 * @throws BlsException if the query couldn't be executed
+	 */
+	public Job startSearch(User user, JobDescription jobDesc) throws BlsException {
+		if (!jobDesc.getSearchSettings().isUseCache())
+			return null;
+		return search(user, jobDesc, false, 0);
+	}
+
+	/**
+	 * How long does a nonblocking search wait to see if the job finishes quickly?
+	 *
+	 * @return wait time in ms
+	 */
+	public int getInitialJobFinishWaitMs() {
+		return INITIAL_JOB_FINISH_WAIT;
+	}
+
+	private Job search(User user, JobDescription jobDesc, boolean block, int initialWaitMs) throws BlsException {
 		// Search the cache / running jobs for this search, create new if not found.
 		boolean performSearch = false;
 		Job job;
@@ -196,7 +330,7 @@ public class SearchCache {
 		if (performSearch) {
 
 			// Start the search, waiting a short time in case it's a fast search
-			job.perform(INITIAL_JOB_FINISH_WAIT);
+			job.perform(initialWaitMs);
 		}
 
 		// If the search thread threw an exception, rethrow it now.
@@ -228,6 +362,11 @@ public class SearchCache {
 		} else {
 			// logger.debug("Cache hit: " + jobDesc);
 			search.resetLastAccessed();
+			if (removalQueue.remove(search)) {
+				// Accessed again; update its priority
+				updateCachePriority(search, search.estimateSizeBytes());
+				removalQueue.add(search);
+			}
 		}
 		return search;
 	}
@@ -266,16 +405,28 @@ public class SearchCache {
 	 *
 	 * @param cancelRunning if true, cancels all running searches as well.
 	 */
-	private void clearCache(boolean cancelRunning) {
+	private synchronized void clearCache(boolean cancelRunning) {
 		for (Job cachedSearch: cachedSearches.values()) {
 			if (!cachedSearch.finished())
 				cachedSearch.cancelJob();
 			cachedSearch.decrRef();
 		}
 		cachedSearches.clear();
+		removalQueue.clear();
 		logger.debug("Cache cleared.");
 	}
 
+	/**
+	 * Set the GreedyDual-Size priority of a finished search.
+	 *
+	 * @param search the search (must not be in the removal queue)
+	 * @param sizeBytes estimated memory use of the search
+	 */
+	private void updateCachePriority(Job search, long sizeBytes) {
+		double costPerByte = (double)Math.max(search.getCostMs(), 1) / Math.max(sizeBytes, 1);
+		search.setCachePriority(cachePriorityInflation + costPerByte);
+	}
+
 	private long calculateSizeBytes(Collection<Job> collection) {
 		// Estimate the total cache size
 		cacheSizeBytes = 0;
@@ -289,13 +440,17 @@ public class SearchCache {
 	 * Evaluate what we need to do (if anything) with each search given the
 	 * current server load.
 	 *
+	 * Synchronized because it updates the removal queue and priority inflation,
+	 * which get() and put() also use; it's called from the load manager thread too.
+	 *
 	 * @param newSearch the new search just started, or null if none.
 	 */
-	void performLoadManagement(Job newSearch) {
+	synchronized void performLoadManagement(Job newSearch) {
 
 		if (cacheConfig.shouldAutoDetectMaxConcurrent()) {
 			// Autodetect number of CPUs
 			cacheConfig.autoAdjustMaxConcurrent();
+			executor.setMaxRunning(cacheConfig.getMaxConcurrentSearches());
 		}
 
 		for (Entry<String, Job> e: cachedSearches.entrySet()) {
@@ -307,17 +462,47 @@ public class SearchCache {
 			}
 		}
 
-		List<Job> searches = new ArrayList<>(cachedSearches.values());
-
-		// Sort the searches based on descending "worthiness"
-		for (Job s: searches)
-		    s.calculateWorthiness(); // calculate once before sorting so we don't run into Comparable contract issues because of threading
-		Collections.sort(searches);
-
 		//------------------
-		// STEP 1: remove least worthy, finished searches from cache
+		// STEP 1: cancel searches that take too long, and remove finished searches
+		//         from the cache if it's too big or they're too old
 
-		calculateSizeBytes(searches);
+		List<Job> searches = new ArrayList<>();
+		Map<Job, Long> sizes = new IdentityHashMap<>();
+		Map<String, Long> sizePerIndex = new HashMap<>();
+		Map<String, Long> sizePerUser = new HashMap<>();
+		cacheSizeBytes = 0;
+		for (Job search: new ArrayList<>(cachedSearches.values())) {
+			if (!search.finished()) {
+				if (search.userWaitTime() > cacheConfig.getMaxSearchTimeSec()) {
+					// Search is taking too long. Cancel it.
+					if (BlsConfig.traceCache) {
+						logger.debug("Search is taking too long (time " + search.userWaitTime() + "s > max time " + cacheConfig.getMaxSearchTimeSec() + "s)");
+						logger.debug("  Cancelling searchjob: " + search);
+					}
+					abortSearch(search);
+					continue;
+				}
+				searches.add(search);
+			} else if (search.getRefCount() == 1 && cacheConfig.getMaxJobAgeSec() >= 0 && search.cacheAge() > cacheConfig.getMaxJobAgeSec()) {
+				// Finished search that is not referred to by anything but this cache, and hasn't been accessed for too long
+				if (BlsConfig.traceCache) {
+					logger.debug("Searchjob too old (age " + (int)search.cacheAge() + "s > max age " + cacheConfig.getMaxJobAgeSec() + "s)");
+					logger.debug("  Removing searchjob: " + search);
+				}
+				removeFromCache(search);
+				continue;
+			}
+			long size = search.estimateSizeBytes();
+			sizes.put(search, size);
+			cacheSizeBytes += size;
+			sizePerIndex.merge(search.getDescription().getIndexName(), size, Long::sum);
+			sizePerUser.merge(search.getUser().uniqueId(), size, Long::sum);
+			if (search.finished() && !removalQueue.contains(search)) {
+				// Newly finished search; add it to the removal queue
+				updateCachePriority(search, size);
+				removalQueue.add(search);
+			}
+		}
 
 		// If we're low on memory, always remove a few searches from cache.
 		int minSearchesToRemove = 0;
@@ -328,72 +513,47 @@ public class SearchCache {
 			minSearchesToRemove = cacheConfig.getNumberOfJobsToPurgeWhenBelowTargetMem();
 		}
 
-		// Look at searches from least worthy to worthiest.
-		// Get rid of old searches
-		List<Job> removed = new ArrayList<>();
-		boolean lookAtCacheSizeAndSearchAccessTime = true;
-		for (int i = searches.size() - 1; i >= 0; i--) {
-			Job search1 = searches.get(i);
-
-			if (!search1.finished() && search1.userWaitTime() > cacheConfig.getMaxSearchTimeSec()) {
-				// Search is taking too long. Cancel it.
+		// Remove finished searches in order of priority until we're within our limits
+		long maxSizeBytes = megsToBytes(cacheConfig.getMaxSizeMegs());
+		long maxSizeBytesPerIndex = megsToBytes(cacheConfig.getMaxSizeMegsPerIndex());
+		long maxSizeBytesPerUser = megsToBytes(cacheConfig.getMaxSizeMegsPerUser());
+		for (Job search: new ArrayList<>(removalQueue)) {
+			boolean tooManySearches = cacheConfig.getMaxNumberOfJobs() >= 0 && cachedSearches.size() > cacheConfig.getMaxNumberOfJobs();
+			boolean tooMuchMemory = maxSizeBytes >= 0 && cacheSizeBytes > maxSizeBytes;
+			if (!tooManySearches && !tooMuchMemory && minSearchesToRemove <= 0 && maxSizeBytesPerIndex < 0 && maxSizeBytesPerUser < 0)
+				break; // we're within our limits
+			if (search.getRefCount() != 1)
+				continue; // still in use by something other than this cache
+			String indexName = search.getDescription().getIndexName();
+			String userId = search.getUser().uniqueId();
+			boolean indexTooBig = maxSizeBytesPerIndex >= 0 && sizePerIndex.get(indexName) > maxSizeBytesPerIndex;
+			boolean userTooBig = maxSizeBytesPerUser >= 0 && sizePerUser.get(userId) > maxSizeBytesPerUser;
+			if (tooManySearches || tooMuchMemory || minSearchesToRemove > 0 || indexTooBig || userTooBig) {
 				if (BlsConfig.traceCache) {
-					logger.debug("Search is taking too long (time " + search1.userWaitTime() + "s > max time " + cacheConfig.getMaxSearchTimeSec() + "s)");
-					logger.debug("  Cancelling searchjob: " + search1);
-				}
-				abortSearch(search1);
-				removed.add(search1);
-
-			} else if (search1.finished() && search1.getRefCount() == 1) {
-				// Finished search that is not referred to by anything but this cache it is in
-				boolean removeBecauseOfCacheSizeOrAge = false;
-				boolean isCacheTooBig = false;
-				boolean isSearchTooOld = false;
-				long cacheSizeMegs = 0;
-				if (lookAtCacheSizeAndSearchAccessTime) {
-					boolean tooManySearches = cacheConfig.getMaxNumberOfJobs() >= 0 && cachedSearches.size() > cacheConfig.getMaxNumberOfJobs();
-					cacheSizeMegs = cacheSizeBytes / 1000000;
-					boolean tooMuchMemory = cacheConfig.getMaxSizeMegs() >= 0 && cacheSizeMegs > cacheConfig.getMaxSizeMegs();
-					isCacheTooBig = tooManySearches || tooMuchMemory;
-					isSearchTooOld = false;
-					if (!isCacheTooBig) {
-						boolean tooOld = cacheConfig.getMaxJobAgeSec() >= 0 && search1.cacheAge() > cacheConfig.getMaxJobAgeSec();
-						isSearchTooOld = tooOld;
-					}
-					removeBecauseOfCacheSizeOrAge = isCacheTooBig || isSearchTooOld;
-				}
-				if (minSearchesToRemove > 0 || removeBecauseOfCacheSizeOrAge) {
-					// Search is too old or cache is too big. Keep removing searches until that's no
-					// longer the case
-					// logger.debug("Remove from cache: " + search);
-					if (BlsConfig.traceCache) {
-						if (minSearchesToRemove > 0)
-							logger.debug("Not enough free mem (free " + freeMegs + "M < min free " + cacheConfig.getMinFreeMemTargetMegs() + "M)");
-						else if (isCacheTooBig)
-							logger.debug("Cache too large (size " + cacheSizeMegs + "M > max size " + cacheConfig.getMaxSizeMegs() + "M)");
-						else
-							logger.debug("Searchjob too old (age " + (int)search1.cacheAge() + "s > max age " + cacheConfig.getMaxJobAgeSec() + "s)");
-						logger.debug("  Removing searchjob: " + search1);
-					}
-					removeFromCache(search1);
-					removed.add(search1);
-
-					minSearchesToRemove--;
-				} else {
-					// Cache is no longer too big and these searches are not too old. Stop checking
-					// that,
-					// just check for long-running searches
-					lookAtCacheSizeAndSearchAccessTime = false;
+					if (tooManySearches || tooMuchMemory)
+						logger.debug("Cache too large (" + cachedSearches.size() + " searches, size " + cacheSizeBytes / 1000000 + "M)");
+					else if (minSearchesToRemove > 0)
+						logger.debug("Not enough free mem (free " + freeMegs + "M < min free " + cacheConfig.getMinFreeMemTargetMegs() + "M)");
+					else
+						logger.debug("Cache too large for index " + indexName + " or user " + userId);
+					logger.debug("  Removing searchjob: " + search);
 				}
+				cachePriorityInflation = search.getCachePriority();
+				long size = sizes.get(search);
+				removeFromCache(search);
+				sizePerIndex.merge(indexName, -size, Long::sum);
+				sizePerUser.merge(userId, -size, Long::sum);
+				minSearchesToRemove--;
 			}
 		}
-		// Make sure we don't look at the searches we removed again in the next step
-		for (Job r: removed) {
-			searches.remove(r);
-		}
 		// NOTE: we used to hint the Java GC to run, but this caused severe
 		// slowdowns. It's better to rely on the incremental garbage collection.
 
+		// Sort the running searches based on descending "worthiness"
+		for (Job s: searches)
+		    s.calculateWorthiness(); // calculate once before sorting so we don't run into Comparable contract issues because of threading
+		Collections.sort(searches);
+
 		//------------------
 		// STEP 2: make sure the most worthy searches get the CPU, and pause
 		//         any others to avoid bringing down the server.
@@ -436,6 +596,9 @@ public class SearchCache {
 				}
 			}
 		}
+
+		// Make sure the worthiest queued searches are started first
+		executor.reprioritize();
 	}
 
 	/**
@@ -474,7 +637,12 @@ public class SearchCache {
 		}
 	}
 
+	private static long megsToBytes(long megs) {
+		return megs < 0 ? -1 : megs * 1000 * 1000;
+	}
+
 	private synchronized void removeFromCache(Job search) {
+		removalQueue.remove(search);
 		String identifier = search.getDescription().uniqueIdentifier();
 		Job removed = cachedSearches.remove(identifier);
 		if (removed == null) {
@@ -0,0 +1,334 @@
+package nl.inl.blacklab.server.search;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import nl.inl.blacklab.server.jobs.Job;
+
+/**
+ * Executes searches using a bounded pool of worker threads.
+ *
+ * At most maxRunning searches are active at any time; others wait in a run
+ * queue, ordered by their "worthiness" as determined by SearchCache's load
+ * management (see reprioritize()). A search that is waiting for another search
+ * to finish, or that has been paused, doesn't count as active, so another
+ * search may start in the meantime. Its thread is parked, not polling, and it
+ * continues when the search it was waiting for finishes or it is resumed.
+ *
+ * Idle worker threads are kept around for a while, so bursts of requests don't
+ * create a new thread for every search.
+ *
+ * The CPU time used by each search is tracked, if the JVM supports this.
+ */
+public class SearchExecutor {
+
+	private static final Logger logger = LogManager.getLogger(SearchExecutor.class);
+
+	/** How long an idle worker thread waits for a new task before exiting */
+	private static final long KEEP_ALIVE_MS = 60000;
+
+	private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+	/** A search to execute, queued or running */
+	public class Task {
+
+		private Job job;
+
+		private Runnable runnable;
+
+		/** Priority when the queue was last ordered (higher runs first) */
+		private double priority;
+
+		/** Thread running this task, or null if queued or done */
+		private Thread thread;
+
+		/** Is the task waiting for another search to finish? */
+		private boolean blocked;
+
+		/** Has the task been paused by the load manager? */
+		private boolean paused;
+
+		/** CPU time used by this task's thread when it started running, or -1 if not known */
+		private long threadCpuAtStartNs = -1;
+
+		/** CPU time used by this task when it finished */
+		private long cpuTimeNs = 0;
+
+		Task(Job job, Runnable runnable) {
+			this.job = job;
+			this.runnable = runnable;
+			updatePriority();
+		}
+
+		void updatePriority() {
+			priority = job.getWorthiness();
+		}
+
+		boolean isActive() {
+			return thread != null && !blocked && !paused;
+		}
+
+		/**
+		 * Indicate that this task is waiting for another search to finish (or no longer is).
+		 *
+		 * While waiting, the task doesn't count as active, so another task may be started.
+		 *
+		 * @param blocked true if we're waiting
+		 */
+		public void setBlocked(boolean blocked) {
+			synchronized (SearchExecutor.this) {
+				boolean wasActive = isActive();
+				this.blocked = blocked;
+				activeChanged(wasActive, isActive());
+			}
+		}
+
+		/**
+		 * Indicate that this task is paused by the load manager (or no longer is).
+		 *
+		 * While paused, the task doesn't count as active, so another task may be started.
+		 *
+		 * @param paused true if we're paused
+		 */
+		public void setPaused(boolean paused) {
+			synchronized (SearchExecutor.this) {
+				boolean wasActive = isActive();
+				this.paused = paused;
+				activeChanged(wasActive, isActive());
+			}
+		}
+
+		/**
+		 * Cancel this task.
+		 *
+		 * If it's still queued, it is removed from the queue; if it's running,
+		 * its thread is interrupted.
+		 *
+		 * @return true if the task was still queued (and will never run)
+		 */
+		public boolean cancel() {
+			synchronized (SearchExecutor.this) {
+				if (queue.remove(this))
+					return true;
+				if (thread != null)
+					thread.interrupt();
+				return false;
+			}
+		}
+
+		/**
+		 * Get the thread running this task.
+		 *
+		 * @return the thread, or null if queued or done
+		 */
+		public Thread getThread() {
+			synchronized (SearchExecutor.this) {
+				return thread;
+			}
+		}
+
+		/**
+		 * Get the CPU time used by this task so far.
+		 *
+		 * @return CPU time in ms, or -1 if not supported
+		 */
+		public long getCpuTimeMs() {
+			if (!threadMXBean.isThreadCpuTimeSupported())
+				return -1;
+			synchronized (SearchExecutor.this) {
+				long ns = cpuTimeNs;
+				if (thread != null && threadCpuAtStartNs >= 0)
+					ns += threadMXBean.getThreadCpuTime(thread.getId()) - threadCpuAtStartNs;
+				return ns / 1000000;
+			}
+		}
+	}
+
+	/** A worker thread; takes tasks from the queue until there are none left for a while */
+	private class Worker extends Thread {
+
+		Worker() {
+			super("SearchWorker-" + nextWorkerId++);
+		}
+
+		@Override
+		public void run() {
+			Task task;
+			while ((task = takeTask()) != null) {
+				try {
+					task.runnable.run();
+				} catch (Throwable e) {
+					// (shouldn't happen; Job catches everything)
+					logger.error("Search task threw an exception", e);
+				} finally {
+					finishTask(task);
+				}
+			}
+		}
+	}
+
+	/** Tasks waiting to run, highest priority first */
+	private PriorityQueue<Task> queue = new PriorityQueue<>(
+			Comparator.comparingDouble((Task t) -> -t.priority).thenComparingLong(t -> t.job.getId()));
+
+	/** Maximum number of active tasks */
+	private int maxRunning;
+
+	/** Number of tasks running that aren't blocked or paused */
+	private int active = 0;
+
+	/** Number of worker threads not running a task */
+	private int idle = 0;
+
+	/** Number of worker threads */
+	private int workers = 0;
+
+	private int nextWorkerId = 0;
+
+	private boolean shutdown = false;
+
+	/**
+	 * Create an executor.
+	 *
+	 * @param maxRunning maximum number of active tasks
+	 */
+	public SearchExecutor(int maxRunning) {
+		this.maxRunning = Math.max(maxRunning, 1);
+	}
+
+	/**
+	 * Queue a search to be executed.
+	 *
+	 * @param job the search, used to determine its priority
+	 * @param runnable performs the search
+	 * @return the task
+	 */
+	public synchronized Task submit(Job job, Runnable runnable) {
+		if (shutdown)
+			throw new IllegalStateException("Executor was shut down");
+		Task task = new Task(job, runnable);
+		queue.add(task);
+		startWorkersIfNeeded();
+		return task;
+	}
+
+	/**
+	 * Re-order the queue based on the current priorities of the searches.
+	 *
+	 * Called after load management has recalculated their worthiness.
+	 */
+	public synchronized void reprioritize() {
+		List<Task> tasks = new ArrayList<>(queue);
+		queue.clear();
+		for (Task task: tasks) {
+			task.updatePriority();
+			queue.add(task);
+		}
+	}
+
+	/**
+	 * Set the maximum number of active tasks.
+	 *
+	 * @param maxRunning maximum number of active tasks
+	 */
+	public synchronized void setMaxRunning(int maxRunning) {
+		this.maxRunning = Math.max(maxRunning, 1);
+		startWorkersIfNeeded();
+	}
+
+	public synchronized int getMaxRunning() {
+		return maxRunning;
+	}
+
+	public synchronized int getActive() {
+		return active;
+	}
+
+	public synchronized int getQueued() {
+		return queue.size();
+	}
+
+	public synchronized int getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * Stop accepting tasks and let idle workers exit.
+	 *
+	 * Queued tasks are discarded; running tasks should be cancelled separately.
+	 */
+	public synchronized void shutdown() {
+		shutdown = true;
+		queue.clear();
+		notifyAll();
+	}
+
+	private void activeChanged(boolean wasActive, boolean isActive) {
+		if (wasActive && !isActive) {
+			active--;
+			startWorkersIfNeeded();
+		} else if (!wasActive && isActive) {
+			// (may temporarily exceed maxRunning; no new tasks start until we're below it again)
+			active++;
+		}
+	}
+
+	/** Make sure there's a worker for every task that may start now */
+	private void startWorkersIfNeeded() {
+		int canStart = Math.min(queue.size(), maxRunning - active);
+		for (int i = idle; i < canStart; i++) {
+			Worker worker = new Worker();
+			workers++;
+			idle++;
+			worker.start();
+		}
+		if (canStart > 0)
+			notifyAll();
+	}
+
+	private synchronized Task takeTask() {
+		long idleSince = System.currentTimeMillis();
+		while (!shutdown && (queue.isEmpty() || active >= maxRunning)) {
+			long waitMs = KEEP_ALIVE_MS - (System.currentTimeMillis() - idleSince);
+			if (waitMs <= 0)
+				break;
+			try {
+				wait(waitMs);
+			} catch (InterruptedException e) {
+				// (a cancelled task's interrupt may arrive late; ignore it)
+			}
+		}
+		if (shutdown || queue.isEmpty() || active >= maxRunning) {
+			idle--;
+			workers--;
+			return null;
+		}
+		idle--;
+		Task task = queue.poll();
+		task.thread = Thread.currentThread();
+		if (threadMXBean.isThreadCpuTimeSupported())
+			task.threadCpuAtStartNs = threadMXBean.getCurrentThreadCpuTime();
+		activeChanged(false, task.isActive());
+		return task;
+	}
+
+	private synchronized void finishTask(Task task) {
+		boolean wasActive = task.isActive();
+		if (task.threadCpuAtStartNs >= 0)
+			task.cpuTimeNs += threadMXBean.getCurrentThreadCpuTime() - task.threadCpuAtStartNs;
+		task.thread = null;
+		task.runnable = null; // make sure Job gets garbage collected
+		idle++;
+		activeChanged(wasActive, false);
+		// Don't let an interrupt meant for this task affect the next one
+		Thread.interrupted();
+	}
+
+}
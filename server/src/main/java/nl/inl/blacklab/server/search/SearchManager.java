@@ -90,4 +90,8 @@ public class SearchManager {
         return cache.search(user, jobDesc, block);
     }
 
+    public Job startSearch(User user, JobDescription jobDesc) throws BlsException {
+        return cache.startSearch(user, jobDesc);
+    }
+
 }
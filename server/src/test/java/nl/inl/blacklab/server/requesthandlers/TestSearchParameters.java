@@ -0,0 +1,70 @@
+package nl.inl.blacklab.server.requesthandlers;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import nl.inl.blacklab.server.exceptions.BlsException;
+import nl.inl.blacklab.server.jobs.JobDescription;
+import nl.inl.blacklab.server.jobs.JobHitsSorted.JobDescHitsSorted;
+import nl.inl.blacklab.server.jobs.JobHitsTotal.JobDescHitsTotal;
+import nl.inl.blacklab.server.jobs.WindowSettings;
+import nl.inl.blacklab.server.search.BlsConfig;
+import nl.inl.blacklab.server.search.BlsConfigQueryBudget;
+import nl.inl.blacklab.server.search.SearchManager;
+
+public class TestSearchParameters {
+
+	private static SearchParameters hitsParams(Map<String, String> params) {
+		BlsConfig config = Mockito.mock(BlsConfig.class);
+		Mockito.when(config.getQueryBudgetConfig()).thenReturn(new BlsConfigQueryBudget(null));
+		Mockito.when(config.maxHitsToRetrieveAllowed()).thenReturn(-1);
+		Mockito.when(config.maxHitsToCountAllowed()).thenReturn(-1);
+		Mockito.when(config.maxContextSize()).thenReturn(20);
+		SearchManager searchMan = Mockito.mock(SearchManager.class);
+		Mockito.when(searchMan.config()).thenReturn(config);
+		HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+		Mockito.when(request.getParameter(ArgumentMatchers.anyString())).thenAnswer(inv -> params.get(inv.getArgument(0)));
+		return SearchParameters.get(searchMan, false, "test", request, null);
+	}
+
+	/** The /hits page is a window on the total job, so that must include the sort */
+	@Test
+	public void testHitsTotalSorted() throws BlsException {
+		Map<String, String> params = new HashMap<>();
+		params.put("sort", "-hit:word");
+		params.put("first", "40");
+		params.put("number", "20");
+		JobDescription total = hitsParams(params).hitsTotal();
+		Assert.assertTrue(total instanceof JobDescHitsTotal);
+		JobDescription sorted = total.getInputDesc();
+		Assert.assertTrue(sorted instanceof JobDescHitsSorted);
+		Assert.assertEquals("hit:word", sorted.getHitSortSettings().sortBy());
+		Assert.assertTrue(sorted.getHitSortSettings().reverse());
+
+		// The sort job knows which page is requested, so it can sort just that part first
+		WindowSettings window = sorted.getWindowSettings();
+		Assert.assertEquals(40, window.first());
+		Assert.assertEquals(20, window.size());
+	}
+
+	/** When sampling, the sample is taken first and then sorted */
+	@Test
+	public void testHitsTotalSampledAndSorted() throws BlsException {
+		Map<String, String> params = new HashMap<>();
+		params.put("sort", "hit:word");
+		params.put("samplenum", "100");
+		params.put("first", "0");
+		params.put("number", "20");
+		JobDescription sorted = hitsParams(params).hitsTotal().getInputDesc();
+		Assert.assertTrue(sorted instanceof JobDescHitsSorted);
+		Assert.assertEquals(100, sorted.getInputDesc().getSampleSettings().number());
+	}
+
+}